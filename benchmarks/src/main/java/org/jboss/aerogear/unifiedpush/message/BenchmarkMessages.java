@@ -0,0 +1,60 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Sample push messages shared by the benchmarks.
+ */
+public final class BenchmarkMessages {
+
+    public static final String PUSH_MESSAGE_ID = "7c3d4a9e-31c6-4b8f-9a57-4ae8b4d5f0a1";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private BenchmarkMessages() {
+        // no-op
+    }
+
+    /**
+     * @return JSON of a send request, as posted to the sender endpoint
+     */
+    public static String json() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                BenchmarkMessages.class.getResourceAsStream("/benchmark-message.json"), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.joining("\n"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static InternalUnifiedPushMessage message() {
+        try {
+            return OBJECT_MAPPER.readValue(json(), InternalUnifiedPushMessage.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
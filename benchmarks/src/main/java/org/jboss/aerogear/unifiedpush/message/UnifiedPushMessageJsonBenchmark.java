@@ -0,0 +1,86 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON handling of a send request: parsing it in the sender endpoint and rendering the stored (stripped or minimized)
+ * representation in the {@link NotificationRouter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnifiedPushMessageJsonBenchmark {
+
+    /**
+     * Number of aliases in the criteria, large alias lists are what makes the router fall back to the minimized JSON.
+     */
+    @Param({ "1", "1000" })
+    public int aliases;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private String json;
+    private InternalUnifiedPushMessage message;
+
+    @Setup
+    public void setUp() throws IOException {
+        message = BenchmarkMessages.message();
+        final List<String> aliasList = new ArrayList<>(aliases);
+        for (int i = 0; i < aliases; i++) {
+            aliasList.add("user-" + i + "@example.com");
+        }
+        message.getCriteria().setAliases(aliasList);
+        json = objectMapper.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public InternalUnifiedPushMessage deserialize() throws IOException {
+        return objectMapper.readValue(json, InternalUnifiedPushMessage.class);
+    }
+
+    @Benchmark
+    public String toStrippedJsonString() {
+        return message.toStrippedJsonString();
+    }
+
+    @Benchmark
+    public String toMinimizedJsonString() {
+        return message.toMinimizedJsonString();
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+
+import org.jboss.aerogear.unifiedpush.api.iOSVariant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.turo.pushy.apns.ApnsClient;
+import com.turo.pushy.apns.ApnsClientBuilder;
+
+import io.netty.channel.nio.NioEventLoopGroup;
+
+/**
+ * Client lookup of the {@link SimpleApnsClientCache} from concurrent sender threads.
+ *
+ * The clients are never connected: {@link #cachedClient()} measures the lookup of clients that were put in the cache
+ * upfront, {@link #uncachedClient()} the path taken while a connection is being established, which is serialized by
+ * the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class ApnsClientCacheBenchmark {
+
+    @Param({ "1", "64" })
+    public int variants;
+
+    private NioEventLoopGroup eventLoopGroup;
+    private ApnsClient client;
+    private SimpleApnsClientCache cache;
+    private iOSVariant[] cached;
+    private iOSVariant uncached;
+
+    @Setup
+    public void setUp() throws SSLException {
+        eventLoopGroup = new NioEventLoopGroup(1);
+        client = new ApnsClientBuilder().setEventLoopGroup(eventLoopGroup).build();
+        cache = new SimpleApnsClientCache();
+
+        cached = new iOSVariant[variants];
+        for (int i = 0; i < variants; i++) {
+            cached[i] = variant("cached-" + i);
+            cache.apnsClientExpiringMap.put(cached[i].getVariantID() + "-dev", client);
+        }
+        uncached = variant("uncached");
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        eventLoopGroup.shutdownGracefully().await();
+    }
+
+    @Benchmark
+    public ApnsClient cachedClient() {
+        return cache.getApnsClientForVariant(cached[ThreadLocalRandom.current().nextInt(variants)], () -> client);
+    }
+
+    @Benchmark
+    public ApnsClient uncachedClient() {
+        return cache.getApnsClientForVariant(uncached, () -> client);
+    }
+
+    private static iOSVariant variant(String variantID) {
+        final iOSVariant variant = new iOSVariant();
+        variant.setVariantID(variantID);
+        variant.setProduction(false);
+        return variant;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Borrow / return cycle of the {@link AbstractServiceCache} with more consumers than instances, the way sender
+ * threads compete for the services of one push message and variant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class ServiceCacheBenchmark {
+
+    private static final String PUSH_MESSAGE_ID = "push-message";
+
+    @Param({ "2", "8" })
+    public int instanceLimit;
+
+    /**
+     * Number of variants the threads spread over.
+     */
+    @Param({ "1", "16" })
+    public int variants;
+
+    private AbstractServiceCache<Object> cache;
+    private String[] variantIDs;
+
+    @Setup
+    public void setUp() {
+        cache = new AbstractServiceCache<Object>(instanceLimit, TimeUnit.SECONDS.toMillis(10)) {
+        };
+        variantIDs = new String[variants];
+        for (int i = 0; i < variants; i++) {
+            variantIDs[i] = "variant-" + i;
+        }
+    }
+
+    @Benchmark
+    public Object borrowAndReturn() {
+        final String variantID = variantIDs[ThreadLocalRandom.current().nextInt(variants)];
+        final Object service = cache.dequeueOrCreateNewService(PUSH_MESSAGE_ID, variantID, Object::new);
+        cache.queueFreedUpService(PUSH_MESSAGE_ID, variantID, service);
+        return service;
+    }
+}
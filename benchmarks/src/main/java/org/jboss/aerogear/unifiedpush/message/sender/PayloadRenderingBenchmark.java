@@ -0,0 +1,68 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.message.BenchmarkMessages;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.android.gcm.server.Message;
+
+import ar.com.fernandospr.wns.model.WnsToast;
+
+/**
+ * Rendering of the FCM and WNS payloads, done once per token batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadRenderingBenchmark {
+
+    private UnifiedPushMessage message;
+    private WNSPushNotificationSender wnsSender;
+
+    @Setup
+    public void setUp() {
+        message = BenchmarkMessages.message();
+        wnsSender = new WNSPushNotificationSender();
+        wnsSender.setPushMessageInformationId(BenchmarkMessages.PUSH_MESSAGE_ID);
+    }
+
+    @Benchmark
+    public Message fcmPayload() {
+        return FCMPushNotificationSender.createFcmMessage(message, BenchmarkMessages.PUSH_MESSAGE_ID);
+    }
+
+    @Benchmark
+    public WnsToast wnsToastPayload() {
+        return wnsSender.createSimpleToastMessage(message.getMessage());
+    }
+}
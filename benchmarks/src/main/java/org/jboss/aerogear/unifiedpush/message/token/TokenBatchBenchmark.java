@@ -0,0 +1,89 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Token batch construction as done by the {@link TokenLoader}, reading from an in-memory, sorted token stream so that
+ * only the batch building (not the database) is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBatchBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int batchSize;
+
+    private String[] tokens;
+
+    @Setup
+    public void setUp() {
+        final TreeSet<String> sorted = new TreeSet<>();
+        while (sorted.size() < batchSize) {
+            // 64 hex characters, same length as an APNs device token
+            sorted.add(UUID.randomUUID().toString().replace("-", "") + UUID.randomUUID().toString().replace("-", ""));
+        }
+        tokens = sorted.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public Set<String> loadBatch() {
+        final Set<String> batch = new TreeSet<>();
+        TokenLoaderUtils.loadBatch(new ArrayResultsStream(tokens), batchSize, batch);
+        return batch;
+    }
+
+    private static final class ArrayResultsStream implements ResultsStream<String> {
+        private final String[] rows;
+        private int index = -1;
+
+        private ArrayResultsStream(String[] rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean next() {
+            return ++index < rows.length;
+        }
+
+        @Override
+        public String get() {
+            return rows[index];
+        }
+    }
+}
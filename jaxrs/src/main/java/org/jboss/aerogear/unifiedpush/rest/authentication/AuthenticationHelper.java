@@ -18,6 +18,7 @@ import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
 import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
 import org.jboss.aerogear.unifiedpush.service.PushApplicationService;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
+import org.jboss.aerogear.unifiedpush.service.impl.PrincipalCache;
 import org.jboss.aerogear.unifiedpush.service.impl.spring.IKeycloakService;
 import org.keycloak.KeycloakPrincipal;
 import org.keycloak.KeycloakSecurityContext;
@@ -40,6 +41,8 @@ public class AuthenticationHelper {
 	private PushApplicationService pushApplicationService;
 	@Inject
 	private IKeycloakService keycloakService;
+	@Inject
+	private PrincipalCache principalCache;
 
 	@Autowired(required = false)
 	private AliasService aliasService;
@@ -165,11 +168,8 @@ public class AuthenticationHelper {
 
 		if (forceExistingInstallation) {
 			// Variant can't be null at this point.
-			Installation installation = clientInstallationService
-					.findInstallationForVariantByDeviceToken(variant.getVariantID(), deviceToken);
-
 			// Installation should always be present and enabled.
-			if (installation == null || installation.isEnabled() == false) {
+			if (!clientInstallationService.hasEnabledInstallation(variant.getVariantID(), deviceToken)) {
 				logger.info(
 						"API request to non-existing / disabled installation variant id: {} API: {} device-token: {}",
 						variant.getVariantID(), request.getRequestURI(), deviceToken);
@@ -191,7 +191,9 @@ public class AuthenticationHelper {
 	private Variant loadVariantFromBearerWhenAuthorized(GenericVariantService genericVariantService,
 			HttpServletRequest request) {
 		// extract the Variant from the Authorization header:
-		return BearerHelper.extractVariantFromBearerHeader(extractUsername(), pushApplicationService, keycloakService, request);
+		final String token = BearerHelper.getBarearToken(request).orNull();
+		return principalCache.resolveToken(Variant.class, token, () -> BearerHelper
+				.extractVariantFromBearerHeader(extractUsername(), pushApplicationService, keycloakService, request));
 	}
 
 	/**
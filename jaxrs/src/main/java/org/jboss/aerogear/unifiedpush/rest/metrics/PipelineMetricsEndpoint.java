@@ -0,0 +1,58 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.metrics;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+import org.jboss.aerogear.unifiedpush.message.metrics.PipelineMetrics;
+import org.springframework.stereotype.Component;
+
+@Component
+@Path("/metrics/pipeline")
+public class PipelineMetricsEndpoint {
+
+    static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Inject
+    private PipelineMetrics pipelineMetrics;
+
+    /**
+     * GET delivery pipeline metrics (queue depths, token loading, batch build and send latencies, sender errors) in
+     * the Prometheus text exposition format.
+     *
+     * Scrapers authenticate with a bearer token carrying the {@code metrics} (or {@code admin}) role, e.g. of a
+     * Keycloak service account; {@code aerogear.metrics.pipeline.public=true} serves the endpoint without
+     * authentication instead.
+     *
+     * @return pipeline metrics
+     *
+     * @statuscode 404 The pipeline instrumentation is disabled
+     */
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    public Response pipelineMetrics() {
+        if (!pipelineMetrics.isEnabled()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        return Response.ok(pipelineMetrics.scrape()).build();
+    }
+}
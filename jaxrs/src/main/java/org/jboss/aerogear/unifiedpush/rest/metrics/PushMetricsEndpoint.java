@@ -17,7 +17,11 @@
 package org.jboss.aerogear.unifiedpush.rest.metrics;
 
 
+import java.util.Date;
+import java.util.List;
+
 import javax.inject.Inject;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -25,12 +29,18 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.VariantDeliveryCounter;
+import org.jboss.aerogear.unifiedpush.dao.MessageSearch;
+import org.jboss.aerogear.unifiedpush.dao.PageCursor;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dto.MessageMetrics;
 
+import static org.jboss.aerogear.unifiedpush.rest.util.CommonUtils.NEXT_CURSOR_HEADER;
 import static org.jboss.aerogear.unifiedpush.rest.util.CommonUtils.isAscendingOrder;
+import org.jboss.aerogear.unifiedpush.service.metrics.DeliveryCounterAggregator;
 import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
 import org.springframework.stereotype.Component;
 
@@ -45,6 +55,9 @@ public class PushMetricsEndpoint {
     @Inject
     private IPushMessageMetricsService metricsService;
 
+    @Inject
+    private DeliveryCounterAggregator deliveryCounters;
+
     /**
      * GET info about submitted push messages for the given Push Application
      *
@@ -52,13 +65,21 @@ public class PushMetricsEndpoint {
      * @param page      page number
      * @param pageSize  number of items per page
      * @param sorting   sorting order: {@code asc} (default) or {@code desc}
-     * @param search    search query
+     * @param search    words of the alert or of the criteria (aliases, categories, device types, variants)
+     * @param since     earliest submit date (inclusive), in milliseconds since the epoch
+     * @param until     latest submit date (exclusive), in milliseconds since the epoch
+     * @param cursor    cursor of the requested page, empty for the first page; switches from page numbers to
+     *                  keyset pagination, which costs the same for every page
+     * @param count     put the totals into the response headers, default {@code true}, only honoured together
+     *                  with {@code cursor}
      * @return          list of {@link FlatPushMessageInformation}s
      *
      * @responseheader total            Total count of items
      * @responseheader receivers        Receivers
      * @responseheader appOpenedCounter App Opened Counter
+     * @responseheader next-cursor      Cursor of the next page (only for cursor requests)
      *
+     * @statuscode 400 The cursor is malformed
      * @statuscode 404 The requested PushApplication resource does not exist
      */
     @GET
@@ -70,7 +91,11 @@ public class PushMetricsEndpoint {
             @QueryParam("page") Integer page,
             @QueryParam("per_page") Integer pageSize,
             @QueryParam("sort") String sorting,
-            @QueryParam("search") String search) {
+            @QueryParam("search") String search,
+            @QueryParam("since") Long since,
+            @QueryParam("until") Long until,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("count") @DefaultValue("true") boolean count) {
 
         pageSize = parsePageSize(pageSize);
 
@@ -82,8 +107,14 @@ public class PushMetricsEndpoint {
             return Response.status(Response.Status.NOT_FOUND).entity("Could not find requested information").build();
         }
 
+        final MessageSearch messageSearch = MessageSearch.of(search, toDate(since), toDate(until));
+
+        if (cursor != null) {
+            return pushMessageInformationAfter(id, pageSize, isAscendingOrder(sorting), messageSearch, cursor, count);
+        }
+
         PageResult<FlatPushMessageInformation, MessageMetrics> pageResult =
-                metricsService.findAllFlatsForPushApplication(id, search, isAscendingOrder(sorting), page, pageSize);
+                metricsService.findAllFlatsForPushApplication(id, messageSearch, isAscendingOrder(sorting), page, pageSize);
 
         return Response.ok(pageResult.getResultList())
                 .header("total", pageResult.getAggregate().getCount())
@@ -92,6 +123,58 @@ public class PushMetricsEndpoint {
                 .build();
     }
 
+    private Response pushMessageInformationAfter(String id, int pageSize, boolean ascending, MessageSearch search,
+            String cursor, boolean count) {
+        final PageCursor after;
+        try {
+            after = PageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid cursor").build();
+        }
+
+        final List<FlatPushMessageInformation> messages =
+                metricsService.findAllFlatsForPushApplicationAfter(id, search, ascending, after, pageSize);
+
+        final ResponseBuilder response = Response.ok(messages).header("receivers", "0");
+        if (messages.size() == pageSize) {
+            final FlatPushMessageInformation last = messages.get(messages.size() - 1);
+            response.header(NEXT_CURSOR_HEADER, PageCursor.after(last.getSubmitDate(), last.getId()).encode());
+        }
+        if (count) {
+            final MessageMetrics metrics = metricsService.findMessageMetricsForPushApplication(id, search);
+            response.header("total", metrics.getCount())
+                    .header("appOpenedCounter", metrics.getAppOpenedCounter());
+        }
+        return response.build();
+    }
+
+    /**
+     * GET delivery outcome counters (tokens loaded, sent, accepted and rejected) of a push message, per variant.
+     *
+     * The counters are aggregated in memory and stored every few seconds, values may lag behind the actual delivery.
+     *
+     * @param id        id of {@link FlatPushMessageInformation}
+     * @return          list of {@link VariantDeliveryCounter}s
+     *
+     * @statuscode 404 The requested push message does not exist
+     */
+    @GET
+    @Path("/delivery/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ReturnType("java.util.List<org.jboss.aerogear.unifiedpush.api.VariantDeliveryCounter>")
+    public Response deliveryCountersPerMessage(@PathParam("id") String id) {
+
+        if (metricsService.getPushMessageInformation(id) == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Could not find requested information").build();
+        }
+
+        return Response.ok(deliveryCounters.getDeliveryCounters(id)).build();
+    }
+
+    private static Date toDate(Long millis) {
+        return millis == null ? null : new Date(millis);
+    }
+
     private Integer parsePageSize(Integer pageSize) {
         if (pageSize != null) {
             pageSize = Math.min(MAX_PAGE_SIZE, pageSize);
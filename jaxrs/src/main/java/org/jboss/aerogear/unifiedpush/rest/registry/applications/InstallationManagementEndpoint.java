@@ -16,9 +16,14 @@
  */
 package org.jboss.aerogear.unifiedpush.rest.registry.applications;
 
+import static org.jboss.aerogear.unifiedpush.rest.util.CommonUtils.NEXT_CURSOR_HEADER;
+
+import java.util.List;
+
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -28,10 +33,13 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
 import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.dao.PageCursor;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
+import org.jboss.aerogear.unifiedpush.dao.SearchMode;
 import org.jboss.aerogear.unifiedpush.dto.Count;
 import org.jboss.aerogear.unifiedpush.rest.AbstractManagementEndpoint;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
@@ -57,11 +65,20 @@ public class InstallationManagementEndpoint extends AbstractManagementEndpoint {
      * @param page      page number
      * @param pageSize  number of items per page
      * @param search    search query
+     * @param searchMode how the search query is matched against the device metadata: {@code exact},
+     *                  {@code prefix} or {@code substring} (default)
+     * @param cursor    cursor of the requested page, empty for the first page; switches from page numbers to
+     *                  keyset pagination, which costs the same for every page
+     * @param count     put the total count into the response headers, default {@code true}, only honoured
+     *                  together with {@code cursor}
      * @param uri       uri
      * @return          list of {@link Installation}s
      *
-     * @responseheader Link     Links to "prev", "first", "next" and "last" pages
-     * @responseheader total    Total count of items
+     * @responseheader Link         Links to "prev", "first", "next" and "last" pages
+     * @responseheader total        Total count of items
+     * @responseheader next-cursor  Cursor of the next page (only for cursor requests)
+     *
+     * @statuscode 400 The cursor is malformed
      *
      * @statuscode 404 The requested Variant resource does not exist
      */
@@ -72,6 +89,9 @@ public class InstallationManagementEndpoint extends AbstractManagementEndpoint {
                                       @QueryParam("page") Integer page,
                                       @QueryParam("per_page") Integer pageSize,
                                       @QueryParam("search") String search,
+                                      @QueryParam("search_mode") String searchMode,
+                                      @QueryParam("cursor") String cursor,
+                                      @QueryParam("count") @DefaultValue("true") boolean count,
                                       @Context UriInfo uri) {
         if (pageSize != null) {
             pageSize = Math.min(MAX_PAGE_SIZE, pageSize);
@@ -92,8 +112,13 @@ public class InstallationManagementEndpoint extends AbstractManagementEndpoint {
             return Response.status(Response.Status.NOT_FOUND).entity("Could not find requested Variant").build();
         }
 
+        final SearchMode mode = SearchMode.parse(searchMode);
+        if (cursor != null) {
+            return findInstallationsAfter(variantId, pageSize, search, mode, cursor, count);
+        }
+
         //Find the installations using the variantID
-        PageResult<Installation, Count> pageResult = getSearch().findAllInstallationsByVariantForDeveloper(variantId, page, pageSize, search);
+        PageResult<Installation, Count> pageResult = getSearch().findAllInstallationsByVariantForDeveloper(variantId, page, pageSize, search, mode);
 
         final long totalPages = pageResult.getAggregate().getCount() / pageSize;
         LinkHeader header = getLinkHeader(page, totalPages, uri);
@@ -104,6 +129,28 @@ public class InstallationManagementEndpoint extends AbstractManagementEndpoint {
                 .build();
     }
 
+    private Response findInstallationsAfter(String variantId, int pageSize, String search, SearchMode mode, String cursor, boolean count) {
+        final PageCursor after;
+        try {
+            after = PageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid cursor").build();
+        }
+
+        final List<Installation> installations = getSearch().findInstallationsByVariantAfterForDeveloper(variantId,
+                search, mode, after == null ? null : after.getId(), pageSize);
+
+        final ResponseBuilder response = Response.ok(installations);
+        if (installations.size() == pageSize) {
+            final String lastID = installations.get(installations.size() - 1).getId();
+            response.header(NEXT_CURSOR_HEADER, PageCursor.after(lastID).encode());
+        }
+        if (count) {
+            response.header("total", getSearch().countInstallationsByVariantForDeveloper(variantId, search, mode));
+        }
+        return response.build();
+    }
+
     LinkHeader getLinkHeader(Integer page, long totalPages, UriInfo uri) {
         LinkHeader header = new LinkHeader();
 
@@ -16,7 +16,10 @@
  */
 package org.jboss.aerogear.unifiedpush.rest.registry.applications;
 
+import static org.jboss.aerogear.unifiedpush.rest.util.CommonUtils.NEXT_CURSOR_HEADER;
+
 import java.net.URI;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -40,6 +43,7 @@ import javax.ws.rs.core.UriBuilder;
 
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.dao.PageCursor;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dto.Count;
 import org.jboss.aerogear.unifiedpush.rest.AbstractManagementEndpoint;
@@ -110,9 +114,14 @@ public class PushApplicationEndpoint extends AbstractManagementEndpoint {
      * @param pageSize              number of items per page
      * @param includeDeviceCount    put device count into response headers, default {@code false}
      * @param includeActivity       put activity into response headers, default {@code false}
+     * @param cursor                cursor of the requested page, empty for the first page; switches from page numbers
+     *                              to keyset pagination
+     * @param count                 put the total count into the response headers, default {@code true}, only honoured
+     *                              together with {@code cursor}
      * @return                      list of {@link PushApplication}s
      *
      * @responseheader total                                Total count of items
+     * @responseheader next-cursor                          Cursor of the next page (only for cursor requests)
      * @responseheader activity_app_{pushApplicationID}     Count number of messages for Push Application
      * @responseheader activity_variant_{variantID}         Count number of messages for Variant
      * @responseheader deviceCount_app_{pushApplicationID}  Count number of devices for Push Application
@@ -124,7 +133,9 @@ public class PushApplicationEndpoint extends AbstractManagementEndpoint {
     public Response listAllPushApplications(@QueryParam("page") Integer page,
                                             @QueryParam("per_page") Integer pageSize,
                                             @QueryParam("includeDeviceCount") @DefaultValue("false") boolean includeDeviceCount,
-                                            @QueryParam("includeActivity")    @DefaultValue("false") boolean includeActivity) {
+                                            @QueryParam("includeActivity")    @DefaultValue("false") boolean includeActivity,
+                                            @QueryParam("cursor") String cursor,
+                                            @QueryParam("count")              @DefaultValue("true") boolean count) {
         if (pageSize != null) {
             pageSize = Math.min(MAX_PAGE_SIZE, pageSize);
         } else {
@@ -135,10 +146,33 @@ public class PushApplicationEndpoint extends AbstractManagementEndpoint {
             page = 0;
         }
 
-        final PageResult<PushApplication, Count> pageResult = getSearch().findAllPushApplicationsForDeveloper(page, pageSize);
-        ResponseBuilder response = Response.ok(pageResult.getResultList());
-        response.header("total", pageResult.getAggregate().getCount());
-        for (PushApplication app : pageResult.getResultList()) {
+        final List<PushApplication> pushApplications;
+        final ResponseBuilder response;
+        if (cursor != null) {
+            final PageCursor after;
+            try {
+                after = PageCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return Response.status(Status.BAD_REQUEST).entity("Invalid cursor").build();
+            }
+
+            pushApplications = getSearch().findAllPushApplicationsForDeveloperAfter(after == null ? null : after.getId(), pageSize);
+            response = Response.ok(pushApplications);
+            if (pushApplications.size() == pageSize) {
+                final String lastID = pushApplications.get(pushApplications.size() - 1).getId();
+                response.header(NEXT_CURSOR_HEADER, PageCursor.after(lastID).encode());
+            }
+            if (count) {
+                response.header("total", getSearch().countPushApplicationsForDeveloper());
+            }
+        } else {
+            final PageResult<PushApplication, Count> pageResult = getSearch().findAllPushApplicationsForDeveloper(page, pageSize);
+            pushApplications = pageResult.getResultList();
+            response = Response.ok(pushApplications);
+            response.header("total", pageResult.getAggregate().getCount());
+        }
+
+        for (PushApplication app : pushApplications) {
             if (includeActivity) {
                 putActivityIntoResponseHeaders(app, response);
             }
@@ -16,35 +16,112 @@
  */
 package org.jboss.aerogear.unifiedpush.rest.registry.installations;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 
+import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.rest.AbstractManagementEndpoint;
+import org.jboss.aerogear.unifiedpush.service.PushSearchService;
 import org.springframework.stereotype.Controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.qmino.miredot.annotations.ReturnType;
 
 @Controller
 @Path("/export")
 public class ExportEndpoint extends AbstractManagementEndpoint {
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final String FORMAT_NDJSON = "ndjson";
+    private static final String GZIP = "gzip";
+    private static final int PAGE_SIZE = 1000;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
 
     /**
      * Endpoint for exporting as JSON file device installations for a given variant.
      * Only Keycloak authenticated can access it
      *
-     * @param variantId the variant ID
-     * @return          list of {@link org.jboss.aerogear.unifiedpush.api.Installation}s
+     * The installations are streamed page by page, so the export does not hold the variant's installations in memory.
+     * The response is compressed when the client accepts <code>gzip</code>.
+     *
+     * @param variantId      the variant ID
+     * @param format         <code>json</code> for a JSON array (default), or <code>ndjson</code> for one installation per line
+     * @param acceptEncoding the accepted content encodings
+     * @return               list of {@link org.jboss.aerogear.unifiedpush.api.Installation}s
      */
     @GET
     @Path("/{variantId}/installations/")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, APPLICATION_NDJSON })
     @ReturnType("java.util.List<org.jboss.aerogear.unifiedpush.api.Installation>")
-    public Response exportInstallations(@PathParam("variantId") String variantId) {
-        return Response.ok(getSearch().findAllInstallationsByVariantForDeveloper(variantId, 0, Integer.MAX_VALUE, null).getResultList()).build();
+    public Response exportInstallations(@PathParam("variantId") String variantId,
+            @QueryParam("format") @DefaultValue("json") String format,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        final boolean ndjson = FORMAT_NDJSON.equalsIgnoreCase(format);
+        final boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains(GZIP);
+        // resolved now, the search service is bound to the current request
+        final PushSearchService search = getSearch();
+
+        final StreamingOutput output = out -> {
+            if (gzip) {
+                try (GZIPOutputStream compressed = new GZIPOutputStream(out)) {
+                    writeInstallations(search, variantId, ndjson, compressed);
+                }
+            } else {
+                writeInstallations(search, variantId, ndjson, out);
+            }
+        };
+
+        final ResponseBuilder response = Response.ok(output, ndjson ? APPLICATION_NDJSON : MediaType.APPLICATION_JSON);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        return response.build();
     }
 
+    private static void writeInstallations(PushSearchService search, String variantId, boolean ndjson,
+            OutputStream out) throws IOException {
+        final JsonGenerator generator = mapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+
+        if (!ndjson) {
+            generator.writeStartArray();
+        }
+
+        String lastInstallationID = null;
+        List<Installation> page;
+        do {
+            // every page is read in its own transaction, nothing stays attached between pages
+            page = search.findInstallationsByVariantAfterForDeveloper(variantId, null, null, lastInstallationID, PAGE_SIZE);
+            for (Installation installation : page) {
+                generator.writeObject(installation);
+                if (ndjson) {
+                    generator.writeRaw('\n');
+                }
+                lastInstallationID = installation.getId();
+            }
+            generator.flush();
+        } while (page.size() == PAGE_SIZE);
+
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.close();
+    }
 }
@@ -17,7 +17,6 @@
 package org.jboss.aerogear.unifiedpush.rest.registry.installations;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.Optional;
 
 import javax.inject.Inject;
@@ -52,6 +51,8 @@ import org.jboss.aerogear.unifiedpush.service.AliasService;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationAsyncService;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
 import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
+import org.jboss.aerogear.unifiedpush.service.impl.InstallationImportJob;
+import org.jboss.aerogear.unifiedpush.service.impl.InstallationImporter;
 import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
 import org.jboss.resteasy.annotations.providers.multipart.MultipartForm;
 import org.slf4j.Logger;
@@ -59,7 +60,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.qmino.miredot.annotations.BodyType;
 import com.qmino.miredot.annotations.ReturnType;
@@ -82,6 +82,8 @@ public class InstallationRegistrationEndpoint extends AbstractBaseEndpoint {
 	private IPushMessageMetricsService metricsService;
 	@Inject
 	private AuthenticationHelper authenticationHelper;
+	@Inject
+	private InstallationImporter installationImporter;
 	@Autowired(required = false)
 	private AliasService aliasService;
 
@@ -409,11 +411,14 @@ public class InstallationRegistrationEndpoint extends AbstractBaseEndpoint {
 	 * ]
 	 * </pre>
 	 *
+	 * The file is imported by a background job, whose progress can be polled with
+	 * the returned job ID.
+	 *
 	 * @param form
 	 *            JSON file to import
 	 * @param request
 	 *            the request
-	 * @return empty JSON body
+	 * @return the submitted import job
 	 *
 	 * @responseheader WWW-Authenticate Basic realm="AeroBase UnifiedPush Server"
 	 *                 (only for 401 response)
@@ -427,7 +432,7 @@ public class InstallationRegistrationEndpoint extends AbstractBaseEndpoint {
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	@Produces(MediaType.APPLICATION_JSON)
 	@BodyType("org.jboss.aerogear.unifiedpush.rest.registry.installations.ImporterForm")
-	@ReturnType("org.jboss.aerogear.unifiedpush.rest.EmptyJSON")
+	@ReturnType("org.jboss.aerogear.unifiedpush.service.impl.InstallationImportJob")
 	public Response importDevice(@MultipartForm ImporterForm form, @Context HttpServletRequest request) {
 
 		// find the matching variation:
@@ -436,22 +441,58 @@ public class InstallationRegistrationEndpoint extends AbstractBaseEndpoint {
 			return create401Response(request);
 		}
 
-		List<Installation> devices;
+		if (form.getJsonFile() == null) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+
+		final InstallationImportJob job;
 		try {
-			devices = mapper.readValue(form.getJsonFile(), new TypeReference<List<Installation>>() {
-			});
+			job = installationImporter.submit(variant, form.getJsonFile());
 		} catch (IOException e) {
-			logger.error("Error when parsing importer json file", e);
+			logger.error("Error when receiving importer json file", e);
 
 			return Response.status(Status.BAD_REQUEST).build();
 		}
 
-		logger.info("Devices to import: {}", devices.size());
+		// return directly, the import is async and may take a bit :-)
+		return Response.ok(job).build();
+	}
+
+	/**
+	 * RESTful API for polling the progress of a device import. The Endpoint is
+	 * protected using <code>HTTP Basic</code> (credentials
+	 * <code>VariantID:secret</code>).
+	 *
+	 * @param jobId
+	 *            the ID of the import job
+	 * @param request
+	 *            the request
+	 * @return the import job
+	 *
+	 * @responseheader WWW-Authenticate Basic realm="AeroBase UnifiedPush Server"
+	 *                 (only for 401 response)
+	 *
+	 * @statuscode 200 The progress of the import job
+	 * @statuscode 401 The request requires authentication
+	 * @statuscode 404 The import job is unknown or expired
+	 */
+	@GET
+	@Path("/importer/{jobId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	@ReturnType("org.jboss.aerogear.unifiedpush.service.impl.InstallationImportJob")
+	public Response importStatus(@PathParam("jobId") String jobId, @Context HttpServletRequest request) {
 
-		clientInstallationAsyncService.addInstallations(variant, devices);
+		// find the matching variation:
+		final Variant variant = ClientAuthHelper.loadVariantWhenAuthorized(genericVariantService, request);
+		if (variant == null) {
+			return create401Response(request);
+		}
 
-		// return directly, the above is async and may take a bit :-)
-		return Response.ok(EmptyJSON.STRING).build();
+		final InstallationImportJob job = installationImporter.find(jobId);
+		if (job == null || !job.getVariantID().equals(variant.getVariantID())) {
+			return Response.status(Status.NOT_FOUND).build();
+		}
+		return Response.ok(job).build();
 	}
 
 	@GET
@@ -29,7 +29,7 @@ import javax.ws.rs.core.Response.Status;
 
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
-import org.jboss.aerogear.unifiedpush.message.NotificationRouter;
+import org.jboss.aerogear.unifiedpush.message.schedule.PushMessageScheduler;
 import org.jboss.aerogear.unifiedpush.rest.AbstractEndpoint;
 import org.jboss.aerogear.unifiedpush.rest.EmptyJSON;
 import org.jboss.aerogear.unifiedpush.rest.util.HttpRequestUtil;
@@ -50,7 +50,7 @@ public class PushNotificationSenderEndpoint extends AbstractEndpoint {
     @Inject
     private PushApplicationService pushApplicationService;
     @Inject
-    private NotificationRouter notificationRouter;
+    private PushMessageScheduler pushMessageScheduler;
 
     /**
      * RESTful API for sending Push Notifications.
@@ -76,6 +76,10 @@ public class PushNotificationSenderEndpoint extends AbstractEndpoint {
      * Details about the Message Format can be found HERE!
      * <p>
      *
+     * Delivery can be deferred with the {@code sendAt} (date) or {@code delay} (seconds) keys of the {@code config} object.
+     * Deferred messages are persisted and delivered at the requested time, also across server restarts.
+     * <p>
+     *
      * <b>Request Header</b> {@code aerogear-sender} uses to identify the used client. If the header is not present, the standard "user-agent" header is used.
      *
      * @param message   message to send
@@ -108,8 +112,8 @@ public class PushNotificationSenderEndpoint extends AbstractEndpoint {
         // add the client identifier
         message.setClientIdentifier(HttpRequestUtil.extractAeroGearSenderInformation(request));
 
-        // submitted to EJB:
-        notificationRouter.submit(pushApplication, message);
+        // submitted to EJB (or held until its delivery time):
+        pushMessageScheduler.submit(pushApplication, message);
         logger.debug(String.format("Push Message Request from [%s] API was internally submitted for further processing", message.getClientIdentifier()));
 
         return Response.status(Status.ACCEPTED).entity(EmptyJSON.STRING).build();
@@ -34,8 +34,8 @@ public class ClientAuthHelper {
 		String variantID = credentials[0];
 		String secret = credentials[1];
 
-		final Variant variant = genericVariantService.findByVariantID(variantID);
-		if (variant != null && variant.getSecret().equals(secret)) {
+		final Variant variant = genericVariantService.findAuthorizedVariant(variantID, secret);
+		if (variant != null) {
 			return variant;
 		}
 
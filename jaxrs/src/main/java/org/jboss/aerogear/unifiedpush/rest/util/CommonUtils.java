@@ -18,6 +18,11 @@ package org.jboss.aerogear.unifiedpush.rest.util;
 
 public class CommonUtils {
 
+    /**
+     * Response header holding the cursor of the next page, for endpoints that support keyset pagination.
+     */
+    public static final String NEXT_CURSOR_HEADER = "next-cursor";
+
     private CommonUtils() {
         // no-op
     }
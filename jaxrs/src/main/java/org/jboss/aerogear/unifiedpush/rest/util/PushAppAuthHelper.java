@@ -16,12 +16,7 @@ public class PushAppAuthHelper {
         String pushApplicationID = credentials[0];
         String secret = credentials[1];
 
-        final PushApplication pushApplication = pushApplicationService.findByPushApplicationID(pushApplicationID);
-        if (pushApplication != null && pushApplication.getMasterSecret().equals(secret)) {
-            return pushApplication;
-        }
-
-        // unauthorized...
-        return null;
+        // null if unauthorized...
+        return pushApplicationService.findAuthorizedPushApplication(pushApplicationID, secret);
     }
 }
\ No newline at end of file
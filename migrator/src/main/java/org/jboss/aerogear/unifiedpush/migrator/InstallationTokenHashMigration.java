@@ -0,0 +1,102 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.migrator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Fills the token_hash column of the existing installations, in chunks ordered by ID. The hash has to match
+ * Installation#hashDeviceToken: the first 8 bytes (big-endian) of the SHA-256 digest of the device token.
+ */
+public class InstallationTokenHashMigration implements CustomTaskChange {
+    private static final int CHUNK_SIZE = 1000;
+
+    private String confirmationMessage;
+
+    @Override
+    public String getConfirmationMessage() {
+        return this.confirmationMessage;
+    }
+
+    @Override
+    public void setUp() throws SetupException {
+
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return null;
+    }
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        try {
+            Connection conn = ((JdbcConnection) (database.getConnection())).getWrappedConnection();
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+
+            int updated = 0;
+            String lastId = "";
+            try (PreparedStatement select = conn.prepareStatement("select id, device_token from installation"
+                    + " where token_hash is null and device_token is not null and id > ? order by id");
+                 PreparedStatement update = conn.prepareStatement("update installation set token_hash = ? where id = ?")) {
+                select.setMaxRows(CHUNK_SIZE);
+
+                int chunk;
+                do {
+                    chunk = 0;
+                    select.setString(1, lastId);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            lastId = rs.getString(1);
+                            byte[] digest = sha256.digest(rs.getString(2).getBytes(StandardCharsets.UTF_8));
+                            update.setLong(1, ByteBuffer.wrap(digest).getLong());
+                            update.setString(2, lastId);
+                            update.addBatch();
+                            chunk++;
+                        }
+                    }
+                    if (chunk > 0) {
+                        update.executeBatch();
+                        updated += chunk;
+                    }
+                } while (chunk == CHUNK_SIZE);
+            }
+
+            this.confirmationMessage = "hashed the device tokens of " + updated + " installations";
+        } catch (Exception e) {
+            throw new CustomChangeException("Failed to hash the device tokens of the installations", e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.migrator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.jboss.aerogear.unifiedpush.dao.MessageSearchText;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Fills the search_text column of the existing push messages, in chunks ordered by ID, with the same extraction as
+ * for new push messages (see MessageSearchText).
+ */
+public class MessageSearchTextMigration implements CustomTaskChange {
+    private static final int CHUNK_SIZE = 1000;
+
+    private String confirmationMessage;
+
+    @Override
+    public String getConfirmationMessage() {
+        return this.confirmationMessage;
+    }
+
+    @Override
+    public void setUp() throws SetupException {
+
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return null;
+    }
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        try {
+            Connection conn = ((JdbcConnection) (database.getConnection())).getWrappedConnection();
+
+            int updated = 0;
+            String lastId = "";
+            try (PreparedStatement select = conn.prepareStatement("select id, raw_json_message from flat_push_message_info"
+                    + " where search_text is null and raw_json_message is not null and id > ? order by id");
+                 PreparedStatement update = conn.prepareStatement("update flat_push_message_info set search_text = ? where id = ?")) {
+                select.setMaxRows(CHUNK_SIZE);
+
+                int chunk;
+                do {
+                    chunk = 0;
+                    select.setString(1, lastId);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            lastId = rs.getString(1);
+                            update.setString(1, MessageSearchText.extract(rs.getString(2)));
+                            update.setString(2, lastId);
+                            update.addBatch();
+                            chunk++;
+                        }
+                    }
+                    if (chunk > 0) {
+                        update.executeBatch();
+                        updated += chunk;
+                    }
+                } while (chunk == CHUNK_SIZE);
+            }
+
+            this.confirmationMessage = "extracted the search text of " + updated + " push messages";
+        } catch (Exception e) {
+            throw new CustomChangeException("Failed to extract the search text of the push messages", e);
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.jboss.aerogear.unifiedpush.api;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.validation.constraints.NotNull;
 import java.util.Date;
 import java.util.HashSet;
@@ -29,6 +31,8 @@ public class FlatPushMessageInformation extends BaseModel {
     private String pushApplicationId;
 
     private String rawJsonMessage;
+    // tokenized alert and criteria, for the search of the message history
+    private String searchText;
     private String ipAddress;
     private String clientIdentifier;
 
@@ -49,6 +53,15 @@ public class FlatPushMessageInformation extends BaseModel {
         this.rawJsonMessage = rawJsonMessage;
     }
 
+    public void setSearchText(final String searchText) {
+        this.searchText = searchText;
+    }
+
+    @JsonIgnore
+    public String getSearchText() {
+        return searchText;
+    }
+
     public void setIpAddress(final String ipAddress) {
         this.ipAddress = ipAddress;
     }
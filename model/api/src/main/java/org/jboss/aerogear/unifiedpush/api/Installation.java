@@ -16,6 +16,10 @@
  */
 package org.jboss.aerogear.unifiedpush.api;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -36,6 +40,8 @@ public class Installation extends BaseModel {
 
     private boolean enabled = true;
     private String deviceToken;
+    // indexed stand-in for the (long) device token, see #hashDeviceToken(String)
+    private Long tokenHash;
     private String deviceType;
     private String operatingSystem;
     private String osVersion;
@@ -80,6 +86,38 @@ public class Installation extends BaseModel {
      */
     public void setDeviceToken(final String deviceToken) {
         this.deviceToken = deviceToken;
+        this.tokenHash = hashDeviceToken(deviceToken);
+    }
+
+    /**
+     * Hash of the device token, kept in sync by {@link #setDeviceToken(String)}. Token lookups filter on the indexed
+     * hash first and compare the exact token afterwards.
+     *
+     * @return the hash of the device token, or <code>null</code> if there is no token
+     */
+    @JsonIgnore
+    public Long getTokenHash() {
+        return tokenHash;
+    }
+
+    /**
+     * 64-bit hash of a device token: the first 8 bytes (big-endian) of its SHA-256 digest. The migrator computes
+     * the same value when it fills the hash of existing installations.
+     *
+     * @param deviceToken the device token, or <code>null</code>
+     * @return the hash, or <code>null</code> for a <code>null</code> token
+     */
+    public static Long hashDeviceToken(final String deviceToken) {
+        if (deviceToken == null) {
+            return null;
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(deviceToken.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
     }
 
     public String getDeviceType() {
@@ -0,0 +1,101 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.api;
+
+import java.util.Date;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A push message request that is held by the server until its delivery time is reached.
+ *
+ * The complete (internal) message payload is kept as JSON, so that the request can be replayed
+ * once the job becomes due, also after a restart of the server.
+ */
+public class ScheduledPushMessage extends BaseModel {
+
+    private static final long serialVersionUID = 2943862174926540923L;
+
+    @NotNull
+    private String pushApplicationId;
+
+    @NotNull
+    private String rawJsonMessage;
+
+    @NotNull
+    private Date sendAt;
+
+    private Date submitDate = new Date();
+
+    private Date claimedUntil;
+
+    public String getPushApplicationId() {
+        return pushApplicationId;
+    }
+
+    public void setPushApplicationId(String pushApplicationId) {
+        this.pushApplicationId = pushApplicationId;
+    }
+
+    /**
+     * The serialized message, including the request metadata (IP address and client identifier).
+     *
+     * @return JSON representation of the message
+     */
+    public String getRawJsonMessage() {
+        return rawJsonMessage;
+    }
+
+    public void setRawJsonMessage(String rawJsonMessage) {
+        this.rawJsonMessage = rawJsonMessage;
+    }
+
+    /**
+     * Point in time the message has to be delivered at.
+     *
+     * @return the delivery date
+     */
+    public Date getSendAt() {
+        return sendAt;
+    }
+
+    public void setSendAt(Date sendAt) {
+        this.sendAt = sendAt;
+    }
+
+    public Date getSubmitDate() {
+        return submitDate;
+    }
+
+    public void setSubmitDate(Date submitDate) {
+        this.submitDate = submitDate;
+    }
+
+    /**
+     * End of the lease of the node that is releasing the job. The job is deleted once it has been released, an expired
+     * lease means that node failed and another node may release the job.
+     *
+     * @return the end of the lease, or null if the job was not claimed yet
+     */
+    public Date getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public void setClaimedUntil(Date claimedUntil) {
+        this.claimedUntil = claimedUntil;
+    }
+}
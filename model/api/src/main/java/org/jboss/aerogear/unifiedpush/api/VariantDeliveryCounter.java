@@ -0,0 +1,151 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.api;
+
+import java.util.Date;
+
+/**
+ * Delivery outcome counters of a push message, per variant.
+ *
+ * Counters are aggregated in memory while the message is delivered and are added to this record in batches, so
+ * the values may lag behind the actual delivery by a few seconds.
+ */
+public class VariantDeliveryCounter {
+
+    //@Id
+    private String pushMessageVariantId; // = "push-job-id" + ":" + "variant-id";
+
+    private String pushJobId;
+    private String variantID;
+
+    private long tokensLoaded;
+    private long tokensSent;
+    private long tokensAccepted;
+    private long tokensRejected;
+
+    private Date lastUpdated;
+
+    public VariantDeliveryCounter() {
+        // bogus ctor
+    }
+
+    public VariantDeliveryCounter(final String pushJobId, final String variantID) {
+        this.pushMessageVariantId = new StringBuilder(pushJobId).append(':').append(variantID).toString();
+        this.pushJobId = pushJobId;
+        this.variantID = variantID;
+    }
+
+    public String getPushMessageVariantId() {
+        return pushMessageVariantId;
+    }
+
+    public void setPushMessageVariantId(String pushMessageVariantId) {
+        this.pushMessageVariantId = pushMessageVariantId;
+    }
+
+    public String getPushJobId() {
+        return pushJobId;
+    }
+
+    public void setPushJobId(String pushJobId) {
+        this.pushJobId = pushJobId;
+    }
+
+    public String getVariantID() {
+        return variantID;
+    }
+
+    public void setVariantID(String variantID) {
+        this.variantID = variantID;
+    }
+
+    /**
+     * Number of device tokens loaded from the database for the message.
+     *
+     * @return loaded tokens
+     */
+    public long getTokensLoaded() {
+        return tokensLoaded;
+    }
+
+    public void setTokensLoaded(long tokensLoaded) {
+        this.tokensLoaded = tokensLoaded;
+    }
+
+    /**
+     * Number of device tokens handed to the Push Network sender.
+     *
+     * @return sent tokens
+     */
+    public long getTokensSent() {
+        return tokensSent;
+    }
+
+    public void setTokensSent(long tokensSent) {
+        this.tokensSent = tokensSent;
+    }
+
+    /**
+     * Number of device tokens, whose batch was accepted by the Push Network.
+     *
+     * @return accepted tokens
+     */
+    public long getTokensAccepted() {
+        return tokensAccepted;
+    }
+
+    public void setTokensAccepted(long tokensAccepted) {
+        this.tokensAccepted = tokensAccepted;
+    }
+
+    /**
+     * Number of device tokens, whose batch was rejected by the Push Network.
+     *
+     * @return rejected tokens
+     */
+    public long getTokensRejected() {
+        return tokensRejected;
+    }
+
+    public void setTokensRejected(long tokensRejected) {
+        this.tokensRejected = tokensRejected;
+    }
+
+    public Date getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Date lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final VariantDeliveryCounter that = (VariantDeliveryCounter) o;
+
+        return pushMessageVariantId != null ? pushMessageVariantId.equals(that.pushMessageVariantId) : that.pushMessageVariantId == null;
+    }
+
+    @Override
+    public int hashCode() {
+        return pushMessageVariantId != null ? pushMessageVariantId.hashCode() : 0;
+    }
+}
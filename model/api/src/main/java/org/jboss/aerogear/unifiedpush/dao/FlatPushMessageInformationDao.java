@@ -17,10 +17,12 @@
 package org.jboss.aerogear.unifiedpush.dao;
 
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.dto.MessageActivity;
 import org.jboss.aerogear.unifiedpush.dto.MessageMetrics;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 public interface FlatPushMessageInformationDao extends GenericBaseDao<FlatPushMessageInformation, String>  {
 
@@ -57,39 +59,54 @@ public interface FlatPushMessageInformationDao extends GenericBaseDao<FlatPushMe
      *
      * @param pushApplicationId ID of the PushApplication
      * @param ascending boolean to define if ASC ordering (by date) or DESC ordering should be executed.
-     * @param search the value of the alert of a push notification
+     * @param search words and submit date range of the push messages, or null
      * @param page The number of the page.
      * @param pageSize the number of elements in the result.
      *
      * @return list of push message info objects
      */
-    List<FlatPushMessageInformation> findAllForPushApplicationByParams(String pushApplicationId, String search, boolean ascending, Integer page, Integer pageSize);
+    List<FlatPushMessageInformation> findAllForPushApplicationByParams(String pushApplicationId, MessageSearch search, boolean ascending, Integer page, Integer pageSize);
+
+    /**
+     * Loads the next page of push message metadata objects for the given PushApplication, ordered (asc/desc) by date.
+     * Pages are addressed by the date and ID of the last message of the previous page instead of an offset.
+     *
+     * @param pushApplicationId ID of the PushApplication
+     * @param search words and submit date range of the push messages, or null
+     * @param ascending boolean to define if ASC ordering (by date) or DESC ordering should be executed.
+     * @param lastSubmitDate the date of the last message of the previous page, or null for the first page
+     * @param lastId the ID of the last message of the previous page, or null for the first page
+     * @param maxResults the number of elements in the result.
+     *
+     * @return list of push message info objects
+     */
+    List<FlatPushMessageInformation> findAllForPushApplicationAfter(String pushApplicationId, MessageSearch search, boolean ascending, Date lastSubmitDate, String lastId, int maxResults);
 
     /**
      * Loads paged push message metadata objects for the given PushApplication, but offers a way to order (asc/desc) by date.
      *
      * @param pushApplicationId ID of the PushApplication
      * @param ascending boolean to define if ASC ordering (by date) or DESC ordering should be executed.
-     * @param search the value of the alert of a push notification
+     * @param search words and submit date range of the push messages, or null
      * @param page The number of the page.
      * @param pageSize the number of elements in the result.
      *
      * @return list of push message info objects
      */
-    MessageMetrics findMessageMetricsForPushApplicationByParams(String pushApplicationId, String search, boolean ascending, Integer page, Integer pageSize);
+    MessageMetrics findMessageMetricsForPushApplicationByParams(String pushApplicationId, MessageSearch search, boolean ascending, Integer page, Integer pageSize);
 
     /**
      * Loads paged push message metadata objects for the given PushApplication, but offers a way to order (asc/desc) by date.
      *
      * @param pushApplicationId ID of the PushApplication
      * @param ascending boolean to define if ASC ordering (by date) or DESC ordering should be executed.
-     * @param search the value of the alert of a push notification
+     * @param search words and submit date range of the push messages, or null
      * @param page The number of the page.
      * @param pageSize the number of elements in the result.
      *
      * @return list of push message info objects
      */
-    PageResult<FlatPushMessageInformation, MessageMetrics> findAllForPushApplication(String pushApplicationId, String search, boolean ascending, Integer page, Integer pageSize);
+    PageResult<FlatPushMessageInformation, MessageMetrics> findAllForPushApplication(String pushApplicationId, MessageSearch search, boolean ascending, Integer page, Integer pageSize);
 
     /**
      * Filters those variantIDs where the variant shows errors/issues for previous message sends
@@ -111,11 +128,48 @@ public interface FlatPushMessageInformationDao extends GenericBaseDao<FlatPushMe
     List<FlatPushMessageInformation> findLatestActivity(String loginName, int maxResults);
 
     /**
-     * Delete all Push Message Information entries that are older than the given date
+     * Loads the most recent push messages together with the name of their push application, in a single query.
+     * Messages of deleted push applications are skipped.
+     *
+     * @param loginName the username, or null for the admin role
+     * @param maxResults number of max items in the returned list
+     *
+     * @return list of message activities
+     */
+    List<MessageActivity> findLatestApplicationActivity(String loginName, int maxResults);
+
+    /**
+     * Counts the push messages of every push application.
+     *
+     * @return number of push messages by push application ID
+     */
+    Map<String, Long> countPushMessagesPerApplication();
+
+    /**
+     * Delete up to <code>maxResults</code> Push Message Information entries (oldest first) that are older than the
+     * given date, along with their error and delivery counter rows. Call repeatedly, in separate transactions,
+     * until it returns 0, to keep every transaction short.
      *
      * @param oldest the point in time to go back to
+     * @param maxResults max number of push messages to delete
+     *
+     * @return number of deleted push messages
+     */
+    int deletePushInformationOlderThan(Date oldest, int maxResults);
+
+    /**
+     * Adds aggregated app-open events to the analytics of the given push message, in a single update statement.
+     * The first open date only moves back, the last open date only moves forward, so events that nodes flush out of
+     * order keep the earliest and latest dates.
+     *
+     * @param id the push message ID
+     * @param opens number of app-open events to add
+     * @param firstOpenDate the earliest of the app-open events
+     * @param lastOpenDate the latest of the app-open events
+     *
+     * @return <code>true</code> if the push message was updated, <code>false</code> if it does not exist
      */
-    void deletePushInformationOlderThan(Date oldest);
+    boolean addAppOpens(String id, long opens, Date firstOpenDate, Date lastOpenDate);
 
     //Admin queries
     List<String> findVariantIDsWithWarnings();
@@ -1,5 +1,6 @@
 package org.jboss.aerogear.unifiedpush.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -19,6 +20,39 @@ public interface GenericBaseDao<O, K> {
 
     void delete(O o);
 
+    /**
+     * Inserts the given new entities with JDBC batches. The entities are not attached to the current session and
+     * nothing is cascaded.
+     *
+     * @param entities the entities to insert
+     */
+    void createAll(Collection<O> entities);
+
+    /**
+     * Updates the given entities with JDBC batches, without loading them first. The entities are not attached to the
+     * current session and nothing is cascaded; loaded copies of them are not refreshed.
+     *
+     * @param entities the entities to update
+     */
+    void updateAll(Collection<O> entities);
+
+    /**
+     * Deletes the given entities by their IDs, see {@link #deleteAllById(Collection)}.
+     *
+     * @param entities the entities to delete
+     * @return number of deleted entities
+     */
+    int deleteAll(Collection<O> entities);
+
+    /**
+     * Deletes the entities of the given IDs with bulk statements, in chunks, without loading them. Entities of those
+     * IDs that are already loaded in the current session are not removed from it.
+     *
+     * @param ids the IDs of the entities to delete
+     * @return number of deleted entities
+     */
+    int deleteAllById(Collection<K> ids);
+
     void flushAndClear();
 
     void lock(O entity);
@@ -16,7 +16,9 @@
  */
 package org.jboss.aerogear.unifiedpush.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jboss.aerogear.unifiedpush.api.Installation;
@@ -45,6 +47,17 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     List<Installation> findInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens);
 
+    /**
+     * Writes the given installations in bulk: rows are upserted by installation ID with the database's native
+     * ON CONFLICT / MERGE statement, and the category links of every written installation are replaced.
+     *
+     * The installations must reference a persistent variant and persistent categories. Managed copies of these
+     * installations are not refreshed, callers should clear the persistence context afterwards.
+     *
+     * @param installations the installations to write
+     */
+    void upsertAll(Collection<Installation> installations);
+
     /**
      * Sender API for installations:
      *
@@ -64,6 +77,36 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
 
     Set<String> findAllDeviceTokenForVariantID(String variantID);
 
+    /**
+     * Sender API for alias targeted messages:
+     *
+     * Query the tokens of all enabled installations of the given variant, whose alias matches one of the given aliases.
+     * Callers are expected to pass a bounded chunk of aliases, already converted to lower case.
+     *
+     * @param variantID the variantID for the filter
+     * @param lowerCaseAliases the (lower case) aliases for the filter
+     *
+     * @return device tokens, grouped by the lower case alias of their installation
+     */
+    Map<String, Set<String>> findDeviceTokensForVariantIDByAliases(String variantID, Collection<String> lowerCaseAliases);
+
+    /**
+     * Sender API for alias targeted messages, that resolve to too many tokens to be kept in memory:
+     *
+     * Query one page of the tokens of all enabled installations of the given variant, whose alias matches one of the
+     * given aliases. Callers are expected to pass a bounded chunk of aliases, already converted to lower case.
+     *
+     * @param variantID the variantID for the filter
+     * @param lowerCaseAliases the (lower case) aliases for the filter
+     * @param lastTokenFromPreviousBatch last token of the previous page, or null
+     * @param maxResults number of tokens to return
+     * @param oldGCM if true only old GCM tokens (not containing a :) are returned
+     *
+     * @return device tokens following the given one, in ascending order
+     */
+    List<String> findDeviceTokensForVariantIDByAliases(String variantID, Collection<String> lowerCaseAliases,
+            String lastTokenFromPreviousBatch, int maxResults, boolean oldGCM);
+
     /**
      * Find all installations for the variant specified and for the authneticated user.
      * @param variantID the id of the variant to find the installations for
@@ -76,6 +119,19 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     PageResult<Installation, Count> findInstallationsByVariantForDeveloper(String variantID, String developer, Integer page, Integer pageSize, String search);
 
+    /**
+     * Find all installations for the variant specified and for the authenticated user.
+     * @param variantID the id of the variant to find the installations for
+     * @param developer the developer, or null for the admin role
+     * @param page the page number
+     * @param pageSize the size of the pages
+     * @param search any value of the device metadata
+     * @param mode how the search value is matched
+     *
+     * @return all installations found or empty list + the total count of results
+     */
+    PageResult<Installation, Count> findInstallationsByVariantForDeveloper(String variantID, String developer, Integer page, Integer pageSize, String search, SearchMode mode);
+
     /**
      * Find all installations for the variant specified (used for admin role)
      * @param variantID the id of the variant to find the installations for
@@ -87,6 +143,33 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     PageResult<Installation, Count> findInstallationsByVariant(String variantID, Integer page, Integer pageSize, String search);
 
+    /**
+     * Find the next page of installations for the variant specified, ordered by ID. Pages are addressed by the last
+     * ID of the previous page instead of an offset, so every page costs the same regardless of its position.
+     *
+     * @param variantID the id of the variant to find the installations for
+     * @param developer the developer, or null for the admin role
+     * @param search any value of the device metadata, or null
+     * @param mode how the search value is matched
+     * @param lastInstallationID the last ID of the previous page, or null for the first page
+     * @param maxResults the size of the page
+     *
+     * @return the installations, with their categories loaded
+     */
+    List<Installation> findInstallationsByVariantAfter(String variantID, String developer, String search, SearchMode mode, String lastInstallationID, int maxResults);
+
+    /**
+     * Counts the installations for the variant specified.
+     *
+     * @param variantID the id of the variant to count the installations for
+     * @param developer the developer, or null for the admin role
+     * @param search any value of the device metadata, or null
+     * @param mode how the search value is matched
+     *
+     * @return number of matching installations
+     */
+    long countInstallationsByVariant(String variantID, String developer, String search, SearchMode mode);
+
 
     /**
      * Counts the total number of registered devices/clients for the give List of variantIDs
@@ -114,6 +197,13 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     long getNumberOfDevicesForVariantID(String variantId);
 
+    /**
+     * Counts the registered devices/clients of every variant
+     *
+     * @return number of devices by variant ID
+     */
+    Map<String, Long> countInstallationsPerVariant();
+
 	/**
      * Find all installations matching the given variant IDs whose alias is in the {@code aliases} list.
      * @param variantIDs variant IDs to include.
@@ -122,6 +212,16 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
 	List<InstallationAlias> findByVariantIDsInAliasList(List<String> variantIDs, List<String> aliases);
 
+	/**
+	 * Deletes the installations of the given device tokens, with bulk statements (by token hash) and without loading
+	 * the installations.
+	 *
+	 * @param variantID the variant ID
+	 * @param deviceTokens the device tokens
+	 * @return ID and alias of the deleted installations
+	 */
+	List<InstallationAlias> deleteInstallationsForVariantByDeviceTokens(String variantID, Collection<String> deviceTokens);
+
     /**
      * Loads all installations matching the given alias.
      *
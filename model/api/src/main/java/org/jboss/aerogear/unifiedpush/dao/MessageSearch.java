@@ -0,0 +1,129 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Search of the push message history: words of the alert or of the criteria (aliases, categories, device types and
+ * variants) and an optional range of the submit date.
+ *
+ * The words are matched against the search text of the push messages, which is tokenized the same way when the
+ * message is stored (see {@link #toSearchText(Iterable)}).
+ */
+public final class MessageSearch {
+
+    // length of the search_text column
+    public static final int MAX_TEXT_LENGTH = 2000;
+    // every word adds a condition to the query, words beyond are ignored
+    private static final int MAX_WORDS = 8;
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final List<String> words;
+    private final Date since;
+    private final Date until;
+
+    private MessageSearch(List<String> words, Date since, Date until) {
+        this.words = words;
+        this.since = since;
+        this.until = until;
+    }
+
+    /**
+     * @param text the searched words, or null
+     * @param since the earliest submit date (inclusive), or null
+     * @param until the latest submit date (exclusive), or null
+     *
+     * @return the search, or null if it does not filter anything
+     */
+    public static MessageSearch of(String text, Date since, Date until) {
+        final List<String> words = tokenize(text);
+        if (words.isEmpty() && since == null && until == null) {
+            return null;
+        }
+        return new MessageSearch(words.size() > MAX_WORDS ? words.subList(0, MAX_WORDS) : words, since, until);
+    }
+
+    /**
+     * Splits the given text into distinct, lower case words of letters and digits.
+     *
+     * @param text the text, or null
+     *
+     * @return list of words in their order of appearance
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        final Set<String> words = new LinkedHashSet<>();
+        for (String word : SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return new ArrayList<>(words);
+    }
+
+    /**
+     * Builds the search text of a push message: the distinct words of the given values, separated by a blank and cut
+     * to {@link #MAX_TEXT_LENGTH} after the last complete word.
+     *
+     * @param values the alert and criteria values of the push message
+     *
+     * @return the search text
+     */
+    public static String toSearchText(Iterable<String> values) {
+        final Set<String> words = new LinkedHashSet<>();
+        values.forEach(value -> words.addAll(tokenize(value)));
+
+        final StringBuilder text = new StringBuilder();
+        for (String word : words) {
+            if (text.length() + word.length() + 1 > MAX_TEXT_LENGTH) {
+                break;
+            }
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(word);
+        }
+        return text.toString();
+    }
+
+    public List<String> getWords() {
+        return words;
+    }
+
+    public Date getSince() {
+        return since;
+    }
+
+    public Date getUntil() {
+        return until;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageSearch [words=" + words + ", since=" + since + ", until=" + until + "]";
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.dao;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Extracts the searchable values of a stored push message (see {@code UnifiedPushMessage#toStrippedJsonString()}):
+ * the alert and the aliases, categories, device types and variants of the criteria.
+ *
+ * New push messages get their search text when they are stored, the database migration fills it in for the existing
+ * ones; both use this extraction.
+ */
+public final class MessageSearchText {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String[] CRITERIA = { "alias", "categories", "deviceType", "variants" };
+
+    private MessageSearchText() {
+        // no-op
+    }
+
+    /**
+     * @param rawJsonMessage the stored JSON of the push message, or null
+     *
+     * @return the search text of the push message
+     */
+    public static String extract(String rawJsonMessage) {
+        if (rawJsonMessage == null) {
+            return null;
+        }
+
+        final JsonNode json;
+        try {
+            json = OBJECT_MAPPER.readTree(rawJsonMessage);
+        } catch (IOException e) {
+            // not the expected format, all of it is searchable
+            return MessageSearch.toSearchText(Collections.singletonList(rawJsonMessage));
+        }
+
+        final List<String> values = new ArrayList<>();
+        if (json.hasNonNull("alert")) {
+            values.add(json.get("alert").asText());
+        }
+        final JsonNode criteria = json.path("criteria");
+        for (String name : CRITERIA) {
+            criteria.path(name).forEach(value -> values.add(value.asText()));
+        }
+        return MessageSearch.toSearchText(values);
+    }
+}
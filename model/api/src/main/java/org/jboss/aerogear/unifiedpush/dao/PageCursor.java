@@ -0,0 +1,73 @@
+package org.jboss.aerogear.unifiedpush.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position after the last row of a page, for keyset pagination. Holds the ID of the last row and, for results ordered
+ * by date, its date. Clients receive it as an opaque token.
+ */
+public final class PageCursor {
+
+    private static final char SEPARATOR = '|';
+
+    private final Date date;
+    private final String id;
+
+    private PageCursor(Date date, String id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    public static PageCursor after(String id) {
+        return new PageCursor(null, id);
+    }
+
+    public static PageCursor after(Date date, String id) {
+        return new PageCursor(date, id);
+    }
+
+    /**
+     * @param token a token created by {@link #encode()}, empty or null for the first page
+     * @return the cursor, or null for the first page
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static PageCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        final String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        final int separator = value.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return after(value);
+        }
+        try {
+            return after(new Date(Long.parseLong(value.substring(0, separator))), value.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed page cursor", e);
+        }
+    }
+
+    public String encode() {
+        final String value = date == null ? id : date.getTime() + String.valueOf(SEPARATOR) + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return "PageCursor{" +
+                "date=" + date +
+                ", id=" + id +
+                '}';
+    }
+}
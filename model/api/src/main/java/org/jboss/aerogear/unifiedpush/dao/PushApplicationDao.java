@@ -35,6 +35,24 @@ public interface PushApplicationDao extends GenericBaseDao<PushApplication, Stri
      */
     PageResult<PushApplication, Count> findAllForDeveloper(String loginName, Integer page, Integer pageSize);
 
+    /**
+     * Finder that returns the next page of pushApplication objects for the given owner/developer, ordered by ID.
+     *
+     * @param loginName the username, or null for the admin role
+     * @param lastID the last ID of the previous page, or null for the first page
+     * @param maxResults the size of the page
+     *
+     * @return list of push applications
+     */
+    List<PushApplication> findAllForDeveloperAfter(String loginName, String lastID, int maxResults);
+
+    /**
+     * Finder that returns all pushApplication objects, with their variants loaded.
+     *
+     * @return list of push applications
+     */
+    List<PushApplication> findAllWithVariants();
+
     /**
      * Finder that returns a list, containing all pushApplication ids for the given owner/developer.
      *
@@ -0,0 +1,66 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import org.jboss.aerogear.unifiedpush.api.ScheduledPushMessage;
+
+public interface ScheduledPushMessageDao extends GenericBaseDao<ScheduledPushMessage, String> {
+
+    /**
+     * Loads all scheduled push messages that were not yet released, ordered by their delivery date.
+     *
+     * @return list of pending scheduled push messages
+     */
+    List<ScheduledPushMessage> findAllPending();
+
+    /**
+     * Loads the scheduled push messages due before the given date which are not leased by a node (anymore), ordered by
+     * their delivery date.
+     *
+     * @param dueBefore the latest delivery date (exclusive)
+     * @param now the current time, leases ending before are expired
+     * @param maxResults max number of jobs to load
+     *
+     * @return list of due jobs
+     */
+    List<ScheduledPushMessage> findDue(Date dueBefore, Date now, int maxResults);
+
+    /**
+     * Atomically leases the scheduled push message with the given ID, unless another node holds an unexpired lease.
+     *
+     * Used to claim a job before releasing it, so that only one node of a cluster delivers it.
+     *
+     * @param id the id of the scheduled push message
+     * @param now the current time, leases ending before are expired
+     * @param leaseUntil end of the new lease
+     *
+     * @return true if the job was leased by this call, false if it did not exist (anymore) or is leased by another node
+     */
+    boolean lease(String id, Date now, Date leaseUntil);
+
+    /**
+     * Atomically removes the scheduled push message with the given ID.
+     *
+     * @param id the id of the scheduled push message
+     *
+     * @return true if the job was removed by this call, false if it did not exist (anymore)
+     */
+    boolean deleteById(String id);
+}
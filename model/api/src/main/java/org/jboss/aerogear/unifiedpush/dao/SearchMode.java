@@ -0,0 +1,55 @@
+package org.jboss.aerogear.unifiedpush.dao;
+
+/**
+ * How a search term is matched against the searchable columns.
+ */
+public enum SearchMode {
+
+    /**
+     * The column equals the term.
+     */
+    EXACT,
+
+    /**
+     * The column starts with the term.
+     */
+    PREFIX,
+
+    /**
+     * The column contains the term.
+     */
+    SUBSTRING;
+
+    /**
+     * @param mode the name of the mode, case insensitive
+     * @return the matching mode, or {@link #SUBSTRING} if the name is null or unknown
+     */
+    public static SearchMode parse(String mode) {
+        if (mode != null) {
+            for (SearchMode value : values()) {
+                if (value.name().equalsIgnoreCase(mode)) {
+                    return value;
+                }
+            }
+        }
+        return SUBSTRING;
+    }
+
+    /**
+     * Builds the LIKE pattern for the term, escaping the wildcards it contains with {@code '!'}.
+     *
+     * @param term the search term
+     * @return the pattern
+     */
+    public String toLikePattern(String term) {
+        final String escaped = term.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+        switch (this) {
+            case EXACT:
+                return escaped;
+            case PREFIX:
+                return escaped + "%";
+            default:
+                return "%" + escaped + "%";
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.dao;
+
+import java.util.List;
+
+import org.jboss.aerogear.unifiedpush.api.VariantDeliveryCounter;
+
+public interface VariantDeliveryCounterDao extends GenericBaseDao<VariantDeliveryCounter, String> {
+
+    /**
+     * Loads the delivery counters of all variants for the given push message.
+     *
+     * @param pushJobId the push message ID
+     *
+     * @return list of counters
+     */
+    List<VariantDeliveryCounter> findByPushJobId(String pushJobId);
+
+    /**
+     * Adds the values of the given counter to the stored counter with the same ID, in a single update statement.
+     *
+     * @param delta the values to add
+     *
+     * @return <code>true</code> if a stored counter was updated, <code>false</code> if there is no such counter (yet)
+     */
+    boolean addToCounter(VariantDeliveryCounter delta);
+
+}
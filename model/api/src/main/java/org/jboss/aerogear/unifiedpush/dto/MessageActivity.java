@@ -0,0 +1,53 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.dto;
+
+import java.util.Date;
+
+/**
+ * DTO transferring a submitted push message together with the name of its push application
+ */
+public class MessageActivity {
+
+    private final String pushApplicationId;
+    private final String applicationName;
+    private final Date submitDate;
+
+    public MessageActivity(String pushApplicationId, String applicationName, Date submitDate) {
+        this.pushApplicationId = pushApplicationId;
+        this.applicationName = applicationName;
+        this.submitDate = submitDate;
+    }
+
+    public String getPushApplicationId() {
+        return pushApplicationId;
+    }
+
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    public Date getSubmitDate() {
+        return submitDate;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageActivity [pushApplicationId=" + pushApplicationId + ", applicationName=" + applicationName
+                + ", submitDate=" + submitDate + "]";
+    }
+}
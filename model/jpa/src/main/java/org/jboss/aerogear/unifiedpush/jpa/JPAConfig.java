@@ -1,7 +1,9 @@
 package org.jboss.aerogear.unifiedpush.jpa;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 
 import javax.persistence.EntityManagerFactory;
@@ -40,11 +42,19 @@ import com.zaxxer.hikari.HikariDataSource;
 @PropertySource(name = "hibernate", value = { "classpath:META-INF/hibernate.properties",
 		"file://${aerobase.config.dir}/hibernate.properties" }, ignoreResourceNotFound = true)
 public class JPAConfig {
+	// db.properties keys of the read replicas, not passed to the primary pool
+	static final String REPLICA_PREFIX = "replica.";
+	// comma separated JDBC URLs of the read replicas
+	static final String REPLICA_JDBC_URLS = REPLICA_PREFIX + "jdbcUrls";
+	static final String REPLICA_HEALTH_CHECK_SECONDS = REPLICA_PREFIX + "healthCheckSeconds";
+
 	private static String[] RESOURCES = new String[] { "META-INF/orm.xml",
 			"org/jboss/aerogear/unifiedpush/api/Installation.hbm.xml",
 			"org/jboss/aerogear/unifiedpush/api/Category.hbm.xml",
 			"org/jboss/aerogear/unifiedpush/api/FlatPushMessageInformation.hbm.xml",
-			"org/jboss/aerogear/unifiedpush/api/VariantErrorStatus.hbm.xml" };
+			"org/jboss/aerogear/unifiedpush/api/VariantErrorStatus.hbm.xml",
+			"org/jboss/aerogear/unifiedpush/api/ScheduledPushMessage.hbm.xml",
+			"org/jboss/aerogear/unifiedpush/api/VariantDeliveryCounter.hbm.xml" };
 
 	@Autowired
 	private Environment env;
@@ -75,9 +85,32 @@ public class JPAConfig {
 		return pm;
 	}
 
+	/**
+	 * The pool of the primary database. If read replicas are configured ({@value #REPLICA_JDBC_URLS}), read-only
+	 * transactions are routed to them, see {@link ReadReplicaRoutingDataSource}.
+	 */
 	@Bean(destroyMethod = "close")
 	public DataSource dataSource() {
-		return new HikariDataSource(new HikariConfig(databaseProperties()));
+		final Properties properties = databaseProperties();
+		final HikariDataSource primary = new HikariDataSource(new HikariConfig(primaryProperties(properties)));
+
+		final String replicaUrls = properties.getProperty(REPLICA_JDBC_URLS, "").trim();
+		if (replicaUrls.isEmpty()) {
+			return primary;
+		}
+
+		final List<HikariDataSource> replicas = new ArrayList<>();
+		for (String jdbcUrl : replicaUrls.split("\\s*,\\s*")) {
+			final HikariConfig config = new HikariConfig(replicaProperties(properties));
+			config.setJdbcUrl(jdbcUrl);
+			config.setPoolName("replica-" + (replicas.size() + 1));
+			config.setReadOnly(true);
+			// an unavailable replica must not prevent the startup, the health check picks it up later
+			config.setInitializationFailTimeout(-1);
+			replicas.add(new HikariDataSource(config));
+		}
+		return new ReadReplicaRoutingDataSource(primary, replicas,
+				Long.parseLong(properties.getProperty(REPLICA_HEALTH_CHECK_SECONDS, "10").trim()));
 	}
 
 	@Bean
@@ -105,6 +138,31 @@ public class JPAConfig {
 		return props;
 	}
 
+	/**
+	 * Pool properties of the primary: all but the replica properties.
+	 */
+	static Properties primaryProperties(Properties properties) {
+		final Properties props = new Properties();
+		properties.stringPropertyNames().stream()
+				.filter(name -> !name.startsWith(REPLICA_PREFIX))
+				.forEach(name -> props.setProperty(name, properties.getProperty(name)));
+		return props;
+	}
+
+	/**
+	 * Pool properties of the replicas: the properties of the primary, overridden by the replica properties (e.g.
+	 * <code>replica.username</code>, <code>replica.maximumPoolSize</code>).
+	 */
+	static Properties replicaProperties(Properties properties) {
+		final Properties props = primaryProperties(properties);
+		props.remove("jdbcUrl");
+		properties.stringPropertyNames().stream()
+				.filter(name -> name.startsWith(REPLICA_PREFIX))
+				.filter(name -> !name.equals(REPLICA_JDBC_URLS) && !name.equals(REPLICA_HEALTH_CHECK_SECONDS))
+				.forEach(name -> props.setProperty(name.substring(REPLICA_PREFIX.length()), properties.getProperty(name)));
+		return props;
+	}
+
 	Properties hibernateProperties() {
 		Properties props = new Properties();
 		for (Iterator<?> it = ((AbstractEnvironment) env).getPropertySources().iterator(); it.hasNext();) {
@@ -0,0 +1,152 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.jpa;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Sends the connections of read-only transactions (token loading, searches, exports) to replica pools, so that they
+ * do not compete with the registrations for the primary database.
+ *
+ * Replicas are used round-robin while their health check passes. Without a healthy replica, or if a replica fails to
+ * hand out a connection, read-only transactions use the primary. Since replicas may lag behind, only work that
+ * tolerates slightly stale data should be read-only.
+ *
+ * Connections are fetched lazily, on the first statement, because the read-only flag of the transaction is only known
+ * after the transaction manager has started it.
+ */
+public class ReadReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+	private final Logger logger = LoggerFactory.getLogger(ReadReplicaRoutingDataSource.class);
+
+	private final HikariDataSource primary;
+	private final List<Replica> replicas;
+	private final AtomicInteger next = new AtomicInteger();
+	private final ScheduledExecutorService healthChecker;
+
+	/**
+	 * @param primary pool of the primary database
+	 * @param replicas pools of the replicas
+	 * @param healthCheckSeconds interval of the replica health checks
+	 */
+	public ReadReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+			long healthCheckSeconds) {
+		this.primary = primary;
+		this.replicas = replicas.stream().map(Replica::new).collect(Collectors.toList());
+		setTargetDataSource(new Router());
+		afterPropertiesSet();
+
+		healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "read-replica-health-check");
+			thread.setDaemon(true);
+			return thread;
+		});
+		healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, Math.max(1, healthCheckSeconds), TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Validates a connection of every replica, replicas are used only after they passed.
+	 */
+	void checkHealth() {
+		for (Replica replica : replicas) {
+			boolean healthy;
+			try (Connection connection = replica.dataSource.getConnection()) {
+				healthy = connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+			} catch (SQLException e) {
+				healthy = false;
+			}
+			replica.setHealthy(healthy);
+		}
+	}
+
+	@Override
+	public void close() {
+		healthChecker.shutdownNow();
+		replicas.forEach(replica -> replica.dataSource.close());
+		primary.close();
+	}
+
+	private Connection route() throws SQLException {
+		if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			for (int i = 0; i < replicas.size(); i++) {
+				final Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+				if (replica.healthy) {
+					try {
+						return replica.dataSource.getConnection();
+					} catch (SQLException e) {
+						replica.setHealthy(false);
+					}
+				}
+			}
+		}
+		return primary.getConnection();
+	}
+
+	/**
+	 * Target of the lazy proxy, picks the pool when the connection is actually needed.
+	 */
+	private final class Router extends AbstractDataSource {
+		@Override
+		public Connection getConnection() throws SQLException {
+			return route();
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) throws SQLException {
+			return primary.getConnection(username, password);
+		}
+	}
+
+	private final class Replica {
+		private final HikariDataSource dataSource;
+		private volatile boolean healthy;
+
+		private Replica(HikariDataSource dataSource) {
+			this.dataSource = dataSource;
+		}
+
+		private void setHealthy(boolean healthy) {
+			if (this.healthy != healthy) {
+				if (healthy) {
+					logger.info("Read replica {} is available", dataSource.getPoolName());
+				} else {
+					logger.warn("Read replica {} is unavailable, read-only transactions fall back to the primary",
+							dataSource.getPoolName());
+				}
+			}
+			this.healthy = healthy;
+		}
+	}
+}
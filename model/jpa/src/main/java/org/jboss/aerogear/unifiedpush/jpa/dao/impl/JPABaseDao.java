@@ -16,19 +16,34 @@
  */
 package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.jboss.aerogear.unifiedpush.dao.GenericBaseDao;
 
 public abstract class JPABaseDao<T, K> implements GenericBaseDao<T, K> {
 
+    // number of IDs bound to one bulk statement, stays well below the bind parameter limits of the databases
+    protected static final int BULK_CHUNK_SIZE = 500;
+
+    // JDBC batch size of the bulk writes, unless configured with 'hibernate.jdbc.batch_size'
+    protected static final int DEFAULT_BATCH_SIZE = 100;
+    private static final String BATCH_SIZE_PROPERTY = "hibernate.jdbc.batch_size";
+
     @Inject
     protected EntityManager entityManager;
 
@@ -105,6 +120,115 @@ public abstract class JPABaseDao<T, K> implements GenericBaseDao<T, K> {
         }
     }
 
+    /**
+     * Inserts the given (new) entities with a stateless session, in JDBC batches of {@link #batchSize()} rows.
+     * Override for entities that own collections: a stateless session does not write them.
+     */
+    @Override
+    public void createAll(Collection<T> entities) {
+        writeAll(entities, StatelessSession::insert);
+    }
+
+    /**
+     * Updates the given (detached) entities with a stateless session, in JDBC batches of {@link #batchSize()} rows.
+     * Override for entities that own collections: a stateless session does not write them.
+     */
+    @Override
+    public void updateAll(Collection<T> entities) {
+        writeAll(entities, StatelessSession::update);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int deleteAll(Collection<T> entities) {
+        final PersistenceUnitUtil util = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        return deleteAllById(entities.stream().map(entity -> (K) util.getIdentifier(entity)).collect(Collectors.toList()));
+    }
+
+    /**
+     * Writes the entities through a stateless session that shares the connection (and the transaction) of the
+     * entity manager. Entities are ordered by their class, so that subclasses mapped to other tables do not break
+     * the batches.
+     */
+    private void writeAll(Collection<T> entities, BiConsumer<StatelessSession, T> write) {
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        // pending changes of the persistence context (e.g. referenced entities) go first
+        entityManager.flush();
+        final Session session = entityManager.unwrap(Session.class);
+        session.doWork(connection -> {
+            final StatelessSession stateless = session.getSessionFactory().openStatelessSession(connection);
+            try {
+                stateless.setJdbcBatchSize(batchSize());
+                entities.stream()
+                        .sorted(Comparator.comparing(entity -> entity.getClass().getName()))
+                        .forEach(entity -> write.accept(stateless, entity));
+                // closing the session does not execute the last, partial batch
+                ((SharedSessionContractImplementor) stateless).getJdbcCoordinator().executeBatch();
+            } finally {
+                stateless.close();
+            }
+        });
+    }
+
+    /**
+     * @return the number of rows written with one JDBC batch
+     */
+    protected int batchSize() {
+        final Object configured = entityManager.getEntityManagerFactory().getProperties().get(BATCH_SIZE_PROPERTY);
+        if (configured != null) {
+            try {
+                return Math.max(1, Integer.parseInt(configured.toString().trim()));
+            } catch (NumberFormatException e) {
+                // fall back to the default
+            }
+        }
+        return DEFAULT_BATCH_SIZE;
+    }
+
+    @Override
+    public int deleteAllById(Collection<K> ids) {
+        int deleted = 0;
+        for (List<K> chunk : chunks(ids)) {
+            deleted += deleteChunk(chunk);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes one chunk of {@link #deleteAllById(Collection)}. Override to clear the rows that refer to the entities
+     * (e.g. join tables) first.
+     *
+     * @param ids at most {@link #BULK_CHUNK_SIZE} IDs
+     * @return number of deleted entities
+     */
+    protected int deleteChunk(List<K> ids) {
+        return entityManager.createQuery("delete from " + getType().getSimpleName() + " t where t.id in :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+
+    /**
+     * Splits the given values into lists of at most {@link #BULK_CHUNK_SIZE} values.
+     */
+    protected static <V> List<List<V>> chunks(Collection<V> values) {
+        final List<List<V>> chunks = new ArrayList<>();
+        List<V> chunk = new ArrayList<>(Math.min(values.size(), BULK_CHUNK_SIZE));
+        for (V value : values) {
+            if (chunk.size() == BULK_CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+            }
+            chunk.add(value);
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
     /**
      * Write pending objects to the database and
      * clear session-scoped cache
@@ -18,16 +18,19 @@ package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
 
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.dao.MessageSearch;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
+import org.jboss.aerogear.unifiedpush.dto.MessageActivity;
 import org.jboss.aerogear.unifiedpush.dto.MessageMetrics;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.Query;
+import javax.persistence.TemporalType;
 import javax.persistence.TypedQuery;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class JPAFlatPushMessageInformationDao extends JPABaseDao<FlatPushMessageInformation, String> implements FlatPushMessageInformationDao{
@@ -35,27 +38,19 @@ public class JPAFlatPushMessageInformationDao extends JPABaseDao<FlatPushMessage
     private static final String ASC = "ASC";
     private static final String DESC = "DESC";
 
-    private final Logger logger = LoggerFactory.getLogger(JPAFlatPushMessageInformationDao.class);
-
-
     @Override
     public List<FlatPushMessageInformation> findAllForPushApplication(String pushApplicationId, boolean ascending) {
         return findAllForPushApplicationByParams(pushApplicationId, null, ascending, null, null);
     }
 
     @Override
-    public List<FlatPushMessageInformation> findAllForPushApplicationByParams(String pushApplicationId, String search, boolean ascending, Integer page, Integer pageSize) {
-        String baseQuery = "from FlatPushMessageInformation pmi where pmi.pushApplicationId = :pushApplicationId";
-        if (search != null) {
-            baseQuery += " AND pmi.rawJsonMessage LIKE :search";
-        }
+    public List<FlatPushMessageInformation> findAllForPushApplicationByParams(String pushApplicationId, MessageSearch search, boolean ascending, Integer page, Integer pageSize) {
+        final String baseQuery = "from FlatPushMessageInformation pmi where pmi.pushApplicationId = :pushApplicationId" + searchConditions(search);
         final String queryJPQL = "select pmi " + baseQuery + " ORDER BY pmi.submitDate " + ascendingOrDescending(ascending);
 
         TypedQuery<FlatPushMessageInformation> typedQuery = createQuery(queryJPQL)
                 .setParameter("pushApplicationId", pushApplicationId);
-        if (search != null) {
-            typedQuery.setParameter("search", "%" + search + "%");
-        }
+        setSearchParameters(typedQuery, search);
         if (pageSize != null) {
             typedQuery.setFirstResult(page * pageSize).setMaxResults(pageSize);
         }
@@ -63,6 +58,30 @@ public class JPAFlatPushMessageInformationDao extends JPABaseDao<FlatPushMessage
         return typedQuery.getResultList();
     }
 
+    @Override
+    public List<FlatPushMessageInformation> findAllForPushApplicationAfter(String pushApplicationId, MessageSearch search, boolean ascending, Date lastSubmitDate, String lastId, int maxResults) {
+        String baseQuery = "from FlatPushMessageInformation pmi where pmi.pushApplicationId = :pushApplicationId" + searchConditions(search);
+        if (lastSubmitDate != null) {
+            // submit dates are not unique, the ID breaks ties
+            final String comparison = ascending ? ">" : "<";
+            baseQuery += " AND (pmi.submitDate " + comparison + " :lastSubmitDate"
+                    + " OR (pmi.submitDate = :lastSubmitDate AND pmi.id " + comparison + " :lastId))";
+        }
+        final String order = ascendingOrDescending(ascending);
+        final String queryJPQL = "select pmi " + baseQuery + " ORDER BY pmi.submitDate " + order + ", pmi.id " + order;
+
+        TypedQuery<FlatPushMessageInformation> typedQuery = createQuery(queryJPQL)
+                .setParameter("pushApplicationId", pushApplicationId)
+                .setMaxResults(maxResults);
+        setSearchParameters(typedQuery, search);
+        if (lastSubmitDate != null) {
+            typedQuery.setParameter("lastSubmitDate", lastSubmitDate, TemporalType.TIMESTAMP)
+                    .setParameter("lastId", lastId);
+        }
+
+        return typedQuery.getResultList();
+    }
+
     @Override
     public long getNumberOfPushMessagesForPushApplication(String pushApplicationId) {
         return createQuery("select count(*) from FlatPushMessageInformation pmi where pmi.pushApplicationId = :pushApplicationId", Long.class)
@@ -70,22 +89,17 @@ public class JPAFlatPushMessageInformationDao extends JPABaseDao<FlatPushMessage
     }
 
     @Override
-    public MessageMetrics findMessageMetricsForPushApplicationByParams(String pushApplicationId, String search, boolean ascending, Integer page, Integer pageSize) {
-        String metricsJPQL = "select new org.jboss.aerogear.unifiedpush.dto.MessageMetrics(count(*), sum(appOpenCounter)) from FlatPushMessageInformation pmi where pmi.pushApplicationId = :pushApplicationId";
-        if (search != null) {
-            metricsJPQL += " AND pmi.rawJsonMessage LIKE :search";
-        }
+    public MessageMetrics findMessageMetricsForPushApplicationByParams(String pushApplicationId, MessageSearch search, boolean ascending, Integer page, Integer pageSize) {
+        final String metricsJPQL = "select new org.jboss.aerogear.unifiedpush.dto.MessageMetrics(count(*), sum(appOpenCounter)) from FlatPushMessageInformation pmi where pmi.pushApplicationId = :pushApplicationId" + searchConditions(search);
 
         final Query metricsQuery = createUntypedQuery(metricsJPQL).setParameter("pushApplicationId", pushApplicationId);
-        if (search != null) {
-            metricsQuery.setParameter("search", "%" + search + "%");
-        }
+        setSearchParameters(metricsQuery, search);
 
         return (MessageMetrics) metricsQuery.getSingleResult();
     }
 
     @Override
-    public PageResult<FlatPushMessageInformation, MessageMetrics> findAllForPushApplication(String pushApplicationId, String search, boolean ascending, Integer page, Integer pageSize) {
+    public PageResult<FlatPushMessageInformation, MessageMetrics> findAllForPushApplication(String pushApplicationId, MessageSearch search, boolean ascending, Integer page, Integer pageSize) {
 
         final List<FlatPushMessageInformation> pushMessageInformationList = findAllForPushApplicationByParams(pushApplicationId, search, ascending, page, pageSize);
         final MessageMetrics messageMetrics = findMessageMetricsForPushApplicationByParams(pushApplicationId, search, ascending, page, pageSize);
@@ -120,17 +134,64 @@ public class JPAFlatPushMessageInformationDao extends JPABaseDao<FlatPushMessage
     }
 
     @Override
-    public void deletePushInformationOlderThan(Date oldest) {
-        // TODO: use criteria API...
-        entityManager.createQuery("delete from VariantErrorStatus vmi where vmi.pushMessageInformation.id in (select pmi FROM FlatPushMessageInformation pmi WHERE pmi.submitDate < :oldest)")
+    public List<MessageActivity> findLatestApplicationActivity(String loginName, int maxResults) {
+        final String developerFilter = loginName == null ? "" : " AND pa.developer = :developer";
+        final TypedQuery<MessageActivity> query = createQuery("select new org.jboss.aerogear.unifiedpush.dto.MessageActivity(pa.pushApplicationID, pa.name, pmi.submitDate)" +
+                " from FlatPushMessageInformation pmi, PushApplication pa" +
+                " WHERE pmi.pushApplicationId = pa.pushApplicationID" + developerFilter +
+                " ORDER BY pmi.submitDate " + DESC, MessageActivity.class)
+                .setMaxResults(maxResults);
+        if (loginName != null) {
+            query.setParameter("developer", loginName);
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    public Map<String, Long> countPushMessagesPerApplication() {
+        final Map<String, Long> counts = new HashMap<>();
+        createQuery("select pmi.pushApplicationId, count(pmi) from FlatPushMessageInformation pmi group by pmi.pushApplicationId", Object[].class)
+                .getResultList()
+                .forEach(row -> counts.put((String) row[0], (Long) row[1]));
+        return counts;
+    }
+
+    @Override
+    public int deletePushInformationOlderThan(Date oldest, int maxResults) {
+        // served by the submit_date index, the rows of the previous chunks are gone
+        final List<String> ids = createQuery("select pmi.id FROM FlatPushMessageInformation pmi WHERE pmi.submitDate < :oldest ORDER BY pmi.submitDate", String.class)
                 .setParameter("oldest", oldest)
+                .setMaxResults(maxResults)
+                .getResultList();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        entityManager.createQuery("delete from VariantErrorStatus vmi where vmi.pushJobId in :ids")
+                .setParameter("ids", ids)
                 .executeUpdate();
 
-        int affectedRows = entityManager.createQuery("delete FROM FlatPushMessageInformation pmi WHERE pmi.submitDate < :oldest")
-                .setParameter("oldest", oldest)
+        entityManager.createQuery("delete from VariantDeliveryCounter vdc where vdc.pushJobId in :ids")
+                .setParameter("ids", ids)
                 .executeUpdate();
 
-        logger.info("Deleting ['" + affectedRows + "'] outdated FlatPushMessageInformation objects");
+        return entityManager.createQuery("delete FROM FlatPushMessageInformation pmi WHERE pmi.id in :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+
+    @Override
+    public boolean addAppOpens(String id, long opens, Date firstOpenDate, Date lastOpenDate) {
+        return entityManager.createQuery("update FlatPushMessageInformation pmi set"
+                + " pmi.appOpenCounter = coalesce(pmi.appOpenCounter, 0) + :opens,"
+                + " pmi.firstOpenDate = case when pmi.firstOpenDate is null or pmi.firstOpenDate > :firstOpenDate then :firstOpenDate else pmi.firstOpenDate end,"
+                + " pmi.lastOpenDate = case when pmi.lastOpenDate is null or pmi.lastOpenDate < :lastOpenDate then :lastOpenDate else pmi.lastOpenDate end"
+                + " where pmi.id = :id")
+                .setParameter("opens", opens)
+                .setParameter("firstOpenDate", firstOpenDate, TemporalType.TIMESTAMP)
+                .setParameter("lastOpenDate", lastOpenDate, TemporalType.TIMESTAMP)
+                .setParameter("id", id)
+                .executeUpdate() > 0;
     }
 
     //Admin queries
@@ -153,6 +214,44 @@ public class JPAFlatPushMessageInformationDao extends JPABaseDao<FlatPushMessage
         return createQuery("select count(pmi) from FlatPushMessageInformation pmi", Long.class).getSingleResult();
     }
 
+    /**
+     * Helper that returns the conditions of the given search: every word has to be part of the (tokenized) search
+     * text, and the submit date has to be within the range. The submit date range limits the rows the search text is
+     * matched against.
+     */
+    private static String searchConditions(MessageSearch search) {
+        if (search == null) {
+            return "";
+        }
+        final StringBuilder conditions = new StringBuilder();
+        if (search.getSince() != null) {
+            conditions.append(" AND pmi.submitDate >= :since");
+        }
+        if (search.getUntil() != null) {
+            conditions.append(" AND pmi.submitDate < :until");
+        }
+        for (int i = 0; i < search.getWords().size(); i++) {
+            // the words only contain letters and digits, nothing to escape
+            conditions.append(" AND pmi.searchText LIKE :word").append(i);
+        }
+        return conditions.toString();
+    }
+
+    private static void setSearchParameters(Query query, MessageSearch search) {
+        if (search == null) {
+            return;
+        }
+        if (search.getSince() != null) {
+            query.setParameter("since", search.getSince(), TemporalType.TIMESTAMP);
+        }
+        if (search.getUntil() != null) {
+            query.setParameter("until", search.getUntil(), TemporalType.TIMESTAMP);
+        }
+        for (int i = 0; i < search.getWords().size(); i++) {
+            query.setParameter("word" + i, "%" + search.getWords().get(i) + "%");
+        }
+    }
+
     /**
      * Helper that returns 'ASC' when true and 'DESC' when false.
      */
@@ -16,25 +16,36 @@
  */
 package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.persistence.TypedQuery;
 
 import org.hibernate.Query;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dao.ResultStreamException;
 import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
+import org.jboss.aerogear.unifiedpush.dao.SearchMode;
 import org.jboss.aerogear.unifiedpush.dao.helper.InstallationAlias;
 import org.jboss.aerogear.unifiedpush.dto.Count;
 import org.springframework.stereotype.Repository;
@@ -52,6 +63,46 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
                     + " left join installation.categories c "
                     + " join installation.variant abstractVariant where abstractVariant.variantID = :variantID AND installation.enabled = true AND locate(':', installation.deviceToken) = 0";
 
+    private static final String FIND_ALL_DEVICES_FOR_VARIANT_BY_ALIASES_QUERY = "select LOWER(installation.alias), installation.deviceToken"
+                    + " from Installation installation"
+                    + " join installation.variant abstractVariant where abstractVariant.variantID = :variantID AND installation.enabled = true"
+                    + " AND LOWER(installation.alias) IN :aliases";
+
+    private static final String FIND_DEVICE_TOKENS_FOR_VARIANT_BY_ALIASES_QUERY = "select distinct installation.deviceToken"
+                    + " from Installation installation"
+                    + " join installation.variant abstractVariant where abstractVariant.variantID = :variantID AND installation.enabled = true"
+                    + " AND LOWER(installation.alias) IN :aliases";
+
+    private static final String INSTALLATION_COLUMNS = "id, alias, device_token, device_type, enabled, operating_system, os_version, platform, variant_id, token_hash";
+    private static final String INSTALLATION_VALUES = " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPSERT_POSTGRESQL = "insert into installation (" + INSTALLATION_COLUMNS + ")" + INSTALLATION_VALUES
+                    + " on conflict (id) do update set alias = excluded.alias, device_token = excluded.device_token,"
+                    + " device_type = excluded.device_type, enabled = excluded.enabled, operating_system = excluded.operating_system,"
+                    + " os_version = excluded.os_version, platform = excluded.platform, variant_id = excluded.variant_id,"
+                    + " token_hash = excluded.token_hash";
+
+    private static final String UPSERT_MYSQL = "insert into installation (" + INSTALLATION_COLUMNS + ")" + INSTALLATION_VALUES
+                    + " on duplicate key update alias = values(alias), device_token = values(device_token),"
+                    + " device_type = values(device_type), enabled = values(enabled), operating_system = values(operating_system),"
+                    + " os_version = values(os_version), platform = values(platform), variant_id = values(variant_id),"
+                    + " token_hash = values(token_hash)";
+
+    private static final String UPSERT_H2 = "merge into installation (" + INSTALLATION_COLUMNS + ") key (id)" + INSTALLATION_VALUES;
+
+    private static final String INSERT_INSTALLATION = "insert into installation (" + INSTALLATION_COLUMNS + ")" + INSTALLATION_VALUES;
+
+    private static final String UPDATE_INSTALLATION = "update installation set id = ?, alias = ?, device_token = ?, device_type = ?,"
+                    + " enabled = ?, operating_system = ?, os_version = ?, platform = ?, variant_id = ?, token_hash = ? where id = ?";
+
+    private static final String DELETE_CATEGORY_LINKS = "delete from installation_category where installation_id = ?";
+
+    private static final String INSERT_CATEGORY_LINK = "insert into installation_category (installation_id, category_id) values (?, ?)";
+
+    private static final String BULK_DELETE_CATEGORY_LINKS = "delete from installation_category where installation_id in (:ids)";
+
+    private static final String BULK_DELETE_INSTALLATIONS = "delete from installation where id in (:ids)";
+
     private static final String FIND_INSTALLATIONS = "FROM Installation installation"
                     + " JOIN installation.variant v"
                     + " WHERE v.variantID = :variantID";
@@ -59,26 +110,15 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
     @Override
     public PageResult<Installation, Count> findInstallationsByVariantForDeveloper(
             String variantID, String developer, Integer page, Integer pageSize, String search) {
+        return findInstallationsByVariantForDeveloper(variantID, developer, page, pageSize, search, SearchMode.SUBSTRING);
+    }
 
+    @Override
+    public PageResult<Installation, Count> findInstallationsByVariantForDeveloper(
+            String variantID, String developer, Integer page, Integer pageSize, String search, SearchMode mode) {
 
-        final StringBuilder jpqlBase = new StringBuilder(FIND_INSTALLATIONS);
         final Map<String, Object> parameters = new LinkedHashMap<>();
-        parameters.put("variantID", variantID);
-        if (developer != null) {
-            jpqlBase.append(" AND v.developer = :developer");
-            parameters.put("developer", developer);
-        }
-        if (search != null) {
-            jpqlBase.append(" AND ( installation.deviceToken LIKE :search"
-                    + " OR installation.deviceType LIKE :search"
-                    + " OR installation.platform LIKE :search"
-                    + " OR installation.operatingSystem LIKE :search"
-                    + " OR installation.osVersion LIKE :search"
-                    + " OR installation.alias LIKE :search )");
-            parameters.put("search", "%" + search + "%");
-        }
-
-        String jpqlStr = jpqlBase.toString();
+        final String jpqlStr = findInstallationsQuery(variantID, developer, search, mode, parameters).toString();
         TypedQuery<Long> countQuery = createQuery("SELECT COUNT(installation) " + jpqlStr, Long.class);
         TypedQuery<Installation> query = createQuery("SELECT installation " + jpqlStr + " ORDER BY installation.id")
                 .setFirstResult(page * pageSize)
@@ -90,6 +130,59 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
         return new PageResult<>(resultList, new Count(count));
     }
 
+    @Override
+    public List<Installation> findInstallationsByVariantAfter(String variantID, String developer, String search, SearchMode mode, String lastInstallationID, int maxResults) {
+        final Map<String, Object> parameters = new LinkedHashMap<>();
+        final StringBuilder jpqlBase = findInstallationsQuery(variantID, developer, search, mode, parameters);
+        if (lastInstallationID != null) {
+            jpqlBase.append(" AND installation.id > :lastInstallationID");
+            parameters.put("lastInstallationID", lastInstallationID);
+        }
+
+        // page the IDs first, fetching the categories in the same query would make Hibernate page in memory
+        final List<String> ids = setParameters(createQuery("SELECT installation.id " + jpqlBase + " ORDER BY installation.id", String.class), parameters)
+                .setMaxResults(maxResults)
+                .getResultList();
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return createQuery("SELECT DISTINCT installation FROM Installation installation"
+                + " LEFT JOIN FETCH installation.categories"
+                + " WHERE installation.id IN :ids"
+                + " ORDER BY installation.id")
+                .setParameter("ids", ids)
+                .getResultList();
+    }
+
+    @Override
+    public long countInstallationsByVariant(String variantID, String developer, String search, SearchMode mode) {
+        final Map<String, Object> parameters = new LinkedHashMap<>();
+        final String jpqlStr = findInstallationsQuery(variantID, developer, search, mode, parameters).toString();
+
+        return setParameters(createQuery("SELECT COUNT(installation) " + jpqlStr, Long.class), parameters).getSingleResult();
+    }
+
+    private StringBuilder findInstallationsQuery(String variantID, String developer, String search, SearchMode mode, Map<String, Object> parameters) {
+        final StringBuilder jpqlBase = new StringBuilder(FIND_INSTALLATIONS);
+        parameters.put("variantID", variantID);
+        if (developer != null) {
+            jpqlBase.append(" AND v.developer = :developer");
+            parameters.put("developer", developer);
+        }
+        if (search != null) {
+            // exact matches use LIKE as well, so all modes are served by the per-column trigram indexes on PostgreSQL
+            jpqlBase.append(" AND ( installation.deviceToken LIKE :search ESCAPE '!'"
+                    + " OR installation.deviceType LIKE :search ESCAPE '!'"
+                    + " OR installation.platform LIKE :search ESCAPE '!'"
+                    + " OR installation.operatingSystem LIKE :search ESCAPE '!'"
+                    + " OR installation.osVersion LIKE :search ESCAPE '!'"
+                    + " OR installation.alias LIKE :search ESCAPE '!' )");
+            parameters.put("search", mode.toLikePattern(search));
+        }
+        return jpqlBase;
+    }
+
     private <X> TypedQuery<X> setParameters(TypedQuery<X> query, Map<String, Object> parameters) {
         parameters.forEach(query::setParameter);
         return query;
@@ -106,6 +199,7 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
 
         return getSingleResultForQuery(createQuery(getFindVariantByDeviceTokenQuery().toString())
                 .setParameter("variantID", variantID)
+                .setParameter("tokenHash", Installation.hashDeviceToken(deviceToken))
                 .setParameter("deviceToken", deviceToken));
     }
 
@@ -120,12 +214,185 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
         return createQuery("select installation from Installation installation " +
                 " join installation.variant abstractVariant " +
                 " where abstractVariant.variantID = :variantID" +
+                " and installation.tokenHash IN :tokenHashes" +
                 " and installation.deviceToken IN :deviceTokens")
                 .setParameter("variantID", variantID)
+                .setParameter("tokenHashes", deviceTokens.stream().map(Installation::hashDeviceToken).collect(Collectors.toSet()))
                 .setParameter("deviceTokens", deviceTokens)
                 .getResultList();
     }
 
+    @Override
+    public void upsertAll(Collection<Installation> installations) {
+        writeAll(installations, true, connection -> {
+            final String upsert = upsertStatementFor(connection);
+            if (upsert != null) {
+                try (PreparedStatement statement = connection.prepareStatement(upsert)) {
+                    executeBatches(statement, installations, batchSize(), JPAInstallationDao::bindInstallation);
+                }
+            } else {
+                updateOrInsert(connection, installations, batchSize());
+            }
+        });
+    }
+
+    /**
+     * Inserts the installations and their category links with native JDBC batches: a stateless session would not
+     * write the links of the categories collection.
+     */
+    @Override
+    public void createAll(Collection<Installation> installations) {
+        writeAll(installations, false, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_INSTALLATION)) {
+                executeBatches(statement, installations, batchSize(), JPAInstallationDao::bindInstallation);
+            }
+        });
+    }
+
+    /**
+     * Updates the installations and replaces their category links with native JDBC batches, see
+     * {@link #createAll(Collection)}.
+     */
+    @Override
+    public void updateAll(Collection<Installation> installations) {
+        writeAll(installations, true, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_INSTALLATION)) {
+                executeBatches(statement, installations, batchSize(), JPAInstallationDao::bindInstallationUpdate);
+            }
+        });
+    }
+
+    /**
+     * Runs the given statements for the installation rows, followed by the batches that (re-)link the categories.
+     *
+     * @param replaceLinks whether existing category links of the installations have to be deleted first
+     */
+    private void writeAll(Collection<Installation> installations, boolean replaceLinks, Work rows) {
+        if (installations.isEmpty()) {
+            return;
+        }
+
+        // categories created in this transaction have to be visible to the statements below
+        entityManager.flush();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            rows.execute(connection);
+
+            if (replaceLinks) {
+                try (PreparedStatement statement = connection.prepareStatement(DELETE_CATEGORY_LINKS)) {
+                    executeBatches(statement, installations, batchSize(),
+                            (linkStatement, installation) -> linkStatement.setString(1, installation.getId()));
+                }
+            }
+
+            final List<Map.Entry<String, Long>> links = new ArrayList<>();
+            for (Installation installation : installations) {
+                if (installation.getCategories() != null) {
+                    installation.getCategories().forEach(category ->
+                            links.add(new AbstractMap.SimpleImmutableEntry<>(installation.getId(), category.getId())));
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_CATEGORY_LINK)) {
+                executeBatches(statement, links, batchSize(), (linkStatement, link) -> {
+                    linkStatement.setString(1, link.getKey());
+                    linkStatement.setLong(2, link.getValue());
+                });
+            }
+        });
+    }
+
+    /**
+     * Native upsert for the connected database, or null if there is none we know of.
+     */
+    private static String upsertStatementFor(Connection connection) throws SQLException {
+        final String product = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+        if (product.contains("postgresql")) {
+            return UPSERT_POSTGRESQL;
+        }
+        if (product.contains("mysql") || product.contains("mariadb")) {
+            return UPSERT_MYSQL;
+        }
+        if (product.contains("h2")) {
+            return UPSERT_H2;
+        }
+        return null;
+    }
+
+    /**
+     * Portable fallback: batched updates, followed by batched inserts of the rows that did not exist.
+     */
+    private static void updateOrInsert(Connection connection, Collection<Installation> installations, int batchSize) throws SQLException {
+        final int[] updated;
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_INSTALLATION)) {
+            updated = executeBatches(statement, installations, batchSize, JPAInstallationDao::bindInstallationUpdate);
+        }
+
+        final List<Installation> missing = new ArrayList<>();
+        int i = 0;
+        for (Installation installation : installations) {
+            if (updated[i++] == 0) {
+                missing.add(installation);
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_INSTALLATION)) {
+            executeBatches(statement, missing, batchSize, JPAInstallationDao::bindInstallation);
+        }
+    }
+
+    /**
+     * Binds every row to the statement and executes the batch each time it holds <code>batchSize</code> rows.
+     *
+     * @return the update counts of all rows, in order
+     */
+    private static <R> int[] executeBatches(PreparedStatement statement, Collection<R> rows, int batchSize, Binder<R> binder) throws SQLException {
+        final int[] counts = new int[rows.size()];
+        int executed = 0;
+        int batched = 0;
+        for (R row : rows) {
+            binder.bind(statement, row);
+            statement.addBatch();
+            if (++batched == batchSize) {
+                executed = copyCounts(statement.executeBatch(), counts, executed);
+                batched = 0;
+            }
+        }
+        if (batched > 0) {
+            copyCounts(statement.executeBatch(), counts, executed);
+        }
+        return counts;
+    }
+
+    private static int copyCounts(int[] batchCounts, int[] counts, int offset) {
+        System.arraycopy(batchCounts, 0, counts, offset, batchCounts.length);
+        return offset + batchCounts.length;
+    }
+
+    @FunctionalInterface
+    private interface Binder<R> {
+        void bind(PreparedStatement statement, R row) throws SQLException;
+    }
+
+    private static void bindInstallationUpdate(PreparedStatement statement, Installation installation) throws SQLException {
+        bindInstallation(statement, installation);
+        statement.setString(11, installation.getId());
+    }
+
+    private static void bindInstallation(PreparedStatement statement, Installation installation) throws SQLException {
+        statement.setString(1, installation.getId());
+        statement.setString(2, installation.getAlias());
+        statement.setString(3, installation.getDeviceToken());
+        statement.setString(4, installation.getDeviceType());
+        statement.setBoolean(5, installation.isEnabled());
+        statement.setString(6, installation.getOperatingSystem());
+        statement.setString(7, installation.getOsVersion());
+        statement.setString(8, installation.getPlatform());
+        statement.setString(9, installation.getVariant().getId());
+        if (installation.getTokenHash() == null) {
+            statement.setNull(10, Types.BIGINT);
+        } else {
+            statement.setLong(10, installation.getTokenHash());
+        }
+    }
+
     @Override
     public Set<String> findAllDeviceTokenForVariantID(String variantID) {
         TypedQuery<String> query = createQuery(FIND_ALL_DEVICES_FOR_VARIANT_QUERY, String.class);
@@ -133,6 +400,51 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
         return new HashSet<String>(query.getResultList());
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<String, Set<String>> findDeviceTokensForVariantIDByAliases(String variantID, Collection<String> lowerCaseAliases) {
+        if (lowerCaseAliases == null || lowerCaseAliases.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final List<Object[]> rows = createUntypedQuery(FIND_ALL_DEVICES_FOR_VARIANT_BY_ALIASES_QUERY)
+                .setParameter("variantID", variantID)
+                .setParameter("aliases", lowerCaseAliases)
+                .getResultList();
+
+        final Map<String, Set<String>> tokensByAlias = new HashMap<>();
+        for (Object[] row : rows) {
+            tokensByAlias.computeIfAbsent((String) row[0], alias -> new HashSet<>()).add((String) row[1]);
+        }
+        return tokensByAlias;
+    }
+
+    @Override
+    public List<String> findDeviceTokensForVariantIDByAliases(String variantID, Collection<String> lowerCaseAliases,
+            String lastTokenFromPreviousBatch, int maxResults, boolean oldGCM) {
+        if (lowerCaseAliases == null || lowerCaseAliases.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final StringBuilder jpqlString = new StringBuilder(FIND_DEVICE_TOKENS_FOR_VARIANT_BY_ALIASES_QUERY);
+        if (oldGCM) {
+            jpqlString.append(" AND locate(':', installation.deviceToken) = 0");
+        }
+        if (lastTokenFromPreviousBatch != null) {
+            jpqlString.append(" AND installation.deviceToken > :lastTokenFromPreviousBatch");
+        }
+        jpqlString.append(" ORDER BY installation.deviceToken ASC");
+
+        final TypedQuery<String> query = createQuery(jpqlString.toString(), String.class)
+                .setParameter("variantID", variantID)
+                .setParameter("aliases", lowerCaseAliases)
+                .setMaxResults(maxResults);
+        if (lastTokenFromPreviousBatch != null) {
+            query.setParameter("lastTokenFromPreviousBatch", lastTokenFromPreviousBatch);
+        }
+        return query.getResultList();
+    }
+
     @Override
     public ResultsStream.QueryBuilder<String> findAllDeviceTokenForVariantIDByCriteria(String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes, final int maxResults, String lastTokenFromPreviousBatch, boolean oldGCM) {
         // the required part: Join + all tokens for variantID;
@@ -217,6 +529,15 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
                 .getSingleResult();
     }
 
+    @Override
+    public Map<String, Long> countInstallationsPerVariant() {
+        final Map<String, Long> counts = new HashMap<>();
+        createQuery("select abstractVariant.variantID, count(installation) from Installation installation join installation.variant abstractVariant group by abstractVariant.variantID", Object[].class)
+                .getResultList()
+                .forEach(row -> counts.put((String) row[0], (Long) row[1]));
+        return counts;
+    }
+
     /**
      * Return list of installations by aliases list.
      * Match is case insensitive and expect aliases list to be lowercase letters.
@@ -233,6 +554,45 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
     	return toInstallationAlias(typedQuery.getResultList());
     }
 
+    @Override
+    public List<InstallationAlias> deleteInstallationsForVariantByDeviceTokens(String variantID, Collection<String> deviceTokens) {
+        if (deviceTokens == null || deviceTokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<InstallationAlias> deleted = new ArrayList<>();
+        for (List<String> chunk : chunks(deviceTokens)) {
+            final List<InstallationAlias> installations = toInstallationAlias(createQuery("select installation.id, installation.alias"
+                    + " from Installation installation"
+                    + " join installation.variant abstractVariant"
+                    + " where abstractVariant.variantID = :variantID"
+                    + " and installation.tokenHash IN :tokenHashes"
+                    + " and installation.deviceToken IN :deviceTokens", Object[].class)
+                    .setParameter("variantID", variantID)
+                    .setParameter("tokenHashes", chunk.stream().map(Installation::hashDeviceToken).collect(Collectors.toSet()))
+                    .setParameter("deviceTokens", chunk)
+                    .getResultList());
+            if (!installations.isEmpty()) {
+                deleteChunk(installations.stream().map(InstallationAlias::getId).collect(Collectors.toList()));
+                deleted.addAll(installations);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * The category links are removed with one statement per chunk, instead of one per installation.
+     */
+    @Override
+    protected int deleteChunk(List<String> ids) {
+        entityManager.createNativeQuery(BULK_DELETE_CATEGORY_LINKS)
+                .setParameter("ids", ids)
+                .executeUpdate();
+        return entityManager.createNativeQuery(BULK_DELETE_INSTALLATIONS)
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+
     private List<InstallationAlias> toInstallationAlias(List<Object[]> results){
     	List<InstallationAlias> installations = new ArrayList<>();
     	if (results != null && results.size() > 0){
@@ -289,24 +649,22 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
     	return new StringBuilder("select installation from Installation installation " +
                 " join installation.variant abstractVariant" +
                 " where abstractVariant.variantID = :variantID" +
+                " and installation.tokenHash = :tokenHash" +
                 " and installation.deviceToken = :deviceToken");
     }
 
     /**
-     * Transform alias list to lowercase aliases
+     * Transform alias list to distinct lowercase aliases
      */
     private static List<String> getAliases(List<String> aliases){
     	if (!isListNotEmpty(aliases)){
     		return aliases;
     	}
 
-    	List<String> lowerAliases = new ArrayList<>();
-
-    	for (String alias: aliases){
-    		lowerAliases.add(alias.toLowerCase());
-    	}
-
-    	return lowerAliases;
+    	return aliases.stream()
+    			.map(alias -> alias.toLowerCase(Locale.ROOT))
+    			.distinct()
+    			.collect(Collectors.toList());
     }
 
 	@Override
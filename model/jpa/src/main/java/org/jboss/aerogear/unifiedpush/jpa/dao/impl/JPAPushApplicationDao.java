@@ -16,6 +16,7 @@
  */
 package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -63,6 +64,33 @@ public class JPAPushApplicationDao extends JPABaseDao<PushApplication, String> i
     }
 
 
+    @Override
+    public List<PushApplication> findAllForDeveloperAfter(String loginName, String lastID, int maxResults) {
+        final List<String> conditions = new ArrayList<>();
+        if (loginName != null) {
+            conditions.add("pa.developer = :developer");
+        }
+        if (lastID != null) {
+            conditions.add("pa.id > :lastID");
+        }
+
+        final String where = conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+        final TypedQuery<PushApplication> query = createQuery("select pa from PushApplication pa" + where + " order by pa.id")
+                .setMaxResults(maxResults);
+        if (loginName != null) {
+            query.setParameter("developer", loginName);
+        }
+        if (lastID != null) {
+            query.setParameter("lastID", lastID);
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    public List<PushApplication> findAllWithVariants() {
+        return createQuery("select distinct pa from PushApplication pa left join fetch pa.variants").getResultList();
+    }
+
     @Override
     public List<String> findAllPushApplicationIDsForDeveloper (String loginName) {
         return createQuery("select pa.pushApplicationID from PushApplication pa where pa.developer = :developer", String.class)
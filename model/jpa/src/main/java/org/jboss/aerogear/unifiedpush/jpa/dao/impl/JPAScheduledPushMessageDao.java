@@ -0,0 +1,68 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.TemporalType;
+
+import org.jboss.aerogear.unifiedpush.api.ScheduledPushMessage;
+import org.jboss.aerogear.unifiedpush.dao.ScheduledPushMessageDao;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class JPAScheduledPushMessageDao extends JPABaseDao<ScheduledPushMessage, String> implements ScheduledPushMessageDao {
+
+    @Override
+    public List<ScheduledPushMessage> findAllPending() {
+        return createQuery("select spm from ScheduledPushMessage spm ORDER BY spm.sendAt ASC")
+                .getResultList();
+    }
+
+    @Override
+    public List<ScheduledPushMessage> findDue(Date dueBefore, Date now, int maxResults) {
+        return createQuery("select spm from ScheduledPushMessage spm where spm.sendAt < :dueBefore"
+                + " and (spm.claimedUntil is null or spm.claimedUntil < :now) ORDER BY spm.sendAt ASC")
+                .setParameter("dueBefore", dueBefore, TemporalType.TIMESTAMP)
+                .setParameter("now", now, TemporalType.TIMESTAMP)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    @Override
+    public boolean lease(String id, Date now, Date leaseUntil) {
+        return createUntypedQuery("update ScheduledPushMessage spm set spm.claimedUntil = :leaseUntil"
+                + " where spm.id = :id and (spm.claimedUntil is null or spm.claimedUntil < :now)")
+                .setParameter("leaseUntil", leaseUntil, TemporalType.TIMESTAMP)
+                .setParameter("id", id)
+                .setParameter("now", now, TemporalType.TIMESTAMP)
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+        return createUntypedQuery("delete from ScheduledPushMessage spm where spm.id = :id")
+                .setParameter("id", id)
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    public Class<ScheduledPushMessage> getType() {
+        return ScheduledPushMessage.class;
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import org.jboss.aerogear.unifiedpush.api.VariantDeliveryCounter;
+import org.jboss.aerogear.unifiedpush.dao.VariantDeliveryCounterDao;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class JPAVariantDeliveryCounterDao extends JPABaseDao<VariantDeliveryCounter, String> implements VariantDeliveryCounterDao {
+
+    @Override
+    public List<VariantDeliveryCounter> findByPushJobId(String pushJobId) {
+        return createQuery("select vdc from VariantDeliveryCounter vdc where vdc.pushJobId = :pushJobId ORDER BY vdc.variantID")
+                .setParameter("pushJobId", pushJobId)
+                .getResultList();
+    }
+
+    @Override
+    public boolean addToCounter(VariantDeliveryCounter delta) {
+        return entityManager.createQuery("update VariantDeliveryCounter vdc set"
+                + " vdc.tokensLoaded = vdc.tokensLoaded + :loaded,"
+                + " vdc.tokensSent = vdc.tokensSent + :sent,"
+                + " vdc.tokensAccepted = vdc.tokensAccepted + :accepted,"
+                + " vdc.tokensRejected = vdc.tokensRejected + :rejected,"
+                + " vdc.lastUpdated = :lastUpdated"
+                + " where vdc.pushMessageVariantId = :id")
+                .setParameter("loaded", delta.getTokensLoaded())
+                .setParameter("sent", delta.getTokensSent())
+                .setParameter("accepted", delta.getTokensAccepted())
+                .setParameter("rejected", delta.getTokensRejected())
+                .setParameter("lastUpdated", new Date())
+                .setParameter("id", delta.getPushMessageVariantId())
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    public Class<VariantDeliveryCounter> getType() {
+        return VariantDeliveryCounter.class;
+    }
+}
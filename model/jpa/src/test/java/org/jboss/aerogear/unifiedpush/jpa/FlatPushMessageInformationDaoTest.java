@@ -17,7 +17,10 @@
 package org.jboss.aerogear.unifiedpush.jpa;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -28,8 +31,10 @@ import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.api.VariantErrorStatus;
 import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.dao.MessageSearch;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dao.VariantDao;
+import org.jboss.aerogear.unifiedpush.dto.MessageActivity;
 import org.jboss.aerogear.unifiedpush.dto.MessageMetrics;
 import org.jboss.aerogear.unifiedpush.utils.DateUtils;
 import org.jboss.aerogear.unifiedpush.utils.TestUtils;
@@ -116,6 +121,21 @@ public class FlatPushMessageInformationDaoTest {
         assertThat(messageInformations.getResultList()).hasSize(2);
     }
 
+    @Test
+    public void findByPushApplicationIDAfter() {
+        final List<FlatPushMessageInformation> firstPage = pushMessageInformationDao.findAllForPushApplicationAfter("231231231", null, false, null, null, 1);
+        assertThat(firstPage).hasSize(1);
+
+        final FlatPushMessageInformation last = firstPage.get(0);
+        final List<FlatPushMessageInformation> secondPage = pushMessageInformationDao.findAllForPushApplicationAfter("231231231", null, false, last.getSubmitDate(), last.getId(), 1);
+        assertThat(secondPage).hasSize(1);
+        assertThat(secondPage.get(0).getId()).isNotEqualTo(last.getId());
+        assertThat(secondPage.get(0).getSubmitDate().after(last.getSubmitDate())).isFalse();
+
+        final FlatPushMessageInformation secondLast = secondPage.get(0);
+        assertThat(pushMessageInformationDao.findAllForPushApplicationAfter("231231231", null, false, secondLast.getSubmitDate(), secondLast.getId(), 1)).isEmpty();
+    }
+
     @Test
     public void countMessagesPerLoginName() {
 
@@ -180,6 +200,19 @@ public class FlatPushMessageInformationDaoTest {
         assertThat(lastActivity).hasSize(2);
     }
 
+    @Test
+    public void findLatestApplicationActivity() {
+        final List<MessageActivity> activities = pushMessageInformationDao.findLatestApplicationActivity("admin", 5);
+        assertThat(activities).hasSize(3);
+        assertThat(activities.get(0).getApplicationName()).isNotNull();
+        for (int i = 1; i < activities.size(); i++) {
+            assertThat(activities.get(i).getSubmitDate().after(activities.get(i - 1).getSubmitDate())).isFalse();
+        }
+
+        assertThat(pushMessageInformationDao.findLatestApplicationActivity(null, 2)).hasSize(2);
+        assertThat(pushMessageInformationDao.findLatestApplicationActivity("someone else", 5)).isEmpty();
+    }
+
     @Test
     public void findVariantIDsWithWarnings() {
         // all warnings:
@@ -243,11 +276,39 @@ public class FlatPushMessageInformationDaoTest {
     @Test
     public void testSearchString() {
         PageResult<FlatPushMessageInformation, MessageMetrics> messageInformations =
-                pushMessageInformationDao.findAllForPushApplication("231231231", "foo", Boolean.TRUE, 0, 25);
+                pushMessageInformationDao.findAllForPushApplication("231231231", MessageSearch.of("foo", null, null), Boolean.TRUE, 0, 25);
         final List<FlatPushMessageInformation> list = messageInformations.getResultList();
         assertThat(list).hasSize(1);
     }
 
+    @Test
+    public void testSearchWordsAndSubmitDateRange() {
+        final FlatPushMessageInformation information = new FlatPushMessageInformation();
+        information.setPushApplicationId("231231231");
+        information.setRawJsonMessage("{\"alert\":\"Hello World\"}");
+        information.setSearchText(MessageSearch.toSearchText(Arrays.asList("Hello World!", "foo@bar.org")));
+        pushMessageInformationDao.create(information);
+        flushAndClear();
+
+        // every word has to match, in any order and case
+        assertThat(pushMessageInformationDao.findAllForPushApplication("231231231", MessageSearch.of("WORLD, hello", null, null), true, 0, 25)
+                .getResultList()).extracting("id").containsOnly(information.getId());
+        assertThat(pushMessageInformationDao.findAllForPushApplication("231231231", MessageSearch.of("hello foo@bar.org", null, null), true, 0, 25)
+                .getAggregate().getCount()).isEqualTo(1);
+        assertThat(pushMessageInformationDao.findAllForPushApplication("231231231", MessageSearch.of("hello bar foo", null, null), true, 0, 25)
+                .getAggregate().getCount()).isEqualTo(1);
+        assertThat(pushMessageInformationDao.findAllForPushApplication("231231231", MessageSearch.of("hello there", null, null), true, 0, 25)
+                .getResultList()).isEmpty();
+
+        // the submit date range prunes the old messages
+        final MessageSearch recentFoo = MessageSearch.of("foo", DateUtils.calculatePastDate(1), null);
+        assertThat(pushMessageInformationDao.findAllForPushApplication("231231231", recentFoo, true, 0, 25)
+                .getResultList()).extracting("id").containsOnly(information.getId());
+        final MessageSearch oldMessages = MessageSearch.of(null, null, DateUtils.calculatePastDate(1));
+        assertThat(pushMessageInformationDao.findAllForPushApplicationAfter("231231231", oldMessages, true, null, null, 25))
+                .extracting("id").containsExactly("1", "2");
+    }
+
     @Test
     public void testLongRawJsonPayload() {
         FlatPushMessageInformation largePushMessageInformation = new FlatPushMessageInformation();
@@ -271,11 +332,70 @@ public class FlatPushMessageInformationDaoTest {
         List<FlatPushMessageInformation> messageInformations = pushMessageInformationDao.findAllForPushApplication("231231231", Boolean.TRUE);
         assertThat(messageInformations).hasSize(2);
 
-        pushMessageInformationDao.deletePushInformationOlderThan(DateUtils.calculatePastDate(0));
+        assertThat(pushMessageInformationDao.deletePushInformationOlderThan(DateUtils.calculatePastDate(0), 1000)).isGreaterThanOrEqualTo(2);
 
         flushAndClear();
 
         messageInformations = pushMessageInformationDao.findAllForPushApplication("231231231", Boolean.TRUE);
         assertThat(messageInformations).hasSize(0);
     }
+
+    @Test
+    public void deleteOldPushMessageInformationsInChunks() {
+        final Date oldest = DateUtils.calculatePastDate(365 * 20);
+
+        // oldest first, along with the error rows
+        assertThat(pushMessageInformationDao.deletePushInformationOlderThan(oldest, 1)).isEqualTo(1);
+        flushAndClear();
+        assertThat(pushMessageInformationDao.find("1")).isNull();
+        assertThat(pushMessageInformationDao.find("2")).isNotNull();
+
+        assertThat(pushMessageInformationDao.deletePushInformationOlderThan(oldest, 1)).isEqualTo(1);
+        assertThat(pushMessageInformationDao.deletePushInformationOlderThan(oldest, 1)).isEqualTo(0);
+        flushAndClear();
+
+        assertThat(pushMessageInformationDao.find("3")).isNotNull();
+        assertThat(pushMessageInformationDao.findVariantIDsWithWarnings()).containsOnly("1");
+    }
+
+    @Test
+    public void createAllInBatches() {
+        FlatPushMessageInformation first = new FlatPushMessageInformation();
+        first.setPushApplicationId("batch-app");
+        first.setRawJsonMessage("{\"alert\":\"first\"}");
+        first.setClientIdentifier("client");
+        FlatPushMessageInformation second = new FlatPushMessageInformation();
+        second.setPushApplicationId("batch-app");
+        second.setRawJsonMessage("{\"alert\":\"second\"}");
+
+        pushMessageInformationDao.createAll(Arrays.asList(first, second));
+        flushAndClear();
+
+        assertThat(pushMessageInformationDao.findAllForPushApplication("batch-app", Boolean.TRUE))
+                .extracting("id", "rawJsonMessage", "appOpenCounter")
+                .containsOnly(
+                        tuple(first.getId(), "{\"alert\":\"first\"}", 0L),
+                        tuple(second.getId(), "{\"alert\":\"second\"}", 0L));
+    }
+
+    @Test
+    public void addAppOpensAsDelta() {
+        final Date first = new Date(1_500_000_000_000L);
+        final Date last = new Date(1_500_000_060_000L);
+
+        assertThat(pushMessageInformationDao.addAppOpens(pushMessageInformationID, 3, new Date(1_500_000_010_000L),
+                last)).isTrue();
+        // events of another node, that opened the app in between
+        assertThat(pushMessageInformationDao.addAppOpens(pushMessageInformationID, 2, new Date(1_500_000_030_000L),
+                new Date(1_500_000_030_000L))).isTrue();
+        // events of a node that flushed later, although the app was opened earlier
+        assertThat(pushMessageInformationDao.addAppOpens(pushMessageInformationID, 1, first, first)).isTrue();
+        assertThat(pushMessageInformationDao.addAppOpens("unknown", 1, first, last)).isFalse();
+        flushAndClear();
+
+        FlatPushMessageInformation information = pushMessageInformationDao.find(pushMessageInformationID);
+        assertThat(information.getAppOpenCounter()).isEqualTo(6);
+        assertThat(information.getFirstOpenDate().getTime()).isEqualTo(first.getTime());
+        assertThat(information.getLastOpenDate().getTime()).isEqualTo(last.getTime());
+    }
 }
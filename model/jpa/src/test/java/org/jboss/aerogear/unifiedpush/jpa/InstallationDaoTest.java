@@ -21,9 +21,12 @@ import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
@@ -44,6 +47,8 @@ import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dao.ResultStreamException;
 import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
+import org.jboss.aerogear.unifiedpush.dao.SearchMode;
+import org.jboss.aerogear.unifiedpush.dao.helper.InstallationAlias;
 import org.jboss.aerogear.unifiedpush.dto.Count;
 import org.jboss.aerogear.unifiedpush.utils.TestUtils;
 import org.junit.Rule;
@@ -92,6 +97,15 @@ public class InstallationDaoTest {
 		assertThat(installationDao.getNumberOfDevicesForVariantID("2")).isEqualTo(3);
 	}
 
+	@Test
+	public void countInstallationsPerVariant() {
+		final Map<String, Long> counts = installationDao.countInstallationsPerVariant();
+
+		assertThat(counts.get("1")).isEqualTo(6);
+		assertThat(counts.get("2")).isEqualTo(3);
+		assertThat(counts.values().stream().mapToLong(Long::longValue).sum()).isEqualTo(10);
+	}
+
 	@Test
 	public void findDeviceTokensForOneInstallationOfOneVariant() {
 		String[] alias = { "foo@bar.org" };
@@ -133,6 +147,30 @@ public class InstallationDaoTest {
 		assertThat(tokens).containsOnly(DEVICE_TOKEN_1, DEVICE_TOKEN_2, DEVICE_TOKEN_3, DEVICE_TOKEN_4);
 	}
 
+	@Test
+	public void findDeviceTokensGroupedByAlias() {
+		Map<String, Set<String>> tokens = installationDao.findDeviceTokensForVariantIDByAliases(androidVariantID,
+				Arrays.asList("foo@bar.org", "bar@foo.org"));
+		assertThat(tokens).containsOnlyKeys("foo@bar.org");
+		assertThat(tokens.get("foo@bar.org")).containsOnly(DEVICE_TOKEN_1, DEVICE_TOKEN_2, DEVICE_TOKEN_3,
+				DEVICE_TOKEN_4);
+	}
+
+	@Test
+	public void findDeviceTokensForAliasesPaged() {
+		final List<String> sorted = new ArrayList<>(
+				Arrays.asList(DEVICE_TOKEN_1, DEVICE_TOKEN_2, DEVICE_TOKEN_3, DEVICE_TOKEN_4));
+		Collections.sort(sorted);
+
+		final List<String> firstPage = installationDao.findDeviceTokensForVariantIDByAliases(androidVariantID,
+				Arrays.asList("foo@bar.org", "bar@foo.org"), null, 2, false);
+		assertThat(firstPage).containsExactly(sorted.get(0), sorted.get(1));
+
+		final List<String> secondPage = installationDao.findDeviceTokensForVariantIDByAliases(androidVariantID,
+				Arrays.asList("foo@bar.org", "bar@foo.org"), firstPage.get(1), 2, false);
+		assertThat(secondPage).containsExactly(sorted.get(2), sorted.get(3));
+	}
+
 	@Test
 	public void findNoDeviceTokensForAliasOfVariant() {
 		String[] alias = { "bar@foo.org" };
@@ -231,6 +269,28 @@ public class InstallationDaoTest {
 		assertThat(list).hasSize(0);
 	}
 
+	@Test
+	public void bulkDeleteInstallationsByDeviceTokens() {
+		final Set<String> tokenz = new HashSet<>(Arrays.asList(DEVICE_TOKEN_1, DEVICE_TOKEN_2, "foobar223"));
+
+		List<InstallationAlias> deleted = installationDao.deleteInstallationsForVariantByDeviceTokens(androidVariantID, tokenz);
+		assertThat(deleted).extracting("id").containsOnly("1", "2");
+		assertThat(deleted).extracting("alias").containsOnly("foo@bar.org");
+
+		assertThat(installationDao.findInstallationsForVariantByDeviceTokens(androidVariantID, tokenz)).isEmpty();
+		assertThat(installationDao.getNumberOfDevicesForVariantID(androidVariantID)).isEqualTo(4);
+		// the category links are gone as well
+		assertThat(((Number) entityManager.createNativeQuery(
+				"select count(*) from installation_category where installation_id in ('1', '2')").getSingleResult()).longValue())
+				.isEqualTo(0);
+	}
+
+	@Test
+	public void bulkDeleteInstallationsById() {
+		assertThat(installationDao.deleteAllById(Arrays.asList("4", "5", "2345"))).isEqualTo(2);
+		assertThat(installationDao.getNumberOfDevicesForVariantID("2")).isEqualTo(1);
+	}
+
     @Test(expected= EntityNotFoundException.class)
 	public void deleteNonExistingInstallation() {
 		Installation installation = new Installation();
@@ -592,6 +652,28 @@ public class InstallationDaoTest {
 		assertThat(pageResult.getAggregate().getCount()).isEqualTo(6);
 	}
 
+	@Test
+	public void shouldSelectInstallationsByVariantAfterLastID() {
+		// when
+		final List<Installation> firstPage = installationDao.findInstallationsByVariantAfter(androidVariantID, null,
+				null, SearchMode.SUBSTRING, null, 4);
+		final List<Installation> secondPage = installationDao.findInstallationsByVariantAfter(androidVariantID, null,
+				null, SearchMode.SUBSTRING, firstPage.get(firstPage.size() - 1).getId(), 4);
+
+		// then
+		assertThat(firstPage).hasSize(4);
+		assertThat(secondPage).hasSize(2);
+		assertThat(firstPage).extracting("id").isSorted().doesNotContainAnyElementsOf(
+				secondPage.stream().map(Installation::getId).collect(Collectors.toList()));
+		assertThat(installationDao.findInstallationsByVariantAfter(androidVariantID, "someone-else", null,
+				SearchMode.SUBSTRING, null, 4))
+				.isEmpty();
+		assertThat(installationDao.findInstallationsByVariantAfter(androidVariantID, null, "Tablet",
+				SearchMode.SUBSTRING, null, 4))
+				.hasSize(3);
+		assertThat(installationDao.countInstallationsByVariant(androidVariantID, null, "Tablet", SearchMode.SUBSTRING)).isEqualTo(3);
+	}
+
 	@Test
 	public void shouldSelectInstallationsByDeviceTokenSearch() {
 		// when
@@ -610,6 +692,20 @@ public class InstallationDaoTest {
 		assertThat(pageResult.getResultList()).isNotEmpty().hasSize(3);
 	}
 
+	@Test
+	public void shouldSelectInstallationsBySearchMode() {
+		assertThat(installationDao.countInstallationsByVariant(androidVariantID, null, "baz@", SearchMode.PREFIX))
+				.isEqualTo(1);
+		assertThat(installationDao.countInstallationsByVariant(androidVariantID, null, "Tablet", SearchMode.PREFIX))
+				.isZero();
+		assertThat(installationDao.countInstallationsByVariant(androidVariantID, null, "baz@", SearchMode.EXACT))
+				.isZero();
+		assertThat(installationDao.countInstallationsByVariant(androidVariantID, null, "Android Tablet",
+				SearchMode.EXACT)).isEqualTo(3);
+		assertThat(installationDao.countInstallationsByVariant(androidVariantID, null, "%", SearchMode.SUBSTRING))
+				.isZero();
+	}
+
 	@Test
 	public void shouldSelectInstallationsByAliasSearch() {
 		// when
@@ -657,6 +753,91 @@ public class InstallationDaoTest {
 		entityManager.flush();
 	}
 
+	@Test
+	public void upsertAllInsertsAndUpdatesInstallations() {
+		AndroidVariant variant = new AndroidVariant();
+		variant.setName("Android Name");
+		variant.setGoogleKey("123");
+		variant.setProjectNumber("123");
+		entityManager.persist(variant);
+
+		final Category soccer = entityManager.createQuery("from Category where name = :name", Category.class)
+				.setParameter("name", "soccer").getSingleResult();
+
+		Installation first = new Installation();
+		first.setAlias("first@bar.org");
+		first.setDeviceToken(DEVICE_TOKEN_1);
+		first.setVariant(variant);
+		first.setCategories(new HashSet<>(Arrays.asList(soccer)));
+		Installation second = new Installation();
+		second.setDeviceToken(DEVICE_TOKEN_2);
+		second.setVariant(variant);
+
+		installationDao.upsertAll(Arrays.asList(first, second));
+		entityManager.clear();
+
+		assertThat(installationDao.find(first.getId()).getCategories()).extracting("name").containsOnly("soccer");
+		assertThat(installationDao.find(second.getId()).getDeviceToken()).isEqualTo(DEVICE_TOKEN_2);
+		// the token hash is written by the native statements too, the lookup filters on it
+		assertThat(installationDao.find(second.getId()).getTokenHash()).isEqualTo(Installation.hashDeviceToken(DEVICE_TOKEN_2));
+		assertThat(installationDao.findInstallationForVariantByDeviceToken(variant.getVariantID(), DEVICE_TOKEN_2).getId())
+				.isEqualTo(second.getId());
+		entityManager.clear();
+
+		// same ID: the row is updated and its category links replaced
+		first.setAlias("other@bar.org");
+		first.setCategories(new HashSet<>());
+		installationDao.upsertAll(Arrays.asList(first));
+		entityManager.clear();
+
+		Installation updated = installationDao.find(first.getId());
+		assertThat(updated.getAlias()).isEqualTo("other@bar.org");
+		assertThat(updated.getCategories()).isEmpty();
+		assertThat(installationDao.getNumberOfDevicesForVariantID(variant.getVariantID())).isEqualTo(2);
+	}
+
+	@Test
+	public void createAllAndUpdateAllWriteCategoryLinks() {
+		AndroidVariant variant = new AndroidVariant();
+		variant.setName("Android Name");
+		variant.setGoogleKey("123");
+		variant.setProjectNumber("123");
+		entityManager.persist(variant);
+
+		final Category soccer = entityManager.createQuery("from Category where name = :name", Category.class)
+				.setParameter("name", "soccer").getSingleResult();
+
+		Installation first = new Installation();
+		first.setDeviceToken(DEVICE_TOKEN_1);
+		first.setVariant(variant);
+		first.setCategories(new HashSet<>(Arrays.asList(soccer)));
+		Installation second = new Installation();
+		second.setDeviceToken(DEVICE_TOKEN_2);
+		second.setVariant(variant);
+
+		installationDao.createAll(Arrays.asList(first, second));
+		entityManager.clear();
+
+		assertThat(installationDao.find(first.getId()).getCategories()).extracting("name").containsOnly("soccer");
+		assertThat(installationDao.findInstallationForVariantByDeviceToken(variant.getVariantID(), DEVICE_TOKEN_2).getId())
+				.isEqualTo(second.getId());
+		entityManager.clear();
+
+		first.setAlias("other@bar.org");
+		first.setCategories(new HashSet<>());
+		second.setCategories(new HashSet<>(Arrays.asList(soccer)));
+		installationDao.updateAll(Arrays.asList(first, second));
+		entityManager.clear();
+
+		assertThat(installationDao.find(first.getId()).getAlias()).isEqualTo("other@bar.org");
+		assertThat(installationDao.find(first.getId()).getCategories()).isEmpty();
+		assertThat(installationDao.find(second.getId()).getCategories()).extracting("name").containsOnly("soccer");
+
+		assertThat(installationDao.deleteAll(Arrays.asList(first, second))).isEqualTo(2);
+		entityManager.clear();
+		assertThat(installationDao.getNumberOfDevicesForVariantID(variant.getVariantID())).isZero();
+	}
+
 	private List<String> findAllDeviceTokenForVariantIDByCriteria(String variantID, List<String> categories,
 			List<String> aliases, List<String> deviceTypes) {
 		return findAllDeviceTokenForVariantIDByCriteria(variantID, categories, aliases, deviceTypes, false);
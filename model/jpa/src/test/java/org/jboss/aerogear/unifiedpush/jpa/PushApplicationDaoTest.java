@@ -53,6 +53,20 @@ public class PushApplicationDaoTest {
     @Rule
     public EmbeddedDbTesterRule testDb = new EmbeddedDbTesterRule("PushApplications.xml");
 
+    @Test
+    public void findAllForDeveloperAfter() {
+        final List<PushApplication> firstPage = pushApplicationDao.findAllForDeveloperAfter(null, null, 2);
+        assertThat(firstPage).hasSize(2);
+        assertThat(firstPage).extracting("id").isSorted();
+
+        final List<PushApplication> secondPage = pushApplicationDao.findAllForDeveloperAfter(null, firstPage.get(1).getId(), 2);
+        assertThat(secondPage).hasSize(1);
+        assertThat(secondPage.get(0).getId()).isGreaterThan(firstPage.get(1).getId());
+
+        assertThat(pushApplicationDao.findAllForDeveloperAfter("Admin", null, 10)).hasSize(2);
+        assertThat(pushApplicationDao.findAllForDeveloperAfter("Dave The Drummer", null, 10)).extracting("name").containsOnly("Push App 3");
+    }
+
     @Test
     public void findAllForDeveloper() throws Exception {
         assertThat(pushApplicationDao.findAllForDeveloper("Admin", 0, 10).getResultList()).hasSize(2);
@@ -0,0 +1,99 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.jpa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+public class ReadReplicaRoutingDataSourceTest {
+
+	private HikariDataSource replica;
+	private ReadReplicaRoutingDataSource dataSource;
+
+	@Before
+	public void setUp() {
+		replica = pool("jdbc:h2:mem:routing_replica;DB_CLOSE_DELAY=-1");
+		dataSource = new ReadReplicaRoutingDataSource(pool("jdbc:h2:mem:routing_primary;DB_CLOSE_DELAY=-1"),
+				Collections.singletonList(replica), 3600);
+		dataSource.checkHealth();
+	}
+
+	@After
+	public void tearDown() {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+		dataSource.close();
+	}
+
+	@Test
+	public void routesReadOnlyTransactionsToReplica() throws SQLException {
+		assertThat(url()).contains("routing_primary");
+
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		assertThat(url()).contains("routing_replica");
+	}
+
+	@Test
+	public void fallsBackToPrimary() throws SQLException {
+		replica.close();
+		dataSource.checkHealth();
+
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		assertThat(url()).contains("routing_primary");
+	}
+
+	@Test
+	public void replicaProperties() {
+		final Properties properties = new Properties();
+		properties.setProperty("jdbcUrl", "jdbc:postgresql://primary/ups");
+		properties.setProperty("username", "ups");
+		properties.setProperty("maximumPoolSize", "25");
+		properties.setProperty(JPAConfig.REPLICA_JDBC_URLS, "jdbc:postgresql://replica/ups");
+		properties.setProperty("replica.maximumPoolSize", "10");
+
+		assertThat(JPAConfig.primaryProperties(properties)).containsOnlyKeys("jdbcUrl", "username", "maximumPoolSize");
+		final Properties replicaProperties = JPAConfig.replicaProperties(properties);
+		assertThat(replicaProperties).containsOnlyKeys("username", "maximumPoolSize");
+		assertThat(replicaProperties.getProperty("maximumPoolSize")).isEqualTo("10");
+	}
+
+	// the connection is fetched lazily, on its first use
+	private String url() throws SQLException {
+		try (Connection connection = dataSource.getConnection()) {
+			return connection.getMetaData().getURL();
+		}
+	}
+
+	private static HikariDataSource pool(String jdbcUrl) {
+		final HikariConfig config = new HikariConfig();
+		config.setJdbcUrl(jdbcUrl);
+		config.setUsername("sa");
+		config.setMaximumPoolSize(2);
+		return new HikariDataSource(config);
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.jpa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import org.jboss.aerogear.unifiedpush.api.ScheduledPushMessage;
+import org.jboss.aerogear.unifiedpush.dao.ScheduledPushMessageDao;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { JPAConfig.class })
+@Transactional
+public class ScheduledPushMessageDaoTest {
+
+    @Inject
+    private EntityManager entityManager;
+
+    @Inject
+    private ScheduledPushMessageDao scheduledPushMessageDao;
+
+    @Test
+    public void findAllPendingOrderedBySendAt() {
+        final long now = System.currentTimeMillis();
+        final ScheduledPushMessage later = store(new Date(now + 60_000));
+        final ScheduledPushMessage sooner = store(new Date(now + 1_000));
+
+        entityManager.flush();
+        entityManager.clear();
+
+        final List<ScheduledPushMessage> pending = scheduledPushMessageDao.findAllPending();
+        assertThat(pending).extracting("id").containsExactly(sooner.getId(), later.getId());
+        assertThat(pending.get(0).getRawJsonMessage()).isEqualTo("{\"message\":{\"alert\":\"hello\"}}");
+    }
+
+    @Test
+    public void deleteByIdClaimsOnlyOnce() {
+        final ScheduledPushMessage job = store(new Date());
+        entityManager.flush();
+
+        assertThat(scheduledPushMessageDao.deleteById(job.getId())).isTrue();
+        assertThat(scheduledPushMessageDao.deleteById(job.getId())).isFalse();
+    }
+
+    @Test
+    public void leaseClaimsUntilExpired() {
+        final long now = System.currentTimeMillis();
+        final ScheduledPushMessage due = store(new Date(now - 1_000));
+        final ScheduledPushMessage later = store(new Date(now + 60_000));
+        entityManager.flush();
+
+        assertThat(scheduledPushMessageDao.findDue(new Date(now), new Date(now), 10)).extracting("id")
+                .containsExactly(due.getId());
+
+        assertThat(scheduledPushMessageDao.lease(due.getId(), new Date(now), new Date(now + 10_000))).isTrue();
+        // held by another node
+        assertThat(scheduledPushMessageDao.lease(due.getId(), new Date(now), new Date(now + 10_000))).isFalse();
+        assertThat(scheduledPushMessageDao.findDue(new Date(now + 120_000), new Date(now), 10)).extracting("id")
+                .containsExactly(later.getId());
+
+        // that node failed, the lease has expired
+        assertThat(scheduledPushMessageDao.findDue(new Date(now), new Date(now + 20_000), 10)).extracting("id")
+                .containsExactly(due.getId());
+        assertThat(scheduledPushMessageDao.lease(due.getId(), new Date(now + 20_000), new Date(now + 30_000))).isTrue();
+    }
+
+    private ScheduledPushMessage store(Date sendAt) {
+        final ScheduledPushMessage job = new ScheduledPushMessage();
+        job.setPushApplicationId("231231231");
+        job.setRawJsonMessage("{\"message\":{\"alert\":\"hello\"}}");
+        job.setSendAt(sendAt);
+        scheduledPushMessageDao.create(job);
+        return job;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.jpa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import org.jboss.aerogear.unifiedpush.api.VariantDeliveryCounter;
+import org.jboss.aerogear.unifiedpush.dao.VariantDeliveryCounterDao;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { JPAConfig.class })
+@Transactional
+public class VariantDeliveryCounterDaoTest {
+
+    @Inject
+    private EntityManager entityManager;
+
+    @Inject
+    private VariantDeliveryCounterDao variantDeliveryCounterDao;
+
+    @Test
+    public void addToMissingCounter() {
+        assertThat(variantDeliveryCounterDao.addToCounter(delta("job-1", "variant-1", 5, 1))).isFalse();
+    }
+
+    @Test
+    public void addToExistingCounter() {
+        variantDeliveryCounterDao.create(delta("job-1", "variant-1", 10, 2));
+        variantDeliveryCounterDao.create(delta("job-1", "variant-2", 3, 0));
+        variantDeliveryCounterDao.create(delta("job-2", "variant-1", 7, 0));
+        entityManager.flush();
+
+        assertThat(variantDeliveryCounterDao.addToCounter(delta("job-1", "variant-1", 5, 1))).isTrue();
+        entityManager.clear();
+
+        assertThat(variantDeliveryCounterDao.findByPushJobId("job-1"))
+                .extracting("variantID", "tokensLoaded", "tokensSent", "tokensAccepted", "tokensRejected")
+                .containsExactly(
+                        tuple("variant-1", 15L, 15L, 12L, 3L),
+                        tuple("variant-2", 3L, 3L, 3L, 0L));
+    }
+
+    private static VariantDeliveryCounter delta(String pushJobId, String variantID, long tokens, long rejected) {
+        final VariantDeliveryCounter counter = new VariantDeliveryCounter(pushJobId, variantID);
+        counter.setTokensLoaded(tokens);
+        counter.setTokensSent(tokens);
+        counter.setTokensAccepted(tokens - rejected);
+        counter.setTokensRejected(rejected);
+        return counter;
+    }
+}
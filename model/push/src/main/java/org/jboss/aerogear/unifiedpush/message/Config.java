@@ -18,7 +18,9 @@ package org.jboss.aerogear.unifiedpush.message;
 
 
 import java.io.Serializable;
+import java.util.Date;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -33,6 +35,14 @@ public class Config implements Serializable {
 	@JsonProperty("ttl")
     private int timeToLive = -1;
 
+    @JsonProperty("sendAt")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Date sendAt;
+
+    @JsonProperty("delay")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long delay;
+
     /**
      * Returns the value of the 'ttl' key from the submitted payload.
      * This key is recognized for the Android and iOS Push Notification Service.
@@ -47,10 +57,58 @@ public class Config implements Serializable {
         this.timeToLive = timeToLive;
     }
 
+    /**
+     * Returns the value of the 'sendAt' key from the submitted payload.
+     * When present and in the future, the message is held by the server and delivered at the given point in time.
+     *
+     * If the 'sendAt' key has not been specified on the submitted payload, this method will return null.
+     */
+    public Date getSendAt() {
+        return sendAt;
+    }
+
+    public void setSendAt(Date sendAt) {
+        this.sendAt = sendAt;
+    }
+
+    /**
+     * Returns the value of the 'delay' key (in seconds) from the submitted payload.
+     * When positive, the message is delivered once the delay has elapsed since the request was submitted.
+     * The 'sendAt' key takes precedence if both are given.
+     *
+     * If the 'delay' key has not been specified on the submitted payload, this method will return null.
+     */
+    public Long getDelay() {
+        return delay;
+    }
+
+    public void setDelay(Long delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * Resolves the point in time (epoch millis) the message should be delivered at, relative to the given submit time.
+     *
+     * @param submitTime epoch millis the request was submitted at
+     *
+     * @return delivery time in epoch millis, or -1 when the message is meant to be sent right away
+     */
+    public long resolveSendTime(long submitTime) {
+        if (sendAt != null) {
+            return sendAt.getTime();
+        }
+        if (delay != null && delay > 0) {
+            return submitTime + delay * 1000L;
+        }
+        return -1;
+    }
+
     @Override
     public String toString() {
         return "Config{" +
                 "timeToLive=" + timeToLive +
+                ", sendAt=" + sendAt +
+                ", delay=" + delay +
                 '}';
     }
 }
@@ -24,9 +24,11 @@ import javax.inject.Inject;
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+import org.jboss.aerogear.unifiedpush.message.metrics.PipelineMetrics;
 import org.jboss.aerogear.unifiedpush.message.sender.NotificationSenderCallback;
 import org.jboss.aerogear.unifiedpush.message.sender.PushNotificationSender;
 import org.jboss.aerogear.unifiedpush.message.token.TokenLoader;
+import org.jboss.aerogear.unifiedpush.service.metrics.DeliveryCounterAggregator;
 import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +52,12 @@ public class NotificationDispatcher {
     @Inject
     private IPushMessageMetricsService pushMessageMetricsService;
 
+    @Inject
+    private DeliveryCounterAggregator deliveryCounters;
+
+    @Inject
+    private PipelineMetrics pipelineMetrics;
+
 	@Inject
 	private WorkQueueProcessor<MessageHolderWithTokens> messages;
 
@@ -70,6 +78,8 @@ public class NotificationDispatcher {
 
         logger.info(String.format("Received UnifiedPushMessage from queue, will now trigger the Push Notification delivery for the %s variant (%s)", variant.getType().getTypeName(), variant.getVariantID()));
 
+        deliveryCounters.tokensSent(msg.getPushMessageInformation().getId(), variant.getVariantID(), deviceTokens.size());
+
         try {
         	// Any Unhandled exception will break this Flux stream
     		BeanFactoryAnnotationUtils.qualifiedBeanOfType(
@@ -82,6 +92,7 @@ public class NotificationDispatcher {
 			                    )
 			    		);
         } catch (Throwable e) {
+        	pipelineMetrics.sendFailed(variant.getType());
         	logger.error("Unable to send push notification for %s variant ", variant.getName());
         	// TODO - implement retry policy
 		}
@@ -91,6 +102,8 @@ public class NotificationDispatcher {
         private final Variant variant;
         private final int tokenSize;
         private final FlatPushMessageInformation pushMessageInformation;
+        // the callback is created right before the batch is handed to the sender
+        private final long started = pipelineMetrics.start();
 
         public SenderServiceCallback(Variant variant, int tokenSize, FlatPushMessageInformation pushMessageInformation) {
             this.variant = variant;
@@ -101,11 +114,15 @@ public class NotificationDispatcher {
         @Override
         public void onSuccess() {
             logger.debug(String.format("Sent '%s' message to '%d' devices", variant.getType().getTypeName(), tokenSize));
+            deliveryCounters.tokensAccepted(pushMessageInformation.getId(), variant.getVariantID(), tokenSize);
+            pipelineMetrics.sendCompleted(variant.getType(), variant.getVariantID(), started, true);
         }
 
         @Override
         public void onError(final String reason) {
             logger.warn(String.format("Error on '%s' delivery: %s", variant.getType().getTypeName(), reason));
+            deliveryCounters.tokensRejected(pushMessageInformation.getId(), variant.getVariantID(), tokenSize);
+            pipelineMetrics.sendCompleted(variant.getType(), variant.getVariantID(), started, false);
             pushMessageMetricsService.appendError(pushMessageInformation, variant, reason);
         }
     }
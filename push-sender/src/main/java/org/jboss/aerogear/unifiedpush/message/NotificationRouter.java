@@ -28,6 +28,7 @@ import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.api.VariantType;
 import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
+import org.jboss.aerogear.unifiedpush.message.metrics.PipelineMetrics;
 import org.jboss.aerogear.unifiedpush.message.token.TokenLoader;
 import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
 import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
@@ -58,6 +59,8 @@ public class NotificationRouter {
     private GenericVariantService genericVariantService;
     @Inject
     private IPushMessageMetricsService metricsService;
+    @Inject
+    private PipelineMetrics pipelineMetrics;
 
     @Inject
     private TopicProcessor<MessageHolderWithVariants> dispatchVariantMessageEvent;
@@ -77,6 +80,7 @@ public class NotificationRouter {
     @Transactional
     public void submit(PushApplication pushApplication, InternalUnifiedPushMessage message) {
         logger.debug("Processing send request with '{}' payload", message.getMessage());
+        final long started = pipelineMetrics.start();
 
         // collections for all the different variants:
         final VariantMap variants = new VariantMap();
@@ -123,8 +127,10 @@ public class NotificationRouter {
         	if (variant != null && !variant.isEmpty()){
         		logger.info(String.format("Internal dispatching of push message for one %s variant (by %s)", variantType.getTypeName(), message.getClientIdentifier()));
         		dispatchVariantMessageEvent.onNext(new MessageHolderWithVariants(pushMessageInformation, message, variantType, variant));
+        		pipelineMetrics.routerDispatched(variantType);
         	}
         });
+        pipelineMetrics.routerSubmitted(started);
     }
 
 	/**
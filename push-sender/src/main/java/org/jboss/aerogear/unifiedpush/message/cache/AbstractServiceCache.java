@@ -19,25 +19,62 @@ package org.jboss.aerogear.unifiedpush.message.cache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
  * Abstract cache holds queue of services with upper-bound limit of created instances.
  *
  * Cache allows to return freed up services to the queue or free a slot for creating new services up to a limit.
+ *
+ * Consumers that find neither a queued service nor a free slot are parked in a FIFO waiter queue (per push message
+ * and variant) and are handed the next service that is returned, or the next slot that is freed up, in the order they
+ * arrived. A consumer whose service constructor returns null gives the slot back and tries again every
+ * {@value #RETRY_INTERVAL_IN_MILLIS} ms, until the acquiring timeout. Services that stay queued for longer than the
+ * idle timeout are evicted and their slots freed.
  */
 public abstract class AbstractServiceCache<T> {
 
-    private static final long QUEUE_POLLING_INTERVAL_IN_MILLIS = 100;
+    private static final long RETRY_INTERVAL_IN_MILLIS = 100;
+
+    // shared by all caches: waiter timeouts, idle eviction and the creation of services for parked consumers
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "service-cache-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ExecutorService CONSTRUCTOR = Executors.newCachedThreadPool(r -> {
+        final Thread thread = new Thread(r, "service-cache-constructor");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private final ConcurrentHashMap<Key, Holder> holderMap = new ConcurrentHashMap<Key, Holder>();
 
     private final Logger logger;
     private final int instanceLimit;
     private final long timeout;
+    private final long idleTimeout;
+    private final ScheduledFuture<?> evictionTask;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
 
     /**
      * Creates new cache
@@ -46,9 +83,27 @@ public abstract class AbstractServiceCache<T> {
      * @param instanceAcquiringTimeoutInMillis what is a timeout before the cache can return null
      */
     public AbstractServiceCache(int instanceLimit, long instanceAcquiringTimeoutInMillis) {
+        this(instanceLimit, instanceAcquiringTimeoutInMillis, 0);
+    }
+
+    /**
+     * Creates new cache that evicts services which were not used for the given time
+     *
+     * @param instanceLimit how many instances can be created
+     * @param instanceAcquiringTimeoutInMillis what is a timeout before the cache can return null
+     * @param idleTimeoutInMillis how long a service may stay queued before it is evicted, {@code 0} to never evict
+     */
+    public AbstractServiceCache(int instanceLimit, long instanceAcquiringTimeoutInMillis, long idleTimeoutInMillis) {
         this.logger = LoggerFactory.getLogger(this.getClass());
         this.instanceLimit = instanceLimit;
         this.timeout = instanceAcquiringTimeoutInMillis;
+        this.idleTimeout = idleTimeoutInMillis;
+        if (idleTimeoutInMillis > 0) {
+            final long period = Math.max(idleTimeoutInMillis / 2, 100);
+            this.evictionTask = SCHEDULER.scheduleWithFixedDelay(this::evictIdleServices, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.evictionTask = null;
+        }
     }
 
     /**
@@ -66,9 +121,46 @@ public abstract class AbstractServiceCache<T> {
      * @return the service instance; or null in case too much services were created and no services are queued for reuse
      */
     public T dequeueOrCreateNewService(final String pushMessageInformationId, final String variantID, ServiceConstructor<T> constructor) {
-        Holder holder = getOrCreateHolder(new Key(pushMessageInformationId, variantID));
-        T service = holder.dequeueOrCreateBlocking(constructor, timeout);
-        return service;
+        try {
+            return acquire(pushMessageInformationId, variantID, constructor).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #dequeueOrCreateNewService(String, String, ServiceConstructor)}.
+     *
+     * The returned future is completed right away with a queued service, or with a new service when a slot is free.
+     * Otherwise it is completed once a service is returned or a slot is freed up, with {@code null} when that did not
+     * happen within the configured {@link #timeout}. If the constructor throws, the future is completed exceptionally;
+     * if it returns null, it is called again until the timeout.
+     *
+     * @param pushMessageInformationId the push message id
+     * @param variantID the variant
+     * @param constructor the service constructor
+     * @return future of the service instance
+     */
+    public CompletableFuture<T> acquire(final String pushMessageInformationId, final String variantID, ServiceConstructor<T> constructor) {
+        return acquire(new Key(pushMessageInformationId, variantID), constructor, System.currentTimeMillis() + timeout);
+    }
+
+    private CompletableFuture<T> acquire(Key key, ServiceConstructor<T> constructor, long deadline) {
+        while (true) {
+            final Holder holder = getOrCreateHolder(key);
+            final CompletableFuture<T> service = holder.acquire(constructor, deadline);
+            if (service != null) {
+                return service;
+            }
+            // the holder was just retired, retry with a fresh one
+            freeUpHolder(key, holder);
+        }
     }
 
     /**
@@ -93,8 +185,14 @@ public abstract class AbstractServiceCache<T> {
      * @param service the used and freed up service
      */
     public void queueFreedUpService(final String pushMessageInformationId, final String variantID, T service) {
-        Holder holder = getOrCreateHolder(new Key(pushMessageInformationId, variantID));
-        holder.queue(service);
+        final Key key = new Key(pushMessageInformationId, variantID);
+        boolean adopt = false;
+        Holder holder;
+        while (!(holder = getOrCreateHolder(key)).release(service, adopt)) {
+            // the holder was retired in the meantime, the service is accounted for in the new one
+            freeUpHolder(key, holder);
+            adopt = true;
+        }
         logger.debug("Freed up service returned to the queue");
     }
 
@@ -108,7 +206,7 @@ public abstract class AbstractServiceCache<T> {
     public void freeUpSlot(final String pushMessageInformationId, final String variantID) {
         Key instanceKey = new Key(pushMessageInformationId, variantID);
         Holder holder = getOrCreateHolder(instanceKey);
-        int newInstanceCount = holder.decrementCounter();
+        int newInstanceCount = holder.freeSlot();
         if (newInstanceCount == 0) {
             freeUpHolder(instanceKey, holder);
         } else if (newInstanceCount < 0) {
@@ -117,17 +215,66 @@ public abstract class AbstractServiceCache<T> {
         logger.debug("Freed up a slot so that new services can be created within the limits");
     }
 
+    /**
+     * Called for every service that is evicted after being queued for longer than the idle timeout, e.g. to close
+     * its connections.
+     *
+     * @param service the evicted service
+     */
+    protected void onEvict(T service) {
+        // no-op
+    }
+
+    /**
+     * Stops the idle eviction of this cache.
+     */
+    public void shutdown() {
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+        }
+    }
+
+    /**
+     * @return snapshot of the pool counters
+     */
+    public Stats getStats() {
+        int instances = 0;
+        int idle = 0;
+        int waiting = 0;
+        for (Holder holder : holderMap.values()) {
+            synchronized (holder) {
+                instances += holder.instances;
+                idle += holder.idle.size();
+                waiting += holder.waiters.size();
+            }
+        }
+        return new Stats(created.sum(), reused.sum(), waited.sum(), timedOut.sum(), evicted.sum(), instances, idle, waiting);
+    }
+
+    void evictIdleServices() {
+        final long now = System.currentTimeMillis();
+        for (java.util.Map.Entry<Key, Holder> entry : holderMap.entrySet()) {
+            final List<T> services = entry.getValue().evictIdle(now);
+            if (entry.getValue().isRetired()) {
+                freeUpHolder(entry.getKey(), entry.getValue());
+            }
+            for (T service : services) {
+                evicted.increment();
+                try {
+                    onEvict(service);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to evict idle service", e);
+                }
+            }
+        }
+    }
+
     private Holder getHolder(Key key) {
         return holderMap.get(key);
     }
 
     private Holder getOrCreateHolder(Key key) {
-        Holder holder = holderMap.get(key);
-        if (holder == null) {
-            holder = holderMap.putIfAbsent(key, new Holder());
-            holder = holderMap.get(key);
-        }
-        return holder;
+        return holderMap.computeIfAbsent(key, Holder::new);
     }
 
     private void freeUpHolder(Key key, Holder holder) {
@@ -139,66 +286,254 @@ public abstract class AbstractServiceCache<T> {
     }
 
     /**
-     * Holds non-blocking queue of unused services and a counter with total number of instantiated services.
+     * Pool counters; the first five are totals since the cache was created, the last three the current state.
+     */
+    public static final class Stats {
+        private final long created;
+        private final long reused;
+        private final long waited;
+        private final long timedOut;
+        private final long evicted;
+        private final int instances;
+        private final int idle;
+        private final int waiting;
+
+        Stats(long created, long reused, long waited, long timedOut, long evicted, int instances, int idle, int waiting) {
+            this.created = created;
+            this.reused = reused;
+            this.waited = waited;
+            this.timedOut = timedOut;
+            this.evicted = evicted;
+            this.instances = instances;
+            this.idle = idle;
+            this.waiting = waiting;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getReused() {
+            return reused;
+        }
+
+        public long getWaited() {
+            return waited;
+        }
+
+        public long getTimedOut() {
+            return timedOut;
+        }
+
+        public long getEvicted() {
+            return evicted;
+        }
+
+        public int getInstances() {
+            return instances;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getWaiting() {
+            return waiting;
+        }
+    }
+
+    /**
+     * Holds queue of unused services, the number of instantiated services and the consumers waiting for a service.
+     * All state is guarded by the holder's monitor; futures are completed and services constructed outside of it.
      */
     private class Holder {
-        private ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<T>();
-        private AtomicInteger counter = new AtomicInteger(0);
-
-        public T dequeueOrCreateBlocking(ServiceConstructor<T> constructor, long timeoutInMillis) {
-            for (long start = System.currentTimeMillis(); start + timeoutInMillis > System.currentTimeMillis(); ) {
-                T service = dequeueOrCreate(constructor);
-                if (service != null) {
-                    return service;
-                }
-                try {
-                    Thread.sleep(QUEUE_POLLING_INTERVAL_IN_MILLIS);
-                } catch (InterruptedException e) {
+        private final Key key;
+        private final Deque<Idle<T>> idle = new ArrayDeque<>();
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private int instances;
+        private boolean retired;
+
+        Holder(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * @return future of the service, or null if this holder was retired and must not be used anymore
+         */
+        CompletableFuture<T> acquire(ServiceConstructor<T> constructor, long deadline) {
+            final Waiter waiter;
+            synchronized (this) {
+                if (retired) {
                     return null;
                 }
+                // most recently used first, so that surplus services can idle out
+                final Idle<T> queued = idle.pollLast();
+                if (queued != null) {
+                    logger.debug("Service available in a queue, taking it from there");
+                    reused.increment();
+                    return CompletableFuture.completedFuture(queued.service);
+                }
+                if (instances < instanceLimit) {
+                    instances++;
+                    waiter = null;
+                } else {
+                    logger.debug("No existing service available and ran out of limit, waiting for services to free up");
+                    waiter = new Waiter(constructor, deadline);
+                    waiters.addLast(waiter);
+                }
+            }
+
+            if (waiter == null) {
+                logger.debug("No existing service available, creating new one");
+                final CompletableFuture<T> service = new CompletableFuture<>();
+                construct(constructor, service, deadline);
+                return service;
             }
-            return null;
-        }
 
-        public void queue(T service) {
-            queue.add(service);
+            waited.increment();
+            SCHEDULER.schedule(() -> expire(waiter), Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            return waiter.future;
         }
 
-        public T dequeue() {
-            return queue.poll();
+        T dequeue() {
+            synchronized (this) {
+                final Idle<T> queued = idle.pollLast();
+                return queued == null ? null : queued.service;
+            }
         }
 
-        public int decrementCounter() {
-            return counter.decrementAndGet();
+        /**
+         * @return false if this holder was retired and the service has to be released to a new one
+         */
+        boolean release(T service, boolean adopt) {
+            final Waiter waiter;
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                if (adopt) {
+                    instances++;
+                }
+                waiter = waiters.pollFirst();
+                if (waiter == null) {
+                    idle.addLast(new Idle<>(service, System.currentTimeMillis()));
+                    return true;
+                }
+            }
+            reused.increment();
+            waiter.future.complete(service);
+            return true;
         }
 
-        private T dequeueOrCreate(ServiceConstructor<T> constructor) {
-            // try to use existing queued instance
-            if (!queue.isEmpty()) {
-                logger.debug("Service available in a queue, taking it from there");
-                return queue.poll();
+        int freeSlot() {
+            final Waiter waiter;
+            final int remaining;
+            synchronized (this) {
+                instances--;
+                waiter = instances >= 0 ? waiters.pollFirst() : null;
+                if (waiter != null) {
+                    // the slot goes straight to the longest waiting consumer
+                    instances++;
+                }
+                remaining = instances;
+                if (remaining == 0 && waiters.isEmpty()) {
+                    retired = true;
+                }
             }
-            int count = counter.get();
-            // create new instance
-            if (count < instanceLimit) {
-                if (counter.compareAndSet(count, count + 1)) {
-                    logger.debug("No existing service available, creating new one");
-                    T service = null;
-                    try {
-                        service = constructor.construct();
-                    } finally {
-                        if (service == null) {
-                            logger.warn("Failed to create service, will try later");
-                            // service construction failed, we need to free up a slot
-                            counter.decrementAndGet();
-                        }
+            if (waiter != null) {
+                CONSTRUCTOR.execute(() -> construct(waiter.constructor, waiter.future, waiter.deadline));
+            }
+            return remaining;
+        }
+
+        List<T> evictIdle(long now) {
+            final List<T> services = new ArrayList<>();
+            synchronized (this) {
+                for (Iterator<Idle<T>> iterator = idle.iterator(); iterator.hasNext();) {
+                    final Idle<T> queued = iterator.next();
+                    if (now - queued.since >= idleTimeout) {
+                        iterator.remove();
+                        instances--;
+                        services.add(queued.service);
                     }
-                    return service;
-                } else {
-                    logger.debug("No existing service available and ran out of limit, waiting for services to free up");
+                }
+                if (instances <= 0 && waiters.isEmpty()) {
+                    retired = true;
                 }
             }
-            return null;
+            return services;
+        }
+
+        synchronized boolean isRetired() {
+            return retired;
+        }
+
+        private void expire(Waiter waiter) {
+            synchronized (this) {
+                if (!waiters.remove(waiter)) {
+                    // already served
+                    return;
+                }
+            }
+            timedOut.increment();
+            waiter.future.complete(null);
+        }
+
+        private void construct(ServiceConstructor<T> constructor, CompletableFuture<T> future, long deadline) {
+            T service = null;
+            try {
+                service = constructor.construct();
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                if (service == null) {
+                    logger.warn("Failed to create service, will try later");
+                    // service construction failed, we need to free up a slot
+                    freeSlot();
+                }
+            }
+
+            if (service != null) {
+                created.increment();
+                future.complete(service);
+            } else if (!future.isDone()) {
+                retry(constructor, future, deadline);
+            }
+        }
+
+        private void retry(ServiceConstructor<T> constructor, CompletableFuture<T> future, long deadline) {
+            if (System.currentTimeMillis() + RETRY_INTERVAL_IN_MILLIS > deadline) {
+                timedOut.increment();
+                future.complete(null);
+                return;
+            }
+            // the holder may be retired by then, the consumer starts over with the cache
+            SCHEDULER.schedule(() -> CONSTRUCTOR.execute(() -> acquire(key, constructor, deadline).whenComplete((service, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(service);
+                }
+            })), RETRY_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final class Idle<T> {
+        private final T service;
+        private final long since;
+
+        Idle(T service, long since) {
+            this.service = service;
+            this.since = since;
+        }
+    }
+
+    private final class Waiter {
+        private final ServiceConstructor<T> constructor;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Waiter(ServiceConstructor<T> constructor) {
+            this.constructor = constructor;
         }
     }
 
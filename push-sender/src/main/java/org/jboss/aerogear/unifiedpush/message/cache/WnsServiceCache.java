@@ -0,0 +1,48 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.cache;
+
+import javax.annotation.PreDestroy;
+
+import org.jboss.aerogear.unifiedpush.system.ConfigurationUtils;
+import org.springframework.stereotype.Service;
+
+import ar.com.fernandospr.wns.WnsService;
+
+/**
+ * Pool of {@link WnsService} instances, so that the token batches of a push message reuse the authenticated services
+ * of their variant instead of creating one per batch. Services idle for a minute are evicted, which releases the
+ * services of push messages that have been sent.
+ */
+@Service
+public class WnsServiceCache extends AbstractServiceCache<WnsService> {
+
+    public static final String PROP_INSTANCE_LIMIT = "aerogear.wns.instance_limit";
+    public static final String PROP_ACQUIRING_TIMEOUT_MS = "aerogear.wns.acquiring_timeout_ms";
+
+    private static final long IDLE_TIMEOUT_MS = 60_000;
+
+    public WnsServiceCache() {
+        super(ConfigurationUtils.tryGetIntegerProperty(PROP_INSTANCE_LIMIT, 10),
+                ConfigurationUtils.tryGetIntegerProperty(PROP_ACQUIRING_TIMEOUT_MS, 7500), IDLE_TIMEOUT_MS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        shutdown();
+    }
+}
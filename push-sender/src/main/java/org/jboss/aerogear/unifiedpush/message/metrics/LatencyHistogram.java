@@ -0,0 +1,108 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed bucket latency histogram, recorded in nanoseconds and exposed in seconds.
+ *
+ * Recording is a binary search over the bucket bounds and two striped additions, so it is safe to call from the hot
+ * delivery path without any locking. Bucket counts are kept non-cumulative and are summed up when a snapshot is taken.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Default bucket upper bounds, in seconds. Covers both in-process stages (sub-millisecond) and push network round
+     * trips (seconds).
+     */
+    public static final double[] DEFAULT_BOUNDS_SECONDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30 };
+
+    private final double[] boundsSeconds;
+    private final long[] boundsNanos;
+    // one extra bucket for values above the last bound
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        this(DEFAULT_BOUNDS_SECONDS);
+    }
+
+    public LatencyHistogram(double[] boundsSeconds) {
+        this.boundsSeconds = boundsSeconds.clone();
+        Arrays.sort(this.boundsSeconds);
+        this.boundsNanos = new long[this.boundsSeconds.length];
+        for (int i = 0; i < this.boundsSeconds.length; i++) {
+            boundsNanos[i] = (long) (this.boundsSeconds[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+        this.buckets = new LongAdder[boundsNanos.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int index = Arrays.binarySearch(boundsNanos, nanos);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        buckets[index].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()} value.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public double[] getBoundsSeconds() {
+        return boundsSeconds.clone();
+    }
+
+    /**
+     * @return cumulative bucket counts (Prometheus {@code le} semantics), the last entry is the total count.
+     */
+    public long[] cumulativeCounts() {
+        final long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].sum();
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (LongAdder bucket : buckets) {
+            total += bucket.sum();
+        }
+        return total;
+    }
+
+    public double getSumSeconds() {
+        return sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.message.NotificationDispatcher;
+import org.jboss.aerogear.unifiedpush.message.NotificationRouter;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
+import org.jboss.aerogear.unifiedpush.message.token.TokenLoader;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.springframework.stereotype.Service;
+
+import reactor.core.publisher.TopicProcessor;
+import reactor.core.publisher.WorkQueueProcessor;
+
+/**
+ * Low overhead instrumentation of the delivery pipeline: {@link NotificationRouter} &rarr; {@link TokenLoader} &rarr;
+ * {@link NotificationDispatcher} &rarr; push network senders.
+ *
+ * All values are kept in striped counters and fixed bucket histograms and are only read when scraped, see
+ * {@link #scrape()} for the Prometheus text exposition. Counters are monotonic, rates (e.g. token rows loaded per
+ * second, sender error rate) are meant to be derived by the scraper.
+ */
+@Service
+public class PipelineMetrics {
+
+    public static final String PROP_ENABLED = "aerogear.metrics.pipeline.enabled";
+    public static final String PROP_PER_VARIANT = "aerogear.metrics.pipeline.per_variant";
+
+    static final String ALL_VARIANTS = "_all";
+
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_ERROR = "error";
+
+    @Inject
+    private ConfigurationEnvironment config;
+    @Inject
+    private TopicProcessor<MessageHolderWithVariants> variantsProcessor;
+    @Inject
+    private WorkQueueProcessor<MessageHolderWithTokens> tokensProcessor;
+
+    private volatile boolean enabled = true;
+    private volatile boolean perVariant = true;
+
+    private final LatencyHistogram routerSubmit = new LatencyHistogram();
+    // populated once for every network, read only afterwards
+    private final Map<VariantType, NetworkStats> networks;
+
+    public PipelineMetrics() {
+        final Map<VariantType, NetworkStats> stats = new EnumMap<>(VariantType.class);
+        for (VariantType type : VariantType.values()) {
+            stats.put(type, new NetworkStats());
+        }
+        networks = Collections.unmodifiableMap(stats);
+    }
+
+    @PostConstruct
+    public void configure() {
+        enabled = config.getProperty(PROP_ENABLED, Boolean.TRUE);
+        perVariant = config.getProperty(PROP_PER_VARIANT, Boolean.TRUE);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} to be passed to the matching {@code record} method, or {@code 0} when the
+     *         instrumentation is disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void routerSubmitted(long startNanos) {
+        if (startNanos != 0) {
+            routerSubmit.recordSince(startNanos);
+        }
+    }
+
+    public void routerDispatched(VariantType network) {
+        if (enabled) {
+            networks.get(network).dispatched.increment();
+        }
+    }
+
+    public void tokenBatchLoaded(VariantType network, long startNanos, int rows) {
+        if (startNanos != 0) {
+            final NetworkStats stats = networks.get(network);
+            stats.batchBuild.recordSince(startNanos);
+            stats.rowsLoaded.add(rows);
+        }
+    }
+
+    public void tokenBatchRejected(VariantType network) {
+        if (enabled) {
+            networks.get(network).dispatchFailures.increment();
+        }
+    }
+
+    public void sendCompleted(VariantType network, String variantID, long startNanos, boolean success) {
+        if (startNanos != 0) {
+            final SendStats stats = sendStats(network, variantID);
+            stats.latency.recordSince(startNanos);
+            (success ? stats.success : stats.error).increment();
+        }
+    }
+
+    public void sendFailed(VariantType network) {
+        if (enabled) {
+            networks.get(network).sendExceptions.increment();
+        }
+    }
+
+    private SendStats sendStats(VariantType network, String variantID) {
+        final String key = perVariant && variantID != null ? variantID : ALL_VARIANTS;
+        return networks.get(network).variants.computeIfAbsent(key, k -> new SendStats());
+    }
+
+    /**
+     * Renders all pipeline metrics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String scrape() {
+        final StringBuilder out = new StringBuilder(4096);
+        if (!enabled) {
+            return out.toString();
+        }
+
+        header(out, "ups_processor_pending", "gauge", "Messages waiting in the processor ring buffer.");
+        sample(out, "ups_processor_pending", labels("processor", "variants"),
+                pending(variantsProcessor.getBufferSize(), variantsProcessor.getAvailableCapacity()));
+        sample(out, "ups_processor_pending", labels("processor", "tokens"),
+                pending(tokensProcessor.getBufferSize(), tokensProcessor.getAvailableCapacity()));
+
+        header(out, "ups_processor_remaining_capacity", "gauge", "Free slots in the processor ring buffer.");
+        sample(out, "ups_processor_remaining_capacity", labels("processor", "variants"),
+                variantsProcessor.getAvailableCapacity());
+        sample(out, "ups_processor_remaining_capacity", labels("processor", "tokens"),
+                tokensProcessor.getAvailableCapacity());
+
+        header(out, "ups_router_submit_seconds", "histogram", "Time spent routing a send request.");
+        histogram(out, "ups_router_submit_seconds", "", routerSubmit);
+
+        header(out, "ups_router_dispatched_total", "counter", "Per network messages queued by the router.");
+        networks.forEach((network, stats) ->
+                sample(out, "ups_router_dispatched_total", labels("network", network.getTypeName()),
+                        stats.dispatched.sum()));
+
+        header(out, "ups_token_loader_rows_total", "counter", "Device token rows loaded from the database.");
+        networks.forEach((network, stats) ->
+                sample(out, "ups_token_loader_rows_total", labels("network", network.getTypeName()),
+                        stats.rowsLoaded.sum()));
+
+        header(out, "ups_token_loader_batch_build_seconds", "histogram", "Time spent building one token batch.");
+        networks.forEach((network, stats) ->
+                histogram(out, "ups_token_loader_batch_build_seconds", labels("network", network.getTypeName()),
+                        stats.batchBuild));
+
+        header(out, "ups_token_loader_dispatch_failures_total", "counter",
+                "Token batches that could not be queued for dispatch.");
+        networks.forEach((network, stats) ->
+                sample(out, "ups_token_loader_dispatch_failures_total", labels("network", network.getTypeName()),
+                        stats.dispatchFailures.sum()));
+
+        header(out, "ups_sender_send_seconds", "histogram",
+                "Time from handing a token batch to the push network sender until its callback.");
+        networks.forEach((network, stats) ->
+                sorted(stats.variants).forEach((variantID, send) ->
+                        histogram(out, "ups_sender_send_seconds", sendLabels(network, variantID), send.latency)));
+
+        header(out, "ups_sender_batches_total", "counter", "Token batches completed by push network senders.");
+        networks.forEach((network, stats) ->
+                sorted(stats.variants).forEach((variantID, send) -> {
+                    final String labels = sendLabels(network, variantID);
+                    sample(out, "ups_sender_batches_total", labels + ",outcome=\"" + OUTCOME_SUCCESS + "\"",
+                            send.success.sum());
+                    sample(out, "ups_sender_batches_total", labels + ",outcome=\"" + OUTCOME_ERROR + "\"",
+                            send.error.sum());
+                }));
+
+        header(out, "ups_sender_exceptions_total", "counter", "Token batches whose sender failed with an exception.");
+        networks.forEach((network, stats) ->
+                sample(out, "ups_sender_exceptions_total", labels("network", network.getTypeName()),
+                        stats.sendExceptions.sum()));
+
+        return out.toString();
+    }
+
+    private static long pending(long bufferSize, long availableCapacity) {
+        return Math.max(0, bufferSize - availableCapacity);
+    }
+
+    private static Map<String, SendStats> sorted(Map<String, SendStats> variants) {
+        return new TreeMap<>(variants);
+    }
+
+    private static String sendLabels(VariantType network, String variantID) {
+        return labels("network", network.getTypeName()) + "," + labels("variant", variantID);
+    }
+
+    private static String labels(String name, String value) {
+        final StringBuilder label = new StringBuilder(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                label.append("\\\\");
+                break;
+            case '"':
+                label.append("\\\"");
+                break;
+            case '\n':
+                label.append("\\n");
+                break;
+            default:
+                label.append(c);
+            }
+        }
+        return label.append('"').toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Number value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        final String prefix = labels.isEmpty() ? "" : labels + ",";
+        final double[] bounds = histogram.getBoundsSeconds();
+        final long[] counts = histogram.cumulativeCounts();
+        for (int i = 0; i < bounds.length; i++) {
+            sample(out, name + "_bucket", prefix + "le=\"" + bounds[i] + "\"", counts[i]);
+        }
+        final long count = counts[counts.length - 1];
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", count);
+        sample(out, name + "_sum", labels, histogram.getSumSeconds());
+        sample(out, name + "_count", labels, count);
+    }
+
+    private static final class NetworkStats {
+        private final LongAdder dispatched = new LongAdder();
+        private final LongAdder rowsLoaded = new LongAdder();
+        private final LongAdder dispatchFailures = new LongAdder();
+        private final LongAdder sendExceptions = new LongAdder();
+        private final LatencyHistogram batchBuild = new LatencyHistogram();
+        private final Map<String, SendStats> variants = new ConcurrentHashMap<>();
+    }
+
+    private static final class SendStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder success = new LongAdder();
+        private final LongAdder error = new LongAdder();
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.schedule;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.PushApplication;
+import org.jboss.aerogear.unifiedpush.api.ScheduledPushMessage;
+import org.jboss.aerogear.unifiedpush.message.Config;
+import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.NotificationRouter;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.service.PushApplicationService;
+import org.jboss.aerogear.unifiedpush.service.ScheduledPushMessageService;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Entry point for push message requests that may carry a delivery time (see {@link Config#getSendAt()} and
+ * {@link Config#getDelay()}).
+ *
+ * Requests that are due (or due within the pre-loading window) are handed to {@link NotificationRouter} right away.
+ * Other requests are persisted as {@link ScheduledPushMessage} jobs and kept in an in-memory {@link TimingWheel},
+ * which is rebuilt from the database on startup. Every node also polls the database for jobs becoming due, so jobs
+ * accepted by a node that went down are released by the others.
+ *
+ * A job is released into {@link NotificationRouter} shortly before its delivery time, so that tokens are
+ * already loaded when the delivery time is reached; the loaded batches are held back until then (see
+ * {@link #deferUntil(long, Runnable)}).
+ *
+ * Before releasing a job, a node leases it in the database until after its delivery time, and deletes it once the
+ * held back token batches have been dispatched. A node that fails in between leaves the job to be released again
+ * once the lease has expired: delivery is at-least-once.
+ */
+@Service
+public class PushMessageScheduler {
+
+    public static final String PROP_TICK_MS = "aerogear.scheduler.tick_ms";
+    public static final String PROP_WHEEL_SIZE = "aerogear.scheduler.wheel_size";
+    public static final String PROP_PRELOAD_SECONDS = "aerogear.scheduler.preload_seconds";
+    public static final String PROP_RELEASE_THREADS = "aerogear.scheduler.release_threads";
+    public static final String PROP_POLL_SECONDS = "aerogear.scheduler.poll_seconds";
+    public static final String PROP_LEASE_SECONDS = "aerogear.scheduler.lease_seconds";
+
+    // max number of due jobs loaded by one poll
+    private static final int POLL_BATCH_SIZE = 1000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Logger logger = LoggerFactory.getLogger(PushMessageScheduler.class);
+
+    @Inject
+    private ScheduledPushMessageService scheduledPushMessageService;
+    @Inject
+    private PushApplicationService pushApplicationService;
+    @Inject
+    private NotificationRouter notificationRouter;
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private TimingWheel<Runnable> wheel;
+    private ScheduledExecutorService ticker;
+    private ExecutorService releaseExecutor;
+    private long tickMs;
+    private long preloadMs;
+    private long pollMs;
+    private long leaseMs;
+    // IDs of the jobs in the timing wheel of this node
+    private final Set<String> enqueued = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void start() {
+        tickMs = config.getProperty(PROP_TICK_MS, 100);
+        preloadMs = TimeUnit.SECONDS.toMillis(config.getProperty(PROP_PRELOAD_SECONDS, 30));
+        pollMs = TimeUnit.SECONDS.toMillis(Math.max(1, config.getProperty(PROP_POLL_SECONDS, 10)));
+        leaseMs = TimeUnit.SECONDS.toMillis(Math.max(1, config.getProperty(PROP_LEASE_SECONDS, 120)));
+
+        wheel = new TimingWheel<>(tickMs, config.getProperty(PROP_WHEEL_SIZE, 512), System.currentTimeMillis());
+        releaseExecutor = Executors.newFixedThreadPool(config.getProperty(PROP_RELEASE_THREADS, 2));
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "push-message-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        ticker.execute(this::reload);
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        ticker.scheduleWithFixedDelay(this::poll, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        logger.debug("Stopping push message scheduler, pending jobs remain persisted");
+        ticker.shutdownNow();
+        releaseExecutor.shutdown();
+    }
+
+    /**
+     * Submits a push message request: delivers it right away or holds it until its delivery time.
+     *
+     * A relative {@link Config#getDelay()} is converted to an absolute {@link Config#getSendAt()} here.
+     *
+     * @param pushApplication the push application
+     * @param message the message
+     */
+    public void submit(PushApplication pushApplication, InternalUnifiedPushMessage message) {
+        final long now = System.currentTimeMillis();
+        final long sendAt = message.getConfig().resolveSendTime(now);
+
+        if (sendAt < 0) {
+            notificationRouter.submit(pushApplication, message);
+            return;
+        }
+
+        message.getConfig().setSendAt(new Date(sendAt));
+        message.getConfig().setDelay(null);
+
+        if (sendAt - preloadMs <= now) {
+            // due within the pre-loading window: token batches are held back by the TokenLoader
+            notificationRouter.submit(pushApplication, message);
+        } else {
+            schedule(pushApplication, message, sendAt);
+        }
+    }
+
+    /**
+     * Runs the given task once the given point in time has been reached; runs it right away if it is already due.
+     *
+     * @param timeMs epoch millis to run the task at
+     * @param task the task
+     */
+    public void deferUntil(long timeMs, Runnable task) {
+        if (!wheel.add(timeMs, task)) {
+            releaseExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Returns the delivery time of the message in epoch millis, or -1 if it can be delivered right away.
+     *
+     * @param message the message
+     * @return epoch millis or -1
+     */
+    public static long releaseTime(UnifiedPushMessage message) {
+        final Date sendAt = message.getConfig().getSendAt();
+        if (sendAt == null || sendAt.getTime() <= System.currentTimeMillis()) {
+            return -1;
+        }
+        return sendAt.getTime();
+    }
+
+    /**
+     * @return number of jobs and held back token batches waiting for their delivery time
+     */
+    public int getPendingCount() {
+        return wheel.size();
+    }
+
+    private void schedule(PushApplication pushApplication, InternalUnifiedPushMessage message, long sendAt) {
+        final ScheduledPushMessage job = new ScheduledPushMessage();
+        job.setPushApplicationId(pushApplication.getPushApplicationID());
+        job.setSendAt(new Date(sendAt));
+        try {
+            job.setRawJsonMessage(OBJECT_MAPPER.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unable to serialize push message for scheduled delivery", e);
+        }
+
+        scheduledPushMessageService.addScheduledPushMessage(job);
+        enqueue(job);
+
+        logger.info("Scheduled push message {} for delivery at {} (by {})", job.getId(), job.getSendAt(),
+                message.getClientIdentifier());
+    }
+
+    private void enqueue(ScheduledPushMessage job) {
+        final String jobId = job.getId();
+        if (enqueued.add(jobId)) {
+            deferUntil(job.getSendAt().getTime() - preloadMs, () -> release(jobId));
+        }
+    }
+
+    /**
+     * Rebuilds the timing wheel from the database, jobs which became due during a downtime are released right away.
+     */
+    private void reload() {
+        try {
+            final List<ScheduledPushMessage> jobs = scheduledPushMessageService.findAllPending();
+            jobs.forEach(this::enqueue);
+            logger.info("Loaded {} scheduled push messages", jobs.size());
+        } catch (Exception e) {
+            logger.error("Failed to load scheduled push messages", e);
+        }
+    }
+
+    /**
+     * Picks up the jobs that have to be released before the next poll, including those of other nodes and those whose
+     * lease has expired.
+     */
+    private void poll() {
+        try {
+            final Date dueBefore = new Date(System.currentTimeMillis() + preloadMs + pollMs);
+            scheduledPushMessageService.findDue(dueBefore, POLL_BATCH_SIZE).forEach(this::enqueue);
+        } catch (Exception e) {
+            // an exception would cancel the periodic task
+            logger.error("Failed to poll scheduled push messages", e);
+        }
+    }
+
+    private void tick() {
+        try {
+            for (Runnable task : wheel.advance(System.currentTimeMillis())) {
+                releaseExecutor.execute(task);
+            }
+        } catch (Exception e) {
+            // an exception would cancel the periodic task
+            logger.error("Failed to advance push message scheduler", e);
+        }
+    }
+
+    private void release(String jobId) {
+        try {
+            final ScheduledPushMessage job = scheduledPushMessageService.findById(jobId);
+            if (job == null) {
+                logger.debug("Scheduled push message {} was already released", jobId);
+                return;
+            }
+
+            // leasing the job makes sure only one node releases it, the lease covers the held back token batches
+            final long sendAt = job.getSendAt().getTime();
+            final long untilSendAt = Math.max(0, sendAt - System.currentTimeMillis());
+            if (!scheduledPushMessageService.claim(jobId, untilSendAt + leaseMs)) {
+                logger.debug("Scheduled push message {} was already released", jobId);
+                return;
+            }
+
+            final PushApplication pushApplication = pushApplicationService.findByPushApplicationID(job.getPushApplicationId());
+            if (pushApplication == null) {
+                logger.warn("Dropping scheduled push message {}, push application {} no longer exists", jobId,
+                        job.getPushApplicationId());
+                scheduledPushMessageService.complete(jobId);
+                return;
+            }
+
+            final InternalUnifiedPushMessage message;
+            try {
+                message = OBJECT_MAPPER.readValue(job.getRawJsonMessage(), InternalUnifiedPushMessage.class);
+            } catch (IOException e) {
+                logger.error("Dropping scheduled push message " + jobId + ", unable to read it", e);
+                scheduledPushMessageService.complete(jobId);
+                return;
+            }
+
+            logger.info("Releasing scheduled push message {} due at {}", jobId, job.getSendAt());
+            notificationRouter.submit(pushApplication, message);
+
+            // the token batches are held in memory until the delivery time, the job is kept until they are dispatched
+            deferUntil(sendAt + tickMs, () -> complete(jobId));
+        } catch (Exception e) {
+            // the job stays leased, it is picked up again by a poll once the lease has expired
+            logger.error("Failed to release scheduled push message " + jobId + ", will retry", e);
+        } finally {
+            enqueued.remove(jobId);
+        }
+    }
+
+    private void complete(String jobId) {
+        try {
+            scheduledPushMessageService.complete(jobId);
+        } catch (Exception e) {
+            // released again once the lease has expired
+            logger.error("Failed to complete scheduled push message " + jobId, e);
+        }
+    }
+}
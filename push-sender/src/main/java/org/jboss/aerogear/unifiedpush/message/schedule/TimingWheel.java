@@ -0,0 +1,156 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.schedule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel holding items until their expiration time is reached.
+ *
+ * The lowest wheel has {@link #wheelSize} buckets, each spanning {@link #tickMs} milliseconds. Items which
+ * expire beyond the range of a wheel are handed to a lazily created overflow wheel, whose ticks span the whole
+ * range of the wheel below. Whenever the overflow wheel advances, its current bucket is cascaded down again.
+ * Adding an item and advancing by one tick is therefore O(1), regardless of how far in the future items expire.
+ * Items are released within one tick after their expiration time, never before.
+ *
+ * The wheel is not bound to a clock; it is driven by calls to {@link #advance(long)}.
+ *
+ * @param <T> type of the items held by the wheel
+ */
+public class TimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final List<List<Entry<T>>> buckets;
+
+    private long currentTime;
+    private int size;
+    private TimingWheel<T> overflowWheel;
+
+    /**
+     * Creates new timing wheel
+     *
+     * @param tickMs duration of one tick (bucket) in milliseconds
+     * @param wheelSize number of buckets per wheel
+     * @param startMs the initial time of the wheel in epoch millis
+     */
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("tickMs must be positive and wheelSize greater than one");
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.currentTime = startMs - (startMs % tickMs);
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Adds an item to the wheel.
+     *
+     * @param expirationMs epoch millis the item expires at
+     * @param item the item
+     * @return false if the item is already due (and therefore not added), true otherwise
+     */
+    public synchronized boolean add(long expirationMs, T item) {
+        // rounding up to the next tick guarantees that items never fire early, at most one tick late
+        if (add(new Entry<>(expirationMs + tickMs - 1, item))) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Advances the wheel up to the given time and returns all items that expired meanwhile.
+     *
+     * @param nowMs the current time in epoch millis
+     * @return expired items, ordered by the tick they expired in
+     */
+    public synchronized List<T> advance(long nowMs) {
+        final List<T> expired = new ArrayList<>();
+        while (currentTime + tickMs <= nowMs) {
+            final List<Entry<T>> drained = new ArrayList<>();
+            tick(drained);
+            for (Entry<T> entry : drained) {
+                // entries from overflow wheels land in a lower bucket, the rest is due
+                if (!add(entry)) {
+                    expired.add(entry.item);
+                    size--;
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the number of items held by the wheel
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private boolean add(Entry<T> entry) {
+        if (entry.expirationMs < currentTime + tickMs) {
+            return false;
+        } else if (entry.expirationMs < currentTime + interval) {
+            buckets.get(bucketIndex(entry.expirationMs)).add(entry);
+            return true;
+        } else {
+            if (overflowWheel == null) {
+                overflowWheel = new TimingWheel<>(interval, wheelSize, currentTime);
+            }
+            return overflowWheel.add(entry);
+        }
+    }
+
+    /**
+     * Moves the wheel one tick forward and drains the bucket of the new current time, cascading into
+     * the overflow wheel first whenever a full rotation has been completed.
+     */
+    private void tick(List<Entry<T>> drained) {
+        currentTime += tickMs;
+        if (overflowWheel != null && currentTime % interval == 0) {
+            overflowWheel.tick(drained);
+        }
+
+        final List<Entry<T>> bucket = buckets.get(bucketIndex(currentTime));
+        if (!bucket.isEmpty()) {
+            drained.addAll(bucket);
+            bucket.clear();
+        }
+    }
+
+    private int bucketIndex(long timeMs) {
+        return (int) ((timeMs / tickMs) % wheelSize);
+    }
+
+    private static class Entry<T> {
+        private final long expirationMs;
+        private final T item;
+
+        Entry(long expirationMs, T item) {
+            this.expirationMs = expirationMs;
+            this.item = item;
+        }
+    }
+}
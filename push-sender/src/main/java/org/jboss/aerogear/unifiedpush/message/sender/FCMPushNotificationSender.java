@@ -82,6 +82,30 @@ public class FCMPushNotificationSender implements PushNotificationSender {
         final List<String> pushTargets = new ArrayList<>(tokens);
         final AndroidVariant androidVariant = (AndroidVariant) variant;
 
+        final Message fcmMessage = createFcmMessage(pushMessage, pushMessageInformationId);
+
+        // send it out.....
+        try {
+            logger.debug("Sending transformed FCM payload: {}", fcmMessage);
+
+            final ConfigurableFCMSender sender = new ConfigurableFCMSender(androidVariant.getGoogleKey());
+
+            // send out a message to a batch of devices...
+            processFCM(androidVariant, pushTargets, fcmMessage , sender);
+
+            logger.debug("Message batch to FCM has been submitted");
+            callback.onSuccess();
+
+        } catch (Exception e) {
+            // FCM exceptions:
+            callback.onError(String.format("Error sending payload to FCM server: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Renders the FCM payload of the given message.
+     */
+    static Message createFcmMessage(UnifiedPushMessage pushMessage, String pushMessageInformationId) {
         // payload builder:
         Builder fcmBuilder = new Message.Builder();
 
@@ -115,24 +139,7 @@ public class FCMPushNotificationSender implements PushNotificationSender {
         //add the aerogear-push-id
         fcmBuilder.addData(InternalUnifiedPushMessage.PUSH_MESSAGE_ID, pushMessageInformationId);
 
-        Message fcmMessage = fcmBuilder.build();
-
-        // send it out.....
-        try {
-            logger.debug("Sending transformed FCM payload: {}", fcmMessage);
-
-            final ConfigurableFCMSender sender = new ConfigurableFCMSender(androidVariant.getGoogleKey());
-
-            // send out a message to a batch of devices...
-            processFCM(androidVariant, pushTargets, fcmMessage , sender);
-
-            logger.debug("Message batch to FCM has been submitted");
-            callback.onSuccess();
-
-        } catch (Exception e) {
-            // FCM exceptions:
-            callback.onError(String.format("Error sending payload to FCM server: %s", e.getMessage()));
-        }
+        return fcmBuilder.build();
     }
 
     /**
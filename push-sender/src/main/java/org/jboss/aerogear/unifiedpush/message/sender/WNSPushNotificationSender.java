@@ -35,6 +35,7 @@ import org.jboss.aerogear.unifiedpush.api.WindowsWNSVariant;
 import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
 import org.jboss.aerogear.unifiedpush.message.Message;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.cache.WnsServiceCache;
 import org.jboss.aerogear.unifiedpush.message.windows.Windows;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationAsyncService;
 import org.slf4j.Logger;
@@ -68,6 +69,8 @@ public class WNSPushNotificationSender implements PushNotificationSender {
 
     @Inject
     private ClientInstallationAsyncService clientInstallationAsyncService;
+    @Inject
+    private WnsServiceCache wnsServiceCache;
 
     @Override
     public void sendPushMessage(Variant variant, Collection<String> clientIdentifiers, UnifiedPushMessage pushMessage, String pushMessageInformationId, NotificationSenderCallback senderCallback) {
@@ -79,7 +82,12 @@ public class WNSPushNotificationSender implements PushNotificationSender {
         }
 
         final WindowsWNSVariant windowsVariant = (WindowsWNSVariant) variant;
-        WnsService wnsService = new WnsService(windowsVariant.getSid(), windowsVariant.getClientSecret(), false);
+        final WnsService wnsService = wnsServiceCache.dequeueOrCreateNewService(pushMessageInformationId,
+                variant.getVariantID(), () -> new WnsService(windowsVariant.getSid(), windowsVariant.getClientSecret(), false));
+        if (wnsService == null) {
+            senderCallback.onError("Unable to obtain a WNS service within the acquiring timeout");
+            return;
+        }
 
         Set<String> expiredClientIdentifiers = new HashSet<>(clientIdentifiers.size());
         ArrayList<String> channelUris = new ArrayList<>(clientIdentifiers);
@@ -124,6 +132,8 @@ public class WNSPushNotificationSender implements PushNotificationSender {
             senderCallback.onSuccess();
         } catch (WnsException | IllegalArgumentException exception) {
             senderCallback.onError(exception.getMessage());
+        } finally {
+            wnsServiceCache.queueFreedUpService(pushMessageInformationId, variant.getVariantID(), wnsService);
         }
     }
 
@@ -20,6 +20,7 @@ import static org.jboss.aerogear.unifiedpush.system.ConfigurationUtils.tryGetInt
 import static org.jboss.aerogear.unifiedpush.system.ConfigurationUtils.tryGetProperty;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -64,6 +65,9 @@ public class PushyApnsSender implements PushNotificationSender {
     public static final String CUSTOM_AEROGEAR_APNS_PUSH_PORT = "custom.aerogear.apns.push.port";
     private static final String customAerogearApnsPushHost = tryGetProperty(CUSTOM_AEROGEAR_APNS_PUSH_HOST);
     private static final Integer customAerogearApnsPushPort = tryGetIntegerProperty(CUSTOM_AEROGEAR_APNS_PUSH_PORT);
+    // PEM certificate chain to trust instead of the default trust store, for custom hosts with self-signed certificates
+    public static final String CUSTOM_AEROGEAR_APNS_TRUSTED_CERTIFICATE = "custom.aerogear.apns.trusted.certificate";
+    private static final String customAerogearApnsTrustedCertificate = tryGetProperty(CUSTOM_AEROGEAR_APNS_TRUSTED_CERTIFICATE);
 
     private final ConcurrentSkipListSet<String> invalidTokens = new ConcurrentSkipListSet<>();
 
@@ -150,7 +154,7 @@ public class PushyApnsSender implements PushNotificationSender {
         }
     }
 
-    private String createPushPayload(final Message message, final String pushMessageInformationId) {
+    static String createPushPayload(final Message message, final String pushMessageInformationId) {
         final ApnsPayloadBuilder payloadBuilder = new ApnsPayloadBuilder();
         final APNs apns = message.getApns();
 
@@ -205,6 +209,10 @@ public class PushyApnsSender implements PushNotificationSender {
                 final ApnsClientBuilder builder = new ApnsClientBuilder();
                 builder.setClientCredentials(stream, iOSVariant.getPassphrase());
 
+                if (customAerogearApnsTrustedCertificate != null) {
+                    builder.setTrustedServerCertificateChain(new File(customAerogearApnsTrustedCertificate));
+                }
+
                 if (ProxyConfiguration.hasHttpProxyConfig()) {
                     if (ProxyConfiguration.hasBasicAuth()) {
                         String user =  ProxyConfiguration.getProxyUser();
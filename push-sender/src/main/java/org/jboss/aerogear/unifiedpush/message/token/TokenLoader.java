@@ -36,7 +36,10 @@ import org.jboss.aerogear.unifiedpush.message.event.AllBatchesLoadedEvent;
 import org.jboss.aerogear.unifiedpush.message.event.BatchLoadedEvent;
 import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
 import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
+import org.jboss.aerogear.unifiedpush.message.metrics.PipelineMetrics;
+import org.jboss.aerogear.unifiedpush.message.schedule.PushMessageScheduler;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.service.metrics.DeliveryCounterAggregator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -78,6 +81,12 @@ public class TokenLoader {
 	private ApplicationContext context;
 	@Inject
 	private TokenLoaderWrapper wrapper;
+	@Inject
+	private PushMessageScheduler pushMessageScheduler;
+	@Inject
+	private DeliveryCounterAggregator deliveryCounters;
+	@Inject
+	private PipelineMetrics pipelineMetrics;
 
 	@PostConstruct
 	public void subscribe() {
@@ -180,6 +189,7 @@ public class TokenLoader {
 					// to make sure it's properly read from all block
 					++serialId;
 
+					final long batchStarted = pipelineMetrics.start();
 					final Set<String> tokens = new TreeSet<>();
 
 					// On Android, the first batch is for GCM3 topics
@@ -187,19 +197,23 @@ public class TokenLoader {
 					if (isAndroid && batchNumber == 0 && !topics.isEmpty()) {
 						tokens.addAll(topics);
 					} else {
-						for (int i = 0; i < configuration.batchSize() && tokenStream.next(); i++) {
-							lastTokenInBatch = tokenStream.get();
-							tokens.add(lastTokenInBatch);
-							tokensLoaded += 1;
+						final String lastToken = TokenLoaderUtils.loadBatch(tokenStream, configuration.batchSize(), tokens);
+						if (lastToken != null) {
+							lastTokenInBatch = lastToken;
+							tokensLoaded += tokens.size();
 						}
 					}
 
 					if (tokens.size() > 0) {
+						pipelineMetrics.tokenBatchLoaded(variantType, batchStarted, tokens.size());
 						if (tryToDispatchTokens(new MessageHolderWithTokens(msg.getPushMessageInformation(), message,
 								variant, tokens, serialId))) {
+							deliveryCounters.tokensLoaded(msg.getPushMessageInformation().getId(),
+									variant.getVariantID(), tokens.size());
 							logger.info(String.format("Loaded batch #%s, containing %d tokens, for %s variant (%s)",
 									serialId, tokens.size(), variant.getType().getTypeName(), variant.getVariantID()));
 						} else {
+							pipelineMetrics.tokenBatchRejected(variantType);
 							logger.debug(String.format(
 									"Failing token loading transaction for batch token #%s for %s variant (%s), since previous batch failed",
 									serialId, variant.getType().getTypeName(), variant.getVariantID()));
@@ -249,10 +263,24 @@ public class TokenLoader {
 	 * Tries to dispatch tokens; returns true if tokens were successfully
 	 * queued.
 	 *
+	 * Batches of a message that carries a delivery time in the future (the
+	 * message was released early, to pre-load its tokens) are held back by the
+	 * {@link PushMessageScheduler} until the delivery time is reached.
+	 *
 	 * @return returns true if tokens were successfully queued; returns false if
 	 *         failed.
 	 */
 	private boolean tryToDispatchTokens(MessageHolderWithTokens msg) {
+		final long releaseTime = PushMessageScheduler.releaseTime(msg.getUnifiedPushMessage());
+		if (releaseTime > 0) {
+			pushMessageScheduler.deferUntil(releaseTime, () -> queueTokens(msg));
+			return true;
+		}
+
+		return queueTokens(msg);
+	}
+
+	private boolean queueTokens(MessageHolderWithTokens msg) {
 		try {
 			if (!dispatchTokensEvent.alive()){
 				logger.error("Unable to send MessageHolderWithTokens, Flux is not alive");
@@ -21,6 +21,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
  
+import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
 import org.jboss.aerogear.unifiedpush.message.Criteria;
 
 import com.google.android.gcm.server.Constants;
@@ -31,6 +32,24 @@ public final class TokenLoaderUtils {
         // no-op
     }
 
+    /**
+     * Reads up to {@code batchSize} device tokens from the (distinct) token stream into the given batch.
+     *
+     * @param tokenStream the device token stream
+     * @param batchSize maximum number of tokens to read
+     * @param batch collection the tokens are added to
+     *
+     * @return the last token read, or {@code null} if the stream had no more tokens
+     */
+    public static String loadBatch(final ResultsStream<String> tokenStream, final int batchSize, final Set<String> batch) {
+        String lastToken = null;
+        for (int i = 0; i < batchSize && tokenStream.next(); i++) {
+            lastToken = tokenStream.get();
+            batch.add(lastToken);
+        }
+        return lastToken;
+    }
+
     /**
      * Extracts GCM topic names out of a given Criteria object (e.g. /topics/nameOfcategory).
      * If the Criteria is empty, the given variant ID will be returned as topic name (/topics/variantID)
@@ -0,0 +1,136 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AbstractServiceCacheTest {
+
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AbstractServiceCache.ServiceConstructor<Integer> constructor = sequence::incrementAndGet;
+
+    @Test
+    public void testReturnedServiceIsHandedToWaiter() throws Exception {
+        final AbstractServiceCache<Integer> cache = new AbstractServiceCache<Integer>(1, 10000) {};
+
+        final Integer first = cache.dequeueOrCreateNewService("msg", "variant", constructor);
+        final CompletableFuture<Integer> waiting = cache.acquire("msg", "variant", constructor);
+        assertThat(waiting).isNotDone();
+
+        cache.queueFreedUpService("msg", "variant", first);
+
+        assertThat(waiting.get(1, TimeUnit.SECONDS)).isEqualTo(first);
+        assertThat(cache.getStats().getCreated()).isEqualTo(1);
+        assertThat(cache.getStats().getWaiting()).isZero();
+    }
+
+    @Test
+    public void testFreedSlotGoesToWaitersInOrder() throws Exception {
+        final AbstractServiceCache<Integer> cache = new AbstractServiceCache<Integer>(1, 10000) {};
+
+        cache.dequeueOrCreateNewService("msg", "variant", constructor);
+        final CompletableFuture<Integer> firstWaiter = cache.acquire("msg", "variant", constructor);
+        final CompletableFuture<Integer> secondWaiter = cache.acquire("msg", "variant", constructor);
+
+        cache.freeUpSlot("msg", "variant");
+
+        assertThat(firstWaiter.get(1, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(secondWaiter).isNotDone();
+    }
+
+    @Test
+    public void testWaiterTimesOutWithNull() {
+        final AbstractServiceCache<Integer> cache = new AbstractServiceCache<Integer>(1, 50) {};
+
+        cache.dequeueOrCreateNewService("msg", "variant", constructor);
+
+        assertThat(cache.dequeueOrCreateNewService("msg", "variant", constructor)).isNull();
+        assertThat(cache.getStats().getTimedOut()).isEqualTo(1);
+    }
+
+    @Test
+    public void testNullServiceIsRetriedUntilCreated() {
+        final AtomicInteger attempts = new AtomicInteger();
+        final AbstractServiceCache<Integer> cache = new AbstractServiceCache<Integer>(1, 10000) {};
+
+        final Integer service = cache.dequeueOrCreateNewService("msg", "variant",
+                () -> attempts.incrementAndGet() < 3 ? null : sequence.incrementAndGet());
+
+        assertThat(service).isEqualTo(1);
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(cache.getStats().getInstances()).isEqualTo(1);
+    }
+
+    @Test
+    public void testNullServiceIsRetriedUntilTimeout() {
+        final AtomicInteger attempts = new AtomicInteger();
+        final AbstractServiceCache<Integer> cache = new AbstractServiceCache<Integer>(1, 300) {};
+
+        final long start = System.currentTimeMillis();
+        assertThat(cache.dequeueOrCreateNewService("msg", "variant", () -> {
+            attempts.incrementAndGet();
+            return null;
+        })).isNull();
+
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(200);
+        assertThat(attempts.get()).isGreaterThan(1);
+        assertThat(cache.getStats().getTimedOut()).isEqualTo(1);
+        assertThat(cache.getStats().getInstances()).isZero();
+    }
+
+    @Test
+    public void testIdleServicesAreEvicted() {
+        final List<Integer> evicted = new ArrayList<>();
+        final AbstractServiceCache<Integer> cache = new AbstractServiceCache<Integer>(2, 50, 10) {
+            @Override
+            protected void onEvict(Integer service) {
+                evicted.add(service);
+            }
+        };
+        cache.shutdown();
+
+        final Integer service = cache.dequeueOrCreateNewService("msg", "variant", constructor);
+        cache.queueFreedUpService("msg", "variant", service);
+        cache.evictIdleServices();
+        assertThat(evicted).isEmpty();
+
+        sleep(20);
+        cache.evictIdleServices();
+
+        assertThat(evicted).containsExactly(service);
+        assertThat(cache.dequeue("msg", "variant")).isNull();
+        assertThat(cache.getStats().getInstances()).isZero();
+        // the slot is free again
+        assertThat(cache.dequeueOrCreateNewService("msg", "variant", constructor)).isEqualTo(2);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
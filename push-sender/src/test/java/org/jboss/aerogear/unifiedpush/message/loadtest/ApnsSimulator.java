@@ -0,0 +1,229 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.message.sender.apns.PushyApnsSender;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2FrameStream;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * APNs (HTTP/2 provider API) stand-in. One request carries one notification; accepted requests are answered with
+ * {@code 200} and an {@code apns-id}, failed ones with {@code 500 InternalServerError} and throttled ones with
+ * {@code 429 TooManyRequests}.
+ *
+ * The server uses a self-signed certificate that the sender trusts through
+ * {@link PushyApnsSender#CUSTOM_AEROGEAR_APNS_TRUSTED_CERTIFICATE}; client certificates are accepted without
+ * verification, see {@link #clientCertificate(String)} for a keystore usable as iOS variant certificate.
+ */
+public class ApnsSimulator implements AutoCloseable {
+
+    private static final String NETWORK = "apns";
+
+    private final SimulatorSettings settings;
+    private final DeliveryRecorder recorder;
+
+    private SelfSignedCertificate serverCertificate;
+    private NioEventLoopGroup group;
+    private Channel channel;
+
+    public ApnsSimulator(SimulatorSettings settings, DeliveryRecorder recorder) {
+        this.settings = settings;
+        this.recorder = recorder;
+    }
+
+    public void start() throws Exception {
+        serverCertificate = new SelfSignedCertificate("localhost");
+        final SslProvider provider = SslProvider.isAlpnSupported(SslProvider.OPENSSL) ? SslProvider.OPENSSL : SslProvider.JDK;
+        final SslContext sslContext = SslContextBuilder.forServer(serverCertificate.certificate(), serverCertificate.privateKey())
+                .sslProvider(provider)
+                .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                .clientAuth(ClientAuth.OPTIONAL)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .applicationProtocolConfig(new ApplicationProtocolConfig(
+                        ApplicationProtocolConfig.Protocol.ALPN,
+                        ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                        ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                        ApplicationProtocolNames.HTTP_2))
+                .build();
+
+        group = new NioEventLoopGroup();
+        channel = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(
+                                sslContext.newHandler(ch.alloc()),
+                                Http2FrameCodecBuilder.forServer().build(),
+                                new NotificationHandler());
+                    }
+                })
+                .bind("127.0.0.1", 0).sync().channel();
+    }
+
+    public String host() {
+        return "127.0.0.1";
+    }
+
+    public int port() {
+        return ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    /**
+     * @return PEM file of the server certificate, to be trusted by the APNs client
+     */
+    public File trustedCertificate() {
+        return serverCertificate.certificate();
+    }
+
+    /**
+     * Creates a PKCS#12 keystore with a self-signed client certificate whose subject carries the given topic as
+     * {@code UID}, the way Apple issued push certificates do.
+     */
+    public static byte[] clientCertificate(String topic, String passphrase) throws Exception {
+        // SelfSignedCertificate prefixes the name with "CN=", the remainder ends up as additional RDN
+        final SelfSignedCertificate certificate = new SelfSignedCertificate("loadtest, UID=" + topic);
+        try {
+            final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(null, null);
+            keyStore.setKeyEntry("apns", certificate.key(), passphrase.toCharArray(),
+                    new Certificate[] { certificate.cert() });
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            keyStore.store(out, passphrase.toCharArray());
+            return out.toByteArray();
+        } finally {
+            certificate.delete();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            channel.close().syncUninterruptibly();
+        }
+        if (group != null) {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+        if (serverCertificate != null) {
+            serverCertificate.delete();
+        }
+    }
+
+    /**
+     * Handles the notifications of one connection, streams are read on the channel's event loop only.
+     */
+    private class NotificationHandler extends ChannelInboundHandlerAdapter {
+
+        private final Map<Http2FrameStream, StringBuilder> payloads = new HashMap<>();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                if (msg instanceof Http2HeadersFrame) {
+                    final Http2HeadersFrame headers = (Http2HeadersFrame) msg;
+                    payloads.put(headers.stream(), new StringBuilder());
+                    if (headers.isEndStream()) {
+                        respond(ctx, headers.stream(), payloads.remove(headers.stream()).toString());
+                    }
+                } else if (msg instanceof Http2DataFrame) {
+                    final Http2DataFrame data = (Http2DataFrame) msg;
+                    final StringBuilder payload = payloads.get(data.stream());
+                    if (payload != null) {
+                        payload.append(data.content().toString(StandardCharsets.UTF_8));
+                        if (data.isEndStream()) {
+                            respond(ctx, data.stream(), payloads.remove(data.stream()).toString());
+                        }
+                    }
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        private void respond(ChannelHandlerContext ctx, Http2FrameStream stream, String payload) {
+            if (settings.throttle()) {
+                recorder.throttled(NETWORK, 1);
+                error(ctx, stream, "429", "TooManyRequests");
+                return;
+            }
+
+            ctx.executor().schedule(() -> {
+                if (settings.nextIsError()) {
+                    recorder.failed(NETWORK, 1);
+                    error(ctx, stream, "500", "InternalServerError");
+                    return;
+                }
+
+                final Http2Headers headers = new DefaultHttp2Headers()
+                        .status("200")
+                        .add("apns-id", UUID.randomUUID().toString());
+                ctx.writeAndFlush(new DefaultHttp2HeadersFrame(headers, true).stream(stream));
+                recorder.acknowledged(NETWORK, payload, 1);
+            }, settings.nextLatencyMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private void error(ChannelHandlerContext ctx, Http2FrameStream stream, String status, String reason) {
+            final Http2Headers headers = new DefaultHttp2Headers()
+                    .status(status)
+                    .add("apns-id", UUID.randomUUID().toString())
+                    .add("content-type", "application/json");
+            final ByteBuf body = Unpooled.copiedBuffer("{\"reason\":\"" + reason + "\"}", StandardCharsets.UTF_8);
+            ctx.write(new DefaultHttp2HeadersFrame(headers, false).stream(stream));
+            ctx.writeAndFlush(new DefaultHttp2DataFrame(body, true).stream(stream));
+        }
+    }
+}
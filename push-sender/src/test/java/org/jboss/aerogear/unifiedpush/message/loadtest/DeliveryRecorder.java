@@ -0,0 +1,140 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.loadtest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Correlates push messages submitted by the harness with the requests the simulators receive.
+ *
+ * Every message carries a marker ({@link #marker(long)}) in its alert and SimplePush version; simulators report the
+ * payloads they acknowledge and the recorder derives the enqueue-to-ACK latency from the submission time of the
+ * marked message.
+ */
+public class DeliveryRecorder {
+
+    private static final Pattern MARKER = Pattern.compile("loadtest-(\\d+)");
+
+    private final Map<Long, Long> submitted = new ConcurrentHashMap<>();
+    private final Map<String, NetworkStats> networks = new ConcurrentHashMap<>();
+    private final AtomicLong firstSubmit = new AtomicLong();
+
+    public static String marker(long sequence) {
+        return "loadtest-" + sequence;
+    }
+
+    public void submitted(long sequence) {
+        final long now = System.nanoTime();
+        firstSubmit.compareAndSet(0, now);
+        submitted.put(sequence, now);
+    }
+
+    /**
+     * Records {@code deliveries} acknowledged notifications of the message marked in the given payload.
+     */
+    public void acknowledged(String network, String payload, int deliveries) {
+        final long now = System.nanoTime();
+        final Long sequence = sequence(payload);
+        final Long submittedAt = sequence == null ? null : submitted.get(sequence);
+        final NetworkStats stats = stats(network);
+        stats.acknowledged.add(deliveries);
+        stats.lastAck.accumulateAndGet(now, Math::max);
+        if (submittedAt != null) {
+            stats.latency(now - submittedAt, deliveries);
+        }
+    }
+
+    public void failed(String network, int deliveries) {
+        stats(network).failed.add(deliveries);
+    }
+
+    public void throttled(String network, int deliveries) {
+        stats(network).throttled.add(deliveries);
+    }
+
+    /**
+     * @return number of notifications that were either acknowledged, failed or throttled by the given network
+     */
+    public long completed(String network) {
+        final NetworkStats stats = stats(network);
+        return stats.acknowledged.sum() + stats.failed.sum() + stats.throttled.sum();
+    }
+
+    public String report(String network) {
+        final NetworkStats stats = stats(network);
+        final long acknowledged = stats.acknowledged.sum();
+        final double seconds = Math.max(1, stats.lastAck.get() - firstSubmit.get()) / (double) TimeUnit.SECONDS.toNanos(1);
+        return String.format("%-10s acked=%d failed=%d throttled=%d throughput=%.1f msg/s p50=%.1fms p99=%.1fms",
+                network, acknowledged, stats.failed.sum(), stats.throttled.sum(),
+                stats.lastAck.get() == 0 ? 0 : acknowledged / seconds,
+                stats.percentileMillis(0.50), stats.percentileMillis(0.99));
+    }
+
+    private static Long sequence(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        final Matcher matcher = MARKER.matcher(payload);
+        return matcher.find() ? Long.valueOf(matcher.group(1)) : null;
+    }
+
+    private NetworkStats stats(String network) {
+        return networks.computeIfAbsent(network, n -> new NetworkStats());
+    }
+
+    private static final class NetworkStats {
+        private final LongAdder acknowledged = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final AtomicLong lastAck = new AtomicLong();
+        // pairs of latency (nanos) and number of deliveries it applies to
+        private final List<long[]> latencies = new ArrayList<>();
+
+        private synchronized void latency(long nanos, int deliveries) {
+            latencies.add(new long[] { nanos, deliveries });
+        }
+
+        private synchronized double percentileMillis(double percentile) {
+            if (latencies.isEmpty()) {
+                return 0;
+            }
+            latencies.sort(Comparator.comparingLong(sample -> sample[0]));
+            long total = 0;
+            for (long[] sample : latencies) {
+                total += sample[1];
+            }
+            final long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (long[] sample : latencies) {
+                seen += sample[1];
+                if (seen >= rank) {
+                    return sample[0] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+                }
+            }
+            return latencies.get(latencies.size() - 1)[0] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.loadtest;
+
+import java.io.IOException;
+
+import org.jboss.aerogear.unifiedpush.message.sender.fcm.ConfigurableFCMSender;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * FCM (legacy HTTP API) stand-in, wired to the sender through
+ * {@link ConfigurableFCMSender#CUSTOM_AEROGEAR_FCM_PUSH_HOST}.
+ */
+public class FcmSimulator extends HttpPushNetworkSimulator {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    public FcmSimulator(SimulatorSettings settings, DeliveryRecorder recorder) {
+        super("fcm", "/fcm/send", settings, recorder);
+    }
+
+    @Override
+    protected int deliveries(HttpExchange exchange, String body) throws IOException {
+        final JsonNode registrationIds = OBJECT_MAPPER.readTree(body).get("registration_ids");
+        // topic requests ("to") address a single target
+        return registrationIds == null ? 1 : registrationIds.size();
+    }
+
+    @Override
+    protected String success(String body, int deliveries) throws IOException {
+        final ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        response.put("multicast_id", System.nanoTime());
+        response.put("success", deliveries);
+        response.put("failure", 0);
+        response.put("canonical_ids", 0);
+        final ArrayNode results = response.putArray("results");
+        for (int i = 0; i < deliveries; i++) {
+            results.addObject().put("message_id", "0:" + System.nanoTime());
+        }
+        return OBJECT_MAPPER.writeValueAsString(response);
+    }
+
+    @Override
+    protected int throttledStatus() {
+        // FCM signals overload with 503 / Unavailable
+        return 503;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP/1.1 stand-in for a push network, applying the configured {@link SimulatorSettings} to every request.
+ */
+public abstract class HttpPushNetworkSimulator implements AutoCloseable {
+
+    protected final String network;
+    protected final SimulatorSettings settings;
+    protected final DeliveryRecorder recorder;
+
+    private final String path;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    protected HttpPushNetworkSimulator(String network, String path, SimulatorSettings settings, DeliveryRecorder recorder) {
+        this.network = network;
+        this.path = path;
+        this.settings = settings;
+        this.recorder = recorder;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        // latency is simulated by blocking the handling thread, like a remote server holding the connection
+        executor = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, network + "-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(path, this::handle);
+        server.start();
+    }
+
+    /**
+     * @return base URL of the simulator, including the context path
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String body = read(exchange.getRequestBody());
+            final int deliveries = deliveries(exchange, body);
+
+            if (settings.throttle()) {
+                recorder.throttled(network, deliveries);
+                respond(exchange, throttledStatus(), "");
+                return;
+            }
+
+            sleep(settings.nextLatencyMillis());
+
+            if (settings.nextIsError()) {
+                recorder.failed(network, deliveries);
+                respond(exchange, 500, "");
+                return;
+            }
+
+            recorder.acknowledged(network, body, deliveries);
+            respond(exchange, 200, success(body, deliveries));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return number of notifications carried by the request
+     */
+    protected abstract int deliveries(HttpExchange exchange, String body) throws IOException;
+
+    /**
+     * @return response body of an accepted request
+     */
+    protected abstract String success(String body, int deliveries) throws IOException;
+
+    protected int throttledStatus() {
+        return 429;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
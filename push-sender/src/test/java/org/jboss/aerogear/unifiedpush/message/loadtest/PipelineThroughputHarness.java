@@ -0,0 +1,211 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.api.PushApplication;
+import org.jboss.aerogear.unifiedpush.api.SimplePushVariant;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.iOSVariant;
+import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.NotificationRouter;
+import org.jboss.aerogear.unifiedpush.message.SenderConfig;
+import org.jboss.aerogear.unifiedpush.message.sender.apns.PushyApnsSender;
+import org.jboss.aerogear.unifiedpush.message.sender.fcm.ConfigurableFCMSender;
+import org.jboss.aerogear.unifiedpush.service.AbstractNoCassandraServiceTest;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
+import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+
+/**
+ * End-to-end throughput harness: boots the sender pipeline ({@link NotificationRouter} through the push network
+ * senders) against in-process push network simulators, seeds installations and reports, per network, the delivered
+ * messages per second and the p50 / p99 enqueue-to-ACK latency.
+ *
+ * Not part of the regular test run (the class name does not match the surefire includes), run it explicitly:
+ *
+ * <pre>
+ * mvn -pl push-sender test -Dtest=PipelineThroughputHarness -Dloadtest.installations=10000 -Dloadtest.messages=10 \
+ *     -Dloadtest.apns.latency_ms=20 -Dloadtest.fcm.error_rate=0.01 -Dloadtest.simplepush.max_per_second=2000
+ * </pre>
+ *
+ * See {@link SimulatorSettings} for the per network settings. WNS is not simulated: the WNS client library
+ * authenticates against a fixed Microsoft endpoint that cannot be redirected.
+ */
+@ContextConfiguration(classes = { SenderConfig.class })
+@DirtiesContext(classMode = ClassMode.BEFORE_CLASS)
+public class PipelineThroughputHarness extends AbstractNoCassandraServiceTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineThroughputHarness.class);
+
+    private static final String DEVICE_TYPE = "loadtest";
+    private static final String APNS_TOPIC = "org.aerogear.loadtest";
+    private static final String APNS_PASSPHRASE = "loadtest";
+    private static final int SEED_CHUNK = 10000;
+
+    private static final int INSTALLATIONS = Integer.getInteger("loadtest.installations", 1000);
+    private static final int MESSAGES = Integer.getInteger("loadtest.messages", 5);
+    private static final long TIMEOUT_SECONDS = Long.getLong("loadtest.timeout_seconds", 300);
+
+    private static DeliveryRecorder recorder;
+    private static ApnsSimulator apns;
+    private static FcmSimulator fcm;
+    private static SimplePushSimulator simplePush;
+
+    @Inject
+    private NotificationRouter router;
+    @Inject
+    private GenericVariantService variantService;
+    @Inject
+    private ClientInstallationService installationService;
+
+    @BeforeClass
+    public static void startSimulators() throws Exception {
+        recorder = new DeliveryRecorder();
+
+        apns = new ApnsSimulator(SimulatorSettings.fromSystemProperties("apns"), recorder);
+        apns.start();
+        fcm = new FcmSimulator(SimulatorSettings.fromSystemProperties("fcm"), recorder);
+        fcm.start();
+        simplePush = new SimplePushSimulator(SimulatorSettings.fromSystemProperties("simplepush"), recorder);
+        simplePush.start();
+
+        // read by the senders when they are first used, i.e. after this method
+        System.setProperty(PushyApnsSender.CUSTOM_AEROGEAR_APNS_PUSH_HOST, apns.host());
+        System.setProperty(PushyApnsSender.CUSTOM_AEROGEAR_APNS_PUSH_PORT, String.valueOf(apns.port()));
+        System.setProperty(PushyApnsSender.CUSTOM_AEROGEAR_APNS_TRUSTED_CERTIFICATE, apns.trustedCertificate().getAbsolutePath());
+        System.setProperty(ConfigurableFCMSender.CUSTOM_AEROGEAR_FCM_PUSH_HOST, fcm.url());
+    }
+
+    @AfterClass
+    public static void stopSimulators() {
+        if (apns != null) {
+            apns.close();
+        }
+        for (HttpPushNetworkSimulator simulator : Arrays.asList(fcm, simplePush)) {
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+
+    @Override
+    protected void specificSetup() {
+        // no-op
+    }
+
+    @Test
+    public void measureThroughput() throws Exception {
+        final LoggedInUser user = new LoggedInUser(DEFAULT_USER);
+        final PushApplication app = new PushApplication();
+        app.setName("loadtest-" + UUID.randomUUID());
+        pushApplicationService.addPushApplication(app, user);
+
+        final iOSVariant iOSVariant = new iOSVariant();
+        iOSVariant.setName("loadtest-ios");
+        iOSVariant.setCertificate(ApnsSimulator.clientCertificate(APNS_TOPIC, APNS_PASSPHRASE));
+        iOSVariant.setPassphrase(APNS_PASSPHRASE);
+        iOSVariant.setProduction(false);
+
+        final AndroidVariant androidVariant = new AndroidVariant();
+        androidVariant.setName("loadtest-android");
+        androidVariant.setGoogleKey("loadtest-key");
+        androidVariant.setProjectNumber("1234567890");
+
+        final SimplePushVariant simplePushVariant = new SimplePushVariant();
+        simplePushVariant.setName("loadtest-simplepush");
+
+        // network name used by the simulators -> variant and token generator
+        final Map<String, Variant> variants = new LinkedHashMap<>();
+        variants.put("apns", iOSVariant);
+        variants.put("fcm", androidVariant);
+        variants.put("simplepush", simplePushVariant);
+
+        final Map<String, IntFunction<String>> tokens = new LinkedHashMap<>();
+        tokens.put("apns", i -> String.format("%064x", i));
+        tokens.put("fcm", i -> "loadtest-fcm-" + i);
+        tokens.put("simplepush", i -> simplePush.url() + "/" + i);
+
+        final long seedStart = System.nanoTime();
+        for (Map.Entry<String, Variant> entry : variants.entrySet()) {
+            variantService.addVariant(entry.getValue(), user);
+            pushApplicationService.addVariant(app, entry.getValue());
+            seed(entry.getValue(), tokens.get(entry.getKey()));
+        }
+        logger.info("Seeded {} installations for each of {} variants in {} ms", INSTALLATIONS, variants.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+
+        for (long sequence = 0; sequence < MESSAGES; sequence++) {
+            final InternalUnifiedPushMessage message = new InternalUnifiedPushMessage();
+            message.getMessage().setAlert(DeliveryRecorder.marker(sequence));
+            message.getMessage().setSimplePush(DeliveryRecorder.marker(sequence));
+            // device type criteria keep FCM on the token (not topic) path
+            message.getCriteria().setDeviceTypes(Collections.singletonList(DEVICE_TYPE));
+            message.setClientIdentifier("loadtest");
+
+            recorder.submitted(sequence);
+            router.submit(app, message);
+        }
+
+        final long expected = (long) INSTALLATIONS * MESSAGES;
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (System.nanoTime() < deadline && !variants.keySet().stream().allMatch(n -> recorder.completed(n) >= expected)) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+
+        final StringBuilder report = new StringBuilder(String.format(
+                "%nPipeline throughput: %d installations per network, %d messages%n", INSTALLATIONS, MESSAGES));
+        variants.keySet().forEach(network -> report.append(recorder.report(network)).append(System.lineSeparator()));
+        logger.info(report.toString());
+    }
+
+    private void seed(Variant variant, IntFunction<String> token) {
+        final List<Installation> chunk = new ArrayList<>(SEED_CHUNK);
+        for (int i = 0; i < INSTALLATIONS; i++) {
+            final Installation installation = new Installation();
+            installation.setDeviceToken(token.apply(i));
+            installation.setDeviceType(DEVICE_TYPE);
+            chunk.add(installation);
+
+            if (chunk.size() == SEED_CHUNK || i == INSTALLATIONS - 1) {
+                installationService.addInstallations(variant, chunk);
+                chunk.clear();
+            }
+        }
+    }
+}
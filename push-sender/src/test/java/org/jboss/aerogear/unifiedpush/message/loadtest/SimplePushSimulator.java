@@ -0,0 +1,40 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * SimplePush server stand-in. SimplePush device tokens are the endpoint URLs, so installations seeded with
+ * {@code url() + "/" + channel} tokens are delivered here, one request per token.
+ */
+public class SimplePushSimulator extends HttpPushNetworkSimulator {
+
+    public SimplePushSimulator(SimulatorSettings settings, DeliveryRecorder recorder) {
+        super("simplepush", "/simplepush", settings, recorder);
+    }
+
+    @Override
+    protected int deliveries(HttpExchange exchange, String body) {
+        return 1;
+    }
+
+    @Override
+    protected String success(String body, int deliveries) {
+        return "";
+    }
+}
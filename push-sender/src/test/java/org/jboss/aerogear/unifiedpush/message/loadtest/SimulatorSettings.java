@@ -0,0 +1,93 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Behaviour of a simulated push network: response latency, share of failed requests and request rate limit.
+ *
+ * Values are read from system properties prefixed with {@code loadtest.<network>.}, e.g.
+ * {@code -Dloadtest.apns.latency_ms=20 -Dloadtest.apns.error_rate=0.01 -Dloadtest.fcm.max_per_second=500}.
+ */
+public class SimulatorSettings {
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+    private final int maxRequestsPerSecond;
+
+    // simple token bucket, guarded by this
+    private double permits;
+    private long lastRefill = System.nanoTime();
+
+    public SimulatorSettings(long latencyMillis, long jitterMillis, double errorRate, int maxRequestsPerSecond) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.permits = maxRequestsPerSecond;
+    }
+
+    public static SimulatorSettings fromSystemProperties(String network) {
+        final String prefix = "loadtest." + network + ".";
+        return new SimulatorSettings(
+                Long.getLong(prefix + "latency_ms", 5),
+                Long.getLong(prefix + "jitter_ms", 5),
+                Double.parseDouble(System.getProperty(prefix + "error_rate", "0")),
+                Integer.getInteger(prefix + "max_per_second", 0));
+    }
+
+    /**
+     * @return delay before the response is sent, in milliseconds
+     */
+    public long nextLatencyMillis() {
+        return latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+    }
+
+    /**
+     * @return true if the current request should fail
+     */
+    public boolean nextIsError() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    /**
+     * @return true if the current request exceeds the rate limit and has to be rejected
+     */
+    public synchronized boolean throttle() {
+        if (maxRequestsPerSecond <= 0) {
+            return false;
+        }
+        final long now = System.nanoTime();
+        permits = Math.min(maxRequestsPerSecond,
+                permits + (now - lastRefill) * maxRequestsPerSecond / (double) TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+        if (permits < 1) {
+            return true;
+        }
+        permits -= 1;
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("latency=%d(+%d)ms, errorRate=%.3f, maxPerSecond=%s", latencyMillis, jitterMillis,
+                errorRate, maxRequestsPerSecond > 0 ? maxRequestsPerSecond : "unlimited");
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreCumulative() {
+        final LatencyHistogram histogram = new LatencyHistogram(new double[] { 0.01, 0.1, 1 });
+
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+        histogram.record(TimeUnit.SECONDS.toNanos(2));
+
+        // upper bounds are inclusive, the last entry is the +Inf bucket
+        assertThat(histogram.cumulativeCounts()).containsExactly(2, 3, 3, 4);
+        assertThat(histogram.getCount()).isEqualTo(4);
+        assertThat(histogram.getSumSeconds()).isCloseTo(2.065, within(1e-9));
+    }
+
+    @Test
+    public void testNegativeDurationCountsAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram(new double[] { 0.01 });
+
+        histogram.record(-5);
+
+        assertThat(histogram.cumulativeCounts()).containsExactly(1, 1);
+        assertThat(histogram.getSumSeconds()).isZero();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.schedule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.jboss.aerogear.unifiedpush.api.PushApplication;
+import org.jboss.aerogear.unifiedpush.api.ScheduledPushMessage;
+import org.jboss.aerogear.unifiedpush.message.Config;
+import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.NotificationRouter;
+import org.jboss.aerogear.unifiedpush.service.PushApplicationService;
+import org.jboss.aerogear.unifiedpush.service.ScheduledPushMessageService;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class PushMessageSchedulerTest {
+
+    private final ScheduledPushMessageService scheduledPushMessageService = mock(ScheduledPushMessageService.class);
+    private final NotificationRouter notificationRouter = mock(NotificationRouter.class);
+    private final PushApplication pushApplication = new PushApplication();
+    private PushMessageScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        when(config.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        when(config.getProperty(eq(PushMessageScheduler.PROP_TICK_MS), anyInt())).thenReturn(10);
+        when(config.getProperty(eq(PushMessageScheduler.PROP_PRELOAD_SECONDS), anyInt())).thenReturn(1);
+
+        final PushApplicationService pushApplicationService = mock(PushApplicationService.class);
+        when(pushApplicationService.findByPushApplicationID(pushApplication.getPushApplicationID())).thenReturn(pushApplication);
+
+        scheduler = new PushMessageScheduler();
+        ReflectionTestUtils.setField(scheduler, "config", config);
+        ReflectionTestUtils.setField(scheduler, "scheduledPushMessageService", scheduledPushMessageService);
+        ReflectionTestUtils.setField(scheduler, "pushApplicationService", pushApplicationService);
+        ReflectionTestUtils.setField(scheduler, "notificationRouter", notificationRouter);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void keepsJobUntilHeldBackBatchesAreDispatched() throws Exception {
+        final long sendAt = System.currentTimeMillis() + 1_500;
+        final ScheduledPushMessage job = job(sendAt);
+        when(scheduledPushMessageService.findAllPending()).thenReturn(Collections.singletonList(job));
+        when(scheduledPushMessageService.findById(job.getId())).thenReturn(job);
+        when(scheduledPushMessageService.claim(eq(job.getId()), anyLong())).thenReturn(true);
+
+        scheduler.start();
+
+        // released ahead of its delivery time, to pre-load the tokens
+        verify(notificationRouter, timeout(1_000)).submit(eq(pushApplication), any(InternalUnifiedPushMessage.class));
+        assertThat(System.currentTimeMillis()).isLessThan(sendAt);
+        verify(scheduledPushMessageService, never()).complete(job.getId());
+
+        // leased until after the delivery time
+        final ArgumentCaptor<Long> leaseMs = ArgumentCaptor.forClass(Long.class);
+        verify(scheduledPushMessageService).claim(eq(job.getId()), leaseMs.capture());
+        assertThat(leaseMs.getValue()).isGreaterThan(120_000L);
+
+        verify(scheduledPushMessageService, timeout(2_000)).complete(job.getId());
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(sendAt);
+    }
+
+    private ScheduledPushMessage job(long sendAt) throws Exception {
+        final InternalUnifiedPushMessage message = new InternalUnifiedPushMessage();
+        final Config config = new Config();
+        config.setSendAt(new Date(sendAt));
+        message.setConfig(config);
+
+        final ScheduledPushMessage job = new ScheduledPushMessage();
+        job.setPushApplicationId(pushApplication.getPushApplicationID());
+        job.setSendAt(new Date(sendAt));
+        job.setRawJsonMessage(new ObjectMapper().writeValueAsString(message));
+        return job;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.schedule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    @Test
+    public void testDueItemIsRejected() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10, 8, START);
+
+        assertThat(wheel.add(START, "now")).isFalse();
+        assertThat(wheel.add(START - 500, "past")).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    public void testItemNeverExpiresEarly() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10, 8, START);
+        wheel.add(START + 25, "item");
+
+        assertThat(wheel.advance(START + 24)).isEmpty();
+        assertThat(wheel.advance(START + 30)).containsExactly("item");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    public void testOverflowWheelsCascade() {
+        // lowest wheel spans 80ms, items far beyond are held by overflow wheels
+        final TimingWheel<Long> wheel = new TimingWheel<>(10, 8, START);
+        final long[] expirations = { START + 50, START + 700, START + 5_000, START + 100_000 };
+        for (long expiration : expirations) {
+            assertThat(wheel.add(expiration, expiration)).isTrue();
+        }
+        assertThat(wheel.size()).isEqualTo(expirations.length);
+
+        final List<Long> released = new ArrayList<>();
+        for (long now = START; now <= START + 100_010; now += 10) {
+            for (Long expiration : wheel.advance(now)) {
+                assertThat(expiration).isLessThanOrEqualTo(now);
+                assertThat(now - expiration).isLessThan(10);
+                released.add(expiration);
+            }
+        }
+
+        assertThat(released).containsExactly(START + 50, START + 700, START + 5_000, START + 100_000);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    public void testAdvanceOverLongGap() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10, 8, START);
+        wheel.add(START + 300, "a");
+        wheel.add(START + 9_000, "b");
+
+        assertThat(wheel.advance(START + 60_000)).containsExactly("a", "b");
+    }
+}
@@ -17,10 +17,14 @@
 package org.jboss.aerogear.unifiedpush.message.token;
 
 import com.google.android.gcm.server.Constants;
+import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
 import org.jboss.aerogear.unifiedpush.message.Criteria;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -146,4 +150,39 @@ public class TokenLoaderUtilsTest {
 
         assertThat(TokenLoaderUtils.isGCMTopicRequest(criteria)).isFalse();
     }
+
+    @Test
+    public void testLoadBatchStopsAtBatchSize() {
+        final ResultsStream<String> stream = stream("a", "b", "c");
+
+        final Set<String> first = new TreeSet<>();
+        assertThat(TokenLoaderUtils.loadBatch(stream, 2, first)).isEqualTo("b");
+        assertThat(first).containsExactly("a", "b");
+
+        final Set<String> second = new TreeSet<>();
+        assertThat(TokenLoaderUtils.loadBatch(stream, 2, second)).isEqualTo("c");
+        assertThat(second).containsExactly("c");
+
+        final Set<String> third = new TreeSet<>();
+        assertThat(TokenLoaderUtils.loadBatch(stream, 2, third)).isNull();
+        assertThat(third).isEmpty();
+    }
+
+    private static ResultsStream<String> stream(String... tokens) {
+        final Iterator<String> iterator = Arrays.asList(tokens).iterator();
+        return new ResultsStream<String>() {
+            private String current;
+
+            @Override
+            public boolean next() {
+                current = iterator.hasNext() ? iterator.next() : null;
+                return current != null;
+            }
+
+            @Override
+            public String get() {
+                return current;
+            }
+        };
+    }
 }
@@ -1,5 +1,6 @@
 package org.jboss.aerogear.unifiedpush.auth;
 
+import org.jboss.aerogear.unifiedpush.system.ConfigurationUtils;
 import org.keycloak.adapters.springsecurity.KeycloakConfiguration;
 import org.keycloak.adapters.springsecurity.authentication.KeycloakAuthenticationProvider;
 import org.keycloak.adapters.springsecurity.config.KeycloakWebSecurityConfigurerAdapter;
@@ -20,6 +21,15 @@ import org.springframework.security.web.util.matcher.RequestMatcher;
 @KeycloakConfiguration
 public class SecurityConfig extends KeycloakWebSecurityConfigurerAdapter {
 
+	/**
+	 * If true, the Prometheus endpoint of the delivery pipeline is served
+	 * without authentication, e.g. when it is only reachable from within the
+	 * cluster. Otherwise scrapers need a bearer token with the
+	 * <code>metrics</code> (or <code>admin</code>) role.
+	 */
+	public static final String PROP_PIPELINE_METRICS_PUBLIC = "aerogear.metrics.pipeline.public";
+	public static final String PIPELINE_METRICS_PATH = "/rest/metrics/pipeline";
+
 	/**
 	 * Request matcher that matches requests to any request with a
 	 * <code>Authorization</code> header.
@@ -69,6 +79,7 @@ public class SecurityConfig extends KeycloakWebSecurityConfigurerAdapter {
 
 		http.authorizeRequests() //
 				.antMatchers("/rest/database/**").hasAnyRole("INSTALLATION") //
+				.antMatchers(PIPELINE_METRICS_PATH).hasAnyRole("ADMIN", "METRICS") //
 				.antMatchers("/rest/**").hasAnyRole("ADMIN", "DEVELOPER") //
 				.antMatchers("/**").denyAll();
 	}
@@ -81,6 +92,9 @@ public class SecurityConfig extends KeycloakWebSecurityConfigurerAdapter {
 		web.ignoring().antMatchers("/rest/keycloak/config");
 		web.ignoring().antMatchers("/rest/keycloak/config/*");
 		web.ignoring().antMatchers("/rest/heartbeat*");
+		if (Boolean.parseBoolean(ConfigurationUtils.tryGetProperty(PROP_PIPELINE_METRICS_PUBLIC, "false"))) {
+			web.ignoring().antMatchers(PIPELINE_METRICS_PATH);
+		}
 
 		// Application Level Basic Authentication
 		web.ignoring().antMatchers("/rest/alias/**");
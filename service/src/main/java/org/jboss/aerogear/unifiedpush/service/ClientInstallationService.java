@@ -16,6 +16,7 @@
  */
 package org.jboss.aerogear.unifiedpush.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -45,6 +46,19 @@ public interface ClientInstallationService {
      */
     void addInstallations(Variant variant, List<Installation> installations);
 
+    /**
+     * Registers a batch of installations of one variant with bulk writes, with the same semantics as
+     * {@link #addInstallation(Variant, Installation)}: new device tokens are stored, enabled installations are
+     * updated with the posted metadata and disabled installations are left untouched. If a device token is posted
+     * more than once, the last installation wins.
+     *
+     * @param variant the variant to store on
+     * @param installations the posted installations
+     *
+     * @return number of installations stored or updated
+     */
+    int addInstallationsInBulk(Variant variant, Collection<Installation> installations);
+
     /**
      * Performs an update/merge on the given entity.
      *
@@ -107,6 +121,17 @@ public interface ClientInstallationService {
      */
     void removeInstallationForVariantByDeviceToken(String variantID, String deviceToken);
 
+    /**
+     * Used for device authentication: checks whether an enabled installation with the given device token is
+     * registered for the variant. Answers may be served from a cache.
+     *
+     * @param variantID id of the variant
+     * @param deviceToken the device token
+     *
+     * @return true if the installation exists and is enabled
+     */
+    boolean hasEnabledInstallation(String variantID, String deviceToken);
+
     /**
      * Used for "Device Registration":
      *
@@ -120,7 +145,8 @@ public interface ClientInstallationService {
     Installation findInstallationForVariantByDeviceToken(String variantID, String deviceToken);
 
     /**
-     * Used for Android installations which have less/other categories on repeated registration
+     * Used for Android installations which have less/other categories on repeated registration. The topics are
+     * unsubscribed asynchronously, once the current transaction has committed.
      *
      * @param installation Installation object containing correct variant property of AndroidVariant class
      */
@@ -61,6 +61,19 @@ public interface GenericVariantService {
 	@Cacheable(value = GenericVariantService.CACHE_NAME, unless = "#result == null")
 	Variant findByVariantID(String variantID);
 
+	/**
+	 * Returns the Variant entity, if the given secret is the secret of the variant. Results may be served from a
+	 * short lived cache of authenticated principals.
+	 *
+	 * @param variantID
+	 *            the id
+	 * @param secret
+	 *            the presented secret
+	 *
+	 * @return the variant, or null if it does not exist or the secret does not match
+	 */
+	Variant findAuthorizedVariant(String variantID, String secret);
+
 	/**
 	 * Removes the given variant entity.
 	 *
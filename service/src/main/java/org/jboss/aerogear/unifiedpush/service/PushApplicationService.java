@@ -53,6 +53,17 @@ public interface PushApplicationService {
     @Cacheable(value = PushApplicationService.APPLICATION_CACHE_BY_ID, unless = "#result == null")
     PushApplication findByPushApplicationID(String pushApplicationID);
 
+    /**
+     * Returns the PushApplication entity, if the given secret is its master secret. Results may be served from a
+     * short lived cache of authenticated principals.
+     *
+     * @param pushApplicationID push application ID
+     * @param masterSecret the presented master secret
+     *
+     * @return push application entity, or null if it does not exist or the secret does not match
+     */
+    PushApplication findAuthorizedPushApplication(String pushApplicationID, String masterSecret);
+
     /**
      * Removes the given PushApplication entity.
      *
@@ -21,6 +21,7 @@ import java.util.List;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
+import org.jboss.aerogear.unifiedpush.dao.SearchMode;
 import org.jboss.aerogear.unifiedpush.dto.Count;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
 import org.jboss.aerogear.unifiedpush.service.dashboard.Application;
@@ -42,6 +43,23 @@ public interface PushSearchService {
      */
     PageResult<PushApplication, Count> findAllPushApplicationsForDeveloper(Integer page, Integer pageSize);
 
+    /**
+     * Finder that returns the next page of pushApplication objects for the given owner/developer, ordered by ID.
+     *
+     * @param lastID the last ID of the previous page, or null for the first page
+     * @param pageSize number of push applications per page
+     *
+     * @return list of push applications, empty after the last page
+     */
+    List<PushApplication> findAllPushApplicationsForDeveloperAfter(String lastID, int pageSize);
+
+    /**
+     * Counts the pushApplication objects for the given owner/developer.
+     *
+     * @return number of push applications
+     */
+    long countPushApplicationsForDeveloper();
+
     /**
      * Finder that returns an actual PushApplication, identified by its ID and its owner/developer.
      *
@@ -92,10 +110,35 @@ public interface PushSearchService {
      * @param page the page number
      * @param pageSize the size of the pages
      * @param search Search criteria
+     * @param mode how the search criteria is matched
      *
      * @return page result containing the list plus a total number of rows
      */
-    PageResult<Installation, Count> findAllInstallationsByVariantForDeveloper(String variantID, Integer page, Integer pageSize, String search);
+    PageResult<Installation, Count> findAllInstallationsByVariantForDeveloper(String variantID, Integer page, Integer pageSize, String search, SearchMode mode);
+
+    /**
+     * Find the next page of installations for the variant specified, ordered by ID.
+     *
+     * @param variantID the id of the variant to find the installations for
+     * @param search Search criteria, or null
+     * @param mode how the search criteria is matched
+     * @param lastInstallationID the last ID of the previous page, or null for the first page
+     * @param pageSize the size of the page
+     *
+     * @return the installations of the page, empty after the last page
+     */
+    List<Installation> findInstallationsByVariantAfterForDeveloper(String variantID, String search, SearchMode mode, String lastInstallationID, int pageSize);
+
+    /**
+     * Counts the installations for the variant specified.
+     *
+     * @param variantID the id of the variant to count the installations for
+     * @param search Search criteria, or null
+     * @param mode how the search criteria is matched
+     *
+     * @return number of matching installations
+     */
+    long countInstallationsByVariantForDeveloper(String variantID, String search, SearchMode mode);
 
     void setLoginName(LoggedInUser loginName);
 }
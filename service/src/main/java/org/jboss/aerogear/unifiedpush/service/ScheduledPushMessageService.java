@@ -0,0 +1,90 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service;
+
+import java.util.Date;
+import java.util.List;
+
+import org.jboss.aerogear.unifiedpush.api.ScheduledPushMessage;
+
+/**
+ * Service class that persists push message requests which are delivered at a later point in time.
+ */
+public interface ScheduledPushMessageService {
+
+	/**
+	 * Stores a new scheduled push message.
+	 *
+	 * @param scheduledPushMessage
+	 *            the job to store
+	 */
+	void addScheduledPushMessage(ScheduledPushMessage scheduledPushMessage);
+
+	/**
+	 * Loads all jobs that have not been released yet, ordered by their
+	 * delivery date.
+	 *
+	 * @return list of pending jobs
+	 */
+	List<ScheduledPushMessage> findAllPending();
+
+	/**
+	 * Returns the job matching the given id.
+	 *
+	 * @param id
+	 *            the id of the job
+	 *
+	 * @return the job or null
+	 */
+	ScheduledPushMessage findById(String id);
+
+	/**
+	 * Loads the jobs due before the given date that are not claimed by a
+	 * node, or whose claim has expired, ordered by their delivery date.
+	 *
+	 * @param dueBefore
+	 *            the latest delivery date (exclusive)
+	 * @param maxResults
+	 *            max number of jobs to load
+	 *
+	 * @return list of due jobs
+	 */
+	List<ScheduledPushMessage> findDue(Date dueBefore, int maxResults);
+
+	/**
+	 * Claims the job for delivery by leasing it for the given time. The job
+	 * stays in the database until {@link #complete(String)} is called, if the
+	 * lease expires before, another node may claim it again.
+	 *
+	 * @param id
+	 *            the id of the job
+	 * @param leaseMs
+	 *            duration of the lease
+	 *
+	 * @return true if the caller owns the job now, false if it does not exist
+	 *         (anymore) or is claimed by another node
+	 */
+	boolean claim(String id, long leaseMs);
+
+	/**
+	 * Removes a claimed job, once it has been released.
+	 *
+	 * @param id
+	 *            the id of the job
+	 */
+	void complete(String id);
+}
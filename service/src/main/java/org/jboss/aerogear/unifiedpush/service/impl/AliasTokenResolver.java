@@ -0,0 +1,337 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
+import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Resolves the device tokens of alias targeted messages (the 1:1 messaging path).
+ *
+ * Alias lists are split into bounded chunks, so that a single query never carries thousands of parameters, and the
+ * chunks are queried in parallel. Resolved tokens may be kept in an (optional) in-memory cache, keyed by variant and
+ * lower case alias, that is evicted whenever an installation carrying the alias changes on this node. The cache is
+ * disabled by default, since changes applied by other nodes are only picked up once an entry expires.
+ *
+ * The tokens of a message are resolved once, when its first page is loaded; the following pages of the same
+ * variant and aliases are served from the resolved, sorted set. Sets of more than {@value #PROP_MAX_PAGED_TOKENS} tokens
+ * (default {@value #DEFAULT_MAX_PAGED_TOKENS}) are not kept: the pages of such a message are queried chunk by chunk, continuing after the last token of the
+ * previous page, so that every page costs the same instead of resolving all tokens again.
+ *
+ * Transactions: queries of a single chunk run on the caller's thread, within its transaction. When there are more
+ * chunks, they run on the resolver's threads and outside of the caller's transaction, every query reads the committed
+ * installations on its own. Either way, later pages of a message see the installations as they were when its first
+ * page was loaded, unless the message is paged in the database.
+ */
+@Component
+public class AliasTokenResolver {
+
+	public static final String PROP_CHUNK_SIZE = "aerogear.alias.chunk_size";
+	public static final String PROP_RESOLVER_THREADS = "aerogear.alias.resolver_threads";
+	public static final String PROP_TOKEN_CACHE_SIZE = "aerogear.alias.token_cache_size";
+	public static final String PROP_TOKEN_CACHE_TTL_SECONDS = "aerogear.alias.token_cache_ttl_seconds";
+	public static final String PROP_MAX_PAGED_TOKENS = "aerogear.alias.max_paged_tokens";
+
+	// tokens of the messages that are being paged, at most this many tokens are kept
+	private static final int DEFAULT_MAX_PAGED_TOKENS = 1_000_000;
+
+	@Inject
+	private InstallationDao installationDao;
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private int chunkSize;
+	private int maxPagedTokens;
+	private ExecutorService executor;
+	private Cache<String, Set<String>> tokenCache;
+	private Cache<List<Object>, NavigableSet<String>> pagedTokens;
+	// messages of more than maxPagedTokens tokens, paged in the database
+	private Cache<List<Object>, Boolean> oversized;
+
+	@PostConstruct
+	public void init() {
+		chunkSize = Math.max(1, config.getProperty(PROP_CHUNK_SIZE, 500));
+		maxPagedTokens = Math.max(1, config.getProperty(PROP_MAX_PAGED_TOKENS, DEFAULT_MAX_PAGED_TOKENS));
+		executor = Executors.newFixedThreadPool(Math.max(1, config.getProperty(PROP_RESOLVER_THREADS, 4)), r -> {
+			final Thread thread = new Thread(r, "alias-token-resolver");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		pagedTokens = Caffeine.newBuilder() //
+				.maximumWeight(maxPagedTokens) //
+				.weigher((List<Object> key, NavigableSet<String> tokens) -> tokens.size() + 1) //
+				.expireAfterAccess(5, TimeUnit.MINUTES) //
+				.build();
+		oversized = Caffeine.newBuilder() //
+				.maximumSize(10_000) //
+				.expireAfterAccess(5, TimeUnit.MINUTES) //
+				.build();
+
+		final int cacheSize = config.getProperty(PROP_TOKEN_CACHE_SIZE, 0);
+		if (cacheSize > 0) {
+			tokenCache = Caffeine.newBuilder() //
+					.maximumSize(cacheSize) //
+					.expireAfterWrite(config.getProperty(PROP_TOKEN_CACHE_TTL_SECONDS, 30), TimeUnit.SECONDS) //
+					.build();
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Loads the tokens of all enabled installations of the given variant, whose alias matches one of the given
+	 * aliases (case insensitive).
+	 *
+	 * @param variantID the variant
+	 * @param aliases the aliases
+	 *
+	 * @return sorted device tokens
+	 */
+	public NavigableSet<String> resolve(String variantID, Collection<String> aliases) {
+		final NavigableSet<String> tokens = new TreeSet<>();
+		final List<String> misses = new ArrayList<>();
+
+		for (String alias : toLowerCase(aliases)) {
+			final Set<String> cached = tokenCache == null ? null : tokenCache.getIfPresent(key(variantID, alias));
+			if (cached != null) {
+				tokens.addAll(cached);
+			} else {
+				misses.add(alias);
+			}
+		}
+
+		if (misses.size() <= chunkSize) {
+			merge(variantID, misses, tokens);
+			return tokens;
+		}
+
+		for (Map<String, Set<String>> chunk : inChunks(misses, chunk -> load(variantID, chunk))) {
+			chunk.values().forEach(tokens::addAll);
+		}
+		return tokens;
+	}
+
+	/**
+	 * Loads one page of the tokens of all enabled installations of the given variant, whose alias matches one of the
+	 * given aliases (case insensitive), from the database.
+	 *
+	 * @param variantID the variant
+	 * @param aliases the aliases
+	 * @param lastToken last token of the previous page, or null
+	 * @param maxResults number of tokens to load
+	 * @param oldGCM if true only old GCM tokens (not containing a :) are loaded
+	 *
+	 * @return sorted device tokens following the given one
+	 */
+	NavigableSet<String> page(String variantID, Collection<String> aliases, String lastToken, int maxResults,
+			boolean oldGCM) {
+		final List<String> lowerCaseAliases = new ArrayList<>(toLowerCase(aliases));
+		final NavigableSet<String> tokens = new TreeSet<>();
+		for (List<String> chunk : inChunks(lowerCaseAliases, chunk -> installationDao
+				.findDeviceTokensForVariantIDByAliases(variantID, chunk, lastToken, maxResults, oldGCM))) {
+			tokens.addAll(chunk);
+		}
+
+		// every chunk contributed its first tokens, only the first ones of all of them make the page
+		while (tokens.size() > maxResults) {
+			tokens.pollLast();
+		}
+		return tokens;
+	}
+
+	/**
+	 * Streams the tokens of an alias targeted message, page by page, in the same way the regular criteria query does.
+	 * The first page resolves the aliases, later pages continue on that result (or resolve again, if it was evicted).
+	 * Pages of messages that resolved to too many tokens to be kept are loaded from the database.
+	 *
+	 * @param variantID the variant
+	 * @param aliases the aliases
+	 * @param maxResults number of tokens to stream
+	 * @param lastTokenFromPreviousBatch last token of the previous page, or null
+	 * @param oldGCM if true only old GCM tokens (not containing a :) are streamed
+	 *
+	 * @return builder of the token stream
+	 */
+	public ResultsStream.QueryBuilder<String> findDeviceTokens(String variantID, List<String> aliases,
+			int maxResults, String lastTokenFromPreviousBatch, boolean oldGCM) {
+		return new ResultsStream.QueryBuilder<String>() {
+			@Override
+			public ResultsStream.QueryBuilder<String> fetchSize(int fetchSize) {
+				// tokens are resolved up-front, nothing to fetch lazily
+				return this;
+			}
+
+			@Override
+			public ResultsStream<String> executeQuery() {
+				final List<Object> key = Arrays.asList(variantID, aliases);
+				final Iterator<String> iterator = tokens(key).iterator();
+
+				return new ResultsStream<String>() {
+					private String current;
+
+					@Override
+					public boolean next() {
+						if (iterator.hasNext()) {
+							current = iterator.next();
+							return true;
+						}
+						return false;
+					}
+
+					@Override
+					public String get() {
+						return current;
+					}
+				};
+			}
+
+			private Collection<String> tokens(List<Object> key) {
+				if (oversized.getIfPresent(key) != null) {
+					return page(variantID, aliases, lastTokenFromPreviousBatch, maxResults, oldGCM);
+				}
+
+				NavigableSet<String> tokens = lastTokenFromPreviousBatch == null ? null : pagedTokens.getIfPresent(key);
+				if (tokens == null) {
+					tokens = Collections.unmodifiableNavigableSet(resolve(variantID, aliases));
+					if (tokens.size() < maxPagedTokens) {
+						pagedTokens.put(key, tokens);
+					} else {
+						oversized.put(key, Boolean.TRUE);
+					}
+				}
+				if (lastTokenFromPreviousBatch != null) {
+					tokens = tokens.tailSet(lastTokenFromPreviousBatch, false);
+				}
+
+				return tokens.stream() //
+						.filter(token -> !oldGCM || token.indexOf(':') < 0) //
+						.limit(maxResults) //
+						.collect(Collectors.toList());
+			}
+		};
+	}
+
+	/**
+	 * Evicts the cached tokens of the installation's alias, if any.
+	 *
+	 * @param installation the changed installation
+	 */
+	public void evict(Installation installation) {
+		if (installation != null && installation.getVariant() != null) {
+			evict(installation.getVariant().getVariantID(), installation.getAlias());
+		}
+	}
+
+	/**
+	 * Evicts the cached tokens of the given alias, if any.
+	 *
+	 * @param variantID the variant
+	 * @param alias the alias
+	 */
+	public void evict(String variantID, String alias) {
+		if (tokenCache != null && alias != null) {
+			tokenCache.invalidate(key(variantID, alias.toLowerCase(Locale.ROOT)));
+		}
+	}
+
+	private void merge(String variantID, List<String> aliases, Set<String> tokens) {
+		if (!aliases.isEmpty()) {
+			load(variantID, aliases).values().forEach(tokens::addAll);
+		}
+	}
+
+	private Map<String, Set<String>> load(String variantID, List<String> aliases) {
+		final Map<String, Set<String>> tokensByAlias = installationDao.findDeviceTokensForVariantIDByAliases(variantID,
+				aliases);
+
+		if (tokenCache != null) {
+			// unknown aliases are cached as well, hot aliases are often not (yet) registered
+			for (String alias : aliases) {
+				tokenCache.put(key(variantID, alias), tokensByAlias.getOrDefault(alias, new TreeSet<>()));
+			}
+		}
+		return tokensByAlias;
+	}
+
+	/**
+	 * Applies the given query to the chunks of the given aliases, in parallel if there is more than one chunk.
+	 */
+	private <R> List<R> inChunks(List<String> aliases, Function<List<String>, R> query) {
+		if (aliases.size() <= chunkSize) {
+			return Collections.singletonList(query.apply(aliases));
+		}
+
+		final List<CompletableFuture<R>> chunks = new ArrayList<>();
+		for (int from = 0; from < aliases.size(); from += chunkSize) {
+			final List<String> chunk = aliases.subList(from, Math.min(from + chunkSize, aliases.size()));
+			chunks.add(CompletableFuture.supplyAsync(() -> query.apply(chunk), executor));
+		}
+
+		try {
+			return chunks.stream().map(CompletableFuture::join).collect(Collectors.toList());
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private static Collection<String> toLowerCase(Collection<String> aliases) {
+		return aliases.stream() //
+				.map(alias -> alias.toLowerCase(Locale.ROOT)) //
+				.collect(Collectors.toCollection(LinkedHashSet::new));
+	}
+
+	private static String key(String variantID, String lowerCaseAlias) {
+		return variantID + ':' + lowerCaseAlias;
+	}
+}
@@ -22,9 +22,15 @@ import org.springframework.transaction.annotation.Transactional;
 public class ClientInstallationAsyncServiceImpl implements ClientInstallationAsyncService {
 	@Inject
 	private ClientInstallationService clientInstallationService;
+	@Inject
+	private InstallationRegistrationCoalescer registrationCoalescer;
 
 	@Async
 	public void addInstallation(Variant variant, Installation installation) {
+		if (registrationCoalescer.isEnabled()) {
+			registrationCoalescer.submit(variant, installation);
+			return;
+		}
 		clientInstallationService.addInstallation(variant, installation);
 	}
 
@@ -16,13 +16,19 @@
  */
 package org.jboss.aerogear.unifiedpush.service.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
-import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
 import org.jboss.aerogear.unifiedpush.api.Category;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
@@ -30,8 +36,9 @@ import org.jboss.aerogear.unifiedpush.api.VariantType;
 import org.jboss.aerogear.unifiedpush.dao.CategoryDao;
 import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
+import org.jboss.aerogear.unifiedpush.dao.helper.InstallationAlias;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
-import org.jboss.aerogear.unifiedpush.service.util.FCMTopicManager;
+import org.jboss.aerogear.unifiedpush.service.metrics.DashboardStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -44,6 +51,9 @@ import org.springframework.transaction.annotation.Transactional;
 @Service
 @Transactional
 public class ClientInstallationServiceImpl implements ClientInstallationService {
+	// installations of an import that are looked up and written at once
+	private static final int IMPORT_CHUNK_SIZE = 500;
+
 	private final Logger logger = LoggerFactory.getLogger(ClientInstallationServiceImpl.class);
 
 	@Inject
@@ -52,6 +62,21 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 	@Inject
 	private CategoryDao categoryDao;
 
+	@Inject
+	private AliasTokenResolver aliasTokenResolver;
+
+	@Inject
+	private InstallationExistenceCache installationExistenceCache;
+
+	@Inject
+	private DashboardStatistics dashboardStatistics;
+
+	@Inject
+	private CriteriaBitmapIndex criteriaBitmapIndex;
+
+	@Inject
+	private FCMTopicMaintenance fcmTopicMaintenance;
+
 	@Override
 	public void addInstallation(Variant variant, Installation entity) {
 		// does it already exist ?
@@ -89,56 +114,176 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 			return;
 		}
 
-		// TODO - On a large scale database, we can't load entire device list.
-		Set<String> existingTokens = installationDao.findAllDeviceTokenForVariantID(variant.getVariantID());
-
 		// clear out:
 		installationDao.flushAndClear();
 
-		for (int i = 0; i < installations.size(); i++) {
-
-			Installation current = installations.get(i);
+		// tokens of this import, to ensure the JSON file contains no duplicates
+		final Set<String> importedTokens = new HashSet<>();
+		List<Installation> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+		for (Installation current : installations) {
 
-			// let's avoid duplicated tokens/devices per variant
-			// For devices without a token, let's also not bother the DAO layer
+			// For devices without a token, let's not bother the DAO layer
 			// to throw BeanValidation exception
-			if (!existingTokens.contains(current.getDeviceToken()) && hasTokenValue(current)) {
+			if (!hasTokenValue(current)) {
+				continue;
+			}
+			// ensure lower case for iOS
+			if (variant.getType() == VariantType.IOS) {
+				current.setDeviceToken(current.getDeviceToken().toLowerCase());
+			}
 
-				logger.trace("Importing device with token: {}", current.getDeviceToken());
+			if (importedTokens.add(current.getDeviceToken())) {
+				chunk.add(current);
+				if (chunk.size() == IMPORT_CHUNK_SIZE) {
+					createNewInstallations(variant, chunk);
+					chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+				}
+			} else {
+				logger.trace("Device with token '{}' is imported twice. Ignoring it ", current.getDeviceToken());
+			}
+		}
+		createNewInstallations(variant, chunk);
+	}
 
-				storeInstallationAndSetReferences(variant, current);
+	/**
+	 * Stores the installations of one import chunk, whose device token is not registered for the variant yet.
+	 */
+	private void createNewInstallations(Variant variant, List<Installation> chunk) {
+		if (chunk.isEmpty()) {
+			return;
+		}
 
-				// and add a reference to the existing tokens set, to ensure the
-				// JSON file contains no duplicates:
-				existingTokens.add(current.getDeviceToken());
+		// let's avoid duplicated tokens/devices per variant
+		final Set<String> existingTokens = installationDao
+				.findInstallationsForVariantByDeviceTokens(variant.getVariantID(),
+						chunk.stream().map(Installation::getDeviceToken).collect(Collectors.toSet()))
+				.stream().map(Installation::getDeviceToken).collect(Collectors.toSet());
+		installationDao.flushAndClear();
 
-				// some tunings, ever 10k devices releasing resources
-				if (i % 10000 == 0) {
-					logger.trace("releasing some resources during import");
-					installationDao.flushAndClear();
-				}
-			} else {
+		final List<Installation> toCreate = new ArrayList<>(chunk.size());
+		for (Installation current : chunk) {
+			if (existingTokens.contains(current.getDeviceToken())) {
 				// for now, we ignore them.... no update applied!
 				logger.trace("Device with token '{}' already exists. Ignoring it ", current.getDeviceToken());
+				continue;
 			}
+
+			logger.trace("Importing device with token: {}", current.getDeviceToken());
+			// set reference
+			current.setVariant(variant);
+			toCreate.add(current);
 		}
-		// clear out:
+		if (toCreate.isEmpty()) {
+			return;
+		}
+
+		// written with JDBC batches, the installations are not attached to the persistence context
+		mergeCategories(toCreate);
+		installationDao.createAll(toCreate);
 		installationDao.flushAndClear();
+		toCreate.forEach(aliasTokenResolver::evict);
+		toCreate.forEach(installationExistenceCache::evict);
+		toCreate.forEach(criteriaBitmapIndex::put);
+		dashboardStatistics.installationsAdded(variant.getVariantID(), toCreate.size());
+	}
+
+	@Override
+	public int addInstallationsInBulk(Variant variant, Collection<Installation> installations) {
+		// the last registration of a device token wins
+		final Map<String, Installation> posted = new LinkedHashMap<>();
+		for (Installation current : installations) {
+			if (hasTokenValue(current)) {
+				// ensure lower case for iOS
+				if (variant.getType() == VariantType.IOS) {
+					current.setDeviceToken(current.getDeviceToken().toLowerCase());
+				}
+				posted.put(current.getDeviceToken(), current);
+			}
+		}
+		if (posted.isEmpty()) {
+			return 0;
+		}
+
+		final Map<String, Installation> existing = installationDao
+				.findInstallationsForVariantByDeviceTokens(variant.getVariantID(), posted.keySet()).stream()
+				.collect(Collectors.toMap(Installation::getDeviceToken, Function.identity(), (first, second) -> first));
+		// we only read the loaded rows, the writes below bypass the persistence context
+		installationDao.flushAndClear();
+
+		final List<Installation> toWrite = new ArrayList<>(posted.size());
+		final List<Installation> updated = new ArrayList<>();
+		for (Installation current : posted.values()) {
+			final Installation installation = existing.get(current.getDeviceToken());
+			if (installation != null) {
+				// We only update the metadata, if the device is enabled:
+				if (!installation.isEnabled()) {
+					continue;
+				}
+				// the installation may move to another alias
+				aliasTokenResolver.evict(installation);
+				current.setId(installation.getId());
+				updated.add(current);
+			}
+			// Needed for the Admin UI Only. Help for setting up Routes
+			current.setPlatform(variant.getType().getTypeName());
+			current.setVariant(variant);
+			toWrite.add(current);
+		}
+		if (toWrite.isEmpty()) {
+			return 0;
+		}
+
+		mergeCategories(toWrite);
+		installationDao.upsertAll(toWrite);
+		installationDao.flushAndClear();
+		toWrite.forEach(aliasTokenResolver::evict);
+		toWrite.forEach(installationExistenceCache::evict);
+		toWrite.forEach(criteriaBitmapIndex::put);
+		dashboardStatistics.installationsAdded(variant.getVariantID(), toWrite.size() - updated.size());
+
+		// unsubscribe Android devices from topics that device should no longer be subscribed to
+		if (variant.getType() == VariantType.ANDROID) {
+			updated.forEach(this::unsubscribeOldTopics);
+		}
+		return toWrite.size();
 	}
 
 	@Override
 	public void removeInstallations(List<Installation> installations) {
-		// uh..., fancy method reference :)
-		installations.forEach(this::removeInstallation);
+		if (installations == null || installations.isEmpty()) {
+			return;
+		}
+
+		final Map<String, List<String>> idsByVariant = new HashMap<>();
+		for (Installation installation : installations) {
+			aliasTokenResolver.evict(installation);
+			installationExistenceCache.evict(installation);
+			idsByVariant.computeIfAbsent(installation.getVariant().getVariantID(), variantID -> new ArrayList<>())
+					.add(installation.getId());
+		}
+
+		// one bulk statement per chunk, instead of loading and removing every installation
+		installationDao.deleteAllById(installations.stream().map(Installation::getId).collect(Collectors.toSet()));
+		idsByVariant.forEach((variantID, ids) -> {
+			criteriaBitmapIndex.remove(variantID, ids);
+			dashboardStatistics.installationsRemoved(variantID, ids.size());
+		});
 	}
 
 	@Override
 	public void updateInstallation(Installation installation) {
 		installationDao.update(installation);
+		aliasTokenResolver.evict(installation);
+		installationExistenceCache.evict(installation);
+		criteriaBitmapIndex.put(installation);
 	}
 
 	@Override
 	public void updateInstallation(Installation installationToUpdate, Installation postedInstallation) {
+		// the installation may move to another alias and token
+		aliasTokenResolver.evict(installationToUpdate);
+		installationExistenceCache.evict(installationToUpdate);
+
 		// copy the "updateable" values:
 		mergeCategories(installationToUpdate, postedInstallation.getCategories());
 
@@ -167,16 +312,31 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 
 	@Override
 	public void removeInstallation(Installation installation) {
+		// e.g. the old token of a re-registration, that is not stored
+		if (installation == null) {
+			return;
+		}
+		aliasTokenResolver.evict(installation);
+		installationExistenceCache.evict(installation);
 		installationDao.delete(installation);
+		criteriaBitmapIndex.remove(installation);
+		dashboardStatistics.installationsRemoved(installation.getVariant().getVariantID(), 1);
 	}
 
 	@Override
 	public void removeInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens) {
-		// collect inactive installations for the given variant:
-		List<Installation> inactiveInstallations = installationDao.findInstallationsForVariantByDeviceTokens(variantID,
+		if (deviceTokens == null || deviceTokens.isEmpty()) {
+			return;
+		}
+
+		// get rid of the inactive installations, without loading them
+		final List<InstallationAlias> removed = installationDao.deleteInstallationsForVariantByDeviceTokens(variantID,
 				deviceTokens);
-		// get rid of them
-		this.removeInstallations(inactiveInstallations);
+		deviceTokens.forEach(deviceToken -> installationExistenceCache.evict(variantID, deviceToken));
+		removed.forEach(installation -> aliasTokenResolver.evict(variantID, installation.getAlias()));
+		criteriaBitmapIndex.remove(variantID,
+				removed.stream().map(InstallationAlias::getId).collect(Collectors.toList()));
+		dashboardStatistics.installationsRemoved(variantID, removed.size());
 	}
 
 	@Override
@@ -184,6 +344,11 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 		removeInstallation(findInstallationForVariantByDeviceToken(variantID, deviceToken));
 	}
 
+	@Override
+	public boolean hasEnabledInstallation(String variantID, String deviceToken) {
+		return installationExistenceCache.isEnabled(variantID, deviceToken);
+	}
+
 	@Override
 	public Installation findInstallationForVariantByDeviceToken(String variantID, String deviceToken) {
 		return installationDao.findInstallationForVariantByDeviceToken(variantID, deviceToken);
@@ -191,17 +356,8 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 
 	@Override
 	public void unsubscribeOldTopics(Installation installation) {
-		FCMTopicManager topicManager = new FCMTopicManager((AndroidVariant) installation.getVariant());
-		Set<String> oldCategories = topicManager.getSubscribedCategories(installation);
-		// Remove current categories from the set of old ones
-		oldCategories.removeAll(convertToNames(installation.getCategories()));
-
-		// Remove global variant topic because we don't want to unsubscribe it
-		oldCategories.remove(installation.getVariant().getVariantID());
-
-		for (String categoryName : oldCategories) {
-			topicManager.unsubscribe(installation, categoryName);
-		}
+		// calls the Instance ID service after the commit, in the background
+		fcmTopicMaintenance.unsubscribeOldTopics(installation);
 	}
 
 	// =====================================================================
@@ -209,12 +365,24 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 	// =====================================================================
 
 	/**
-	 * Finder for 'send', used for Android, iOS and SimplePush clients
+	 * Finder for 'send', used for Android, iOS and SimplePush clients.
+	 *
+	 * Messages that are targeted at aliases only are resolved by the {@link AliasTokenResolver}, messages targeting
+	 * categories or device types by the {@link CriteriaBitmapIndex} once it has indexed the variant.
 	 */
 	@Override
 	public ResultsStream.QueryBuilder<String> findAllDeviceTokenForVariantIDByCriteria(String variantID,
 			List<String> categories, List<String> aliases, List<String> deviceTypes, int maxResults,
 			String lastTokenFromPreviousBatch) {
+		if (isAliasOnlyCriteria(categories, aliases, deviceTypes)) {
+			return aliasTokenResolver.findDeviceTokens(variantID, aliases, maxResults, lastTokenFromPreviousBatch,
+					false);
+		}
+		final ResultsStream.QueryBuilder<String> indexed = criteriaBitmapIndex.findDeviceTokens(variantID, categories,
+				aliases, deviceTypes, maxResults, lastTokenFromPreviousBatch, false);
+		if (indexed != null) {
+			return indexed;
+		}
 		return installationDao.findAllDeviceTokenForVariantIDByCriteria(variantID, categories, aliases, deviceTypes,
 				maxResults, lastTokenFromPreviousBatch, false);
 	}
@@ -223,10 +391,25 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 	public ResultsStream.QueryBuilder<String> findAllOldGoogleCloudMessagingDeviceTokenForVariantIDByCriteria(
 			String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes, int maxResults,
 			String lastTokenFromPreviousBatch) {
+		if (isAliasOnlyCriteria(categories, aliases, deviceTypes)) {
+			return aliasTokenResolver.findDeviceTokens(variantID, aliases, maxResults, lastTokenFromPreviousBatch,
+					true);
+		}
+		final ResultsStream.QueryBuilder<String> indexed = criteriaBitmapIndex.findDeviceTokens(variantID, categories,
+				aliases, deviceTypes, maxResults, lastTokenFromPreviousBatch, true);
+		if (indexed != null) {
+			return indexed;
+		}
 		return installationDao.findAllDeviceTokenForVariantIDByCriteria(variantID, categories, aliases, deviceTypes,
 				maxResults, lastTokenFromPreviousBatch, true);
 	}
 
+	private static boolean isAliasOnlyCriteria(List<String> categories, List<String> aliases,
+			List<String> deviceTypes) {
+		return aliases != null && !aliases.isEmpty() && (categories == null || categories.isEmpty())
+				&& (deviceTypes == null || deviceTypes.isEmpty());
+	}
+
 	/**
 	 * A simple validation util that checks if a token is present
 	 */
@@ -261,6 +444,37 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 		}
 	}
 
+	/**
+	 * Bulk version of {@link #mergeCategories(Installation, Set)}: resolves the categories of all given
+	 * installations with one query and creates the missing ones, so that every installation refers to persistent
+	 * categories only.
+	 */
+	private void mergeCategories(List<Installation> installations) {
+		final Set<String> names = new HashSet<>();
+		installations.stream().filter(installation -> installation.getCategories() != null)
+				.forEach(installation -> names.addAll(convertToNames(installation.getCategories())));
+		if (names.isEmpty()) {
+			return;
+		}
+
+		final Map<String, Category> categories = new HashMap<>();
+		categoryDao.findByNames(new ArrayList<>(names)).forEach(category -> categories.put(category.getName(), category));
+		for (String name : names) {
+			categories.computeIfAbsent(name, missing -> {
+				final Category category = new Category(missing);
+				categoryDao.create(category);
+				return category;
+			});
+		}
+
+		for (Installation installation : installations) {
+			if (installation.getCategories() != null) {
+				installation.setCategories(installation.getCategories().stream().map(category -> categories.get(category.getName()))
+						.collect(Collectors.toSet()));
+			}
+		}
+	}
+
 	private static List<String> convertToNames(Set<Category> categories) {
 		return categories.stream().map(Category::getName).collect(Collectors.toList());
 	}
@@ -280,14 +494,14 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 		mergeCategories(entity, entity.getCategories());
 		// store Installation entity
 		installationDao.create(entity);
+		aliasTokenResolver.evict(entity);
+		criteriaBitmapIndex.put(entity);
+		dashboardStatistics.installationsAdded(variant.getVariantID(), 1);
 	}
 
 	@Override
 	public void removeInstallations(String alias) {
-		List<Installation> insts = installationDao.findInstallationsByAlias(alias);
-		if (insts != null) {
-			insts.forEach(item -> installationDao.delete(item));
-		}
+		removeInstallations(installationDao.findInstallationsByAlias(alias));
 	}
 
 	public List<Installation> findByAlias(String alias) {
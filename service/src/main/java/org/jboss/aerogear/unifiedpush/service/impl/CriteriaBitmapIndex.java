@@ -0,0 +1,489 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.Category;
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
+import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
+import org.jboss.aerogear.unifiedpush.dao.VariantDao;
+import org.jboss.aerogear.unifiedpush.service.util.TransactionCallbacks;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Resolves the device tokens of criteria targeted messages (categories, device types and aliases) from memory,
+ * instead of joining the installation categories for every batch of tokens.
+ *
+ * Every installation of a variant gets a dense ordinal. The index keeps one bitmap of ordinals per category and per
+ * device type, plus one of the enabled installations, so criteria are evaluated with bitmap AND/OR operations and
+ * only the matching ordinals are mapped to their tokens. A sorted map of the tokens lets a page start right after the
+ * last token of the previous page.
+ *
+ * Only messages that target categories or device types are resolved from the index, the database serves the others
+ * (e.g. broadcasts) with a plain index scan.
+ *
+ * The index is built from the database in the background at startup, and rebuilt periodically to pick up the changes
+ * of other nodes. Changes of this node are applied once their transaction has committed. Variants that are not
+ * (yet) indexed are queried from the database. Disabled by default.
+ */
+@Component
+public class CriteriaBitmapIndex {
+
+	public static final String PROP_ENABLED = "aerogear.criteria_index.enabled";
+	public static final String PROP_REBUILD_SECONDS = "aerogear.criteria_index.rebuild_seconds";
+
+	private static final int PAGE_SIZE = 1000;
+
+	private final Logger logger = LoggerFactory.getLogger(CriteriaBitmapIndex.class);
+
+	// indexes that serve queries, and indexes that are being (re)built
+	private final Map<String, VariantIndex> ready = new ConcurrentHashMap<>();
+	private final Map<String, VariantIndex> building = new ConcurrentHashMap<>();
+	// guards the swap of a built index against changes applied at the same time
+	private final Object swapLock = new Object();
+
+	@Inject
+	private InstallationDao installationDao;
+	@Inject
+	private VariantDao variantDao;
+	@Inject
+	private PlatformTransactionManager transactionManager;
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private boolean enabled;
+	private ScheduledExecutorService builder;
+
+	@PostConstruct
+	public void init() {
+		enabled = config.getProperty(PROP_ENABLED, false);
+		if (!enabled) {
+			return;
+		}
+
+		builder = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "criteria-index-builder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		builder.execute(this::rebuildQuietly);
+
+		final int rebuildSeconds = config.getProperty(PROP_REBUILD_SECONDS, 600);
+		if (rebuildSeconds > 0) {
+			builder.scheduleWithFixedDelay(this::rebuildQuietly, rebuildSeconds, rebuildSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (builder != null) {
+			builder.shutdownNow();
+		}
+	}
+
+	/**
+	 * Streams the tokens of a criteria targeted message from the index, page by page, in the same way the criteria
+	 * query does.
+	 *
+	 * @param variantID the variant
+	 * @param categories the categories, or null
+	 * @param aliases the aliases, or null
+	 * @param deviceTypes the device types, or null
+	 * @param maxResults number of tokens to stream
+	 * @param lastTokenFromPreviousBatch last token of the previous page, or null
+	 * @param oldGCM if true only old GCM tokens (not containing a :) are streamed
+	 *
+	 * @return builder of the token stream, or null if the variant is not indexed or neither categories nor device
+	 *         types are targeted
+	 */
+	public ResultsStream.QueryBuilder<String> findDeviceTokens(String variantID, List<String> categories,
+			List<String> aliases, List<String> deviceTypes, int maxResults, String lastTokenFromPreviousBatch,
+			boolean oldGCM) {
+		if (!enabled || (isEmpty(categories) && isEmpty(deviceTypes))) {
+			return null;
+		}
+		final VariantIndex index = ready.get(variantID);
+		if (index == null) {
+			return null;
+		}
+
+		final Set<String> lowerCaseAliases = isEmpty(aliases) ? null
+				: aliases.stream().map(alias -> alias.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+
+		return new ResultsStream.QueryBuilder<String>() {
+			@Override
+			public ResultsStream.QueryBuilder<String> fetchSize(int fetchSize) {
+				// tokens are resolved up-front, nothing to fetch lazily
+				return this;
+			}
+
+			@Override
+			public ResultsStream<String> executeQuery() {
+				final Iterator<String> iterator = index
+						.find(categories, lowerCaseAliases, deviceTypes, maxResults, lastTokenFromPreviousBatch, oldGCM)
+						.iterator();
+
+				return new ResultsStream<String>() {
+					private String current;
+
+					@Override
+					public boolean next() {
+						if (iterator.hasNext()) {
+							current = iterator.next();
+							return true;
+						}
+						return false;
+					}
+
+					@Override
+					public String get() {
+						return current;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Adds or replaces the given installation, once the current transaction has committed.
+	 *
+	 * @param installation the stored installation
+	 */
+	public void put(Installation installation) {
+		if (enabled && installation.getVariant() != null) {
+			final Entry entry = new Entry(installation);
+			TransactionCallbacks.afterCommit(() -> apply(entry.variantID, index -> index.put(entry)));
+		}
+	}
+
+	/**
+	 * Removes the given installation, once the current transaction has committed.
+	 *
+	 * @param installation the removed installation, or null
+	 */
+	public void remove(Installation installation) {
+		if (installation != null && installation.getVariant() != null) {
+			remove(installation.getVariant().getVariantID(), Collections.singletonList(installation.getId()));
+		}
+	}
+
+	/**
+	 * Removes the installations of the given IDs, once the current transaction has committed.
+	 *
+	 * @param variantID the variant of the installations
+	 * @param ids the IDs of the removed installations
+	 */
+	public void remove(String variantID, Collection<String> ids) {
+		if (enabled && !ids.isEmpty()) {
+			TransactionCallbacks.afterCommit(() -> apply(variantID, index -> ids.forEach(index::remove)));
+		}
+	}
+
+	/**
+	 * Drops the index of the given variant, once the current transaction has committed.
+	 *
+	 * @param variantID the removed variant
+	 */
+	public void removeVariant(String variantID) {
+		if (enabled) {
+			TransactionCallbacks.afterCommit(() -> {
+				synchronized (swapLock) {
+					ready.remove(variantID);
+					building.remove(variantID);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Builds the index of every variant from the database. The current indexes keep serving until their replacement
+	 * is complete.
+	 */
+	void rebuild() {
+		final TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		transaction.setReadOnly(true);
+
+		final List<String> variantIDs = transaction.execute(status -> variantDao.findAll().stream()
+				.map(Variant::getVariantID)
+				.collect(Collectors.toList()));
+		ready.keySet().retainAll(variantIDs);
+
+		for (String variantID : variantIDs) {
+			final VariantIndex index = new VariantIndex();
+			building.put(variantID, index);
+
+			String lastID = null;
+			List<Installation> page;
+			do {
+				final String after = lastID;
+				page = transaction.execute(status ->
+						installationDao.findInstallationsByVariantAfter(variantID, null, null, null, after, PAGE_SIZE));
+				page.forEach(installation -> index.load(new Entry(installation, variantID)));
+				if (!page.isEmpty()) {
+					lastID = page.get(page.size() - 1).getId();
+				}
+			} while (page.size() == PAGE_SIZE);
+
+			// changes that were committed during the build are applied on top
+			index.ready();
+			synchronized (swapLock) {
+				// a change applied in between would otherwise only reach the replaced index
+				if (building.remove(variantID, index)) {
+					ready.put(variantID, index);
+				}
+			}
+		}
+		logger.debug("Built criteria index of {} variants", variantIDs.size());
+	}
+
+	private void rebuildQuietly() {
+		try {
+			rebuild();
+		} catch (RuntimeException e) {
+			building.clear();
+			logger.warn("Unable to build the criteria index, will retry", e);
+		}
+	}
+
+	private void apply(String variantID, Consumer<VariantIndex> change) {
+		synchronized (swapLock) {
+			final VariantIndex current = ready.get(variantID);
+			if (current != null) {
+				current.apply(change);
+			}
+			final VariantIndex next = building.get(variantID);
+			if (next != null) {
+				next.apply(change);
+			}
+		}
+	}
+
+	private static boolean isEmpty(Collection<?> values) {
+		return values == null || values.isEmpty();
+	}
+
+	/**
+	 * The indexed properties of an installation, taken when it is stored.
+	 */
+	static final class Entry {
+		private final String id;
+		private final String variantID;
+		private final String deviceToken;
+		private final String lowerCaseAlias;
+		private final String deviceType;
+		private final boolean enabled;
+		private final Set<String> categories;
+
+		Entry(Installation installation) {
+			this(installation, installation.getVariant().getVariantID());
+		}
+
+		private Entry(Installation installation, String variantID) {
+			this.id = installation.getId();
+			this.variantID = variantID;
+			this.deviceToken = installation.getDeviceToken();
+			this.lowerCaseAlias = installation.getAlias() == null ? null
+					: installation.getAlias().toLowerCase(Locale.ROOT);
+			this.deviceType = installation.getDeviceType();
+			this.enabled = installation.isEnabled();
+			this.categories = installation.getCategories() == null ? new HashSet<>()
+					: installation.getCategories().stream().map(Category::getName).collect(Collectors.toSet());
+		}
+	}
+
+	/**
+	 * Bitmaps of the installations of one variant.
+	 */
+	static final class VariantIndex {
+		// by ordinal, null for free ordinals
+		private final List<String> tokens = new ArrayList<>();
+		private final List<String> aliases = new ArrayList<>();
+		// by installation ID
+		private final Map<String, Integer> ordinals = new HashMap<>();
+		// ordinals in token order
+		private final NavigableMap<String, Integer> byToken = new TreeMap<>();
+		private final BitSet free = new BitSet();
+		private final BitSet enabled = new BitSet();
+		private final Map<String, BitSet> categories = new HashMap<>();
+		private final Map<String, BitSet> deviceTypes = new HashMap<>();
+		// changes committed while the index is loaded, null once it is complete
+		private List<Consumer<VariantIndex>> pending = new ArrayList<>();
+
+		synchronized void load(Entry entry) {
+			put(entry);
+		}
+
+		synchronized void apply(Consumer<VariantIndex> change) {
+			if (pending != null) {
+				pending.add(change);
+			} else {
+				change.accept(this);
+			}
+		}
+
+		synchronized void ready() {
+			pending.forEach(change -> change.accept(this));
+			pending = null;
+		}
+
+		synchronized void put(Entry entry) {
+			Integer ordinal = ordinals.get(entry.id);
+			if (ordinal == null) {
+				ordinal = free.nextSetBit(0);
+				if (ordinal < 0) {
+					ordinal = tokens.size();
+					tokens.add(null);
+					aliases.add(null);
+				} else {
+					free.clear(ordinal);
+				}
+				ordinals.put(entry.id, ordinal);
+			} else {
+				clear(ordinal);
+				byToken.remove(tokens.get(ordinal), ordinal);
+			}
+
+			tokens.set(ordinal, entry.deviceToken);
+			byToken.put(entry.deviceToken, ordinal);
+			aliases.set(ordinal, entry.lowerCaseAlias);
+			if (entry.enabled) {
+				enabled.set(ordinal);
+			}
+			if (entry.deviceType != null) {
+				deviceTypes.computeIfAbsent(entry.deviceType, type -> new BitSet()).set(ordinal);
+			}
+			for (String category : entry.categories) {
+				categories.computeIfAbsent(category, name -> new BitSet()).set(ordinal);
+			}
+		}
+
+		synchronized void remove(String id) {
+			final Integer ordinal = ordinals.remove(id);
+			if (ordinal != null) {
+				clear(ordinal);
+				byToken.remove(tokens.get(ordinal), ordinal);
+				tokens.set(ordinal, null);
+				aliases.set(ordinal, null);
+				free.set(ordinal);
+			}
+		}
+
+		/**
+		 * Same result as the criteria query: the smallest tokens after the last token of the previous page, of the
+		 * enabled installations that match any of the categories, any of the device types and any of the aliases.
+		 */
+		synchronized NavigableSet<String> find(List<String> categories, Set<String> lowerCaseAliases,
+				List<String> deviceTypes, int maxResults, String lastToken, boolean oldGCM) {
+			final BitSet matches = (BitSet) enabled.clone();
+			if (!isEmpty(deviceTypes)) {
+				matches.and(union(this.deviceTypes, deviceTypes));
+			}
+			if (!isEmpty(categories)) {
+				matches.and(union(this.categories, categories));
+			}
+
+			final NavigableSet<String> page = new TreeSet<>();
+			if (maxResults <= 0) {
+				return page;
+			}
+
+			final int matching = matches.cardinality();
+			if ((long) matching * matching > (long) byToken.size() * maxResults) {
+				// many matches: walk the tokens from the last one on, until the page is full
+				final Map<String, Integer> tail = lastToken == null ? byToken : byToken.tailMap(lastToken, false);
+				for (Map.Entry<String, Integer> token : tail.entrySet()) {
+					if (matches.get(token.getValue()) && accept(token.getValue(), lowerCaseAliases, lastToken, oldGCM)) {
+						page.add(token.getKey());
+						if (page.size() == maxResults) {
+							break;
+						}
+					}
+				}
+				return page;
+			}
+
+			// few matches: keep the smallest tokens of the matching ordinals
+			for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+				if (!accept(ordinal, lowerCaseAliases, lastToken, oldGCM)) {
+					continue;
+				}
+				final String token = tokens.get(ordinal);
+				if (page.size() < maxResults) {
+					page.add(token);
+				} else if (token.compareTo(page.last()) < 0 && page.add(token)) {
+					page.pollLast();
+				}
+			}
+			return page;
+		}
+
+		private boolean accept(int ordinal, Set<String> lowerCaseAliases, String lastToken, boolean oldGCM) {
+			final String token = tokens.get(ordinal);
+			return (lowerCaseAliases == null || lowerCaseAliases.contains(aliases.get(ordinal)))
+					&& (!oldGCM || token.indexOf(':') < 0)
+					&& (lastToken == null || token.compareTo(lastToken) > 0);
+		}
+
+		private void clear(int ordinal) {
+			enabled.clear(ordinal);
+			deviceTypes.values().forEach(bitmap -> bitmap.clear(ordinal));
+			categories.values().forEach(bitmap -> bitmap.clear(ordinal));
+		}
+
+		private static BitSet union(Map<String, BitSet> bitmaps, List<String> keys) {
+			final BitSet union = new BitSet();
+			for (String key : keys) {
+				final BitSet bitmap = bitmaps.get(key);
+				if (bitmap != null) {
+					union.or(bitmap);
+				}
+			}
+			return union;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.Category;
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.service.util.FCMTopicManager;
+import org.jboss.aerogear.unifiedpush.service.util.TransactionCallbacks;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Unsubscribes Android devices from the FCM topics of the categories they no longer have, outside of the
+ * registration request and its transaction.
+ *
+ * Updates are collected once their transaction has committed, keyed by device, so repeated updates of the same device
+ * are handled once with its latest categories. A background worker looks up the subscribed topics of the pending
+ * devices and removes the stale ones with the batch API of the Instance ID service, one request per topic, over pooled
+ * connections.
+ */
+@Component
+public class FCMTopicMaintenance {
+
+	public static final String PROP_IID_URL = "aerogear.fcm.iid_url";
+	public static final String PROP_FLUSH_MS = "aerogear.fcm.topics.flush_ms";
+	public static final String PROP_MAX_CONNECTIONS = "aerogear.fcm.topics.max_connections";
+
+	private static final int TIMEOUT_MS = 10000;
+
+	private final Logger logger = LoggerFactory.getLogger(FCMTopicMaintenance.class);
+
+	// latest update per variant and device token
+	private final Map<String, Update> pending = new ConcurrentHashMap<>();
+
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private String iidUrl;
+	private CloseableHttpClient httpClient;
+	private ScheduledExecutorService worker;
+
+	@PostConstruct
+	public void start() {
+		iidUrl = config.getProperty(PROP_IID_URL, FCMTopicManager.IID_URL);
+
+		final int maxConnections = Math.max(1, config.getProperty(PROP_MAX_CONNECTIONS, 20));
+		final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectTimeout(TIMEOUT_MS)
+						.setConnectionRequestTimeout(TIMEOUT_MS)
+						.setSocketTimeout(TIMEOUT_MS)
+						.build())
+				.build();
+
+		final long flushMs = Math.max(10, config.getProperty(PROP_FLUSH_MS, 1000));
+		worker = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "fcm-topic-maintenance");
+			thread.setDaemon(true);
+			return thread;
+		});
+		worker.scheduleWithFixedDelay(this::flushQuietly, flushMs, flushMs, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		worker.shutdownNow();
+		if (!pending.isEmpty()) {
+			logger.debug("Dropping topic maintenance of {} devices", pending.size());
+		}
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			logger.debug("Unable to close the Instance ID client", e);
+		}
+	}
+
+	/**
+	 * Unsubscribes the device of the given Android installation from the topics it should no longer be subscribed
+	 * to, once the current transaction has committed.
+	 *
+	 * @param installation Installation object containing correct variant property of AndroidVariant class
+	 */
+	public void unsubscribeOldTopics(Installation installation) {
+		final Update update = new Update(installation);
+		TransactionCallbacks.afterCommit(() -> pending.put(update.variantID + ':' + update.deviceToken, update));
+	}
+
+	/**
+	 * Handles all pending updates.
+	 */
+	void flush() {
+		final List<Update> updates = new ArrayList<>();
+		for (Iterator<Update> iterator = pending.values().iterator(); iterator.hasNext();) {
+			updates.add(iterator.next());
+			iterator.remove();
+		}
+		if (updates.isEmpty()) {
+			return;
+		}
+
+		// server key -> topic -> tokens to unsubscribe
+		final Map<String, Map<String, Set<String>>> unsubscriptions = new HashMap<>();
+		final Map<String, FCMTopicManager> managers = new HashMap<>();
+		for (Update update : updates) {
+			final FCMTopicManager manager = managers.computeIfAbsent(update.serverKey,
+					key -> new FCMTopicManager(httpClient, iidUrl, key));
+			final Set<String> oldCategories = manager.getSubscribedCategories(update.deviceToken);
+			oldCategories.removeAll(update.topics);
+			for (String categoryName : oldCategories) {
+				unsubscriptions.computeIfAbsent(update.serverKey, key -> new HashMap<>())
+						.computeIfAbsent(categoryName, topic -> new HashSet<>())
+						.add(update.deviceToken);
+			}
+		}
+
+		unsubscriptions.forEach((serverKey, topics) ->
+				topics.forEach((topic, deviceTokens) -> managers.get(serverKey).unsubscribe(topic, deviceTokens)));
+		logger.debug("Maintained the topics of {} devices", updates.size());
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			logger.warn("Unable to maintain FCM topics", e);
+		}
+	}
+
+	/**
+	 * The device and the topics it keeps, taken when the installation is updated.
+	 */
+	private static final class Update {
+		private final String variantID;
+		private final String serverKey;
+		private final String deviceToken;
+		// current categories and the global variant topic, which is never unsubscribed
+		private final Set<String> topics = new HashSet<>();
+
+		private Update(Installation installation) {
+			this.variantID = installation.getVariant().getVariantID();
+			this.serverKey = ((AndroidVariant) installation.getVariant()).getGoogleKey();
+			this.deviceToken = installation.getDeviceToken();
+			if (installation.getCategories() != null) {
+				installation.getCategories().stream().map(Category::getName).forEach(topics::add);
+			}
+			topics.add(variantID);
+		}
+	}
+}
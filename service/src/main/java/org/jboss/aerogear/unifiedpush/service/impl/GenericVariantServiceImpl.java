@@ -22,6 +22,7 @@ import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.dao.VariantDao;
 import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
+import org.jboss.aerogear.unifiedpush.service.metrics.DashboardStatistics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
@@ -38,10 +39,20 @@ public class GenericVariantServiceImpl implements GenericVariantService {
 	@Autowired
 	private CacheManager cacheManager;
 
+	@Inject
+	private PrincipalCache principalCache;
+
+	@Inject
+	private DashboardStatistics dashboardStatistics;
+
+	@Inject
+	private CriteriaBitmapIndex criteriaBitmapIndex;
+
 	@Override
 	public void addVariant(Variant variant, LoggedInUser user) {
 		variant.setDeveloper(user.get());
 		variantDao.create(variant);
+		dashboardStatistics.invalidate();
 	}
 
 	@Override
@@ -49,20 +60,48 @@ public class GenericVariantServiceImpl implements GenericVariantService {
 		return variantDao.findByVariantID(variantID);
 	}
 
+	@Override
+	public Variant findAuthorizedVariant(String variantID, String secret) {
+		return principalCache.authenticate(Variant.class, variantID, secret, () -> {
+			final Variant variant = findCachedByVariantID(variantID);
+			return variant != null && variant.getSecret().equals(secret) ? variant : null;
+		});
+	}
+
+	/**
+	 * Same as the {@link #findByVariantID(String)} through the service proxy, which a call from within this class
+	 * would bypass.
+	 */
+	private Variant findCachedByVariantID(String variantID) {
+		final Cache cache = cacheManager.getCache(GenericVariantService.CACHE_NAME);
+		Variant variant = cache.get(variantID, Variant.class);
+		if (variant == null) {
+			variant = variantDao.findByVariantID(variantID);
+			if (variant != null) {
+				cache.put(variantID, variant);
+			}
+		}
+		return variant;
+	}
+
 	@Override
 	public void updateVariant(Variant variant) {
 		variantDao.update(variant);
-		evict(variant.getId());
+		evict(variant.getVariantID());
 	}
 
 	@Override
 	public void removeVariant(Variant variant) {
 		variantDao.delete(variant);
-		evict(variant.getId());
+		evict(variant.getVariantID());
+		criteriaBitmapIndex.removeVariant(variant.getVariantID());
+		dashboardStatistics.invalidate();
 	}
 
-	private void evict(String clientId) {
+	// the variant cache is keyed by variantID
+	private void evict(String variantID) {
 		Cache cache = cacheManager.getCache(GenericVariantService.CACHE_NAME);
-		cache.evict(clientId);
+		cache.evict(variantID);
+		principalCache.evictAll();
 	}
 }
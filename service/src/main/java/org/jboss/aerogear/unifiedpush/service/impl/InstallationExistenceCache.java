@@ -0,0 +1,136 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
+import org.jboss.aerogear.unifiedpush.service.util.TransactionCallbacks;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Answers whether a device token belongs to an enabled installation of a variant, for device authentication.
+ *
+ * Known enabled installations may be kept in an (optional) in-memory cache, keyed by variant and a hash of the
+ * device token, so that repeated requests of the same device do not query the database. Entries are evicted once the
+ * transaction that updates or removes the installation on this node has committed, so that a concurrent lookup cannot
+ * cache the state it replaces; unknown and disabled tokens are never cached. The cache is
+ * disabled by default, since installations disabled or removed by other nodes are only rejected once an entry
+ * expires.
+ */
+@Component
+public class InstallationExistenceCache {
+
+	public static final String PROP_CACHE_SIZE = "aerogear.installation.existence_cache_size";
+	public static final String PROP_CACHE_TTL_SECONDS = "aerogear.installation.existence_cache_ttl_seconds";
+
+	@Inject
+	private InstallationDao installationDao;
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private Cache<String, Boolean> cache;
+
+	@PostConstruct
+	public void init() {
+		final int cacheSize = config.getProperty(PROP_CACHE_SIZE, 0);
+		if (cacheSize > 0) {
+			cache = Caffeine.newBuilder() //
+					.maximumSize(cacheSize) //
+					.expireAfterWrite(config.getProperty(PROP_CACHE_TTL_SECONDS, 60), TimeUnit.SECONDS) //
+					.build();
+		}
+	}
+
+	/**
+	 * @param variantID the variant
+	 * @param deviceToken the device token
+	 *
+	 * @return true if an enabled installation with the given token is registered for the variant
+	 */
+	public boolean isEnabled(String variantID, String deviceToken) {
+		if (cache == null) {
+			return load(variantID, deviceToken);
+		}
+
+		final String key = key(variantID, deviceToken);
+		if (cache.getIfPresent(key) != null) {
+			return true;
+		}
+
+		final boolean enabled = load(variantID, deviceToken);
+		if (enabled) {
+			cache.put(key, Boolean.TRUE);
+		}
+		return enabled;
+	}
+
+	/**
+	 * Evicts the cached state of the installation's device token, if any.
+	 *
+	 * @param installation the changed installation
+	 */
+	public void evict(Installation installation) {
+		if (installation != null && installation.getVariant() != null) {
+			evict(installation.getVariant().getVariantID(), installation.getDeviceToken());
+		}
+	}
+
+	/**
+	 * Evicts the cached state of the given device token, if any, once the current transaction has committed.
+	 *
+	 * @param variantID the variant
+	 * @param deviceToken the device token
+	 */
+	public void evict(String variantID, String deviceToken) {
+		if (cache != null && deviceToken != null) {
+			final String key = key(variantID, deviceToken);
+			TransactionCallbacks.afterCommit(() -> cache.invalidate(key));
+		}
+	}
+
+	private boolean load(String variantID, String deviceToken) {
+		final Installation installation = installationDao.findInstallationForVariantByDeviceToken(variantID,
+				deviceToken);
+		return installation != null && installation.isEnabled();
+	}
+
+	/**
+	 * Tokens can be up to 4k long, the cache only keeps their SHA-256.
+	 */
+	private static String key(String variantID, String deviceToken) {
+		try {
+			final byte[] hash = MessageDigest.getInstance("SHA-256")
+					.digest(deviceToken.getBytes(StandardCharsets.UTF_8));
+			return variantID + ':' + Base64.getEncoder().encodeToString(hash);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of an installation import, as reported by the importer status endpoint.
+ */
+public class InstallationImportJob {
+
+	public enum State {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	private final String id = UUID.randomUUID().toString();
+	private final String variantID;
+	private final Date submitDate = new Date();
+	private final AtomicLong parsed = new AtomicLong();
+	private final AtomicLong imported = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	private volatile State state = State.QUEUED;
+	private volatile Date finishDate;
+	private volatile String error;
+
+	public InstallationImportJob(String variantID) {
+		this.variantID = variantID;
+	}
+
+	void running() {
+		state = State.RUNNING;
+	}
+
+	void completed() {
+		finishDate = new Date();
+		state = State.COMPLETED;
+	}
+
+	void failed(String error) {
+		this.error = error;
+		finishDate = new Date();
+		state = State.FAILED;
+	}
+
+	void addParsed(long count) {
+		parsed.addAndGet(count);
+	}
+
+	void addImported(long count) {
+		imported.addAndGet(count);
+	}
+
+	void addSkipped(long count) {
+		skipped.addAndGet(count);
+	}
+
+	void addFailed(long count) {
+		failed.addAndGet(count);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getVariantID() {
+		return variantID;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public Date getSubmitDate() {
+		return submitDate;
+	}
+
+	public Date getFinishDate() {
+		return finishDate;
+	}
+
+	/**
+	 * @return number of installations read from the uploaded file so far
+	 */
+	public long getParsed() {
+		return parsed.get();
+	}
+
+	/**
+	 * @return number of installations stored or updated so far
+	 */
+	public long getImported() {
+		return imported.get();
+	}
+
+	/**
+	 * @return number of installations ignored, because they carry no device token, repeat a device token of the same
+	 *         batch or belong to a disabled installation
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * @return number of installations that could not be stored
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	public String getError() {
+		return error;
+	}
+}
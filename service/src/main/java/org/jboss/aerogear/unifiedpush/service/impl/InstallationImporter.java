@@ -0,0 +1,212 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Imports installations from an uploaded JSON array, without holding the file or the variant's existing tokens in
+ * memory.
+ *
+ * The upload is spooled to a temporary file and read with a streaming parser by a background job. Installations are
+ * stored in fixed size batches with {@link ClientInstallationService#addInstallationsInBulk(Variant, java.util.Collection)},
+ * each batch in its own transaction, so duplicates are resolved by the bulk upsert. A batch that fails is retried one
+ * installation at a time, so that a single bad installation does not fail the others. The progress of a job can be
+ * polled by its ID until {@value #PROP_JOB_RETENTION_MINUTES} minutes after it was submitted.
+ */
+@Service
+public class InstallationImporter {
+
+	public static final String PROP_BATCH_SIZE = "aerogear.importer.batch_size";
+	public static final String PROP_THREADS = "aerogear.importer.threads";
+	public static final String PROP_JOB_RETENTION_MINUTES = "aerogear.importer.job_retention_minutes";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final Logger logger = LoggerFactory.getLogger(InstallationImporter.class);
+
+	@Inject
+	private ClientInstallationService clientInstallationService;
+	@Inject
+	private PlatformTransactionManager transactionManager;
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private int batchSize;
+	private ExecutorService executor;
+	private TransactionTemplate transactionTemplate;
+	private Cache<String, InstallationImportJob> jobs;
+
+	@PostConstruct
+	public void init() {
+		batchSize = Math.max(1, config.getProperty(PROP_BATCH_SIZE, 1000));
+		executor = Executors.newFixedThreadPool(Math.max(1, config.getProperty(PROP_THREADS, 2)), r -> {
+			final Thread thread = new Thread(r, "installation-importer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		jobs = Caffeine.newBuilder() //
+				.expireAfterWrite(config.getProperty(PROP_JOB_RETENTION_MINUTES, 60), TimeUnit.MINUTES) //
+				.build();
+
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Spools the uploaded JSON array of installations and submits a job that imports it.
+	 *
+	 * @param variant the variant to import to
+	 * @param json the uploaded JSON, closed by this method
+	 *
+	 * @return the submitted job
+	 * @throws IOException if the upload could not be spooled
+	 */
+	public InstallationImportJob submit(Variant variant, InputStream json) throws IOException {
+		final Path file = Files.createTempFile("installation-import-", ".json");
+		try (InputStream in = json) {
+			Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+
+		final InstallationImportJob job = new InstallationImportJob(variant.getVariantID());
+		jobs.put(job.getId(), job);
+		executor.execute(() -> run(job, variant, file));
+		return job;
+	}
+
+	/**
+	 * @param jobId the job ID
+	 * @return the job, or null if it is unknown or expired
+	 */
+	public InstallationImportJob find(String jobId) {
+		return jobs.getIfPresent(jobId);
+	}
+
+	private void run(InstallationImportJob job, Variant variant, Path file) {
+		job.running();
+		try (JsonParser parser = mapper.getFactory().createParser(file.toFile())) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new JsonParseException(parser, "Expected an array of installations");
+			}
+
+			List<Installation> batch = new ArrayList<>(batchSize);
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				batch.add(mapper.readValue(parser, Installation.class));
+				job.addParsed(1);
+				if (batch.size() == batchSize) {
+					store(job, variant, batch);
+					batch = new ArrayList<>(batchSize);
+				}
+			}
+			store(job, variant, batch);
+
+			logger.info("Imported {} devices to variant {}", job.getImported(), variant.getVariantID());
+			job.completed();
+		} catch (IOException | RuntimeException e) {
+			logger.error("Error when importing devices to variant {}", variant.getVariantID(), e);
+			job.failed(e.getMessage());
+		} finally {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				logger.warn("Unable to delete import file {}", file, e);
+			}
+		}
+	}
+
+	private void store(InstallationImportJob job, Variant variant, List<Installation> batch) {
+		final List<Installation> installations = new ArrayList<>(batch.size());
+		for (Installation installation : batch) {
+			if (installation.getDeviceToken() == null || installation.getDeviceToken().isEmpty()) {
+				job.addSkipped(1);
+			} else {
+				installations.add(installation);
+			}
+		}
+		if (installations.isEmpty()) {
+			return;
+		}
+
+		try {
+			final int written = write(variant, installations);
+			job.addImported(written);
+			job.addSkipped(installations.size() - written);
+			return;
+		} catch (RuntimeException e) {
+			logger.warn("Unable to import a batch of {} devices to variant {}, importing them one by one",
+					installations.size(), variant.getVariantID(), e);
+		}
+
+		// a single bad installation does not fail the others of its batch
+		for (Installation installation : installations) {
+			try {
+				final int written = write(variant, Collections.singletonList(installation));
+				job.addImported(written);
+				job.addSkipped(1 - written);
+			} catch (RuntimeException e) {
+				logger.error("Unable to import device token {} to variant {}", installation.getDeviceToken(),
+						variant.getVariantID(), e);
+				job.addFailed(1);
+			}
+		}
+	}
+
+	private int write(Variant variant, List<Installation> installations) {
+		return transactionTemplate.execute(status -> clientInstallationService.addInstallationsInBulk(variant,
+				installations));
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Coalesces device registrations: installations are buffered per variant for a few milliseconds, repeated
+ * registrations of a device token collapse into the latest one, and every variant's buffer is written with
+ * {@link ClientInstallationService#addInstallationsInBulk(Variant, java.util.Collection)}.
+ *
+ * When the buffer is full, the caller flushes it. A batch that fails is retried one installation at a time, so
+ * that a single bad registration does not drop the others.
+ *
+ * Coalescing is disabled by default ({@value #PROP_ENABLED}).
+ */
+@Service
+public class InstallationRegistrationCoalescer {
+
+	public static final String PROP_ENABLED = "aerogear.registration.coalesce.enabled";
+	public static final String PROP_WINDOW_MS = "aerogear.registration.coalesce.window_ms";
+	public static final String PROP_BATCH_SIZE = "aerogear.registration.coalesce.batch_size";
+	public static final String PROP_MAX_PENDING = "aerogear.registration.coalesce.max_pending";
+
+	private final Logger logger = LoggerFactory.getLogger(InstallationRegistrationCoalescer.class);
+
+	private final Object lock = new Object();
+	// pending registrations per variant ID, guarded by lock
+	private Map<String, PendingRegistrations> pending = new HashMap<>();
+	private int pendingCount;
+
+	@Inject
+	private ClientInstallationService clientInstallationService;
+	@Inject
+	private PlatformTransactionManager transactionManager;
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private boolean enabled;
+	private int batchSize;
+	private int maxPending;
+	private ScheduledExecutorService flusher;
+	private TransactionTemplate transactionTemplate;
+
+	@PostConstruct
+	public void start() {
+		enabled = config.getProperty(PROP_ENABLED, false);
+		if (!enabled) {
+			return;
+		}
+
+		// batches are committed on their own, also when flushed from within a caller's transaction
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		batchSize = Math.max(1, config.getProperty(PROP_BATCH_SIZE, 500));
+		maxPending = Math.max(1, config.getProperty(PROP_MAX_PENDING, 20000));
+
+		final long windowMs = Math.max(1, config.getProperty(PROP_WINDOW_MS, 5));
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "installation-registration-coalescer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flush, windowMs, windowMs, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (!enabled) {
+			return;
+		}
+
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Accepts a device registration for (later) storage.
+	 *
+	 * @param variant the variant to store on
+	 * @param installation the posted installation
+	 */
+	public void submit(Variant variant, Installation installation) {
+		final boolean full;
+		synchronized (lock) {
+			final PendingRegistrations registrations = pending.computeIfAbsent(variant.getVariantID(),
+					variantID -> new PendingRegistrations());
+			registrations.variant = variant;
+			if (registrations.installations.put(installation.getDeviceToken(), installation) == null) {
+				pendingCount++;
+			}
+			full = pendingCount >= maxPending;
+		}
+
+		if (full) {
+			// buffer is full: the caller pays for the flush, which is our back pressure
+			flush();
+		}
+	}
+
+	/**
+	 * Writes all pending registrations, in batches per variant.
+	 */
+	public synchronized void flush() {
+		if (!enabled) {
+			return;
+		}
+
+		final Map<String, PendingRegistrations> registrations;
+		synchronized (lock) {
+			if (pendingCount == 0) {
+				return;
+			}
+			registrations = pending;
+			pending = new HashMap<>();
+			pendingCount = 0;
+		}
+
+		for (PendingRegistrations variantRegistrations : registrations.values()) {
+			final List<Installation> installations = new ArrayList<>(variantRegistrations.installations.values());
+			for (int from = 0; from < installations.size(); from += batchSize) {
+				write(variantRegistrations.variant,
+						installations.subList(from, Math.min(from + batchSize, installations.size())));
+			}
+		}
+	}
+
+	private void write(Variant variant, List<Installation> installations) {
+		try {
+			transactionTemplate.execute(status -> {
+				clientInstallationService.addInstallationsInBulk(variant, installations);
+				return null;
+			});
+			return;
+		} catch (RuntimeException e) {
+			logger.warn("Unable to store {} registrations for variant {} in bulk, storing them one by one",
+					installations.size(), variant.getVariantID(), e);
+		}
+
+		for (Installation installation : installations) {
+			try {
+				transactionTemplate.execute(status -> {
+					clientInstallationService.addInstallation(variant, installation);
+					return null;
+				});
+			} catch (RuntimeException e) {
+				logger.error("Unable to store registration of device token {} for variant {}",
+						installation.getDeviceToken(), variant.getVariantID(), e);
+			}
+		}
+	}
+
+	private static final class PendingRegistrations {
+		private Variant variant;
+		// by device token, in order of arrival
+		private final Map<String, Installation> installations = new LinkedHashMap<>();
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Short lived cache of authenticated principals (variants and push applications), keyed by a SHA-256 of the
+ * presented credentials, so that repeated requests with the same credentials skip the lookup and comparison.
+ *
+ * Rejected credentials are cached as well, for a shorter time. Credentials that were rejected too many times within
+ * the failure window are rejected without a lookup until the window passes. The attempts are counted per presented
+ * credentials, not per principal, so that repeating a bad secret of a (public) variant ID does not lock out the
+ * clients that present the valid one. All entries are dropped whenever a variant or push application changes on this
+ * node, e.g. on secret rotation.
+ *
+ * The cache is disabled by default ({@value #PROP_CACHE_SIZE}).
+ */
+@Component
+public class PrincipalCache {
+
+	public static final String PROP_CACHE_SIZE = "aerogear.auth.principal_cache_size";
+	public static final String PROP_CACHE_TTL_SECONDS = "aerogear.auth.principal_cache_ttl_seconds";
+	public static final String PROP_NEGATIVE_TTL_SECONDS = "aerogear.auth.negative_cache_ttl_seconds";
+	public static final String PROP_FAILURE_LIMIT = "aerogear.auth.failure_limit";
+	public static final String PROP_FAILURE_WINDOW_SECONDS = "aerogear.auth.failure_window_seconds";
+
+	private final Logger logger = LoggerFactory.getLogger(PrincipalCache.class);
+
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private Cache<String, Object> principals;
+	private Cache<String, Boolean> rejected;
+	private Cache<String, AtomicInteger> failures;
+	private int failureLimit;
+
+	@PostConstruct
+	public void init() {
+		final int cacheSize = config.getProperty(PROP_CACHE_SIZE, 0);
+		if (cacheSize <= 0) {
+			return;
+		}
+
+		principals = Caffeine.newBuilder() //
+				.maximumSize(cacheSize) //
+				.expireAfterWrite(config.getProperty(PROP_CACHE_TTL_SECONDS, 30), TimeUnit.SECONDS) //
+				.build();
+		rejected = Caffeine.newBuilder() //
+				.maximumSize(cacheSize) //
+				.expireAfterWrite(config.getProperty(PROP_NEGATIVE_TTL_SECONDS, 5), TimeUnit.SECONDS) //
+				.build();
+		failures = Caffeine.newBuilder() //
+				.maximumSize(cacheSize) //
+				.expireAfterWrite(config.getProperty(PROP_FAILURE_WINDOW_SECONDS, 60), TimeUnit.SECONDS) //
+				.build();
+		failureLimit = config.getProperty(PROP_FAILURE_LIMIT, 20);
+	}
+
+	/**
+	 * Resolves the principal authenticated by the given credentials, applying negative caching and the failed
+	 * attempts limit of the credentials.
+	 *
+	 * @param type the type of principal
+	 * @param principal the presented principal, e.g. the variant ID
+	 * @param secret the presented secret
+	 * @param loader looks up and verifies the principal, returns null if the credentials are not valid
+	 *
+	 * @return the authenticated principal, or null
+	 */
+	public <T> T authenticate(Class<T> type, String principal, String secret, Supplier<T> loader) {
+		return resolve(type, principal, principal + ':' + secret, loader);
+	}
+
+	/**
+	 * Resolves the principal of a (bearer) token, applying negative caching and the failed attempts limit of the
+	 * token.
+	 *
+	 * @param type the type of principal
+	 * @param token the presented token
+	 * @param loader resolves the principal, returns null if the token is not valid
+	 *
+	 * @return the resolved principal, or null
+	 */
+	public <T> T resolveToken(Class<T> type, String token, Supplier<T> loader) {
+		return resolve(type, null, token, loader);
+	}
+
+	/**
+	 * Drops all cached principals, rejections and failed attempts.
+	 */
+	public void evictAll() {
+		if (principals != null) {
+			principals.invalidateAll();
+			rejected.invalidateAll();
+			failures.invalidateAll();
+		}
+	}
+
+	private <T> T resolve(Class<T> type, String principal, String credentials, Supplier<T> loader) {
+		if (principals == null) {
+			return loader.get();
+		}
+
+		final String key = type.getSimpleName() + ':' + hash(credentials);
+		final Object cached = principals.getIfPresent(key);
+		if (cached != null) {
+			return type.cast(cached);
+		}
+		if (rejected.getIfPresent(key) != null) {
+			return null;
+		}
+
+		final AtomicInteger failed = failures.getIfPresent(key);
+		if (failureLimit > 0 && failed != null && failed.get() >= failureLimit) {
+			logger.debug("Too many failed authentication attempts with the same credentials for {}, rejecting",
+					principal);
+			return null;
+		}
+
+		final T resolved = loader.get();
+		if (resolved != null) {
+			principals.put(key, resolved);
+		} else {
+			rejected.put(key, Boolean.TRUE);
+			failures.get(key, unused -> new AtomicInteger()).incrementAndGet();
+		}
+		return resolved;
+	}
+
+	private static String hash(String credentials) {
+		try {
+			final byte[] hash = MessageDigest.getInstance("SHA-256")
+					.digest(credentials.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(hash);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -29,6 +29,7 @@ import org.jboss.aerogear.unifiedpush.service.PostDelete;
 import org.jboss.aerogear.unifiedpush.service.PushApplicationService;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
 import org.jboss.aerogear.unifiedpush.service.impl.spring.IKeycloakService;
+import org.jboss.aerogear.unifiedpush.service.metrics.DashboardStatistics;
 import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
@@ -51,6 +52,10 @@ public class PushApplicationServiceImpl implements PushApplicationService {
 	private IKeycloakService keycloakService;
 	@Autowired
 	private CacheManager cacheManager;
+	@Inject
+	private PrincipalCache principalCache;
+	@Inject
+	private DashboardStatistics dashboardStatistics;
 
 	public PushApplicationServiceImpl() {
 	}
@@ -72,6 +77,7 @@ public class PushApplicationServiceImpl implements PushApplicationService {
 
 		pushApplication.setDeveloper(user.get());
 		pushApplicationDao.create(pushApplication);
+		dashboardStatistics.invalidate();
 	}
 
 	@Override
@@ -83,16 +89,49 @@ public class PushApplicationServiceImpl implements PushApplicationService {
 	public void addVariant(PushApplication pushApp, Variant variant) {
 		pushApp.getVariants().add(variant);
 		pushApplicationDao.update(pushApp);
+		dashboardStatistics.invalidate();
 	}
 
 	@Override
 	public Map<String, Long> countInstallationsByType(String pushApplicationID) {
+		if (dashboardStatistics.isEnabled()) {
+			return dashboardStatistics.countInstallationsByType(pushApplicationID);
+		}
 		return pushApplicationDao.countInstallationsByType(pushApplicationID);
 	}
 
+	@Override
+	public PushApplication findAuthorizedPushApplication(String pushApplicationID, String masterSecret) {
+		return principalCache.authenticate(PushApplication.class, pushApplicationID, masterSecret, () -> {
+			final PushApplication pushApplication = findCachedByPushApplicationID(pushApplicationID);
+			return pushApplication != null && pushApplication.getMasterSecret().equals(masterSecret) ? pushApplication
+					: null;
+		});
+	}
+
+	/**
+	 * Same as the {@link #findByPushApplicationID(String)} through the service proxy, which a call from within this
+	 * class would bypass.
+	 */
+	private PushApplication findCachedByPushApplicationID(String pushApplicationID) {
+		final Cache cache = cacheManager.getCache(PushApplicationService.APPLICATION_CACHE_BY_ID);
+		PushApplication pushApplication = cache.get(pushApplicationID, PushApplication.class);
+		if (pushApplication == null) {
+			pushApplication = pushApplicationDao.findByPushApplicationID(pushApplicationID);
+			if (pushApplication != null) {
+				cache.put(pushApplicationID, pushApplication);
+			}
+		}
+		return pushApplication;
+	}
+
 	@Override
 	public void updatePushApplication(PushApplication pushApp) {
 		pushApplicationDao.update(pushApp);
+		// e.g. a new master secret
+		evictById(pushApp.getPushApplicationID());
+		evictByName(pushApp.getName());
+		principalCache.evictAll();
 	}
 
 	@Override
@@ -101,6 +140,7 @@ public class PushApplicationServiceImpl implements PushApplicationService {
 		pushApp.getVariants().stream().forEach(var -> evictByVariantId(var.getVariantID()));
 		evictById(pushApp.getPushApplicationID());
 		evictByName(pushApp.getName());
+		principalCache.evictAll();
 
 		// @Async delete aliases
 		if (aliasService != null) {
@@ -118,6 +158,7 @@ public class PushApplicationServiceImpl implements PushApplicationService {
 
 		// Delete push application
 		pushApplicationDao.delete(pushApp);
+		dashboardStatistics.invalidate();
 	}
 
 	@Override
@@ -22,20 +22,22 @@ import java.util.List;
 
 import javax.inject.Inject;
 
-import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dao.PushApplicationDao;
+import org.jboss.aerogear.unifiedpush.dao.SearchMode;
 import org.jboss.aerogear.unifiedpush.dao.VariantDao;
 import org.jboss.aerogear.unifiedpush.dto.Count;
+import org.jboss.aerogear.unifiedpush.dto.MessageActivity;
 import org.jboss.aerogear.unifiedpush.service.PushSearchService;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
 import org.jboss.aerogear.unifiedpush.service.dashboard.Application;
 import org.jboss.aerogear.unifiedpush.service.dashboard.ApplicationVariant;
 import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardData;
+import org.jboss.aerogear.unifiedpush.service.metrics.DashboardStatistics;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
@@ -46,6 +48,9 @@ import org.springframework.transaction.annotation.Transactional;
  * Implementation of the <code>PushSearchService</code> internally used for
  * 'developer' role, to query for a restricted set of data, that is tied to a
  * specific user/login name.
+ *
+ * Searches and counts run in read-only transactions, which are routed to a
+ * read replica when one is configured.
  */
 @Service
 @Qualifier("PushSearchByDeveloperServiceImpl")
@@ -65,6 +70,9 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
 	@Inject
 	private FlatPushMessageInformationDao flatPushMessageInformationDao;
 
+	@Inject
+	private DashboardStatistics dashboardStatistics;
+
 	private LoggedInUser loginName;
 
 	public void setLoginName(LoggedInUser loginName) {
@@ -72,16 +80,31 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public PageResult<PushApplication, Count> findAllPushApplicationsForDeveloper(Integer page, Integer pageSize) {
 		return pushApplicationDao.findAllForDeveloper(loginName.get(), page, pageSize);
 	}
 
 	@Override
+	@Transactional(readOnly = true)
+	public List<PushApplication> findAllPushApplicationsForDeveloperAfter(String lastID, int pageSize) {
+		return pushApplicationDao.findAllForDeveloperAfter(loginName.get(), lastID, pageSize);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public long countPushApplicationsForDeveloper() {
+		return pushApplicationDao.getNumberOfPushApplicationsForDeveloper(loginName.get());
+	}
+
+	@Override
+	@Transactional(readOnly = true)
 	public PushApplication findByPushApplicationIDForDeveloper(String pushApplicationID) {
 		return pushApplicationDao.findByPushApplicationIDForDeveloper(pushApplicationID, loginName.get());
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public boolean existsVariantIDForDeveloper(String variantID) {
 		return variantDao.existsVariantIDForDeveloper(variantID, loginName.get());
 	}
@@ -91,6 +114,9 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
 	 */
 	@Override
 	public DashboardData loadDashboardData() {
+		if (dashboardStatistics.isEnabled()) {
+			return dashboardStatistics.dashboard(loginName.get());
+		}
 
 		long totalApps = totalApplicationNumber();
 		long totalDevices = totalDeviceNumber();
@@ -109,6 +135,7 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
 	 * sending for the given user
 	 */
 	@Override
+	@Transactional(readOnly = true)
 	public List<ApplicationVariant> getVariantsWithWarnings() {
 		final List<String> warningIDs = flatPushMessageInformationDao.findVariantIDsWithWarnings(loginName.get());
 		if (warningIDs.isEmpty()) {
@@ -122,15 +149,30 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
 	 * Loads all the Variant objects with the most received messages
 	 */
 	@Override
+	@Transactional(readOnly = true)
 	public List<Application> getLatestActivity(int maxResults) {
-		return wrapApplication(flatPushMessageInformationDao.findLatestActivity(loginName.get(), maxResults));
+		return wrapApplication(flatPushMessageInformationDao.findLatestApplicationActivity(loginName.get(), maxResults));
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public PageResult<Installation, Count> findAllInstallationsByVariantForDeveloper(String variantID, Integer page,
-			Integer pageSize, String search) {
-		return installationDao.findInstallationsByVariantForDeveloper(variantID, loginName.get(), page, pageSize,
-				search);
+			Integer pageSize, String search, SearchMode mode) {
+		return installationDao.findInstallationsByVariantForDeveloper(variantID, loginName.get(), page, pageSize, search, mode);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<Installation> findInstallationsByVariantAfterForDeveloper(String variantID, String search,
+			SearchMode mode, String lastInstallationID, int pageSize) {
+		return installationDao.findInstallationsByVariantAfter(variantID, loginName.get(), search, mode, lastInstallationID,
+				pageSize);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public long countInstallationsByVariantForDeveloper(String variantID, String search, SearchMode mode) {
+		return installationDao.countInstallationsByVariant(variantID, loginName.get(), search, mode);
 	}
 
 	private long totalMessages() {
@@ -158,16 +200,12 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
 		return applicationVariants;
 	}
 
-	private List<Application> wrapApplication(List<FlatPushMessageInformation> pushMessageInformations) {
-		final List<Application> applications = new ArrayList<>(pushMessageInformations.size());
+	private List<Application> wrapApplication(List<MessageActivity> activities) {
+		final List<Application> applications = new ArrayList<>(activities.size());
 
-		pushMessageInformations.forEach(pushMessageInformation -> {
-			final String applicationName = pushApplicationDao
-					.findByPushApplicationID(pushMessageInformation.getPushApplicationId()).getName();
-			final Application application = new Application(applicationName,
-					pushMessageInformation.getPushApplicationId(), pushMessageInformation.getSubmitDate());
-			applications.add(application);
-		});
+		// the activity is joined with its (not deleted) push application
+		activities.forEach(activity -> applications.add(new Application(activity.getApplicationName(),
+				activity.getPushApplicationId(), activity.getSubmitDate())));
 		return applications;
 	}
 }
@@ -24,18 +24,20 @@ import javax.inject.Inject;
 
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
-import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dao.PushApplicationDao;
+import org.jboss.aerogear.unifiedpush.dao.SearchMode;
 import org.jboss.aerogear.unifiedpush.dao.VariantDao;
 import org.jboss.aerogear.unifiedpush.dto.Count;
+import org.jboss.aerogear.unifiedpush.dto.MessageActivity;
 import org.jboss.aerogear.unifiedpush.service.PushSearchService;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
 import org.jboss.aerogear.unifiedpush.service.dashboard.Application;
 import org.jboss.aerogear.unifiedpush.service.dashboard.ApplicationVariant;
 import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardData;
+import org.jboss.aerogear.unifiedpush.service.metrics.DashboardStatistics;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -44,6 +46,9 @@ import org.springframework.transaction.annotation.Transactional;
  * Implementation of the <code>PushSearchService</code> internally used for
  * 'admin' role, to query all, instead of being tied to a specific user/login
  * name.
+ *
+ * Searches and counts run in read-only transactions, which are routed to a
+ * read replica when one is configured.
  */
 @Service
 @Qualifier("PushSearchServiceImpl")
@@ -62,25 +67,58 @@ public class PushSearchServiceImpl implements PushSearchService {
 	@Inject
 	private FlatPushMessageInformationDao flatPushMessageInformationDao;
 
+	@Inject
+	private DashboardStatistics dashboardStatistics;
+
 	@Override
+	@Transactional(readOnly = true)
 	public PageResult<PushApplication, Count> findAllPushApplicationsForDeveloper(Integer page, Integer pageSize) {
 		return pushApplicationDao.findAll(page, pageSize);
 	}
 
 	@Override
+	@Transactional(readOnly = true)
+	public List<PushApplication> findAllPushApplicationsForDeveloperAfter(String lastID, int pageSize) {
+		return pushApplicationDao.findAllForDeveloperAfter(null, lastID, pageSize);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public long countPushApplicationsForDeveloper() {
+		return pushApplicationDao.getNumberOfPushApplicationsForDeveloper();
+	}
+
+	@Override
+	@Transactional(readOnly = true)
 	public PushApplication findByPushApplicationIDForDeveloper(String pushApplicationID) {
 		return pushApplicationDao.findAllByPushApplicationID(pushApplicationID);
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public boolean existsVariantIDForDeveloper(String variantID) {
 		return variantDao.existsVariantIDForAdmin(variantID);
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public PageResult<Installation, Count> findAllInstallationsByVariantForDeveloper(String variantID, Integer page,
-			Integer pageSize, String search) {
-		return installationDao.findInstallationsByVariant(variantID, page, pageSize, search);
+			Integer pageSize, String search, SearchMode mode) {
+		return installationDao.findInstallationsByVariantForDeveloper(variantID, null, page, pageSize, search, mode);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<Installation> findInstallationsByVariantAfterForDeveloper(String variantID, String search,
+			SearchMode mode, String lastInstallationID, int pageSize) {
+		return installationDao.findInstallationsByVariantAfter(variantID, null, search, mode, lastInstallationID,
+				pageSize);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public long countInstallationsByVariantForDeveloper(String variantID, String search, SearchMode mode) {
+		return installationDao.countInstallationsByVariant(variantID, null, search, mode);
 	}
 
 	/**
@@ -88,6 +126,9 @@ public class PushSearchServiceImpl implements PushSearchService {
 	 */
 	@Override
 	public DashboardData loadDashboardData() {
+		if (dashboardStatistics.isEnabled()) {
+			return dashboardStatistics.dashboard(null);
+		}
 
 		long totalApps = totalApplicationNumber();
 		long totalDevices = totalDeviceNumber();
@@ -106,6 +147,7 @@ public class PushSearchServiceImpl implements PushSearchService {
 	 * sending for the given user
 	 */
 	@Override
+	@Transactional(readOnly = true)
 	public List<ApplicationVariant> getVariantsWithWarnings() {
 		final List<String> warningIDs = flatPushMessageInformationDao.findVariantIDsWithWarnings();
 		if (warningIDs.isEmpty()) {
@@ -119,8 +161,9 @@ public class PushSearchServiceImpl implements PushSearchService {
 	 * Loads all the Variant objects with the most received messages
 	 */
 	@Override
+	@Transactional(readOnly = true)
 	public List<Application> getLatestActivity(int maxResults) {
-		return wrapApplication(flatPushMessageInformationDao.findLatestActivity(maxResults));
+		return wrapApplication(flatPushMessageInformationDao.findLatestApplicationActivity(null, maxResults));
 	}
 
 	private long totalMessages() {
@@ -147,21 +190,12 @@ public class PushSearchServiceImpl implements PushSearchService {
 		return applicationVariants;
 	}
 
-	private List<Application> wrapApplication(List<FlatPushMessageInformation> pushMessageInformations) {
-		final List<Application> applications = new ArrayList<>(pushMessageInformations.size());
+	private List<Application> wrapApplication(List<MessageActivity> activities) {
+		final List<Application> applications = new ArrayList<>(activities.size());
 
-		pushMessageInformations.forEach(pushMessageInformation -> {
-			final PushApplication pushApplication = pushApplicationDao
-					.findByPushApplicationID(pushMessageInformation.getPushApplicationId());
-
-			// make sure this is really there, and has not been deleted
-			if (pushApplication != null) {
-				final String applicationName = pushApplication.getName();
-				final Application application = new Application(applicationName,
-						pushMessageInformation.getPushApplicationId(), pushMessageInformation.getSubmitDate());
-				applications.add(application);
-			}
-		});
+		// the activity is joined with its (not deleted) push application
+		activities.forEach(activity -> applications.add(new Application(activity.getApplicationName(),
+				activity.getPushApplicationId(), activity.getSubmitDate())));
 		return applications;
 	}
 
@@ -0,0 +1,70 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.ScheduledPushMessage;
+import org.jboss.aerogear.unifiedpush.dao.ScheduledPushMessageDao;
+import org.jboss.aerogear.unifiedpush.service.ScheduledPushMessageService;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+@Transactional
+public class ScheduledPushMessageServiceImpl implements ScheduledPushMessageService {
+
+	@Inject
+	private ScheduledPushMessageDao scheduledPushMessageDao;
+
+	@Override
+	public void addScheduledPushMessage(ScheduledPushMessage scheduledPushMessage) {
+		scheduledPushMessageDao.create(scheduledPushMessage);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<ScheduledPushMessage> findAllPending() {
+		return scheduledPushMessageDao.findAllPending();
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public ScheduledPushMessage findById(String id) {
+		return scheduledPushMessageDao.find(id);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<ScheduledPushMessage> findDue(Date dueBefore, int maxResults) {
+		return scheduledPushMessageDao.findDue(dueBefore, new Date(), maxResults);
+	}
+
+	@Override
+	public boolean claim(String id, long leaseMs) {
+		final long now = System.currentTimeMillis();
+		return scheduledPushMessageDao.lease(id, new Date(now), new Date(now + leaseMs));
+	}
+
+	@Override
+	public void complete(String id) {
+		scheduledPushMessageDao.deleteById(id);
+	}
+}
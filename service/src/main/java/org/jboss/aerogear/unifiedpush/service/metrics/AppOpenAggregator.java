@@ -0,0 +1,262 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Aggregates app-open events per push message in memory, so that opening the app does not cause a read-modify-write
+ * of the (hot) push message row for every device.
+ *
+ * Events are counted with a {@link LongAdder}, first and last open timestamps with min/max accumulators. Every few
+ * seconds, each message with new events is updated once, with the delta since the previous flush. Events of push
+ * messages that are not found are dropped.
+ */
+@Service
+public class AppOpenAggregator {
+
+    public static final String PROP_FLUSH_SECONDS = "aerogear.metrics.app_open.flush_seconds";
+
+    // messages without new events for that many flushes are dropped from memory
+    private static final int IDLE_FLUSHES_BEFORE_EVICTION = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(AppOpenAggregator.class);
+
+    private final Map<String, Opens> opens = new ConcurrentHashMap<>();
+
+    @Inject
+    private FlatPushMessageInformationDao flatPushMessageInformationDao;
+    @Inject
+    private PlatformTransactionManager transactionManager;
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() {
+        final long flushSeconds = Math.max(1, config.getProperty(PROP_FLUSH_SECONDS, 5));
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "app-open-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Records that the app was opened due to the given push message.
+     *
+     * @param pushMessageId the push message ID
+     */
+    public void recordOpen(String pushMessageId) {
+        opens.computeIfAbsent(pushMessageId, id -> new Opens()).record(System.currentTimeMillis());
+    }
+
+    /**
+     * Adds the events of this node, that were not flushed yet, to the given push message. The given object is not
+     * changed, since it may be attached: writing the summed up values would overwrite the events other nodes stored in
+     * the meantime. The events remain pending for the next flush.
+     *
+     * @param information the push message
+     * @return the given push message, or a copy of it with the pending events added
+     */
+    public FlatPushMessageInformation withPending(FlatPushMessageInformation information) {
+        final Opens pending = opens.get(information.getId());
+        final Delta delta = pending == null ? null : pending.peek();
+        if (delta == null) {
+            return information;
+        }
+
+        final FlatPushMessageInformation copy = copyOf(information);
+        copy.setAppOpenCounter(information.getAppOpenCounter() + delta.opens);
+        if (information.getFirstOpenDate() == null || information.getFirstOpenDate().getTime() > delta.firstOpen) {
+            copy.setFirstOpenDate(new Date(delta.firstOpen));
+        }
+        if (information.getLastOpenDate() == null || information.getLastOpenDate().getTime() < delta.lastOpen) {
+            copy.setLastOpenDate(new Date(delta.lastOpen));
+        }
+        return copy;
+    }
+
+    /**
+     * Stores the events since the previous flush, one update per push message, in one transaction.
+     */
+    synchronized void flush() {
+        final List<Opens> drained = new ArrayList<>();
+        final List<Delta> deltas = new ArrayList<>();
+
+        for (Map.Entry<String, Opens> entry : opens.entrySet()) {
+            final Opens current = entry.getValue();
+            final Delta delta = current.drain();
+
+            if (delta == null) {
+                if (++current.idleFlushes >= IDLE_FLUSHES_BEFORE_EVICTION && opens.remove(entry.getKey(), current)) {
+                    // events that slipped in after the drain are moved to a fresh instance
+                    current.moveUndrainedTo(() -> opens.computeIfAbsent(entry.getKey(), id -> new Opens()));
+                }
+                continue;
+            }
+
+            current.idleFlushes = 0;
+            delta.pushMessageId = entry.getKey();
+            drained.add(current);
+            deltas.add(delta);
+        }
+
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            final boolean[] found = new TransactionTemplate(transactionManager).execute(status -> {
+                final boolean[] updated = new boolean[deltas.size()];
+                for (int i = 0; i < deltas.size(); i++) {
+                    final Delta delta = deltas.get(i);
+                    updated[i] = flatPushMessageInformationDao.addAppOpens(delta.pushMessageId, delta.opens,
+                            new Date(delta.firstOpen), new Date(delta.lastOpen));
+                }
+                return updated;
+            });
+
+            // events of unknown (or already deleted) push messages are dropped, they are not kept in memory
+            int unknown = 0;
+            for (boolean updated : found) {
+                if (!updated) {
+                    unknown++;
+                }
+            }
+            logger.debug("Flushed app-open events of {} push messages, dropped events of {} unknown push messages",
+                    deltas.size() - unknown, unknown);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < drained.size(); i++) {
+                drained.get(i).restore(deltas.get(i));
+            }
+            logger.warn("Unable to flush app-open events, will retry", e);
+        }
+    }
+
+    private static FlatPushMessageInformation copyOf(FlatPushMessageInformation information) {
+        final FlatPushMessageInformation copy = new FlatPushMessageInformation();
+        copy.setId(information.getId());
+        copy.setPushApplicationId(information.getPushApplicationId());
+        copy.setRawJsonMessage(information.getRawJsonMessage());
+        copy.setSearchText(information.getSearchText());
+        copy.setIpAddress(information.getIpAddress());
+        copy.setClientIdentifier(information.getClientIdentifier());
+        copy.setSubmitDate(information.getSubmitDate());
+        copy.setAppOpenCounter(information.getAppOpenCounter());
+        copy.setFirstOpenDate(information.getFirstOpenDate());
+        copy.setLastOpenDate(information.getLastOpenDate());
+        copy.setErrors(information.getErrors() == null ? null : new HashSet<>(information.getErrors()));
+        return copy;
+    }
+
+    private static final class Delta {
+        private final long opens;
+        private final long firstOpen;
+        private final long lastOpen;
+        private String pushMessageId;
+
+        private Delta(long opens, long firstOpen, long lastOpen) {
+            this.opens = opens;
+            this.firstOpen = firstOpen;
+            this.lastOpen = lastOpen;
+        }
+    }
+
+    private static final class Opens {
+        private final LongAdder count = new LongAdder();
+        private final LongAccumulator firstOpen = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator lastOpen = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        // events already drained, guarded by this
+        private long drained;
+        // only used by the flush
+        private int idleFlushes;
+
+        private void record(long timestamp) {
+            firstOpen.accumulate(timestamp);
+            lastOpen.accumulate(timestamp);
+            count.increment();
+        }
+
+        private synchronized Delta peek() {
+            final long total = count.sum();
+            return total == drained ? null : new Delta(total - drained, firstOpen.get(), lastOpen.get());
+        }
+
+        private synchronized Delta drain() {
+            final long total = count.sum();
+            if (total == drained) {
+                return null;
+            }
+            final Delta delta = new Delta(total - drained, firstOpen.get(), lastOpen.get());
+            drained = total;
+            return delta;
+        }
+
+        private synchronized void restore(Delta delta) {
+            drained -= delta.opens;
+        }
+
+        private synchronized void moveUndrainedTo(Supplier<Opens> target) {
+            final long undrained = count.sum() - drained;
+            if (undrained > 0) {
+                final Opens fresh = target.get();
+                fresh.firstOpen.accumulate(firstOpen.get());
+                fresh.lastOpen.accumulate(lastOpen.get());
+                fresh.count.add(undrained);
+            }
+        }
+    }
+}
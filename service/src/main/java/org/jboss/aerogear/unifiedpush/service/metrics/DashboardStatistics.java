@@ -0,0 +1,312 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.PushApplication;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
+import org.jboss.aerogear.unifiedpush.dao.PushApplicationDao;
+import org.jboss.aerogear.unifiedpush.dao.VariantDao;
+import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardData;
+import org.jboss.aerogear.unifiedpush.service.util.TransactionCallbacks;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the numbers of the 'Dashboard' (applications, devices and messages, per developer) and the installation
+ * counts per variant in memory, so that loading them does not run <code>COUNT(*)</code> over the installation and
+ * push message tables on every request.
+ *
+ * The counters are changed by the services that add or remove installations and push messages, once their transaction
+ * has committed. Changes of the application/variant structure mark the counters as stale, which makes the next read
+ * reload them. Since other nodes of a cluster change the tables too, the counters are also reloaded periodically.
+ *
+ * Disabled by default, in that case the callers query the database as before.
+ */
+@Service
+public class DashboardStatistics {
+
+    public static final String PROP_ENABLED = "aerogear.statistics.enabled";
+    public static final String PROP_RECONCILE_SECONDS = "aerogear.statistics.reconcile_seconds";
+
+    private final Logger logger = LoggerFactory.getLogger(DashboardStatistics.class);
+
+    @Inject
+    private PushApplicationDao pushApplicationDao;
+    @Inject
+    private VariantDao variantDao;
+    @Inject
+    private InstallationDao installationDao;
+    @Inject
+    private FlatPushMessageInformationDao flatPushMessageInformationDao;
+    @Inject
+    private PlatformTransactionManager transactionManager;
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private boolean enabled;
+    private volatile Snapshot snapshot;
+    private volatile boolean stale = true;
+    private ScheduledExecutorService reconciler;
+
+    @PostConstruct
+    public void start() {
+        enabled = config.getProperty(PROP_ENABLED, false);
+        if (!enabled) {
+            return;
+        }
+
+        final long reconcileSeconds = Math.max(10, config.getProperty(PROP_RECONCILE_SECONDS, 300));
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "dashboard-statistics-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(this::reconcileQuietly, reconcileSeconds, reconcileSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the statistics are maintained in memory and can be read from this service.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records installations stored for a variant. Applied once the current transaction (if any) has committed.
+     *
+     * @param variantID the variant ID
+     * @param count number of new installations
+     */
+    public void installationsAdded(String variantID, long count) {
+        if (enabled && count != 0) {
+            TransactionCallbacks.afterCommit(() -> {
+                final Snapshot current = snapshot;
+                final VariantCounter variant = current == null ? null : current.variants.get(variantID);
+                if (variant == null) {
+                    // not known yet, the structure has changed in the meantime
+                    stale = true;
+                } else {
+                    variant.installations.add(count);
+                }
+            });
+        }
+    }
+
+    /**
+     * Records installations removed from a variant. Applied once the current transaction (if any) has committed.
+     *
+     * @param variantID the variant ID
+     * @param count number of removed installations
+     */
+    public void installationsRemoved(String variantID, long count) {
+        installationsAdded(variantID, -count);
+    }
+
+    /**
+     * Records push messages submitted for an application. Applied once the current transaction (if any) has committed.
+     *
+     * @param pushApplicationID the push application ID
+     * @param count number of new push messages
+     */
+    public void messagesSubmitted(String pushApplicationID, long count) {
+        if (enabled && count != 0) {
+            TransactionCallbacks.afterCommit(() -> {
+                final Snapshot current = snapshot;
+                if (current != null) {
+                    current.messages.computeIfAbsent(pushApplicationID, id -> new LongAdder()).add(count);
+                }
+            });
+        }
+    }
+
+    /**
+     * Marks the counters as stale, e.g. after applications or variants have been added or removed. The next read
+     * reloads them from the database.
+     */
+    public void invalidate() {
+        if (enabled) {
+            TransactionCallbacks.afterCommit(() -> stale = true);
+        }
+    }
+
+    /**
+     * Dashboard numbers of the given developer, or of all developers for <code>null</code>.
+     *
+     * @param developer the login name or <code>null</code>
+     * @return the dashboard numbers
+     */
+    public DashboardData dashboard(String developer) {
+        final Snapshot current = current();
+
+        long applications = 0;
+        long messages = 0;
+        if (developer == null) {
+            applications = current.applicationDevelopers.size();
+            for (LongAdder adder : current.messages.values()) {
+                messages += adder.sum();
+            }
+        } else {
+            for (Map.Entry<String, String> application : current.applicationDevelopers.entrySet()) {
+                if (developer.equals(application.getValue())) {
+                    applications++;
+                    final LongAdder adder = current.messages.get(application.getKey());
+                    messages += adder == null ? 0 : adder.sum();
+                }
+            }
+        }
+
+        long devices = 0;
+        for (VariantCounter variant : current.variants.values()) {
+            if (developer == null || developer.equals(variant.developer)) {
+                devices += variant.installations.sum();
+            }
+        }
+
+        final DashboardData data = new DashboardData();
+        data.setApplications(applications);
+        data.setDevices(devices);
+        data.setMessages(messages);
+        return data;
+    }
+
+    /**
+     * Same result as {@link PushApplicationDao#countInstallationsByType(String)}: the number of installations per
+     * variant type, and per variant ID for variants that have installations.
+     *
+     * @param pushApplicationID the push application ID
+     * @return installation counts by variant type name and variant ID
+     */
+    public Map<String, Long> countInstallationsByType(String pushApplicationID) {
+        final Map<String, Long> results = new HashMap<>();
+        for (VariantType type : VariantType.values()) {
+            results.put(type.getTypeName(), 0L);
+        }
+
+        current().variants.forEach((variantID, variant) -> {
+            final long installations = variant.installations.sum();
+            if (installations > 0 && Objects.equals(pushApplicationID, variant.pushApplicationID)) {
+                results.merge(variant.type.getTypeName(), installations, Long::sum);
+                results.put(variantID, installations);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Reloads all counters from the database.
+     */
+    void reconcile() {
+        stale = false;
+        final TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        try {
+            snapshot = template.execute(status -> {
+                final Snapshot loaded = new Snapshot();
+                final Map<String, String> variantApplications = new HashMap<>();
+
+                for (PushApplication application : pushApplicationDao.findAllWithVariants()) {
+                    loaded.applicationDevelopers.put(application.getPushApplicationID(), application.getDeveloper());
+                    application.getVariants().forEach(variant ->
+                            variantApplications.put(variant.getVariantID(), application.getPushApplicationID()));
+                }
+
+                final Map<String, Long> installations = installationDao.countInstallationsPerVariant();
+                for (Variant variant : variantDao.findAll()) {
+                    final VariantCounter counter = new VariantCounter(variantApplications.get(variant.getVariantID()),
+                            variant.getType(), variant.getDeveloper());
+                    counter.installations.add(installations.getOrDefault(variant.getVariantID(), 0L));
+                    loaded.variants.put(variant.getVariantID(), counter);
+                }
+
+                flatPushMessageInformationDao.countPushMessagesPerApplication().forEach((pushApplicationID, count) ->
+                        loaded.messages.computeIfAbsent(pushApplicationID, id -> new LongAdder()).add(count));
+                return loaded;
+            });
+        } catch (RuntimeException e) {
+            stale = true;
+            throw e;
+        }
+        logger.debug("Reloaded dashboard statistics of {} variants", snapshot.variants.size());
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            logger.warn("Unable to reload dashboard statistics, will retry", e);
+        }
+    }
+
+    private Snapshot current() {
+        if (stale || snapshot == null) {
+            synchronized (this) {
+                if (stale || snapshot == null) {
+                    reconcile();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static final class Snapshot {
+        // pushApplicationID -> developer
+        private final Map<String, String> applicationDevelopers = new HashMap<>();
+        private final Map<String, VariantCounter> variants = new HashMap<>();
+        // also contains messages of deleted applications, the total of the admin includes those
+        private final Map<String, LongAdder> messages = new ConcurrentHashMap<>();
+    }
+
+    private static final class VariantCounter {
+        private final String pushApplicationID;
+        private final VariantType type;
+        private final String developer;
+        private final LongAdder installations = new LongAdder();
+
+        private VariantCounter(String pushApplicationID, VariantType type, String developer) {
+            this.pushApplicationID = pushApplicationID;
+            this.type = type;
+            this.developer = developer;
+        }
+    }
+}
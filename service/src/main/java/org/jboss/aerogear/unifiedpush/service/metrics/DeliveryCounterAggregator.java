@@ -0,0 +1,229 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.VariantDeliveryCounter;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Aggregates per message, per variant delivery outcome counters in memory and adds them to the stored
+ * {@link VariantDeliveryCounter}s in batches, so that the delivery path does not issue a database write per batch.
+ *
+ * Counters are striped ({@link LongAdder}) and are never reset: the flush only persists the difference to the values
+ * that were persisted before, so increments that race with a flush are picked up by the next one.
+ */
+@Service
+public class DeliveryCounterAggregator {
+
+    public static final String PROP_FLUSH_SECONDS = "aerogear.metrics.delivery_counters.flush_seconds";
+
+    // counters without any change for that many flushes are dropped from memory
+    private static final int IDLE_FLUSHES_BEFORE_EVICTION = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(DeliveryCounterAggregator.class);
+
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    @Inject
+    private IPushMessageMetricsService metricsService;
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() {
+        final long flushSeconds = Math.max(1, config.getProperty(PROP_FLUSH_SECONDS, 5));
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "delivery-counter-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public void tokensLoaded(String pushMessageId, String variantID, long tokens) {
+        counters(pushMessageId, variantID).loaded.add(tokens);
+    }
+
+    public void tokensSent(String pushMessageId, String variantID, long tokens) {
+        counters(pushMessageId, variantID).sent.add(tokens);
+    }
+
+    public void tokensAccepted(String pushMessageId, String variantID, long tokens) {
+        counters(pushMessageId, variantID).accepted.add(tokens);
+    }
+
+    public void tokensRejected(String pushMessageId, String variantID, long tokens) {
+        counters(pushMessageId, variantID).rejected.add(tokens);
+    }
+
+    /**
+     * Returns the delivery counters of the given push message: the stored values plus the values of this node that
+     * were not flushed yet.
+     *
+     * @param pushMessageId the push message ID
+     *
+     * @return list of counters, one per variant
+     */
+    public List<VariantDeliveryCounter> getDeliveryCounters(String pushMessageId) {
+        final Map<String, VariantDeliveryCounter> result = new TreeMap<>();
+
+        for (Counters pending : counters.values()) {
+            if (pending.pushMessageId.equals(pushMessageId)) {
+                result.put(pending.variantID, pending.delta(pending.snapshot()));
+            }
+        }
+
+        // stored counters are not modified, they may still be attached to a persistence context
+        for (VariantDeliveryCounter stored : metricsService.findDeliveryCounters(pushMessageId)) {
+            final VariantDeliveryCounter total = result.computeIfAbsent(stored.getVariantID(),
+                    variantID -> new VariantDeliveryCounter(pushMessageId, variantID));
+            total.setTokensLoaded(total.getTokensLoaded() + stored.getTokensLoaded());
+            total.setTokensSent(total.getTokensSent() + stored.getTokensSent());
+            total.setTokensAccepted(total.getTokensAccepted() + stored.getTokensAccepted());
+            total.setTokensRejected(total.getTokensRejected() + stored.getTokensRejected());
+            total.setLastUpdated(stored.getLastUpdated());
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * Persists all counter changes since the previous flush, in one transaction.
+     */
+    synchronized void flush() {
+        final List<Counters> dirty = new ArrayList<>();
+        final List<long[]> snapshots = new ArrayList<>();
+        final List<VariantDeliveryCounter> deltas = new ArrayList<>();
+
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            final Counters current = entry.getValue();
+            final long[] snapshot = current.snapshot();
+
+            if (current.isFlushed(snapshot)) {
+                if (++current.idleFlushes >= IDLE_FLUSHES_BEFORE_EVICTION && counters.remove(entry.getKey(), current)
+                        && !current.isFlushed(current.snapshot())) {
+                    // increments that slipped in after the snapshot are moved to a fresh instance
+                    current.moveUnflushedTo(counters(current.pushMessageId, current.variantID), snapshot);
+                }
+                continue;
+            }
+
+            current.idleFlushes = 0;
+            dirty.add(current);
+            snapshots.add(snapshot);
+            deltas.add(current.delta(snapshot));
+        }
+
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            metricsService.storeDeliveryCounters(deltas);
+            for (int i = 0; i < dirty.size(); i++) {
+                dirty.get(i).flushed = snapshots.get(i);
+            }
+            logger.debug("Flushed {} delivery counters", deltas.size());
+        } catch (RuntimeException e) {
+            // values are kept in memory and retried with the next flush
+            logger.warn("Unable to flush delivery counters, will retry", e);
+        }
+    }
+
+    private Counters counters(String pushMessageId, String variantID) {
+        return counters.computeIfAbsent(pushMessageId + ':' + variantID, key -> new Counters(pushMessageId, variantID));
+    }
+
+    private static final class Counters {
+        private final String pushMessageId;
+        private final String variantID;
+
+        private final LongAdder loaded = new LongAdder();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder accepted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        // values already persisted, only written by the flush
+        private volatile long[] flushed = new long[4];
+        private int idleFlushes;
+
+        private Counters(String pushMessageId, String variantID) {
+            this.pushMessageId = pushMessageId;
+            this.variantID = variantID;
+        }
+
+        private long[] snapshot() {
+            return new long[] { loaded.sum(), sent.sum(), accepted.sum(), rejected.sum() };
+        }
+
+        private boolean isFlushed(long[] snapshot) {
+            final long[] persisted = flushed;
+            for (int i = 0; i < snapshot.length; i++) {
+                if (snapshot[i] != persisted[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private VariantDeliveryCounter delta(long[] snapshot) {
+            final long[] persisted = flushed;
+            final VariantDeliveryCounter delta = new VariantDeliveryCounter(pushMessageId, variantID);
+            delta.setTokensLoaded(snapshot[0] - persisted[0]);
+            delta.setTokensSent(snapshot[1] - persisted[1]);
+            delta.setTokensAccepted(snapshot[2] - persisted[2]);
+            delta.setTokensRejected(snapshot[3] - persisted[3]);
+            return delta;
+        }
+
+        private void moveUnflushedTo(Counters target, long[] snapshot) {
+            target.loaded.add(loaded.sum() - snapshot[0]);
+            target.sent.add(sent.sum() - snapshot[1]);
+            target.accepted.add(accepted.sum() - snapshot[2]);
+            target.rejected.add(rejected.sum() - snapshot[3]);
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package org.jboss.aerogear.unifiedpush.service.metrics;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantDeliveryCounter;
+import org.jboss.aerogear.unifiedpush.dao.MessageSearch;
+import org.jboss.aerogear.unifiedpush.dao.PageCursor;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dto.MessageMetrics;
 
@@ -15,7 +21,31 @@ public interface IPushMessageMetricsService {
 	void appendError(FlatPushMessageInformation pushMessageInformation, Variant variant, String errorMessage);
 
 	PageResult<FlatPushMessageInformation, MessageMetrics> findAllFlatsForPushApplication(String pushApplicationID,
-			String search, boolean sorting, Integer page, Integer pageSize);
+			MessageSearch search, boolean sorting, Integer page, Integer pageSize);
+
+	/**
+	 * Returns the next page of push messages for given push application ID, ordered by date.
+	 *
+	 * @param pushApplicationID the push app ID
+	 * @param search words and submit date range of the push messages, or null
+	 * @param sorting true for ascending order
+	 * @param after the position after the last message of the previous page, or null for the first page
+	 * @param pageSize the number of messages per page
+	 *
+	 * @return the messages of the page, empty after the last page
+	 */
+	List<FlatPushMessageInformation> findAllFlatsForPushApplicationAfter(String pushApplicationID, MessageSearch search,
+			boolean sorting, PageCursor after, int pageSize);
+
+	/**
+	 * Returns the number of push messages and app opens for given push application ID
+	 *
+	 * @param pushApplicationID the push app ID
+	 * @param search words and submit date range of the push messages, or null
+	 *
+	 * @return the message metrics
+	 */
+	MessageMetrics findMessageMetricsForPushApplication(String pushApplicationID, MessageSearch search);
 
 	/**
 	 * Returns number of push messages for given push application ID
@@ -28,7 +58,7 @@ public interface IPushMessageMetricsService {
 
 	/**
 	 *  We trigger a delete of all {@link org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation} objects that are
-	 *  <i>older</i> than 30 days!
+	 *  <i>older</i> than 30 days! They are deleted in chunks, each in its own short transaction.
 	 */
 	void deleteOutdatedFlatPushInformationData();
 
@@ -36,4 +66,20 @@ public interface IPushMessageMetricsService {
 
 	FlatPushMessageInformation getPushMessageInformation(String id);
 
+	/**
+	 * Adds the given deltas to the stored delivery counters, creating counters that do not exist yet.
+	 *
+	 * @param deltas the counter values to add
+	 */
+	void storeDeliveryCounters(Collection<VariantDeliveryCounter> deltas);
+
+	/**
+	 * Returns the stored delivery counters of all variants for the given push message.
+	 *
+	 * @param pushMessageId the push message ID
+	 *
+	 * @return list of counters
+	 */
+	List<VariantDeliveryCounter> findDeliveryCounters(String pushMessageId);
+
 }
\ No newline at end of file
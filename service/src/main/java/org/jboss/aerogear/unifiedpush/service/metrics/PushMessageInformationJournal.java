@@ -0,0 +1,212 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Local append-only journal of push message information objects that were accepted by the
+ * {@link PushMessageInformationWriter}, but are not persisted yet. One JSON document per line.
+ *
+ * The journal is truncated once all journaled objects are persisted and replayed on startup otherwise. While objects
+ * are pending, it is compacted by rewriting it with only those (see {@link #rewrite(Collection)}).
+ */
+public class PushMessageInformationJournal implements Closeable {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Logger logger = LoggerFactory.getLogger(PushMessageInformationJournal.class);
+
+    private final Path file;
+    private final boolean sync;
+    private FileOutputStream out;
+    // number of entries in the file, including those persisted in the meantime
+    private int entries;
+
+    /**
+     * @param file the journal file, created if it does not exist
+     * @param sync if true, every append is forced to the storage device
+     */
+    public PushMessageInformationJournal(Path file, boolean sync) {
+        this.file = file;
+        this.sync = sync;
+    }
+
+    /**
+     * Reads all journaled objects; a torn last line (e.g. after a crash) is skipped.
+     *
+     * @return journaled objects, in order of their append
+     */
+    public synchronized List<FlatPushMessageInformation> readAll() {
+        final List<FlatPushMessageInformation> informations = new ArrayList<>();
+        entries = 0;
+        if (!Files.exists(file)) {
+            return informations;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                entries++;
+                try {
+                    informations.add(OBJECT_MAPPER.readValue(line, JournalEntry.class).toInformation());
+                } catch (IOException e) {
+                    logger.warn("Skipping unreadable push message journal entry");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return informations;
+    }
+
+    public synchronized void append(FlatPushMessageInformation information) {
+        try {
+            if (out == null) {
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                out = new FileOutputStream(file.toFile(), true);
+            }
+            final byte[] line = OBJECT_MAPPER.writeValueAsBytes(new JournalEntry(information));
+            out.write(line);
+            out.write('\n');
+            out.flush();
+            if (sync) {
+                out.getFD().sync();
+            }
+            entries++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return number of entries in the journal file
+     */
+    public synchronized int size() {
+        return entries;
+    }
+
+    /**
+     * Replaces the journal with one that holds the given objects only. The new journal is written next to the current
+     * one and moved over it, so that a crash leaves either of them.
+     *
+     * @param informations the objects that are still pending
+     */
+    public synchronized void rewrite(Collection<FlatPushMessageInformation> informations) {
+        final Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try {
+            close();
+            try (FileOutputStream compactedOut = new FileOutputStream(compacted.toFile(), false)) {
+                for (FlatPushMessageInformation information : informations) {
+                    compactedOut.write(OBJECT_MAPPER.writeValueAsBytes(new JournalEntry(information)));
+                    compactedOut.write('\n');
+                }
+                compactedOut.flush();
+                if (sync) {
+                    compactedOut.getFD().sync();
+                }
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            entries = informations.size();
+        } catch (IOException e) {
+            // the current journal is still complete, it is compacted by a later call
+            logger.warn("Unable to compact push message journal {}", file, e);
+        }
+    }
+
+    public synchronized void truncate() {
+        try {
+            close();
+            Files.deleteIfExists(file);
+            entries = 0;
+        } catch (IOException e) {
+            logger.warn("Unable to truncate push message journal {}", file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * The journaled subset of {@link FlatPushMessageInformation}: a new request has no errors nor app-open metrics.
+     */
+    static class JournalEntry {
+        public String id;
+        public String pushApplicationId;
+        public String rawJsonMessage;
+        public String searchText;
+        public String ipAddress;
+        public String clientIdentifier;
+        public long submitDate;
+
+        JournalEntry() {
+            // for Jackson
+        }
+
+        JournalEntry(FlatPushMessageInformation information) {
+            this.id = information.getId();
+            this.pushApplicationId = information.getPushApplicationId();
+            this.rawJsonMessage = information.getRawJsonMessage();
+            this.searchText = information.getSearchText();
+            this.ipAddress = information.getIpAddress();
+            this.clientIdentifier = information.getClientIdentifier();
+            this.submitDate = information.getSubmitDate().getTime();
+        }
+
+        FlatPushMessageInformation toInformation() {
+            final FlatPushMessageInformation information = new FlatPushMessageInformation();
+            information.setId(id);
+            information.setPushApplicationId(pushApplicationId);
+            information.setRawJsonMessage(rawJsonMessage);
+            information.setSearchText(searchText);
+            information.setIpAddress(ipAddress);
+            information.setClientIdentifier(clientIdentifier);
+            information.setSubmitDate(new Date(submitDate));
+            return information;
+        }
+    }
+}
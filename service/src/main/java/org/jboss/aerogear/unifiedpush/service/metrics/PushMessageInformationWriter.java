@@ -0,0 +1,321 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Write-behind buffer for new {@link FlatPushMessageInformation} objects, so that a send request does not wait on
+ * the insert of its metadata.
+ *
+ * Objects get their ID right away and are handed to a bounded in-memory buffer, which is persisted with JDBC batch
+ * inserts by a dedicated thread. When the buffer is full, the caller flushes it, unless the last flush failed: then
+ * the object is rejected and the caller persists it itself. Accepted objects can additionally be written to a local
+ * journal, which is replayed on startup, and the buffer is flushed on shutdown.
+ *
+ * A batch that fails to persist is retried row by row. Rows that still fail while the database is available (other
+ * rows persist, or it answers a lookup) are quarantined: logged, dropped from the buffer and, when a journal is
+ * configured, appended to a quarantine file next to it. Otherwise the rows are kept and retried on the next flush.
+ *
+ * Writes that depend on the metadata row (errors, analytics) call {@link #ensurePersisted(String)} first.
+ *
+ * The write-behind mode is disabled by default ({@value #PROP_ENABLED}).
+ */
+@Service
+public class PushMessageInformationWriter {
+
+    public static final String PROP_ENABLED = "aerogear.metrics.write_behind.enabled";
+    public static final String PROP_BUFFER_SIZE = "aerogear.metrics.write_behind.buffer_size";
+    public static final String PROP_BATCH_SIZE = "aerogear.metrics.write_behind.batch_size";
+    public static final String PROP_FLUSH_MS = "aerogear.metrics.write_behind.flush_ms";
+    public static final String PROP_JOURNAL = "aerogear.metrics.write_behind.journal";
+    public static final String PROP_JOURNAL_SYNC = "aerogear.metrics.write_behind.journal_sync";
+
+    private final Logger logger = LoggerFactory.getLogger(PushMessageInformationWriter.class);
+
+    // accepted, but not yet persisted objects
+    private final Map<String, FlatPushMessageInformation> pending = new ConcurrentHashMap<>();
+    // rows of the batch that failed to persist, persisted first
+    private final List<FlatPushMessageInformation> retries = new ArrayList<>();
+    private final Object journalLock = new Object();
+
+    @Inject
+    private FlatPushMessageInformationDao flatPushMessageInformationDao;
+    @Inject
+    private PlatformTransactionManager transactionManager;
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private boolean enabled;
+    private int batchSize;
+    private BlockingQueue<FlatPushMessageInformation> buffer;
+    private PushMessageInformationJournal journal;
+    private PushMessageInformationJournal quarantine;
+    private volatile boolean failing;
+    private ScheduledExecutorService flusher;
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void start() {
+        enabled = config.getProperty(PROP_ENABLED, false);
+        if (!enabled) {
+            return;
+        }
+
+        // batches are committed on their own, also when flushed from within a caller's transaction
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        batchSize = Math.max(1, config.getProperty(PROP_BATCH_SIZE, 500));
+        buffer = new ArrayBlockingQueue<>(Math.max(1, config.getProperty(PROP_BUFFER_SIZE, 10000)));
+
+        final String journalFile = config.getProperty(PROP_JOURNAL, StringUtils.EMPTY);
+        if (StringUtils.isNotEmpty(journalFile)) {
+            journal = new PushMessageInformationJournal(Paths.get(journalFile), config.getProperty(PROP_JOURNAL_SYNC, false));
+            quarantine = new PushMessageInformationJournal(Paths.get(journalFile + ".quarantine"), false);
+            replayJournal();
+        }
+
+        final long flushMs = Math.max(10, config.getProperty(PROP_FLUSH_MS, 200));
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "push-message-information-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+
+        if (journal != null) {
+            try {
+                journal.close();
+                quarantine.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close push message journal", e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Accepts a new push message information object for (later) persistence.
+     *
+     * @param information the new object, with its ID already assigned
+     * @return {@code false} if the buffer is full and the writer is failing, the caller has to persist the object
+     */
+    public boolean enqueue(FlatPushMessageInformation information) {
+        synchronized (journalLock) {
+            if (journal != null) {
+                journal.append(information);
+            }
+            pending.put(information.getId(), information);
+        }
+
+        if (buffer.offer(information)) {
+            return true;
+        }
+        // buffer is full: the caller pays for the flush, which is our back pressure, but not while flushes fail
+        if (!failing) {
+            flush();
+            if (buffer.offer(information)) {
+                return true;
+            }
+        }
+
+        // a journaled object that is not pending is skipped on replay if it got persisted
+        pending.remove(information.getId());
+        return false;
+    }
+
+    /**
+     * Makes sure the push message information with the given ID is persisted, flushing the buffer if needed.
+     *
+     * @param id the push message ID
+     */
+    public void ensurePersisted(String id) {
+        if (enabled && id != null && pending.containsKey(id)) {
+            flush();
+        }
+    }
+
+    /**
+     * Persists all buffered objects, in batches.
+     */
+    public synchronized void flush() {
+        if (!enabled) {
+            return;
+        }
+
+        if (!retries.isEmpty() && !retry()) {
+            return;
+        }
+
+        final List<FlatPushMessageInformation> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            if (!persist(batch)) {
+                retries.addAll(batch);
+                if (!retry()) {
+                    return;
+                }
+            }
+            batch.clear();
+        }
+
+        failing = false;
+        compactJournal();
+    }
+
+    /**
+     * Persists the rows of a failed batch one by one.
+     *
+     * @return {@code true} if no rows are left to retry
+     */
+    private boolean retry() {
+        final List<FlatPushMessageInformation> failed = new ArrayList<>();
+        for (FlatPushMessageInformation information : retries) {
+            if (!persist(Collections.singletonList(information))) {
+                failed.add(information);
+            }
+        }
+
+        if (failed.size() < retries.size() || isAvailable(failed.get(0))) {
+            // the database works, these rows will not make it
+            failed.forEach(this::quarantine);
+            retries.clear();
+            return true;
+        }
+
+        // the database is unavailable: keep the rows and try again on the next flush
+        failing = true;
+        return false;
+    }
+
+    private boolean isAvailable(FlatPushMessageInformation information) {
+        try {
+            transactionTemplate.execute(status -> flatPushMessageInformationDao.find(information.getId()));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void quarantine(FlatPushMessageInformation information) {
+        logger.error("Quarantining push message information {} of push application {}, it failed to persist",
+                information.getId(), information.getPushApplicationId());
+        synchronized (journalLock) {
+            if (quarantine != null) {
+                quarantine.append(information);
+            }
+            pending.remove(information.getId());
+        }
+    }
+
+    /**
+     * Drops the persisted objects from the journal: truncates it when nothing is pending, and otherwise rewrites it
+     * with the pending objects once the persisted ones make up more than half of it. Under a constant load there is
+     * always something pending, the journal would grow without bounds otherwise.
+     */
+    private void compactJournal() {
+        if (journal == null) {
+            return;
+        }
+        synchronized (journalLock) {
+            if (pending.isEmpty()) {
+                journal.truncate();
+            } else if (journal.size() > 2 * pending.size() + batchSize) {
+                journal.rewrite(new ArrayList<>(pending.values()));
+            }
+        }
+    }
+
+    private boolean persist(List<FlatPushMessageInformation> batch) {
+        try {
+            transactionTemplate.execute(status -> {
+                flatPushMessageInformationDao.createAll(batch);
+                return null;
+            });
+            batch.forEach(information -> pending.remove(information.getId()));
+            return true;
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                logger.warn("Unable to persist {} push message information objects, retrying them one by one", batch.size(), e);
+            } else {
+                logger.debug("Unable to persist push message information {}", batch.get(0).getId(), e);
+            }
+            return false;
+        }
+    }
+
+    private void replayJournal() {
+        final List<FlatPushMessageInformation> journaled = journal.readAll();
+        if (journaled.isEmpty()) {
+            return;
+        }
+
+        logger.info("Replaying {} journaled push message information objects", journaled.size());
+        transactionTemplate.execute(status -> {
+            flatPushMessageInformationDao.createAll(journaled.stream()
+                    .filter(information -> flatPushMessageInformationDao.find(information.getId()) == null)
+                    .collect(Collectors.toList()));
+            return null;
+        });
+        journal.truncate();
+    }
+}
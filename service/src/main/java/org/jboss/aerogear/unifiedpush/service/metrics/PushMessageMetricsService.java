@@ -16,20 +16,33 @@
  */
 package org.jboss.aerogear.unifiedpush.service.metrics;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import javax.inject.Inject;
 
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantDeliveryCounter;
 import org.jboss.aerogear.unifiedpush.api.VariantErrorStatus;
 import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.dao.MessageSearch;
+import org.jboss.aerogear.unifiedpush.dao.MessageSearchText;
+import org.jboss.aerogear.unifiedpush.dao.PageCursor;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
+import org.jboss.aerogear.unifiedpush.dao.VariantDeliveryCounterDao;
 import org.jboss.aerogear.unifiedpush.dto.MessageMetrics;
 import org.jboss.aerogear.unifiedpush.system.ConfigurationUtils;
 import org.jboss.aerogear.unifiedpush.utils.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Service class to handle different aspects of the Push Message Information metadata for the "Push Message History" view
@@ -41,10 +54,33 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
 
     // system property name used as the configurable maximum days the message information objects are stored
     public static final String AEROGEAR_METRICS_STORAGE_MAX_DAYS = "aerogear.metrics.storage.days";
+    // number of outdated push messages deleted per transaction, and the pause between two of those
+    public static final String AEROGEAR_METRICS_RETENTION_CHUNK_SIZE = "aerogear.metrics.retention.chunk_size";
+    public static final String AEROGEAR_METRICS_RETENTION_PAUSE_MILLIS = "aerogear.metrics.retention.pause_millis";
+
+    // progress is logged every that many chunks
+    private static final int CHUNKS_PER_PROGRESS_LOG = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(PushMessageMetricsService.class);
 
     @Inject
     private FlatPushMessageInformationDao flatPushMessageInformationDao;
 
+    @Inject
+    private VariantDeliveryCounterDao variantDeliveryCounterDao;
+
+    @Inject
+    private PushMessageInformationWriter pushMessageInformationWriter;
+
+    @Inject
+    private AppOpenAggregator appOpenAggregator;
+
+    @Inject
+    private DashboardStatistics dashboardStatistics;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
     /* (non-Javadoc)
 	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#storeNewRequestFrom(java.lang.String, java.lang.String, java.lang.String, java.lang.String)
 	 */
@@ -53,9 +89,15 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
         final FlatPushMessageInformation information = new FlatPushMessageInformation();
 
         information.setRawJsonMessage(json);
+        information.setSearchText(MessageSearchText.extract(json));
         information.setIpAddress(ipAddress);
         information.setPushApplicationId(pushAppId);
         information.setClientIdentifier(clientIdentifier);
+        dashboardStatistics.messagesSubmitted(pushAppId, 1);
+
+        if (pushMessageInformationWriter.isEnabled() && pushMessageInformationWriter.enqueue(information)) {
+            return information;
+        }
 
         flatPushMessageInformationDao.create(information);
         flatPushMessageInformationDao.flushAndClear();
@@ -68,6 +110,7 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
 	 */
     @Override
 	public void updatePushMessageInformation(FlatPushMessageInformation pushMessageInformation) {
+        pushMessageInformationWriter.ensurePersisted(pushMessageInformation.getId());
         flatPushMessageInformationDao.update(pushMessageInformation);
     }
 
@@ -76,19 +119,34 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
 	 */
     @Override
 	public void appendError(final FlatPushMessageInformation pushMessageInformation, final Variant variant, final String errorMessage) {
+        pushMessageInformationWriter.ensurePersisted(pushMessageInformation.getId());
+
         final VariantErrorStatus ves = new VariantErrorStatus(pushMessageInformation, variant, errorMessage);
         pushMessageInformation.getErrors().add(ves);
         flatPushMessageInformationDao.update(pushMessageInformation);
     }
 
     /* (non-Javadoc)
-	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#findAllFlatsForPushApplication(java.lang.String, java.lang.String, boolean, java.lang.Integer, java.lang.Integer)
+	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#findAllFlatsForPushApplication(java.lang.String, org.jboss.aerogear.unifiedpush.dao.MessageSearch, boolean, java.lang.Integer, java.lang.Integer)
 	 */
     @Override
-	public PageResult<FlatPushMessageInformation, MessageMetrics> findAllFlatsForPushApplication(String pushApplicationID, String search, boolean sorting, Integer page, Integer pageSize) {
+	public PageResult<FlatPushMessageInformation, MessageMetrics> findAllFlatsForPushApplication(String pushApplicationID, MessageSearch search, boolean sorting, Integer page, Integer pageSize) {
         return flatPushMessageInformationDao.findAllForPushApplication(pushApplicationID, search, sorting, page, pageSize);
     }
 
+    @Override
+	public List<FlatPushMessageInformation> findAllFlatsForPushApplicationAfter(String pushApplicationID, MessageSearch search, boolean sorting, PageCursor after, int pageSize) {
+        if (after == null) {
+            return flatPushMessageInformationDao.findAllForPushApplicationAfter(pushApplicationID, search, sorting, null, null, pageSize);
+        }
+        return flatPushMessageInformationDao.findAllForPushApplicationAfter(pushApplicationID, search, sorting, after.getDate(), after.getId(), pageSize);
+    }
+
+    @Override
+	public MessageMetrics findMessageMetricsForPushApplication(String pushApplicationID, MessageSearch search) {
+        return flatPushMessageInformationDao.findMessageMetricsForPushApplicationByParams(pushApplicationID, search, true, null, null);
+    }
+
     /* (non-Javadoc)
 	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#countMessagesForPushApplication(java.lang.String)
 	 */
@@ -101,13 +159,47 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
 	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#deleteOutdatedFlatPushInformationData()
 	 */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public void deleteOutdatedFlatPushInformationData() {
         final Date historyDate = DateUtils.calculatePastDate(ConfigurationUtils.tryGetIntegerProperty(AEROGEAR_METRICS_STORAGE_MAX_DAYS, 30));
-        flatPushMessageInformationDao.deletePushInformationOlderThan(historyDate);
+        final int chunkSize = Math.max(1, ConfigurationUtils.tryGetIntegerProperty(AEROGEAR_METRICS_RETENTION_CHUNK_SIZE, 1000));
+        final long pauseMillis = Math.max(0, ConfigurationUtils.tryGetIntegerProperty(AEROGEAR_METRICS_RETENTION_PAUSE_MILLIS, 100));
+
+        // one short transaction per chunk, instead of locking the tables (and filling the WAL) with a single delete
+        final TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long deleted = 0;
+        int chunks = 0;
+        int affectedRows;
+        do {
+            affectedRows = transaction.execute(status ->
+                    flatPushMessageInformationDao.deletePushInformationOlderThan(historyDate, chunkSize));
+            deleted += affectedRows;
+            if (++chunks % CHUNKS_PER_PROGRESS_LOG == 0) {
+                logger.info("Deleted {} outdated push messages so far", deleted);
+            }
+            if (affectedRows == chunkSize && pauseMillis > 0) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("Deleting outdated push messages interrupted after {} messages", deleted);
+                    break;
+                }
+            }
+        } while (affectedRows == chunkSize);
+
+        logger.info("Deleted {} push messages submitted before {}", deleted, historyDate);
+        if (deleted > 0) {
+            dashboardStatistics.invalidate();
+        }
     }
 
     public FlatPushMessageInformation getPushMessageInformation(String id) {
-        return flatPushMessageInformationDao.find(id);
+        pushMessageInformationWriter.ensurePersisted(id);
+        final FlatPushMessageInformation pushMessageInformation = flatPushMessageInformationDao.find(id);
+
+        // a copy with the pending app-open events of this node, the stored row is only changed by their flush
+        return pushMessageInformation == null ? null : appOpenAggregator.withPending(pushMessageInformation);
     }
 
     /* (non-Javadoc)
@@ -115,20 +207,31 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
 	 */
     @Override
 	public void updateAnalytics(String aerogearPushId) {
-        FlatPushMessageInformation pushMessageInformation = this.getPushMessageInformation(aerogearPushId);
-
-        if (pushMessageInformation != null) { //if we are here, app has been opened due to a push message
+        // if we are here, app has been opened due to a push message: the event is aggregated and stored later on
+        appOpenAggregator.recordOpen(aerogearPushId);
+    }
 
-            //if the firstOpenDate is not null that means it's no the first one, let's update the lastDateOpen
-            if (pushMessageInformation.getFirstOpenDate() != null) {
-                pushMessageInformation.setLastOpenDate(new Date());
-            } else {
-                pushMessageInformation.setFirstOpenDate(new Date());
-                pushMessageInformation.setLastOpenDate(new Date());
+    /* (non-Javadoc)
+	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#storeDeliveryCounters(java.util.Collection)
+	 */
+    @Override
+    public void storeDeliveryCounters(Collection<VariantDeliveryCounter> deltas) {
+        final List<VariantDeliveryCounter> created = new ArrayList<>();
+        for (VariantDeliveryCounter delta : deltas) {
+            if (!variantDeliveryCounterDao.addToCounter(delta)) {
+                delta.setLastUpdated(new Date());
+                created.add(delta);
             }
-            //update the general counter
-            pushMessageInformation.incrementAppOpenCounter();
         }
+        variantDeliveryCounterDao.createAll(created);
+    }
 
+    /* (non-Javadoc)
+	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#findDeliveryCounters(java.lang.String)
+	 */
+    @Override
+    @Transactional(readOnly = true)
+    public List<VariantDeliveryCounter> findDeliveryCounters(String pushMessageId) {
+        return variantDeliveryCounterDao.findByPushJobId(pushMessageId);
     }
 }
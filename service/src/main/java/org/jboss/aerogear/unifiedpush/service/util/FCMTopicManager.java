@@ -16,19 +16,25 @@
  */
 package org.jboss.aerogear.unifiedpush.service.util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
-import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
-import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -43,19 +49,30 @@ public class FCMTopicManager {
     private final Logger logger = LoggerFactory.getLogger(FCMTopicManager.class);
 
     // Instance ID API URL
-    public static final String IID_URL = "https://iid.googleapis.com/iid/v1/";
+    public static final String IID_URL = "https://iid.googleapis.com/iid";
 
-    private AndroidVariant variant;
+    // tokens per request of the batch API
+    public static final int MAX_BATCH_SIZE = 1000;
 
-    public FCMTopicManager(AndroidVariant variant) {
-        this.variant = variant;
+    private final CloseableHttpClient httpClient;
+    private final String iidUrl;
+    private final String serverKey;
+
+    /**
+     * @param httpClient the (pooled) client, shared across variants
+     * @param iidUrl base URL of the Instance ID API, e.g. {@link #IID_URL}
+     * @param serverKey the Google API key of the variant
+     */
+    public FCMTopicManager(CloseableHttpClient httpClient, String iidUrl, String serverKey) {
+        this.httpClient = httpClient;
+        this.iidUrl = iidUrl.endsWith("/") ? iidUrl.substring(0, iidUrl.length() - 1) : iidUrl;
+        this.serverKey = serverKey;
     }
 
-    public Set<String> getSubscribedCategories(Installation installation) {
-        String url = IID_URL + "info/" + installation.getDeviceToken() + "?details=true";
+    public Set<String> getSubscribedCategories(String deviceToken) {
         String deviceInfo;
         try {
-            deviceInfo = get(url);
+            deviceInfo = get(iidUrl + "/info/" + deviceToken + "?details=true");
         } catch (IOException e) {
             logger.debug("Couldn't get list of subscribed topics from Instance ID service.");
             return Collections.emptySet();
@@ -74,71 +91,77 @@ public class FCMTopicManager {
             return Collections.emptySet();
         }
         JSONObject topics = (JSONObject) rel.get("topics");
-        return topics.keySet();
+        if (topics == null) {
+            return Collections.emptySet();
+        }
+        Set<String> categories = new HashSet<>();
+        for (Object topic : topics.keySet()) {
+            categories.add((String) topic);
+        }
+        return categories;
     }
 
-
     /**
-     * Unsubscribes device from single category(topic)
+     * Unsubscribes devices from a single category(topic), with one batch request per {@link #MAX_BATCH_SIZE} devices.
      *
-     * @param installation Installation object containing correct variant property of AndroidVariant class
-     * @param categoryToUnsubscribe category(topic) that device should be unsubscribed from
+     * @param categoryToUnsubscribe category(topic) that the devices should be unsubscribed from
+     * @param deviceTokens tokens of the devices
      */
-    public void unsubscribe(Installation installation, String categoryToUnsubscribe) {
-
-        String url = "";
-        try {
-            url = IID_URL + installation.getDeviceToken() + "/rel/topics/" + URLEncoder.encode(categoryToUnsubscribe, StandardCharsets.UTF_8.toString());
-        } catch (UnsupportedEncodingException e1) {
-            //
-        }
-
-        try {
-            delete(url);
-        } catch (IOException e) {
-            logger.debug("Unregistering device from topic was unsuccessfull");
+    @SuppressWarnings("unchecked")
+    public void unsubscribe(String categoryToUnsubscribe, Collection<String> deviceTokens) {
+        List<String> tokens = new ArrayList<>(deviceTokens);
+        for (int from = 0; from < tokens.size(); from += MAX_BATCH_SIZE) {
+            JSONArray registrationTokens = new JSONArray();
+            registrationTokens.addAll(tokens.subList(from, Math.min(from + MAX_BATCH_SIZE, tokens.size())));
+
+            JSONObject body = new JSONObject();
+            body.put("to", "/topics/" + categoryToUnsubscribe);
+            body.put("registration_tokens", registrationTokens);
+
+            try {
+                int status = post(iidUrl + "/v1:batchRemove", body.toJSONString());
+                if (status != HttpStatus.SC_OK) {
+                    logger.debug("Unregistering devices from topic was unsuccessfull, status {}", status);
+                }
+            } catch (IOException e) {
+                logger.debug("Unregistering devices from topic was unsuccessfull");
+            }
         }
     }
 
     /**
-     * Sends DELETE HTTP request to provided URL. Request is authorized using Google API key.
+     * Sends POST HTTP request with a JSON body to provided URL. Request is authorized using Google API key.
      *
-     * @param urlS target URL string
+     * @param url target URL string
      */
-    private int delete(String urlS) throws IOException {
-        URL url = new URL(urlS);
-        HttpURLConnection conn = prepareAuthorizedConnection(url);
-        conn.setRequestMethod("DELETE");
-        conn.connect();
-        return conn.getResponseCode();
+    private int post(String url, String json) throws IOException {
+        HttpPost post = authorize(new HttpPost(url));
+        post.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            // consume the response, so that the connection goes back to the pool
+            EntityUtils.consume(response.getEntity());
+            return response.getStatusLine().getStatusCode();
+        }
     }
 
     /**
      * Sends GET HTTP request to provided URL. Request is authorized using Google API key.
      *
-     * @param urlS target URL string
+     * @param url target URL string
      */
-    private String get(String urlS) throws IOException {
-        URL url = new URL(urlS);
-        HttpURLConnection conn = prepareAuthorizedConnection(url);
-        conn.setRequestMethod("GET");
-        // Read response
-        StringBuilder result = new StringBuilder();
-        try (BufferedReader rd = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = rd.readLine()) != null) {
-                result.append(line);
+    private String get(String url) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(authorize(new HttpGet(url)))) {
+            String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                throw new IOException("Unexpected status " + response.getStatusLine().getStatusCode());
             }
+            return body;
         }
-        return result.toString();
     }
 
-    private HttpURLConnection prepareAuthorizedConnection(URL url) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setDoOutput(true);
-        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded" );
-        conn.setRequestProperty("Authorization", "key=" + variant.getGoogleKey());
-        return conn;
+    private <R extends HttpRequestBase> R authorize(R request) {
+        request.setHeader("Authorization", "key=" + serverKey);
+        return request;
     }
 
 }
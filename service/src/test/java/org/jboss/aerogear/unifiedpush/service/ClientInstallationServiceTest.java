@@ -19,6 +19,12 @@ package org.jboss.aerogear.unifiedpush.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -39,10 +45,14 @@ import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.api.iOSVariant;
+import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.ResultStreamException;
 import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
+import org.jboss.aerogear.unifiedpush.service.impl.InstallationExistenceCache;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
 import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.datastax.driver.core.utils.UUIDs;
@@ -60,6 +70,8 @@ public class ClientInstallationServiceTest extends AbstractCassandraServiceTest
 	private PushApplicationService applicationService;
 	@Inject
 	private AliasService aliasService;
+	@Inject
+	private InstallationExistenceCache installationExistenceCache;
 
 	private AndroidVariant androidVariant;
 
@@ -253,6 +265,55 @@ public class ClientInstallationServiceTest extends AbstractCassandraServiceTest
 				.hasSize(1);
 	}
 
+	@Test
+	@Transactional
+	public void addInstallationsInBulk() {
+		Installation enabled = new Installation();
+		enabled.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		enabled.setAlias("before");
+		clientInstallationService.addInstallation(androidVariant, enabled);
+
+		Installation disabled = new Installation();
+		disabled.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		disabled.setEnabled(false);
+		clientInstallationService.addInstallation(androidVariant, disabled);
+
+		Installation reRegistered = new Installation();
+		reRegistered.setDeviceToken(enabled.getDeviceToken());
+		reRegistered.setAlias("after");
+		reRegistered.setCategories(new HashSet<>(Arrays.asList(new Category("news"))));
+
+		Installation disabledReRegistered = new Installation();
+		disabledReRegistered.setDeviceToken(disabled.getDeviceToken());
+		disabledReRegistered.setAlias("ignored");
+
+		final String newToken = TestUtils.generateFakedDeviceTokenString();
+		Installation first = new Installation();
+		first.setDeviceToken(newToken);
+		first.setAlias("first");
+		Installation last = new Installation();
+		last.setDeviceToken(newToken);
+		last.setAlias("last");
+
+		Installation withoutToken = new Installation();
+
+		clientInstallationService.addInstallationsInBulk(androidVariant,
+				Arrays.asList(reRegistered, disabledReRegistered, first, last, withoutToken));
+
+		final String variantID = androidVariant.getVariantID();
+		Installation updated = clientInstallationService.findInstallationForVariantByDeviceToken(variantID,
+				enabled.getDeviceToken());
+		assertThat(updated.getId()).isEqualTo(enabled.getId());
+		assertThat(updated.getAlias()).isEqualTo("after");
+		assertThat(updated.getCategories()).extracting("name").containsOnly("news");
+
+		assertThat(clientInstallationService.findInstallationForVariantByDeviceToken(variantID,
+				disabled.getDeviceToken()).getAlias()).isNull();
+		assertThat(clientInstallationService.findInstallationForVariantByDeviceToken(variantID, newToken).getAlias())
+				.isEqualTo("last");
+		assertThat(clientInstallationService.getNumberOfDevicesForVariantID(variantID)).isEqualTo(3);
+	}
+
 	@Test
 	@Transactional
 	public void importDevicesWithAndWithoutTokenDuplicates() {
@@ -550,6 +611,20 @@ public class ClientInstallationServiceTest extends AbstractCassandraServiceTest
 		assertThat(legacyTokenz).doesNotContain(device4.getDeviceToken());
 	}
 
+	@Test
+	@Transactional
+	public void removeInstallationOfUnknownToken() {
+		Installation device = new Installation();
+		device.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		clientInstallationService.addInstallation(androidVariant, device);
+
+		clientInstallationService.removeInstallationForVariantByDeviceToken(androidVariant.getVariantID(),
+				TestUtils.generateFakedDeviceTokenString());
+
+		assertThat(findAllDeviceTokenForVariantIDByCriteria(androidVariant.getVariantID(), null, null, null))
+				.containsOnly(device.getDeviceToken());
+	}
+
 	@Test
 	@Transactional
 	public void findDeviceTokensByAlias() {
@@ -570,6 +645,50 @@ public class ClientInstallationServiceTest extends AbstractCassandraServiceTest
 				null)).hasSize(2);
 	}
 
+	@Test
+	@Transactional
+	public void findDeviceTokensByAliasPagesOverFirstResolution() {
+		for (int i = 0; i < 3; i++) {
+			Installation device = new Installation();
+			device.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+			device.setAlias("paged");
+			clientInstallationService.addInstallation(androidVariant, device);
+		}
+		final List<String> aliases = Arrays.asList("paged");
+		final List<String> all = findAllDeviceTokenForVariantIDByCriteria(androidVariant.getVariantID(), null, aliases,
+				null);
+		final List<String> firstPage = findDeviceTokensPage(androidVariant.getVariantID(), aliases, 2, null);
+		assertThat(firstPage).containsExactly(all.get(0), all.get(1));
+
+		// registered after the first page: the following pages continue on the tokens resolved for it
+		Installation late = new Installation();
+		late.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		late.setAlias("paged");
+		clientInstallationService.addInstallation(androidVariant, late);
+
+		assertThat(findDeviceTokensPage(androidVariant.getVariantID(), aliases, 10, firstPage.get(1)))
+				.containsExactly(all.get(2));
+	}
+
+	@Test
+	@Transactional
+	public void findDeviceTokensByAliasIgnoresCase() {
+
+		Installation device = new Installation();
+		device.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		device.setAlias("Root@Example.org");
+		clientInstallationService.addInstallation(androidVariant, device);
+
+		Installation otherDevice = new Installation();
+		otherDevice.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		otherDevice.setAlias("someone@example.org");
+		clientInstallationService.addInstallation(androidVariant, otherDevice);
+
+		assertThat(findAllDeviceTokenForVariantIDByCriteria(androidVariant.getVariantID(), null,
+				Arrays.asList("root@example.ORG", "unknown@example.org", "ROOT@example.org"), null))
+						.containsOnly(device.getDeviceToken());
+	}
+
 	@Test
 	@Transactional
 	public void findDeviceVariantByAlias() {
@@ -677,6 +796,76 @@ public class ClientInstallationServiceTest extends AbstractCassandraServiceTest
 		assertTrue(installation.isEnabled() == false);
 	}
 
+	@Test
+	@Transactional
+	public void testHasEnabledInstallation() {
+		final String variantID = androidVariant.getVariantID();
+		Installation device = new Installation();
+		String deviceToken = TestUtils.generateFakedDeviceTokenString();
+		device.setDeviceToken(deviceToken);
+		clientInstallationService.addInstallation(androidVariant, device);
+
+		assertThat(clientInstallationService.hasEnabledInstallation(variantID, deviceToken)).isTrue();
+		assertThat(clientInstallationService.hasEnabledInstallation(variantID, "unknown")).isFalse();
+
+		Installation installation = clientInstallationService.findInstallationForVariantByDeviceToken(variantID,
+				deviceToken);
+		installation.setEnabled(false);
+		clientInstallationService.updateInstallation(installation);
+		assertThat(clientInstallationService.hasEnabledInstallation(variantID, deviceToken)).isFalse();
+
+		clientInstallationService.removeInstallation(installation);
+		assertThat(clientInstallationService.hasEnabledInstallation(variantID, deviceToken)).isFalse();
+	}
+
+	// not transactional, the cache is evicted once the service transactions commit
+	@Test
+	public void testHasEnabledInstallationCached() {
+		final Object config = ReflectionTestUtils.getField(installationExistenceCache, "config");
+		final ConfigurationEnvironment cacheEnabled = mock(ConfigurationEnvironment.class);
+		when(cacheEnabled.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+		when(cacheEnabled.getProperty(eq(InstallationExistenceCache.PROP_CACHE_SIZE), anyInt())).thenReturn(100);
+		ReflectionTestUtils.setField(installationExistenceCache, "config", cacheEnabled);
+		installationExistenceCache.init();
+
+		try {
+			final String variantID = androidVariant.getVariantID();
+			final String deviceToken = TestUtils.generateFakedDeviceTokenString();
+
+			// unknown tokens are not cached
+			assertThat(clientInstallationService.hasEnabledInstallation(variantID, deviceToken)).isFalse();
+			Installation device = new Installation();
+			device.setDeviceToken(deviceToken);
+			clientInstallationService.addInstallation(androidVariant, device);
+			assertThat(clientInstallationService.hasEnabledInstallation(variantID, deviceToken)).isTrue();
+
+			// served from the cache
+			final Object installationDao = ReflectionTestUtils.getField(installationExistenceCache, "installationDao");
+			final InstallationDao unused = mock(InstallationDao.class);
+			ReflectionTestUtils.setField(installationExistenceCache, "installationDao", unused);
+			assertThat(clientInstallationService.hasEnabledInstallation(variantID, deviceToken)).isTrue();
+			verifyZeroInteractions(unused);
+			ReflectionTestUtils.setField(installationExistenceCache, "installationDao", installationDao);
+
+			// disabled tokens are evicted and not cached
+			Installation installation = clientInstallationService.findInstallationForVariantByDeviceToken(variantID,
+					deviceToken);
+			installation.setEnabled(false);
+			clientInstallationService.updateInstallation(installation);
+			assertThat(clientInstallationService.hasEnabledInstallation(variantID, deviceToken)).isFalse();
+
+			installation.setEnabled(true);
+			clientInstallationService.updateInstallation(installation);
+			assertThat(clientInstallationService.hasEnabledInstallation(variantID, deviceToken)).isTrue();
+
+			clientInstallationService.removeInstallation(installation);
+			assertThat(clientInstallationService.hasEnabledInstallation(variantID, deviceToken)).isFalse();
+		} finally {
+			ReflectionTestUtils.setField(installationExistenceCache, "config", config);
+			ReflectionTestUtils.setField(installationExistenceCache, "cache", null);
+		}
+	}
+
 	@Test
 	@Transactional
 	public void testFindEnabledInstallationForVariantByDeviceToken() {
@@ -754,6 +943,22 @@ public class ClientInstallationServiceTest extends AbstractCassandraServiceTest
 		}
 	}
 
+	private List<String> findDeviceTokensPage(String variantID, List<String> aliases, int maxResults,
+			String lastToken) {
+		try {
+			ResultsStream<String> tokenStream = clientInstallationService
+					.findAllDeviceTokenForVariantIDByCriteria(variantID, null, aliases, null, maxResults, lastToken)
+					.executeQuery();
+			List<String> list = new ArrayList<String>();
+			while (tokenStream.next()) {
+				list.add(tokenStream.get());
+			}
+			return list;
+		} catch (ResultStreamException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	private List<String> findAllOldGoogleCloudMessagingDeviceTokenForVariantIDByCriteria(String variantID,
 			List<String> categories, List<String> aliases, List<String> deviceTypes) {
 		try {
@@ -62,6 +62,26 @@ public class PushApplicationServiceTest extends AbstractCassandraServiceTest {
 		assertThat(pa.getPushApplicationID()).isEqualTo(stored.getPushApplicationID());
 	}
 
+	@Test
+	public void findAuthorizedPushApplicationAfterSecretRotation() {
+		PushApplication pa = new PushApplication();
+		pa.setName("EJB Container");
+		final String uuid = UUID.randomUUID().toString();
+		pa.setPushApplicationID(uuid);
+		pushApplicationService.addPushApplication(pa, new LoggedInUser(DEFAULT_USER));
+
+		final String secret = pa.getMasterSecret();
+		assertThat(pushApplicationService.findAuthorizedPushApplication(uuid, secret)).isNotNull();
+		assertThat(pushApplicationService.findAuthorizedPushApplication(uuid, "wrong")).isNull();
+
+		PushApplication stored = pushApplicationService.findByPushApplicationID(uuid);
+		stored.setMasterSecret(UUID.randomUUID().toString());
+		pushApplicationService.updatePushApplication(stored);
+
+		assertThat(pushApplicationService.findAuthorizedPushApplication(uuid, secret)).isNull();
+		assertThat(pushApplicationService.findAuthorizedPushApplication(uuid, stored.getMasterSecret())).isNotNull();
+	}
+
 	@Test
 	public void updatePushApplication() {
 		PushApplication pa = new PushApplication();
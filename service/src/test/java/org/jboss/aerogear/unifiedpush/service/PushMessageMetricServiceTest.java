@@ -21,12 +21,17 @@ package org.jboss.aerogear.unifiedpush.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.tuple;
 
+import java.util.Collections;
+
 import javax.inject.Inject;
 
 import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.VariantDeliveryCounter;
 import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.dao.VariantDao;
+import org.jboss.aerogear.unifiedpush.service.metrics.DeliveryCounterAggregator;
 import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
 import org.junit.Test;
 import org.springframework.transaction.annotation.Transactional;
@@ -39,6 +44,12 @@ public class PushMessageMetricServiceTest extends AbstractCassandraServiceTest {
     @Inject
     private VariantDao variantDao;
 
+    @Inject
+    private FlatPushMessageInformationDao flatPushMessageInformationDao;
+
+    @Inject
+    private DeliveryCounterAggregator deliveryCounterAggregator;
+
     private FlatPushMessageInformation pushMessageInformation;
 
     @Override
@@ -72,6 +83,9 @@ public class PushMessageMetricServiceTest extends AbstractCassandraServiceTest {
         pushMessageMetricsService.updateAnalytics(pushMessageInformation.getId());
         FlatPushMessageInformation updatedPushInformation1 = pushMessageMetricsService.getPushMessageInformation(pushMessageInformation.getId());
         assertThat(updatedPushInformation1.getAppOpenCounter()).isEqualTo(2);
+
+        // the pending events are only added to the returned copy, the stored row is changed by their flush
+        assertThat(flatPushMessageInformationDao.find(pushMessageInformation.getId()).getAppOpenCounter()).isEqualTo(0);
     }
 
     @Test
@@ -89,6 +103,21 @@ public class PushMessageMetricServiceTest extends AbstractCassandraServiceTest {
                 );
     }
 
-
+    @Test
+    @Transactional
+    public void deliveryCounters() {
+        final VariantDeliveryCounter delta = new VariantDeliveryCounter(pushMessageInformation.getId(), "321");
+        delta.setTokensLoaded(10);
+        delta.setTokensSent(10);
+        delta.setTokensAccepted(8);
+        delta.setTokensRejected(2);
+        pushMessageMetricsService.storeDeliveryCounters(Collections.singletonList(delta));
+
+        // not flushed yet, but part of the reported counters
+        deliveryCounterAggregator.tokensLoaded(pushMessageInformation.getId(), "321", 5);
+
+        assertThat(deliveryCounterAggregator.getDeliveryCounters(pushMessageInformation.getId()))
+                .extracting("variantID", "tokensLoaded", "tokensSent", "tokensAccepted", "tokensRejected")
+                .containsExactly(tuple("321", 15L, 10L, 8L, 2L));
+    }
 }
-
@@ -0,0 +1,95 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
+import org.jboss.aerogear.unifiedpush.dao.PushApplicationDao;
+import org.jboss.aerogear.unifiedpush.dao.SearchMode;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Read-only transactions are routed to a read replica, see ReadReplicaRoutingDataSource.
+ */
+public class PushSearchServiceTest extends AbstractNoCassandraServiceTest {
+
+	@Inject
+	@Qualifier("PushSearchServiceImpl")
+	private PushSearchService adminSearchService;
+
+	// read-only flag of the transaction each DAO call ran in
+	private final List<Boolean> readOnly = new ArrayList<>();
+	private final List<Runnable> restore = new ArrayList<>();
+
+	@After
+	public void restoreDaos() {
+		restore.forEach(Runnable::run);
+	}
+
+	@Test
+	public void searchesRunInReadOnlyTransactions() {
+		for (PushSearchService search : new PushSearchService[] { adminSearchService, searchApplicationService }) {
+			final InstallationDao installationDao = mockDao(search, "installationDao", InstallationDao.class);
+			final PushApplicationDao pushApplicationDao = mockDao(search, "pushApplicationDao", PushApplicationDao.class);
+			when(installationDao.findInstallationsByVariantAfter(any(), any(), any(), any(),
+					any(), anyInt())).thenAnswer(invocation -> recordReadOnly(Collections.emptyList()));
+			when(installationDao.countInstallationsByVariant(any(), any(), any(), any()))
+					.thenAnswer(invocation -> recordReadOnly(0L));
+			when(pushApplicationDao.findAllForDeveloperAfter(any(), any(), anyInt()))
+					.thenAnswer(invocation -> recordReadOnly(Collections.emptyList()));
+
+			// the installation export pages with findInstallationsByVariantAfterForDeveloper
+			search.findInstallationsByVariantAfterForDeveloper("variant", "search", SearchMode.EXACT, "last", 10);
+			search.countInstallationsByVariantForDeveloper("variant", "search", SearchMode.EXACT);
+			search.findAllPushApplicationsForDeveloperAfter("last", 10);
+		}
+
+		assertThat(readOnly).hasSize(6).containsOnly(true);
+	}
+
+	private <T> T recordReadOnly(T result) {
+		readOnly.add(TransactionSynchronizationManager.isActualTransactionActive()
+				&& TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+		return result;
+	}
+
+	private <T> T mockDao(PushSearchService search, String field, Class<T> type) {
+		final Object target = AopTestUtils.getTargetObject(search);
+		final Object original = ReflectionTestUtils.getField(target, field);
+		restore.add(() -> ReflectionTestUtils.setField(target, field, original));
+
+		final T dao = mock(type);
+		ReflectionTestUtils.setField(target, field, dao);
+		return dao;
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
+import org.jboss.aerogear.unifiedpush.dao.ResultStreamException;
+import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AliasTokenResolverTest {
+
+	private static final String VARIANT_ID = "variant-1";
+
+	// alias -> tokens, every alias has two installations
+	private final Map<String, Set<String>> installations = new HashMap<>();
+	private final List<String> aliases = Arrays.asList("a", "b", "c");
+	private InstallationDao installationDao;
+	private AliasTokenResolver resolver;
+
+	@Before
+	public void setUp() {
+		for (String alias : aliases) {
+			installations.put(alias, new TreeSet<>(Arrays.asList(alias + "-1", alias + "-2")));
+		}
+
+		installationDao = mock(InstallationDao.class);
+		when(installationDao.findDeviceTokensForVariantIDByAliases(eq(VARIANT_ID), anyListOf(String.class)))
+				.thenAnswer(invocation -> {
+					final Map<String, Set<String>> tokens = new HashMap<>();
+					for (Object alias : (Collection<?>) invocation.getArguments()[1]) {
+						tokens.put((String) alias, installations.get(alias));
+					}
+					return tokens;
+				});
+		when(installationDao.findDeviceTokensForVariantIDByAliases(eq(VARIANT_ID), anyCollectionOf(String.class),
+				any(), anyInt(), anyBoolean())).thenAnswer(invocation -> {
+					final Object[] arguments = invocation.getArguments();
+					final String lastToken = (String) arguments[2];
+					return ((Collection<?>) arguments[1]).stream() //
+							.flatMap(alias -> installations.get(alias).stream()) //
+							.filter(token -> lastToken == null || token.compareTo(lastToken) > 0) //
+							.sorted() //
+							.limit((Integer) arguments[3]) //
+							.collect(Collectors.toList());
+				});
+
+		final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+		when(config.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+		when(config.getProperty(eq(AliasTokenResolver.PROP_CHUNK_SIZE), anyInt())).thenReturn(2);
+		when(config.getProperty(eq(AliasTokenResolver.PROP_MAX_PAGED_TOKENS), anyInt())).thenReturn(5);
+
+		resolver = new AliasTokenResolver();
+		ReflectionTestUtils.setField(resolver, "installationDao", installationDao);
+		ReflectionTestUtils.setField(resolver, "config", config);
+		resolver.init();
+	}
+
+	@After
+	public void tearDown() {
+		resolver.shutdown();
+	}
+
+	@Test
+	public void pageMergesChunks() {
+		assertThat(resolver.page(VARIANT_ID, Arrays.asList("A", "b", "c"), null, 3, false)) //
+				.containsExactly("a-1", "a-2", "b-1");
+		assertThat(resolver.page(VARIANT_ID, aliases, "b-1", 3, false)) //
+				.containsExactly("b-2", "c-1", "c-2");
+	}
+
+	@Test
+	public void oversizedResultsArePagedInTheDatabase() throws ResultStreamException {
+		assertThat(stream(null, 4)).containsExactly("a-1", "a-2", "b-1", "b-2");
+		assertThat(stream("b-2", 4)).containsExactly("c-1", "c-2");
+		assertThat(stream("c-2", 4)).isEmpty();
+
+		// resolved once (in two chunks), the set was too large to be kept for the following pages
+		verify(installationDao, times(2)).findDeviceTokensForVariantIDByAliases(eq(VARIANT_ID),
+				anyListOf(String.class));
+	}
+
+	private List<String> stream(String lastToken, int maxResults) throws ResultStreamException {
+		final ResultsStream<String> stream = resolver
+				.findDeviceTokens(VARIANT_ID, aliases, maxResults, lastToken, false).executeQuery();
+		final List<String> tokens = new ArrayList<>();
+		while (stream.next()) {
+			tokens.add(stream.get());
+		}
+		return tokens;
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.Category;
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CriteriaBitmapIndexTest {
+
+	private final AndroidVariant variant = new AndroidVariant();
+	private CriteriaBitmapIndex.VariantIndex index;
+
+	@Before
+	public void setUp() {
+		index = new CriteriaBitmapIndex.VariantIndex();
+		index.load(entry("1", "token-a", "Mike", "Phone", true, "soccer", "news"));
+		index.load(entry("2", "token-b", "John", "Tablet", true, "soccer"));
+		index.load(entry("3", "token-c", "Mike", "Phone", false, "soccer"));
+		index.load(entry("4", "token:d", null, "Tablet", true, "news"));
+		index.ready();
+	}
+
+	@Test
+	public void findsByCategoriesAndDeviceTypes() {
+		assertThat(index.find(Arrays.asList("soccer"), null, null, 10, null, false))
+				.containsExactly("token-a", "token-b");
+		assertThat(index.find(Arrays.asList("soccer", "news"), null, Arrays.asList("Tablet"), 10, null, false))
+				.containsExactly("token-b", "token:d");
+		assertThat(index.find(null, null, Arrays.asList("Watch"), 10, null, false)).isEmpty();
+	}
+
+	@Test
+	public void findsByAliasesIgnoringCase() {
+		assertThat(index.find(Arrays.asList("news"), new HashSet<>(Arrays.asList("mike")), null, 10, null, false))
+				.containsExactly("token-a");
+	}
+
+	@Test
+	public void pagesByToken() {
+		assertThat(index.find(null, null, null, 2, null, false)).containsExactly("token-a", "token-b");
+		assertThat(index.find(null, null, null, 2, "token-b", false)).containsExactly("token:d");
+		assertThat(index.find(null, null, null, 2, null, true)).containsExactly("token-a", "token-b");
+	}
+
+	@Test
+	public void appliesUpdatesAndRemovals() {
+		index.put(entry("2", "token-b", "John", "Tablet", true, "news"));
+		index.remove("1");
+		assertThat(index.find(Arrays.asList("soccer"), null, null, 10, null, false)).isEmpty();
+
+		// the ordinal of the removed installation is reused
+		index.put(entry("5", "token-e", "Anna", "Phone", true, "soccer"));
+		assertThat(index.find(Arrays.asList("soccer"), null, null, 10, null, false)).containsExactly("token-e");
+		assertThat(index.find(Arrays.asList("news"), null, null, 10, null, false))
+				.containsExactly("token-b", "token:d");
+	}
+
+	@Test
+	public void removeIgnoresMissingInstallation() {
+		// e.g. the old token of a re-registration, that is not stored
+		new CriteriaBitmapIndex().remove((Installation) null);
+	}
+
+	@Test
+	public void pagesInTokenOrderIndependentOfOrdinals() {
+		final CriteriaBitmapIndex.VariantIndex large = new CriteriaBitmapIndex.VariantIndex();
+		// ordinals are assigned in reverse token order
+		for (int i = 49; i >= 0; i--) {
+			large.load(entry(String.valueOf(i), String.format("token-%02d", i), null, "Phone", true,
+					i % 10 == 0 ? "rare" : "common"));
+		}
+		large.ready();
+
+		// most installations match, pages continue after the last token
+		final List<String> paged = new ArrayList<>();
+		String last = null;
+		NavigableSet<String> page;
+		do {
+			page = large.find(null, null, Arrays.asList("Phone"), 7, last, false);
+			paged.addAll(page);
+			last = page.isEmpty() ? last : page.last();
+		} while (page.size() == 7);
+		assertThat(paged).hasSize(50).isSorted();
+
+		// few installations match
+		assertThat(large.find(Arrays.asList("rare"), null, null, 2, "token-00", false))
+				.containsExactly("token-10", "token-20");
+	}
+
+	@Test
+	public void appliesChangesCommittedWhileLoading() {
+		final CriteriaBitmapIndex.VariantIndex loading = new CriteriaBitmapIndex.VariantIndex();
+		loading.load(entry("1", "token-a", "Mike", "Phone", true, "soccer"));
+		loading.apply(pending -> pending.remove("1"));
+		loading.load(entry("2", "token-b", "John", "Phone", true, "soccer"));
+		loading.ready();
+
+		assertThat(loading.find(Collections.singletonList("soccer"), null, null, 10, null, false))
+				.containsExactly("token-b");
+	}
+
+	private CriteriaBitmapIndex.Entry entry(String id, String token, String alias, String deviceType, boolean enabled,
+			String... categories) {
+		final Installation installation = new Installation();
+		installation.setId(id);
+		installation.setVariant(variant);
+		installation.setDeviceToken(token);
+		installation.setAlias(alias);
+		installation.setDeviceType(deviceType);
+		installation.setEnabled(enabled);
+		final HashSet<Category> set = new HashSet<>();
+		for (String category : categories) {
+			set.add(new Category(category));
+		}
+		installation.setCategories(set);
+		return new CriteriaBitmapIndex.Entry(installation);
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.service.AbstractCassandraServiceTest;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
+import org.jboss.aerogear.unifiedpush.service.TestUtils;
+import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
+import org.jboss.aerogear.unifiedpush.service.impl.InstallationImportJob.State;
+import org.junit.Test;
+
+public class InstallationImporterTest extends AbstractCassandraServiceTest {
+
+	@Inject
+	private InstallationImporter installationImporter;
+	@Inject
+	private ClientInstallationService clientInstallationService;
+	@Inject
+	private GenericVariantService variantService;
+
+	private AndroidVariant androidVariant;
+
+	@Override
+	protected void specificSetup() {
+		androidVariant = new AndroidVariant();
+		androidVariant.setGoogleKey("XYZQWEAWSvw:GGG91bGd6o9D-tU9JJJyvlL1iXibUde4fckYLG");
+		androidVariant.setName("Android");
+		androidVariant.setDeveloper("me");
+		variantService.addVariant(androidVariant, new LoggedInUser(DEFAULT_USER));
+	}
+
+	@Test
+	public void importInstallations() throws Exception {
+		final String token1 = TestUtils.generateFakedDeviceTokenString();
+		final String token2 = TestUtils.generateFakedDeviceTokenString();
+		final String json = "[{\"deviceToken\":\"" + token1 + "\",\"alias\":\"one\"}," //
+				+ "{\"deviceToken\":\"" + token2 + "\"}," //
+				+ "{\"deviceToken\":\"" + token1 + "\",\"alias\":\"two\"}," //
+				+ "{\"alias\":\"no-token\"}]";
+
+		InstallationImportJob job = installationImporter.submit(androidVariant,
+				new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+		assertThat(installationImporter.find(job.getId())).isSameAs(job);
+
+		awaitDone(job);
+
+		assertThat(job.getState()).isEqualTo(State.COMPLETED);
+		assertThat(job.getParsed()).isEqualTo(4);
+		// the second registration of token1 replaces the first one
+		assertThat(job.getImported()).isEqualTo(2);
+		assertThat(job.getSkipped()).isEqualTo(2);
+		assertThat(job.getFailed()).isZero();
+
+		assertThat(clientInstallationService
+				.findInstallationForVariantByDeviceToken(androidVariant.getVariantID(), token1).getAlias())
+						.isEqualTo("two");
+		assertThat(clientInstallationService.findInstallationForVariantByDeviceToken(androidVariant.getVariantID(),
+				token2)).isNotNull();
+	}
+
+	@Test
+	public void importSkipsDisabledInstallations() throws Exception {
+		final Installation disabled = new Installation();
+		disabled.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		disabled.setEnabled(false);
+		clientInstallationService.addInstallation(androidVariant, disabled);
+
+		final String json = "[{\"deviceToken\":\"" + disabled.getDeviceToken() + "\",\"alias\":\"one\"}," //
+				+ "{\"deviceToken\":\"" + TestUtils.generateFakedDeviceTokenString() + "\"}]";
+		final InstallationImportJob job = installationImporter.submit(androidVariant,
+				new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+		awaitDone(job);
+
+		assertThat(job.getState()).isEqualTo(State.COMPLETED);
+		assertThat(job.getImported()).isEqualTo(1);
+		assertThat(job.getSkipped()).isEqualTo(1);
+		assertThat(job.getFailed()).isZero();
+		assertThat(clientInstallationService.findInstallationForVariantByDeviceToken(androidVariant.getVariantID(),
+				disabled.getDeviceToken()).getAlias()).isNull();
+	}
+
+	@Test
+	public void importStoresTheValidInstallationsOfAFailedBatch() throws Exception {
+		final String token = TestUtils.generateFakedDeviceTokenString();
+		// exceeds the device type column
+		final String deviceType = String.join("", Collections.nCopies(300, "x"));
+		final String json = "[{\"deviceToken\":\"" + token + "\"}," //
+				+ "{\"deviceToken\":\"" + TestUtils.generateFakedDeviceTokenString() + "\",\"deviceType\":\""
+				+ deviceType + "\"}]";
+		final InstallationImportJob job = installationImporter.submit(androidVariant,
+				new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+		awaitDone(job);
+
+		assertThat(job.getState()).isEqualTo(State.COMPLETED);
+		assertThat(job.getImported()).isEqualTo(1);
+		assertThat(job.getSkipped()).isZero();
+		assertThat(job.getFailed()).isEqualTo(1);
+		assertThat(clientInstallationService.findInstallationForVariantByDeviceToken(androidVariant.getVariantID(),
+				token)).isNotNull();
+	}
+
+	@Test
+	public void importMalformedFile() throws Exception {
+		InstallationImportJob job = installationImporter.submit(androidVariant,
+				new ByteArrayInputStream("{\"deviceToken\":\"abc\"}".getBytes(StandardCharsets.UTF_8)));
+		awaitDone(job);
+
+		assertThat(job.getState()).isEqualTo(State.FAILED);
+		assertThat(job.getError()).isNotNull();
+	}
+
+	private void awaitDone(InstallationImportJob job) {
+		for (int i = 0; i < 100 && !isDone(job); i++) {
+			sleepSilently(100);
+		}
+	}
+
+	private static boolean isDone(InstallationImportJob job) {
+		return job.getState() == State.COMPLETED || job.getState() == State.FAILED;
+	}
+}
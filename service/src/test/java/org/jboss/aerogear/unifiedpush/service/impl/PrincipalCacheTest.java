@@ -0,0 +1,83 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class PrincipalCacheTest {
+
+	private final Variant variant = new AndroidVariant();
+	private final AtomicInteger lookups = new AtomicInteger();
+	private PrincipalCache cache;
+
+	@Before
+	public void setUp() {
+		final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+		when(config.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+		when(config.getProperty(eq(PrincipalCache.PROP_CACHE_SIZE), anyInt())).thenReturn(100);
+		// rejections are not cached, only the failure limit applies
+		when(config.getProperty(eq(PrincipalCache.PROP_NEGATIVE_TTL_SECONDS), anyInt())).thenReturn(0);
+		when(config.getProperty(eq(PrincipalCache.PROP_FAILURE_LIMIT), anyInt())).thenReturn(2);
+
+		cache = new PrincipalCache();
+		ReflectionTestUtils.setField(cache, "config", config);
+		cache.init();
+	}
+
+	@Test
+	public void repeatedBadSecretDoesNotLockOutValidSecret() {
+		for (int i = 0; i < 5; i++) {
+			assertThat(authenticate("wrong")).isNull();
+		}
+		// the bad secret is only looked up until it reached the limit
+		assertThat(lookups.get()).isEqualTo(2);
+
+		assertThat(authenticate("secret")).isSameAs(variant);
+	}
+
+	@Test
+	public void evictAllResetsFailedAttempts() {
+		authenticate("wrong");
+		authenticate("wrong");
+		cache.evictAll();
+
+		lookups.set(0);
+		assertThat(authenticate("wrong")).isNull();
+		assertThat(lookups.get()).isEqualTo(1);
+	}
+
+	private Variant authenticate(String secret) {
+		return cache.authenticate(Variant.class, "variant-1", secret, () -> {
+			lookups.incrementAndGet();
+			return "secret".equals(secret) ? variant : null;
+		});
+	}
+}
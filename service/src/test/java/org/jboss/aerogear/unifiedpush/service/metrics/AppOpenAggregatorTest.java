@@ -0,0 +1,73 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class AppOpenAggregatorTest {
+
+    private final FlatPushMessageInformationDao dao = mock(FlatPushMessageInformationDao.class);
+    private AppOpenAggregator aggregator;
+
+    @Before
+    public void setUp() {
+        when(dao.addAppOpens(anyString(), anyLong(), any(), any())).thenReturn(true);
+        when(dao.addAppOpens(eq("unknown"), anyLong(), any(), any())).thenReturn(false);
+
+        // not started, flushed by the test only
+        aggregator = new AppOpenAggregator();
+        ReflectionTestUtils.setField(aggregator, "flatPushMessageInformationDao", dao);
+        ReflectionTestUtils.setField(aggregator, "transactionManager", mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    public void flushAddsDeltas() {
+        aggregator.recordOpen("known");
+        aggregator.recordOpen("known");
+        aggregator.flush();
+        aggregator.recordOpen("known");
+        aggregator.flush();
+        aggregator.flush();
+
+        verify(dao).addAppOpens(eq("known"), eq(2L), any(), any());
+        verify(dao).addAppOpens(eq("known"), eq(1L), any(), any());
+    }
+
+    @Test
+    public void flushDropsEventsOfUnknownMessages() {
+        aggregator.recordOpen("unknown");
+        aggregator.recordOpen("known");
+        aggregator.flush();
+        aggregator.flush();
+
+        // not retried on the next flush
+        verify(dao, times(1)).addAppOpens(eq("unknown"), anyLong(), any(), any());
+    }
+}
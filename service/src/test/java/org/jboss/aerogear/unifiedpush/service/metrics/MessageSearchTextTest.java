@@ -0,0 +1,46 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.jboss.aerogear.unifiedpush.dao.MessageSearchText;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.junit.Test;
+
+public class MessageSearchTextTest {
+
+    @Test
+    public void extractsAlertAndCriteria() {
+        final UnifiedPushMessage message = new UnifiedPushMessage();
+        message.getMessage().setAlert("Hello World, hello!");
+        message.getCriteria().setAliases(Arrays.asList("john@example.com"));
+        message.getCriteria().setCategories(Arrays.asList("Soccer"));
+        message.getCriteria().setDeviceTypes(Arrays.asList("iPad"));
+
+        assertThat(MessageSearchText.extract(message.toStrippedJsonString()))
+                .isEqualTo("hello world john example com soccer ipad");
+    }
+
+    @Test
+    public void extractsAllWordsOfUnexpectedFormat() {
+        assertThat(MessageSearchText.extract("not [json")).isEqualTo("not json");
+        assertThat(MessageSearchText.extract(null)).isNull();
+    }
+}
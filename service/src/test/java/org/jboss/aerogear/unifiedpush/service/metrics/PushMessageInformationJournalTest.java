@@ -0,0 +1,106 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PushMessageInformationJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysAppendedEntries() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("journal/metadata.log");
+        final FlatPushMessageInformation hello = information("hello");
+        final FlatPushMessageInformation world = information("world");
+
+        try (PushMessageInformationJournal journal = new PushMessageInformationJournal(file, false)) {
+            journal.append(hello);
+            journal.append(world);
+        }
+
+        assertThat(new PushMessageInformationJournal(file, false).readAll())
+                .extracting("id", "pushApplicationId", "rawJsonMessage", "ipAddress", "submitDate")
+                .containsExactly(
+                        tuple(hello.getId(), "app", "hello", "127.0.0.1", hello.getSubmitDate()),
+                        tuple(world.getId(), "app", "world", "127.0.0.1", world.getSubmitDate()));
+    }
+
+    @Test
+    public void skipsTornLastLine() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("metadata.log");
+
+        try (PushMessageInformationJournal journal = new PushMessageInformationJournal(file, true)) {
+            journal.append(information("hello"));
+        }
+        Files.write(file, "{\"id\":\"torn".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        assertThat(new PushMessageInformationJournal(file, false).readAll()).hasSize(1);
+    }
+
+    @Test
+    public void truncateRemovesEntries() {
+        final Path file = folder.getRoot().toPath().resolve("metadata.log");
+        final PushMessageInformationJournal journal = new PushMessageInformationJournal(file, false);
+
+        journal.append(information("hello"));
+        journal.truncate();
+
+        assertThat(journal.readAll()).isEmpty();
+        assertThat(Files.exists(file)).isFalse();
+    }
+
+    @Test
+    public void rewriteKeepsPendingEntries() {
+        final Path file = folder.getRoot().toPath().resolve("metadata.log");
+        final PushMessageInformationJournal journal = new PushMessageInformationJournal(file, false);
+        final FlatPushMessageInformation pending = information("pending");
+
+        journal.append(information("persisted"));
+        journal.append(pending);
+        journal.rewrite(Collections.singletonList(pending));
+        assertThat(journal.size()).isEqualTo(1);
+
+        final FlatPushMessageInformation next = information("next");
+        journal.append(next);
+
+        assertThat(journal.readAll()).extracting("id").containsExactly(pending.getId(), next.getId());
+        assertThat(journal.size()).isEqualTo(2);
+    }
+
+    private static FlatPushMessageInformation information(String json) {
+        final FlatPushMessageInformation information = new FlatPushMessageInformation();
+        information.setPushApplicationId("app");
+        information.setRawJsonMessage(json);
+        information.setIpAddress("127.0.0.1");
+        return information;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class PushMessageInformationWriterTest {
+
+    private final List<String> persisted = new ArrayList<>();
+    private final FlatPushMessageInformationDao dao = mock(FlatPushMessageInformationDao.class);
+    private PushMessageInformationWriter writer;
+    private boolean databaseDown;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        when(config.getProperty(anyString(), anyBoolean())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        when(config.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        when(config.getProperty(anyString(), anyString())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        when(config.getProperty(eq(PushMessageInformationWriter.PROP_ENABLED), anyBoolean())).thenReturn(true);
+        when(config.getProperty(eq(PushMessageInformationWriter.PROP_BUFFER_SIZE), anyInt())).thenReturn(2);
+        // flushed by the test only
+        when(config.getProperty(eq(PushMessageInformationWriter.PROP_FLUSH_MS), anyInt())).thenReturn(3_600_000);
+
+        doAnswer(invocation -> {
+            final Collection<FlatPushMessageInformation> batch = (Collection<FlatPushMessageInformation>) invocation.getArguments()[0];
+            if (databaseDown || batch.stream().anyMatch(information -> "poison".equals(information.getRawJsonMessage()))) {
+                throw new IllegalStateException("insert failed");
+            }
+            batch.forEach(information -> persisted.add(information.getId()));
+            return null;
+        }).when(dao).createAll(anyCollectionOf(FlatPushMessageInformation.class));
+        when(dao.find(anyString())).thenAnswer(invocation -> {
+            if (databaseDown) {
+                throw new IllegalStateException("connection refused");
+            }
+            return null;
+        });
+
+        writer = new PushMessageInformationWriter();
+        ReflectionTestUtils.setField(writer, "config", config);
+        ReflectionTestUtils.setField(writer, "flatPushMessageInformationDao", dao);
+        ReflectionTestUtils.setField(writer, "transactionManager", mock(PlatformTransactionManager.class));
+        writer.start();
+    }
+
+    @After
+    public void tearDown() {
+        databaseDown = false;
+        writer.stop();
+    }
+
+    @Test
+    public void quarantinesRowThatFailsWithinBatch() {
+        final FlatPushMessageInformation good = information("good");
+        final FlatPushMessageInformation poison = information("poison");
+        assertThat(writer.enqueue(good)).isTrue();
+        assertThat(writer.enqueue(poison)).isTrue();
+
+        writer.flush();
+
+        assertThat(persisted).containsExactly(good.getId());
+        assertThat(pending()).isEmpty();
+
+        // the next batch is not held up by the poisoned one
+        final FlatPushMessageInformation next = information("next");
+        writer.enqueue(next);
+        writer.flush();
+        assertThat(persisted).containsExactly(good.getId(), next.getId());
+    }
+
+    @Test
+    public void quarantinesSingleRowThatFailsWhileDatabaseIsAvailable() {
+        final FlatPushMessageInformation poison = information("poison");
+        writer.enqueue(poison);
+
+        writer.flush();
+
+        assertThat(persisted).isEmpty();
+        assertThat(pending()).isEmpty();
+    }
+
+    @Test
+    public void rejectsInsteadOfFlushingWhileFailing() {
+        databaseDown = true;
+        final FlatPushMessageInformation first = information("first");
+        writer.enqueue(first);
+        writer.flush();
+        writer.flush();
+
+        writer.enqueue(information("second"));
+        writer.enqueue(information("third"));
+        final FlatPushMessageInformation rejected = information("rejected");
+        assertThat(writer.enqueue(rejected)).isFalse();
+        assertThat(pending()).doesNotContainKey(rejected.getId());
+
+        // the rows of the failed batch are kept until the database is back
+        databaseDown = false;
+        writer.flush();
+        assertThat(persisted).hasSize(3).startsWith(first.getId());
+        assertThat(pending()).isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, FlatPushMessageInformation> pending() {
+        return (Map<String, FlatPushMessageInformation>) ReflectionTestUtils.getField(writer, "pending");
+    }
+
+    private static FlatPushMessageInformation information(String json) {
+        final FlatPushMessageInformation information = new FlatPushMessageInformation();
+        information.setPushApplicationId("app");
+        information.setRawJsonMessage(json);
+        return information;
+    }
+}
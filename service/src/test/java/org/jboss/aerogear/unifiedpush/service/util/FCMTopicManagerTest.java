@@ -0,0 +1,111 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the topic manager against a stub of the Instance ID service.
+ */
+public class FCMTopicManagerTest {
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private FCMTopicManager topicManager;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/iid/info/", exchange ->
+                respond(exchange, "{\"rel\":{\"topics\":{\"soccer\":{},\"news\":{}}}}"));
+        server.createContext("/iid/v1:batchRemove", exchange -> respond(exchange, "{\"results\":[{}]}"));
+        server.start();
+
+        httpClient = HttpClients.createDefault();
+        topicManager = new FCMTopicManager(httpClient,
+                "http://localhost:" + server.getAddress().getPort() + "/iid/", "secret");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void getSubscribedCategories() {
+        assertThat(topicManager.getSubscribedCategories("token1")).containsOnly("soccer", "news");
+        assertThat(requests).containsExactly("GET /iid/info/token1 key=secret ");
+    }
+
+    @Test
+    public void unsubscribeInBatches() {
+        final List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < FCMTopicManager.MAX_BATCH_SIZE + 1; i++) {
+            tokens.add("token" + i);
+        }
+
+        topicManager.unsubscribe("news", tokens);
+
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(0)).startsWith("POST /iid/v1:batchRemove key=secret {")
+                .contains("\"to\":\"\\/topics\\/news\"", "\"token0\"", "\"token999\"")
+                .doesNotContain("\"token1000\"");
+        assertThat(requests.get(1)).contains("\"registration_tokens\":[\"token1000\"]");
+    }
+
+    @Test
+    public void unreachableService() throws IOException {
+        server.stop(0);
+
+        assertThat(topicManager.getSubscribedCategories("token1")).isEmpty();
+        topicManager.unsubscribe("news", Arrays.asList("token1"));
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        try (Scanner scanner = new Scanner(exchange.getRequestBody(), StandardCharsets.UTF_8.name())) {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " "
+                    + exchange.getRequestHeaders().getFirst("Authorization") + " "
+                    + (scanner.hasNext() ? scanner.useDelimiter("\\A").next() : ""));
+        }
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}